@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.common.webapp.system.queries;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.rdf4j.http.server.queries.RunningQueries;
+import org.eclipse.rdf4j.http.server.queries.RunningQuery;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.mvc.Controller;
+import org.springframework.web.servlet.view.RedirectView;
+
+/**
+ * Shows the queries and updates that are currently running on the server. Posting the identifier of a query
+ * in the <tt>cancel</tt> parameter cancels that query.
+ */
+public class RunningQueriesOverviewController implements Controller {
+
+	private String view;
+
+	public String getView() {
+		return view;
+	}
+
+	public void setView(String view) {
+		this.view = view;
+	}
+
+	public ModelAndView handleRequest(HttpServletRequest request, HttpServletResponse response)
+		throws Exception
+	{
+		String cancel = request.getParameter("cancel");
+		if ("POST".equals(request.getMethod()) && cancel != null) {
+			try {
+				RunningQuery query = RunningQueries.INSTANCE.get(Long.parseLong(cancel));
+				if (query != null) {
+					query.cancel();
+				}
+			}
+			catch (NumberFormatException e) {
+				// ignore, the query list is shown again
+			}
+			// redirect, so that reloading the page does not repeat the request
+			return new ModelAndView(new RedirectView(request.getRequestURI()));
+		}
+
+		ModelAndView result = new ModelAndView();
+		result.setViewName(view);
+
+		Map<String, Object> model = new HashMap<String, Object>();
+		model.put("queries", RunningQueries.INSTANCE.getRunningQueries());
+		model.put("slowQueryThreshold", RunningQueries.INSTANCE.getSlowQueryThreshold());
+		result.addAllObjects(model);
+
+		return result;
+	}
+}
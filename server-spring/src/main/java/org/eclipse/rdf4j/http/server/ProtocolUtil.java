@@ -10,10 +10,17 @@ package org.eclipse.rdf4j.http.server;
 import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
 import static javax.servlet.http.HttpServletResponse.SC_NOT_ACCEPTABLE;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -31,6 +38,9 @@ import org.eclipse.rdf4j.model.ValueFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 /**
  * Utilities to help with the transition between HTTP requests/responses and values expected by the protocol.
  * 
@@ -39,6 +49,23 @@ import org.slf4j.LoggerFactory;
  */
 public class ProtocolUtil {
 
+	/**
+	 * Maximum number of Accept headers per service registry for which the negotiated format is cached.
+	 */
+	private static final int NEGOTIATION_CACHE_SIZE = 64;
+
+	/**
+	 * Accept headers longer than this are always negotiated, so that the cache can not be filled with
+	 * arbitrarily large keys.
+	 */
+	private static final int MAX_CACHED_ACCEPT_LENGTH = 512;
+
+	/**
+	 * Format indexes by service registry. Service registries are singletons, so this map stays small.
+	 */
+	private static final ConcurrentMap<FileFormatServiceRegistry<?, ?>, FormatIndex<?>> formatIndexes =
+			new ConcurrentHashMap<>();
+
 	public static Value parseValueParam(HttpServletRequest request, String paramName, ValueFactory vf)
 		throws ClientHTTPException
 	{
@@ -167,21 +194,15 @@ public class ProtocolUtil {
 			// Find an acceptable MIME type based on the request headers
 			logAcceptableFormats(request);
 
-			Collection<String> mimeTypes = new LinkedHashSet<String>(16);
-			// Prefer the default mime types, explicitly before non-default
-			for (FileFormat format : serviceRegistry.getKeys()) {
-				mimeTypes.add(format.getDefaultMIMEType());
-			}
-			for (FileFormat format : serviceRegistry.getKeys()) {
-				mimeTypes.addAll(format.getMIMETypes());
-			}
-
-			mimeType = HttpServerUtil.selectPreferredMIMEType(mimeTypes.iterator(), request);
+			Optional<FF> format = getFormatIndex(serviceRegistry).negotiate(request);
 
 			response.setHeader("Vary", "Accept");
-		}
 
-		if (mimeType != null) {
+			if (format.isPresent()) {
+				return serviceRegistry.get(format.get()).get();
+			}
+		}
+		else {
 			Optional<FF> format = serviceRegistry.getFileFormatForMIMEType(mimeType);
 
 			if (format.isPresent()) {
@@ -245,4 +266,96 @@ public class ProtocolUtil {
 			logger.debug("Acceptable formats: " + acceptable);
 		}
 	}
+
+	@SuppressWarnings("unchecked")
+	private static <FF extends FileFormat> FormatIndex<FF> getFormatIndex(
+			FileFormatServiceRegistry<FF, ?> serviceRegistry)
+	{
+		FormatIndex<FF> index = (FormatIndex<FF>)formatIndexes.get(serviceRegistry);
+		if (index == null || !index.isCurrent(serviceRegistry)) {
+			index = new FormatIndex<FF>(serviceRegistry);
+			formatIndexes.put(serviceRegistry, index);
+		}
+		return index;
+	}
+
+	/**
+	 * The MIME types of the formats in a service registry, in order of preference, and the formats that have
+	 * been negotiated for recently seen Accept headers. Most clients send one of a few Accept headers, so
+	 * that the headers rarely need to be matched against all MIME types.
+	 */
+	private static class FormatIndex<FF extends FileFormat> {
+
+		private final int formatCount;
+
+		private final List<String> mimeTypes;
+
+		private final Map<String, FF> formatsByMIMEType = new HashMap<String, FF>();
+
+		private final Cache<String, Optional<FF>> negotiated = CacheBuilder.newBuilder().maximumSize(
+				NEGOTIATION_CACHE_SIZE).build();
+
+		FormatIndex(FileFormatServiceRegistry<FF, ?> serviceRegistry) {
+			formatCount = serviceRegistry.getKeys().size();
+
+			Collection<String> mimeTypes = new LinkedHashSet<String>(16);
+			// Prefer the default mime types, explicitly before non-default
+			for (FileFormat format : serviceRegistry.getKeys()) {
+				mimeTypes.add(format.getDefaultMIMEType());
+			}
+			for (FileFormat format : serviceRegistry.getKeys()) {
+				mimeTypes.addAll(format.getMIMETypes());
+			}
+			this.mimeTypes = Collections.unmodifiableList(new ArrayList<String>(mimeTypes));
+
+			for (String mimeType : mimeTypes) {
+				Optional<FF> format = serviceRegistry.getFileFormatForMIMEType(mimeType);
+				if (format.isPresent()) {
+					formatsByMIMEType.put(mimeType, format.get());
+				}
+			}
+		}
+
+		/**
+		 * Checks whether formats have been added to or removed from the registry since this index was
+		 * created. Formats are registered once and rarely removed, so comparing the number of registered
+		 * formats, which is cheap enough to do on every request, suffices.
+		 *
+		 * @return <tt>false</tt> if the number of formats in the registry has changed.
+		 */
+		boolean isCurrent(FileFormatServiceRegistry<FF, ?> serviceRegistry) {
+			return formatCount == serviceRegistry.getKeys().size();
+		}
+
+		Optional<FF> negotiate(HttpServletRequest request) {
+			String accept = getAcceptHeader(request);
+			if (accept.length() > MAX_CACHED_ACCEPT_LENGTH) {
+				return select(request);
+			}
+			Optional<FF> format = negotiated.getIfPresent(accept);
+			if (format == null) {
+				format = select(request);
+				negotiated.put(accept, format);
+			}
+			return format;
+		}
+
+		private Optional<FF> select(HttpServletRequest request) {
+			String mimeType = HttpServerUtil.selectPreferredMIMEType(mimeTypes.iterator(), request);
+			return mimeType == null ? Optional.empty() : Optional.ofNullable(formatsByMIMEType.get(mimeType));
+		}
+
+		private static String getAcceptHeader(HttpServletRequest request) {
+			@SuppressWarnings("unchecked")
+			Enumeration<String> headers = request.getHeaders("Accept");
+			if (headers == null || !headers.hasMoreElements()) {
+				return "";
+			}
+			String accept = headers.nextElement();
+			while (headers.hasMoreElements()) {
+				accept += "," + headers.nextElement();
+			}
+			return accept;
+		}
+	}
 }
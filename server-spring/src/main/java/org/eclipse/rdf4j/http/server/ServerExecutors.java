@@ -0,0 +1,30 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server;
+
+import org.eclipse.rdf4j.http.server.repository.RepositoryConnectionPool;
+import org.eclipse.rdf4j.http.server.repository.RepositoryStatistics;
+import org.eclipse.rdf4j.http.server.repository.statements.BulkStatementLoader;
+import org.eclipse.rdf4j.http.server.repository.statements.ParallelStatementExporter;
+import org.eclipse.rdf4j.http.server.repository.transaction.ActiveTransactionRegistry;
+
+/**
+ * Stops the background threads of the server's singletons, so that they do not outlive the web application
+ * and keep its class loader from being collected after a redeploy. Configure as a bean with
+ * <tt>destroy-method="destroy"</tt>.
+ */
+public class ServerExecutors {
+
+	public void destroy() {
+		ActiveTransactionRegistry.INSTANCE.shutdown();
+		BulkStatementLoader.shutdown();
+		ParallelStatementExporter.shutdown();
+		RepositoryStatistics.INSTANCE.shutdown();
+		RepositoryConnectionPool.INSTANCE.shutdown();
+	}
+}
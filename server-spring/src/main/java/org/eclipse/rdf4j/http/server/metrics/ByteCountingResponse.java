@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.metrics;
+
+import java.io.IOException;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Response wrapper that counts the bytes written to the response body.
+ */
+public class ByteCountingResponse extends HttpServletResponseWrapper {
+
+	private long count;
+
+	private ServletOutputStream out;
+
+	public ByteCountingResponse(HttpServletResponse response) {
+		super(response);
+	}
+
+	public long getByteCount() {
+		return count;
+	}
+
+	@Override
+	public ServletOutputStream getOutputStream()
+		throws IOException
+	{
+		if (out == null) {
+			final ServletOutputStream delegate = super.getOutputStream();
+			out = new ServletOutputStream() {
+
+				@Override
+				public void write(int b)
+					throws IOException
+				{
+					delegate.write(b);
+					count++;
+				}
+
+				@Override
+				public void write(byte[] b, int off, int len)
+					throws IOException
+				{
+					delegate.write(b, off, len);
+					count += len;
+				}
+
+				@Override
+				public void flush()
+					throws IOException
+				{
+					delegate.flush();
+				}
+
+				@Override
+				public void close()
+					throws IOException
+				{
+					delegate.close();
+				}
+			};
+		}
+		return out;
+	}
+}
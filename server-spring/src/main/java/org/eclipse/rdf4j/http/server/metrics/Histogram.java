@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of recorded values over a fixed set of buckets. Recording a value is a binary search over the
+ * bucket boundaries and two uncontended additions, so histograms can be updated on every request without
+ * locking.
+ */
+public class Histogram {
+
+	private final double[] bounds;
+
+	private final LongAdder[] counts;
+
+	private final DoubleAdder sum = new DoubleAdder();
+
+	/**
+	 * @param bounds
+	 *        the inclusive upper bounds of the buckets, in ascending order. Values above the largest bound are
+	 *        counted in an additional, unbounded bucket.
+	 */
+	public Histogram(double... bounds) {
+		this.bounds = bounds.clone();
+		this.counts = new LongAdder[bounds.length + 1];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = new LongAdder();
+		}
+	}
+
+	public void record(double value) {
+		int bucket = Arrays.binarySearch(bounds, value);
+		if (bucket < 0) {
+			bucket = -bucket - 1;
+		}
+		counts[bucket].increment();
+		sum.add(value);
+	}
+
+	/**
+	 * @return the upper bounds of the buckets, excluding the unbounded bucket.
+	 */
+	public double[] getBounds() {
+		return bounds.clone();
+	}
+
+	/**
+	 * @return the number of recorded values less than or equal to each bucket bound, followed by the total
+	 *         number of recorded values.
+	 */
+	public long[] getCumulativeCounts() {
+		long[] result = new long[counts.length];
+		long total = 0;
+		for (int i = 0; i < counts.length; i++) {
+			total += counts[i].sum();
+			result[i] = total;
+		}
+		return result;
+	}
+
+	public double getSum() {
+		return sum.sum();
+	}
+}
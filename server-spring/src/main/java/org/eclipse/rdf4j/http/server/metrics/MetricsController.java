@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.metrics;
+
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.rdf4j.http.server.repository.AdmissionControl;
+import org.eclipse.rdf4j.http.server.repository.DistinctResults;
+import org.eclipse.rdf4j.http.server.repository.QueryResponseCache;
+import org.eclipse.rdf4j.http.server.repository.RepositoryConnectionPool;
+import org.eclipse.rdf4j.http.server.repository.transaction.ActiveTransactionRegistry;
+import org.springframework.context.ApplicationContextException;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.mvc.AbstractController;
+
+/**
+ * Handles requests for the server metrics, which are returned in the Prometheus text exposition format.
+ */
+public class MetricsController extends AbstractController {
+
+	/**
+	 * Content type of the Prometheus text exposition format.
+	 */
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	public MetricsController()
+		throws ApplicationContextException
+	{
+		setSupportedMethods(new String[] { METHOD_GET, METHOD_HEAD });
+
+		ServerMetrics metrics = ServerMetrics.INSTANCE;
+		metrics.registerGauge("rdf4j_transactions_active", "Number of open REST transactions.", false,
+				() -> ActiveTransactionRegistry.INSTANCE.getActiveTransactionCount());
+		metrics.registerGauge("rdf4j_distinct_spills_total",
+				"Number of distinct query results that exceeded the memory budget and spilled to disk.", true,
+				() -> DistinctResults.INSTANCE.getSpillCount());
+		metrics.registerGauge("rdf4j_distinct_spilled_bytes_total",
+				"Number of bytes written to disk by spilled distinct query results.", true,
+				() -> DistinctResults.INSTANCE.getSpilledBytes());
+		metrics.registerGauge("rdf4j_query_response_cache_hits_total",
+				"Number of query responses served from the response cache.", true,
+				() -> QueryResponseCache.INSTANCE.getStats().hitCount());
+		metrics.registerGauge("rdf4j_query_response_cache_misses_total",
+				"Number of cacheable query responses not found in the response cache.", true,
+				() -> QueryResponseCache.INSTANCE.getStats().missCount());
+		metrics.registerGauge("rdf4j_connection_pool_idle", "Number of idle pooled repository connections.",
+				false, () -> RepositoryConnectionPool.INSTANCE.getIdleCount());
+		metrics.registerGauge("rdf4j_connection_pool_borrowed",
+				"Number of tracked repository connections in use by requests.", false,
+				() -> RepositoryConnectionPool.INSTANCE.getBorrowedCount());
+		metrics.registerGauge("rdf4j_connection_pool_created_total",
+				"Number of repository connections set up for requests.", true,
+				() -> RepositoryConnectionPool.INSTANCE.getCreatedCount());
+		metrics.registerGauge("rdf4j_connection_pool_reused_total",
+				"Number of requests served with a pooled repository connection.", true,
+				() -> RepositoryConnectionPool.INSTANCE.getReusedCount());
+		metrics.registerGauge("rdf4j_connection_pool_leaked_total",
+				"Number of repository connections reported as not closed.", true,
+				() -> RepositoryConnectionPool.INSTANCE.getLeakedCount());
+	}
+
+	/**
+	 * Sets the {@link AdmissionControl} whose rejected requests are reported.
+	 */
+	public void setAdmissionControl(AdmissionControl admissionControl) {
+		ServerMetrics.INSTANCE.registerGauge("rdf4j_admission_rejected_total",
+				"Number of repository requests rejected by admission control.", true,
+				() -> admissionControl.getRejectedCount());
+	}
+
+	@Override
+	protected ModelAndView handleRequestInternal(HttpServletRequest request, HttpServletResponse response)
+		throws Exception
+	{
+		response.setStatus(HttpServletResponse.SC_OK);
+		response.setContentType(CONTENT_TYPE);
+		if (!METHOD_HEAD.equals(request.getMethod())) {
+			Writer out = new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8);
+			ServerMetrics.INSTANCE.writePrometheus(out);
+			out.close();
+		}
+		return null;
+	}
+}
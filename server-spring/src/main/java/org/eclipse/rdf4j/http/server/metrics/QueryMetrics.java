@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.metrics;
+
+/**
+ * Collects the timings of a single query request as it passes from preparation through evaluation to
+ * serialization of the result, and records them in {@link ServerMetrics}. Query results are evaluated lazily,
+ * so the time to the first result is measured while the result is serialized.
+ */
+public class QueryMetrics {
+
+	private final String repositoryID;
+
+	private long evaluationStart;
+
+	private volatile long parseNanos = -1;
+
+	private volatile long firstResultNanos = -1;
+
+	/**
+	 * Only written by the thread that serializes the result, but read by monitoring threads.
+	 */
+	private volatile long rows;
+
+	/**
+	 * @param repositoryID
+	 *        the identifier of the queried repository.
+	 */
+	public QueryMetrics(String repositoryID) {
+		this.repositoryID = repositoryID;
+	}
+
+	/**
+	 * Records the time spent parsing and preparing the query.
+	 *
+	 * @param start
+	 *        the {@link System#nanoTime()} at which preparation of the query started.
+	 */
+	public void prepared(long start) {
+		parseNanos = System.nanoTime() - start;
+		ServerMetrics.INSTANCE.recordParse(repositoryID, parseNanos);
+	}
+
+	/**
+	 * Marks the start of query evaluation.
+	 */
+	public void evaluating() {
+		evaluationStart = System.nanoTime();
+	}
+
+	/**
+	 * Counts a query result, recording the time to the first result.
+	 */
+	public void result() {
+		if (rows++ == 0 && evaluationStart != 0) {
+			firstResultNanos = System.nanoTime() - evaluationStart;
+			ServerMetrics.INSTANCE.recordFirstResult(repositoryID, firstResultNanos);
+		}
+	}
+
+	/**
+	 * @return the number of results counted so far.
+	 */
+	public long getRows() {
+		return rows;
+	}
+
+	/**
+	 * @return the time spent preparing the query in nanoseconds, or -1 if it has not been prepared yet.
+	 */
+	public long getParseNanos() {
+		return parseNanos;
+	}
+
+	/**
+	 * @return the time to the first result in nanoseconds, or -1 if there has not been a result yet.
+	 */
+	public long getFirstResultNanos() {
+		return firstResultNanos;
+	}
+
+	/**
+	 * Records the serialization of the query result.
+	 *
+	 * @param start
+	 *        the {@link System#nanoTime()} at which serialization started.
+	 * @param bytes
+	 *        the number of bytes written.
+	 */
+	public void serialized(long start, long bytes) {
+		ServerMetrics.INSTANCE.recordSerialization(repositoryID, System.nanoTime() - start, rows, bytes);
+	}
+}
@@ -0,0 +1,284 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Registry of the metrics of the HTTP server: request latencies and error counts per repository and handler,
+ * query preparation, evaluation and serialization timings, result sizes, and gauges registered by other
+ * components. The metrics are exposed in the Prometheus text format by {@link MetricsController}.
+ */
+public enum ServerMetrics {
+
+	INSTANCE;
+
+	private final Family<Histogram> requestSeconds = new Family<>("rdf4j_http_request_seconds",
+			"Time spent handling requests on a repository, excluding asynchronous rendering.",
+			() -> new Histogram(Buckets.SECONDS), "repository", "handler");
+
+	private final Family<LongAdder> requestErrors = new Family<>("rdf4j_http_request_errors_total",
+			"Requests on a repository that failed or were answered with an error status.", LongAdder::new,
+			"repository", "handler");
+
+	private final Family<Histogram> parseSeconds = new Family<>("rdf4j_query_parse_seconds",
+			"Time spent parsing and preparing queries.", () -> new Histogram(Buckets.SECONDS), "repository");
+
+	private final Family<Histogram> firstResultSeconds = new Family<>("rdf4j_query_first_result_seconds",
+			"Time from the start of query evaluation to the first result.", () -> new Histogram(Buckets.SECONDS),
+			"repository");
+
+	private final Family<Histogram> serializationSeconds = new Family<>(
+			"rdf4j_query_serialization_seconds",
+			"Time spent evaluating and writing query results to the client.", () -> new Histogram(Buckets.SECONDS),
+			"repository");
+
+	private final Family<Histogram> resultRows = new Family<>("rdf4j_query_result_rows",
+			"Number of results per query response.", () -> new Histogram(Buckets.ROWS), "repository");
+
+	private final Family<Histogram> resultBytes = new Family<>("rdf4j_query_result_bytes",
+			"Size of query responses in bytes.", () -> new Histogram(Buckets.BYTES), "repository");
+
+	private final List<Family<?>> families = Arrays.asList(requestSeconds, requestErrors, parseSeconds,
+			firstResultSeconds, serializationSeconds, resultRows, resultBytes);
+
+	private final Map<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+
+	/**
+	 * Records the handling of a request on a repository.
+	 *
+	 * @param repositoryID
+	 *        the identifier of the repository.
+	 * @param handler
+	 *        the name of the handler that processed the request.
+	 * @param nanos
+	 *        the time taken in nanoseconds.
+	 * @param error
+	 *        <tt>true</tt> if the request failed.
+	 */
+	public void recordRequest(String repositoryID, String handler, long nanos, boolean error) {
+		requestSeconds.get(repositoryID, handler).record(toSeconds(nanos));
+		if (error) {
+			requestErrors.get(repositoryID, handler).increment();
+		}
+	}
+
+	public void recordParse(String repositoryID, long nanos) {
+		parseSeconds.get(repositoryID).record(toSeconds(nanos));
+	}
+
+	public void recordFirstResult(String repositoryID, long nanos) {
+		firstResultSeconds.get(repositoryID).record(toSeconds(nanos));
+	}
+
+	public void recordSerialization(String repositoryID, long nanos, long rows, long bytes) {
+		serializationSeconds.get(repositoryID).record(toSeconds(nanos));
+		resultRows.get(repositoryID).record(rows);
+		resultBytes.get(repositoryID).record(bytes);
+	}
+
+	/**
+	 * Registers a gauge, replacing any gauge registered earlier under the same name.
+	 *
+	 * @param name
+	 *        the metric name.
+	 * @param help
+	 *        a description of the metric.
+	 * @param counter
+	 *        <tt>true</tt> if the value only ever increases.
+	 * @param value
+	 *        supplies the current value.
+	 */
+	public void registerGauge(String name, String help, boolean counter, Supplier<? extends Number> value) {
+		gauges.put(name, new Gauge(help, counter, value));
+	}
+
+	/**
+	 * Discards all metrics of a repository, for example because it has been removed.
+	 *
+	 * @param repositoryID
+	 *        the identifier of the repository.
+	 */
+	public void removeRepository(String repositoryID) {
+		families.forEach(family -> {
+			family.series.keySet().removeIf(labels -> labels.get(0).equals(repositoryID));
+		});
+	}
+
+	/**
+	 * Writes all metrics in the Prometheus text exposition format.
+	 *
+	 * @param out
+	 *        the writer to write the metrics to.
+	 */
+	public void writePrometheus(Writer out)
+		throws IOException
+	{
+		for (Family<?> family : families) {
+			if (family.series.isEmpty()) {
+				continue;
+			}
+			boolean histogram = family.series.values().iterator().next() instanceof Histogram;
+			writeHeader(out, family.name, family.help, histogram ? "histogram" : "counter");
+			for (Map.Entry<List<String>, ?> series : family.series.entrySet()) {
+				String labels = formatLabels(family.labelNames, series.getKey());
+				if (histogram) {
+					writeHistogram(out, family.name, labels, (Histogram)series.getValue());
+				}
+				else {
+					writeSample(out, family.name, labels, ((LongAdder)series.getValue()).sum());
+				}
+			}
+		}
+		for (Map.Entry<String, Gauge> gauge : gauges.entrySet()) {
+			Number value = gauge.getValue().value.get();
+			if (value != null) {
+				writeHeader(out, gauge.getKey(), gauge.getValue().help,
+						gauge.getValue().counter ? "counter" : "gauge");
+				writeSample(out, gauge.getKey(), "", value.doubleValue());
+			}
+		}
+	}
+
+	private static void writeHeader(Writer out, String name, String help, String type)
+		throws IOException
+	{
+		out.write("# HELP " + name + " " + help + "\n");
+		out.write("# TYPE " + name + " " + type + "\n");
+	}
+
+	private static void writeHistogram(Writer out, String name, String labels, Histogram histogram)
+		throws IOException
+	{
+		double[] bounds = histogram.getBounds();
+		long[] counts = histogram.getCumulativeCounts();
+		String prefix = labels.isEmpty() ? "" : labels + ",";
+		for (int i = 0; i < bounds.length; i++) {
+			writeSample(out, name + "_bucket", prefix + "le=\"" + formatNumber(bounds[i]) + "\"", counts[i]);
+		}
+		writeSample(out, name + "_bucket", prefix + "le=\"+Inf\"", counts[bounds.length]);
+		writeSample(out, name + "_sum", labels, histogram.getSum());
+		writeSample(out, name + "_count", labels, counts[bounds.length]);
+	}
+
+	private static void writeSample(Writer out, String name, String labels, double value)
+		throws IOException
+	{
+		out.write(name);
+		if (!labels.isEmpty()) {
+			out.write("{" + labels + "}");
+		}
+		out.write(" " + formatNumber(value) + "\n");
+	}
+
+	private static String formatLabels(String[] names, List<String> values) {
+		StringBuilder labels = new StringBuilder();
+		for (int i = 0; i < names.length; i++) {
+			if (i > 0) {
+				labels.append(',');
+			}
+			String value = values.get(i).replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+			labels.append(names[i]).append("=\"").append(value).append('"');
+		}
+		return labels.toString();
+	}
+
+	private static String formatNumber(double value) {
+		if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+			return Long.toString((long)value);
+		}
+		return Double.toString(value);
+	}
+
+	private static double toSeconds(long nanos) {
+		return (double)nanos / TimeUnit.SECONDS.toNanos(1);
+	}
+
+	/**
+	 * Bucket bounds of the histograms.
+	 */
+	private static class Buckets {
+
+		/**
+		 * Bucket bounds for durations, in seconds.
+		 */
+		static final double[] SECONDS = { 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5,
+				5, 10, 30, 60, 300 };
+
+		/**
+		 * Bucket bounds for numbers of query results.
+		 */
+		static final double[] ROWS = { 0, 1, 10, 100, 1000, 10000, 100000, 1000000, 10000000 };
+
+		/**
+		 * Bucket bounds for response sizes, in bytes.
+		 */
+		static final double[] BYTES = { 1024, 8192, 65536, 524288, 4194304, 33554432, 268435456, 2147483648d };
+	}
+
+	/**
+	 * A metric with one series per combination of label values.
+	 */
+	private static class Family<T> {
+
+		private final String name;
+
+		private final String help;
+
+		private final Supplier<T> factory;
+
+		private final String[] labelNames;
+
+		private final ConcurrentMap<List<String>, T> series = new ConcurrentHashMap<>();
+
+		Family(String name, String help, Supplier<T> factory, String... labelNames) {
+			this.name = name;
+			this.help = help;
+			this.factory = factory;
+			this.labelNames = labelNames;
+		}
+
+		T get(String... labelValues) {
+			String[] values = labelValues.clone();
+			for (int i = 0; i < values.length; i++) {
+				values[i] = String.valueOf(values[i]);
+			}
+			List<String> key = Arrays.asList(values);
+			T result = series.get(key);
+			if (result == null) {
+				result = series.computeIfAbsent(key, k -> factory.get());
+			}
+			return result;
+		}
+	}
+
+	private static class Gauge {
+
+		private final String help;
+
+		private final boolean counter;
+
+		private final Supplier<? extends Number> value;
+
+		Gauge(String help, boolean counter, Supplier<? extends Number> value) {
+			this.help = help;
+			this.counter = counter;
+			this.value = value;
+		}
+	}
+}
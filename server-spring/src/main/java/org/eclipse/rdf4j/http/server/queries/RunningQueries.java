@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.queries;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.eclipse.rdf4j.http.server.metrics.QueryMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of the queries and updates that are currently being processed by the server. Queries whose
+ * processing takes longer than a configurable threshold are logged, with their full text and timings, to the
+ * {@link #SLOW_QUERY_LOGGER slow query logger}, which can be routed to a dedicated appender.
+ */
+public enum RunningQueries {
+
+	INSTANCE;
+
+	/**
+	 * Configurable system property {@code rdf4j.server.query.slow.threshold} for specifying the time (in
+	 * milliseconds) after which a query or update is logged as slow. A value of 0 or less disables the slow
+	 * query log.
+	 */
+	public static final String SLOW_QUERY_THRESHOLD_PROPERTY = "rdf4j.server.query.slow.threshold";
+
+	/**
+	 * Default slow query threshold, in milliseconds.
+	 */
+	public static final long DEFAULT_SLOW_QUERY_THRESHOLD = 10000;
+
+	/**
+	 * Name of the logger that slow queries are logged to.
+	 */
+	public static final String SLOW_QUERY_LOGGER = "org.eclipse.rdf4j.http.server.SlowQueries";
+
+	private final Logger logger = LoggerFactory.getLogger(RunningQueries.class);
+
+	private final Logger slowQueryLogger = LoggerFactory.getLogger(SLOW_QUERY_LOGGER);
+
+	private volatile long slowQueryThreshold = DEFAULT_SLOW_QUERY_THRESHOLD;
+
+	private final AtomicLong ids = new AtomicLong();
+
+	private final Map<Long, RunningQuery> running = new ConcurrentSkipListMap<>();
+
+	private RunningQueries() {
+		final String configuredValue = System.getProperty(SLOW_QUERY_THRESHOLD_PROPERTY);
+		if (configuredValue != null) {
+			try {
+				slowQueryThreshold = Long.parseLong(configuredValue);
+			}
+			catch (NumberFormatException e) {
+				logger.warn(
+						"Expected integer value for property {}. Slow query threshold will default to {} ms. ",
+						SLOW_QUERY_THRESHOLD_PROPERTY, DEFAULT_SLOW_QUERY_THRESHOLD);
+			}
+		}
+	}
+
+	/**
+	 * Sets the time after which a query or update is logged as slow.
+	 *
+	 * @param slowQueryThreshold
+	 *        the threshold in milliseconds, 0 or less to disable the slow query log.
+	 */
+	public void setSlowQueryThreshold(long slowQueryThreshold) {
+		this.slowQueryThreshold = slowQueryThreshold;
+	}
+
+	public long getSlowQueryThreshold() {
+		return slowQueryThreshold;
+	}
+
+	/**
+	 * Registers a query or update that is about to be processed. The caller must invoke
+	 * {@link RunningQuery#finish()} once processing has finished, whether successfully or not.
+	 *
+	 * @param repositoryID
+	 *        the identifier of the repository.
+	 * @param operation
+	 *        the kind of operation.
+	 * @param queryString
+	 *        the text of the query or update.
+	 * @param request
+	 *        the request that contains the query.
+	 * @param metrics
+	 *        the metrics of a query, from which its progress is reported, or <tt>null</tt>.
+	 * @return the registered query.
+	 */
+	public RunningQuery start(String repositoryID, RunningQuery.Operation operation, String queryString,
+			HttpServletRequest request, QueryMetrics metrics)
+	{
+		RunningQuery query = new RunningQuery(ids.incrementAndGet(), repositoryID, operation, queryString,
+				request.getRemoteAddr(), metrics);
+		running.put(query.getId(), query);
+		return query;
+	}
+
+	/**
+	 * @return the queries and updates that are currently being processed, in the order in which they were
+	 *         started.
+	 */
+	public List<RunningQuery> getRunningQueries() {
+		return new ArrayList<>(running.values());
+	}
+
+	/**
+	 * @param id
+	 *        the identifier of a query.
+	 * @return the running query with the supplied identifier, or <tt>null</tt> if there is no such query.
+	 */
+	public RunningQuery get(long id) {
+		return running.get(id);
+	}
+
+	void finished(RunningQuery query) {
+		running.remove(query.getId());
+
+		long threshold = slowQueryThreshold;
+		long elapsed = query.getElapsedMillis();
+		if (threshold > 0 && elapsed >= threshold && slowQueryLogger.isWarnEnabled()) {
+			StringBuilder timings = new StringBuilder();
+			timings.append(elapsed).append(" ms");
+			QueryMetrics metrics = query.getMetrics();
+			if (metrics != null) {
+				appendTiming(timings, "preparation", metrics.getParseNanos());
+				appendTiming(timings, "first result", metrics.getFirstResultNanos());
+				timings.append(", ").append(metrics.getRows()).append(" results");
+			}
+			slowQueryLogger.warn("Slow {} {} on repository {} from {}{}: {}\n{}", query.getOperation(),
+					query.getId(), query.getRepositoryID(), query.getClient(),
+					query.isCancelled() ? " (cancelled)" : "", timings, query.getQueryString());
+		}
+	}
+
+	private static void appendTiming(StringBuilder timings, String name, long nanos) {
+		if (nanos >= 0) {
+			timings.append(", ").append(name).append(' ').append(TimeUnit.NANOSECONDS.toMillis(nanos)).append(
+					" ms");
+		}
+	}
+}
@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.queries;
+
+import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
+import static javax.servlet.http.HttpServletResponse.SC_CONFLICT;
+import static javax.servlet.http.HttpServletResponse.SC_METHOD_NOT_ALLOWED;
+import static javax.servlet.http.HttpServletResponse.SC_NOT_FOUND;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.rdf4j.common.webapp.views.EmptySuccessView;
+import org.eclipse.rdf4j.http.server.ClientHTTPException;
+import org.eclipse.rdf4j.http.server.ProtocolUtil;
+import org.eclipse.rdf4j.http.server.repository.QueryResultView;
+import org.eclipse.rdf4j.http.server.repository.TupleQueryResultView;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.algebra.evaluation.QueryBindingSet;
+import org.eclipse.rdf4j.query.impl.IteratingTupleQueryResult;
+import org.eclipse.rdf4j.query.resultio.TupleQueryResultWriterFactory;
+import org.eclipse.rdf4j.query.resultio.TupleQueryResultWriterRegistry;
+import org.springframework.context.ApplicationContextException;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.mvc.AbstractController;
+
+/**
+ * Handles requests for the queries and updates that are currently running on this server. A <tt>GET</tt>
+ * request on <tt>/queries</tt> returns the running queries as a tuple query result, in any of the supported
+ * formats (for example SPARQL/JSON). A <tt>DELETE</tt> request on <tt>/queries/&lt;id&gt;</tt> cancels a
+ * running query.
+ */
+public class RunningQueriesController extends AbstractController {
+
+	private static final List<String> BINDING_NAMES = Arrays.asList("id", "repository", "operation", "client",
+			"started", "elapsed", "results", "cancelled", "query");
+
+	public RunningQueriesController()
+		throws ApplicationContextException
+	{
+		setSupportedMethods(new String[] { METHOD_GET, METHOD_HEAD, "DELETE" });
+	}
+
+	@Override
+	protected ModelAndView handleRequestInternal(HttpServletRequest request, HttpServletResponse response)
+		throws Exception
+	{
+		String pathInfo = request.getPathInfo();
+		if (pathInfo != null && pathInfo.length() > 1) {
+			if (!"DELETE".equals(request.getMethod())) {
+				throw new ClientHTTPException(SC_METHOD_NOT_ALLOWED,
+						"Method not allowed: " + request.getMethod());
+			}
+			return cancel(pathInfo.substring(1));
+		}
+		if ("DELETE".equals(request.getMethod())) {
+			throw new ClientHTTPException(SC_METHOD_NOT_ALLOWED, "Method not allowed: DELETE");
+		}
+
+		Map<String, Object> model = new HashMap<String, Object>();
+		if (METHOD_GET.equals(request.getMethod())) {
+			ValueFactory vf = SimpleValueFactory.getInstance();
+			List<BindingSet> bindingSets = new ArrayList<BindingSet>();
+			for (RunningQuery query : RunningQueries.INSTANCE.getRunningQueries()) {
+				QueryBindingSet bindings = new QueryBindingSet();
+				bindings.addBinding("id", vf.createLiteral(query.getId()));
+				if (query.getRepositoryID() != null) {
+					bindings.addBinding("repository", vf.createLiteral(query.getRepositoryID()));
+				}
+				bindings.addBinding("operation", vf.createLiteral(query.getOperation().name()));
+				if (query.getClient() != null) {
+					bindings.addBinding("client", vf.createLiteral(query.getClient()));
+				}
+				bindings.addBinding("started", vf.createLiteral(new Date(query.getStartTime())));
+				bindings.addBinding("elapsed", vf.createLiteral(query.getElapsedMillis()));
+				bindings.addBinding("results", vf.createLiteral(query.getRows()));
+				bindings.addBinding("cancelled", vf.createLiteral(query.isCancelled()));
+				if (query.getQueryString() != null) {
+					bindings.addBinding("query", vf.createLiteral(query.getQueryString()));
+				}
+				bindingSets.add(bindings);
+			}
+			model.put(QueryResultView.QUERY_RESULT_KEY,
+					new IteratingTupleQueryResult(BINDING_NAMES, bindingSets));
+		}
+
+		TupleQueryResultWriterFactory factory = ProtocolUtil.getAcceptableService(request, response,
+				TupleQueryResultWriterRegistry.getInstance());
+
+		model.put(QueryResultView.FILENAME_HINT_KEY, "queries");
+		model.put(QueryResultView.FACTORY_KEY, factory);
+		model.put(QueryResultView.HEADERS_ONLY, METHOD_HEAD.equals(request.getMethod()));
+
+		return new ModelAndView(TupleQueryResultView.getInstance(), model);
+	}
+
+	private ModelAndView cancel(String id)
+		throws ClientHTTPException
+	{
+		RunningQuery query;
+		try {
+			query = RunningQueries.INSTANCE.get(Long.parseLong(id));
+		}
+		catch (NumberFormatException e) {
+			throw new ClientHTTPException(SC_BAD_REQUEST, "Invalid query id: " + id);
+		}
+		if (query == null) {
+			throw new ClientHTTPException(SC_NOT_FOUND, "Unknown query: " + id);
+		}
+		if (!query.cancel()) {
+			throw new ClientHTTPException(SC_CONFLICT, "Query " + id + " can not be cancelled");
+		}
+		return new ModelAndView(EmptySuccessView.getInstance());
+	}
+}
@@ -0,0 +1,238 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.queries;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.common.iteration.IterationWrapper;
+import org.eclipse.rdf4j.http.server.metrics.QueryMetrics;
+import org.eclipse.rdf4j.query.GraphQueryResult;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.QueryInterruptedException;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.query.impl.IteratingGraphQueryResult;
+import org.eclipse.rdf4j.query.impl.IteratingTupleQueryResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A query or update that is being processed by the server, as registered in {@link RunningQueries}.
+ * <p>
+ * Queries can be cancelled while their results are streamed to the client: the result is closed, which
+ * stops its evaluation, and the client receives an incomplete response. Updates and boolean queries can not
+ * be cancelled, as they are evaluated in a single call to the store.
+ */
+public class RunningQuery {
+
+	/**
+	 * The kinds of operation that are registered.
+	 */
+	public enum Operation {
+		QUERY,
+		UPDATE
+	}
+
+	private final Logger logger = LoggerFactory.getLogger(RunningQuery.class);
+
+	private final long id;
+
+	private final String repositoryID;
+
+	private final Operation operation;
+
+	private final String queryString;
+
+	private final String client;
+
+	private final long startTime;
+
+	private final long startNanos;
+
+	private final QueryMetrics metrics;
+
+	private final AtomicBoolean finished = new AtomicBoolean();
+
+	private volatile boolean cancelled;
+
+	private volatile CloseableIteration<?, QueryEvaluationException> result;
+
+	RunningQuery(long id, String repositoryID, Operation operation, String queryString, String client,
+			QueryMetrics metrics)
+	{
+		this.id = id;
+		this.repositoryID = repositoryID;
+		this.operation = operation;
+		this.queryString = queryString;
+		this.client = client;
+		this.metrics = metrics;
+		this.startTime = System.currentTimeMillis();
+		this.startNanos = System.nanoTime();
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public String getRepositoryID() {
+		return repositoryID;
+	}
+
+	public Operation getOperation() {
+		return operation;
+	}
+
+	public String getQueryString() {
+		return queryString;
+	}
+
+	/**
+	 * @return the address of the client that sent the request.
+	 */
+	public String getClient() {
+		return client;
+	}
+
+	/**
+	 * @return the time at which processing started, in milliseconds since the epoch.
+	 */
+	public long getStartTime() {
+		return startTime;
+	}
+
+	public long getElapsedMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * @return the number of results sent to the client so far.
+	 */
+	public long getRows() {
+		return metrics == null ? 0 : metrics.getRows();
+	}
+
+	/**
+	 * @return the {@link QueryMetrics} of the query, or <tt>null</tt> for updates.
+	 */
+	public QueryMetrics getMetrics() {
+		return metrics;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * @return <tt>true</tt> if this is a query whose result is tracked by this object.
+	 */
+	public boolean isCancellable() {
+		return result != null && !finished.get();
+	}
+
+	/**
+	 * Tracks the result of the query, so that it can be cancelled.
+	 *
+	 * @param result
+	 *        the query result.
+	 * @return a result that fails with a {@link QueryInterruptedException} once the query has been cancelled.
+	 */
+	public TupleQueryResult track(TupleQueryResult result)
+		throws QueryEvaluationException
+	{
+		return new IteratingTupleQueryResult(result.getBindingNames(), new CancellableIteration<>(result));
+	}
+
+	/**
+	 * Tracks the result of the query, so that it can be cancelled.
+	 *
+	 * @param result
+	 *        the query result.
+	 * @return a result that fails with a {@link QueryInterruptedException} once the query has been cancelled.
+	 */
+	public GraphQueryResult track(GraphQueryResult result)
+		throws QueryEvaluationException
+	{
+		return new IteratingGraphQueryResult(result.getNamespaces(), new CancellableIteration<>(result));
+	}
+
+	/**
+	 * Cancels the query. The result of the query is closed from the calling thread, the same way that the
+	 * store closes results whose maximum execution time has been exceeded.
+	 *
+	 * @return <tt>true</tt> if the query has been cancelled, <tt>false</tt> if it can not be cancelled.
+	 */
+	public boolean cancel() {
+		if (!isCancellable()) {
+			return false;
+		}
+		cancelled = true;
+		CloseableIteration<?, QueryEvaluationException> nextResult = result;
+		if (nextResult != null) {
+			try {
+				nextResult.close();
+			}
+			catch (RuntimeException e) {
+				logger.warn("Error closing result of cancelled query " + id, e);
+			}
+		}
+		logger.info("Query {} on repository {} cancelled", id, repositoryID);
+		return true;
+	}
+
+	/**
+	 * Removes the query from the registry. Invoking this method more than once has no effect.
+	 */
+	public void finish() {
+		if (finished.compareAndSet(false, true)) {
+			RunningQueries.INSTANCE.finished(this);
+		}
+	}
+
+	private void checkCancelled() {
+		if (cancelled) {
+			throw new QueryInterruptedException("Query " + id + " has been cancelled");
+		}
+	}
+
+	/**
+	 * Wrapper around a query result that stops iterating once the query has been cancelled.
+	 */
+	private class CancellableIteration<T> extends IterationWrapper<T, QueryEvaluationException> {
+
+		CancellableIteration(CloseableIteration<? extends T, QueryEvaluationException> iter) {
+			super(iter);
+			result = iter;
+		}
+
+		@Override
+		public boolean hasNext()
+			throws QueryEvaluationException
+		{
+			checkCancelled();
+			try {
+				boolean hasNext = super.hasNext();
+				checkCancelled();
+				return hasNext;
+			}
+			catch (RuntimeException e) {
+				// the result may fail in any way when it is closed by another thread
+				checkCancelled();
+				throw e;
+			}
+		}
+
+		@Override
+		public T next()
+			throws QueryEvaluationException
+		{
+			checkCancelled();
+			return super.next();
+		}
+	}
+}
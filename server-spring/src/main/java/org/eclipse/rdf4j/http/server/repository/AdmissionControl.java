@@ -0,0 +1,334 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.repository;
+
+import static javax.servlet.http.HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.eclipse.rdf4j.http.protocol.Protocol;
+import org.eclipse.rdf4j.http.server.ClientHTTPException;
+import org.eclipse.rdf4j.http.server.HTTPException;
+import org.eclipse.rdf4j.http.server.ServerHTTPException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the number of requests that are processed concurrently for each repository, so that a single busy
+ * repository can not occupy all request threads of the server. Queries, updates and transaction operations
+ * are limited separately. A request that exceeds the limit of its repository waits, in arrival order, for one
+ * of the running requests to finish. At most {@link #setMaxQueued(int) maxQueued} requests wait per
+ * repository and operation; further requests are rejected immediately with <tt>429 Too Many Requests</tt>,
+ * and requests that could not be admitted within {@link #setMaxWait(long) maxWait} milliseconds are rejected
+ * with <tt>503 Service Unavailable</tt>.
+ * <p>
+ * In addition, the number of requests running on all repositories together can be limited by
+ * {@link #setMaxConcurrentRequests(int) maxConcurrentRequests}. Requests of all repositories wait for this
+ * limit in a single queue, in arrival order, so that the repositories share the server fairly. The number of
+ * requests that are admitted or waiting at any time is limited by {@link #setMaxRequests(int) maxRequests},
+ * which should be below the number of request threads of the servlet container, so that requests that do
+ * not access a repository can still be served when all repositories are busy.
+ * <p>
+ * A limit of 0 or less, the default, admits all requests of that kind without waiting.
+ */
+public class AdmissionControl {
+
+	/**
+	 * The kinds of request that are limited separately.
+	 */
+	public enum Operation {
+		QUERY,
+		UPDATE,
+		TRANSACTION
+	}
+
+	public static final int SC_TOO_MANY_REQUESTS = 429;
+
+	public static final int DEFAULT_MAX_QUEUED = 64;
+
+	public static final long DEFAULT_MAX_WAIT = 10000;
+
+	public static final int DEFAULT_RETRY_AFTER = 5;
+
+	private final Logger logger = LoggerFactory.getLogger(AdmissionControl.class);
+
+	private final Map<Operation, Integer> limits = new EnumMap<>(Operation.class);
+
+	private volatile int maxQueued = DEFAULT_MAX_QUEUED;
+
+	private volatile long maxWait = DEFAULT_MAX_WAIT;
+
+	private volatile int retryAfter = DEFAULT_RETRY_AFTER;
+
+	private final ConcurrentMap<String, Map<Operation, Semaphore>> repositories = new ConcurrentHashMap<>();
+
+	private volatile Semaphore global;
+
+	private volatile int maxRequests;
+
+	private final AtomicInteger requests = new AtomicInteger();
+
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * Sets the maximum number of queries evaluated concurrently on a single repository.
+	 */
+	public void setMaxConcurrentQueries(int maxConcurrentQueries) {
+		setLimit(Operation.QUERY, maxConcurrentQueries);
+	}
+
+	/**
+	 * Sets the maximum number of update requests (data uploads, deletions, SPARQL updates, namespace changes)
+	 * processed concurrently on a single repository.
+	 */
+	public void setMaxConcurrentUpdates(int maxConcurrentUpdates) {
+		setLimit(Operation.UPDATE, maxConcurrentUpdates);
+	}
+
+	/**
+	 * Sets the maximum number of requests on transactions (starting a transaction and any operation within a
+	 * transaction) processed concurrently on a single repository. The number of open transactions is limited
+	 * by the {@link org.eclipse.rdf4j.http.server.repository.transaction.TransactionScheduler}.
+	 */
+	public void setMaxConcurrentTransactionOperations(int maxConcurrentTransactionOperations) {
+		setLimit(Operation.TRANSACTION, maxConcurrentTransactionOperations);
+	}
+
+	/**
+	 * Sets the maximum number of requests processed concurrently on all repositories together.
+	 */
+	public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+		global = maxConcurrentRequests > 0 ? new Semaphore(maxConcurrentRequests, true) : null;
+	}
+
+	/**
+	 * Sets the maximum number of requests on all repositories together that are being processed or wait for
+	 * admission. Further requests are rejected immediately.
+	 */
+	public void setMaxRequests(int maxRequests) {
+		this.maxRequests = maxRequests;
+	}
+
+	/**
+	 * Sets the maximum number of requests that may wait for admission per repository and operation.
+	 */
+	public void setMaxQueued(int maxQueued) {
+		this.maxQueued = maxQueued;
+	}
+
+	/**
+	 * Sets the maximum time in milliseconds that a request waits for admission.
+	 */
+	public void setMaxWait(long maxWait) {
+		this.maxWait = maxWait;
+	}
+
+	/**
+	 * Sets the number of seconds after which rejected clients are advised to retry.
+	 */
+	public void setRetryAfter(int retryAfter) {
+		this.retryAfter = retryAfter;
+	}
+
+	public int getRetryAfter() {
+		return retryAfter;
+	}
+
+	/**
+	 * @return the number of requests that have been rejected since the server was started.
+	 */
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	/**
+	 * Determines the kind of operation a request to a repository performs.
+	 *
+	 * @param request
+	 *        a request whose path info is of the form <tt>/&lt;repositoryID&gt;[/...]</tt>.
+	 * @return the kind of operation.
+	 */
+	public static Operation getOperation(HttpServletRequest request) {
+		String pathInfo = request.getPathInfo();
+		String[] path = pathInfo == null ? new String[0] : pathInfo.substring(1).split("/");
+		if (path.length > 1 && Protocol.TRANSACTIONS.equals(path[1])) {
+			return Operation.TRANSACTION;
+		}
+
+		String method = request.getMethod();
+		if ("GET".equals(method) || "HEAD".equals(method)) {
+			return Operation.QUERY;
+		}
+		if ("POST".equals(method) && path.length == 1) {
+			// queries sent in the request body
+			return Operation.QUERY;
+		}
+		return Operation.UPDATE;
+	}
+
+	/**
+	 * Admits a request on a repository, waiting if the repository's limit for the operation has been reached.
+	 *
+	 * @param repositoryID
+	 *        the identifier of the repository.
+	 * @param operation
+	 *        the kind of operation requested.
+	 * @return a {@link Permit} that must be released when processing of the request has finished.
+	 * @throws HTTPException
+	 *         if the request was rejected.
+	 */
+	public Permit acquire(String repositoryID, Operation operation)
+		throws HTTPException
+	{
+		Semaphore semaphore = getSemaphore(repositoryID, operation);
+		Semaphore nextGlobal = global;
+		int nextMaxRequests = maxRequests;
+		if (semaphore == null && nextGlobal == null && nextMaxRequests <= 0) {
+			return Permit.NONE;
+		}
+		if (requests.incrementAndGet() > nextMaxRequests && nextMaxRequests > 0) {
+			requests.decrementAndGet();
+			throw reject(repositoryID, operation, "too many requests on the server",
+					new ClientHTTPException(SC_TOO_MANY_REQUESTS, "Too many concurrent requests"));
+		}
+		boolean admitted = false;
+		try {
+			long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWait);
+			if (semaphore != null && !semaphore.tryAcquire()) {
+				if (semaphore.getQueueLength() >= maxQueued) {
+					throw reject(repositoryID, operation, "too many waiting requests",
+							new ClientHTTPException(SC_TOO_MANY_REQUESTS,
+									"Too many concurrent requests on repository " + repositoryID));
+				}
+				await(semaphore, deadline, repositoryID, operation);
+			}
+			try {
+				if (nextGlobal != null) {
+					await(nextGlobal, deadline, repositoryID, operation);
+				}
+			}
+			catch (HTTPException | RuntimeException e) {
+				if (semaphore != null) {
+					semaphore.release();
+				}
+				throw e;
+			}
+			admitted = true;
+			return new Permit(semaphore, nextGlobal, requests);
+		}
+		finally {
+			if (!admitted) {
+				requests.decrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Removes the limits of a repository that has been deleted. Requests that are still running on it are
+	 * not affected.
+	 *
+	 * @param repositoryID
+	 *        the identifier of the repository.
+	 */
+	public void remove(String repositoryID) {
+		repositories.remove(repositoryID);
+	}
+
+	private void await(Semaphore semaphore, long deadline, String repositoryID, Operation operation)
+		throws HTTPException
+	{
+		try {
+			if (!semaphore.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+				throw reject(repositoryID, operation, "timed out waiting for admission",
+						new ServerHTTPException(SC_SERVICE_UNAVAILABLE,
+								"Repository " + repositoryID + " is too busy to handle the request"));
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ServerHTTPException(SC_SERVICE_UNAVAILABLE, "Interrupted while waiting for admission");
+		}
+	}
+
+	private HTTPException reject(String repositoryID, Operation operation, String reason,
+			HTTPException exception)
+	{
+		rejected.incrementAndGet();
+		logger.warn("{} request on repository {} rejected, {}", operation, repositoryID, reason);
+		return exception;
+	}
+
+	private synchronized void setLimit(Operation operation, int limit) {
+		limits.put(operation, limit);
+		repositories.clear();
+	}
+
+	private Semaphore getSemaphore(String repositoryID, Operation operation) {
+		if (repositoryID == null) {
+			return null;
+		}
+		Map<Operation, Semaphore> semaphores = repositories.computeIfAbsent(repositoryID,
+				id -> createSemaphores());
+		return semaphores.get(operation);
+	}
+
+	private synchronized Map<Operation, Semaphore> createSemaphores() {
+		Map<Operation, Semaphore> semaphores = new EnumMap<>(Operation.class);
+		limits.forEach((operation, limit) -> {
+			if (limit > 0) {
+				semaphores.put(operation, new Semaphore(limit, true));
+			}
+		});
+		return semaphores;
+	}
+
+	/**
+	 * Admission of a single request. Releasing a permit more than once has no effect.
+	 */
+	public static class Permit {
+
+		static final Permit NONE = new Permit(null, null, null);
+
+		private final Semaphore semaphore;
+
+		private final Semaphore global;
+
+		private final AtomicInteger requests;
+
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		Permit(Semaphore semaphore, Semaphore global, AtomicInteger requests) {
+			this.semaphore = semaphore;
+			this.global = global;
+			this.requests = requests;
+		}
+
+		public void release() {
+			if (requests == null || !released.compareAndSet(false, true)) {
+				return;
+			}
+			if (global != null) {
+				global.release();
+			}
+			if (semaphore != null) {
+				semaphore.release();
+			}
+			requests.decrementAndGet();
+		}
+	}
+}
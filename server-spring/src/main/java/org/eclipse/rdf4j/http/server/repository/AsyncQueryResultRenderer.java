@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.repository;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Renders query results on a dedicated pool of threads instead of the servlet container thread that handled
+ * the request. Streaming a large result to a slow client can take a long time; in asynchronous mode the
+ * container thread is released as soon as the query has been evaluated, and a result thread pulls the
+ * results from the store and writes them to the client.
+ * <p>
+ * Asynchronous rendering is disabled by default and is enabled by setting the system property
+ * {@value #ASYNC_PROPERTY} to <tt>true</tt>. It is only used for requests where the container allows it,
+ * i.e. where the servlet and all filters in the chain are declared as async-supported. Otherwise, or when
+ * all result threads are busy and the queue is full, results are rendered on the calling thread as before.
+ */
+public enum AsyncQueryResultRenderer {
+
+	INSTANCE;
+
+	/**
+	 * Configurable system property {@code rdf4j.server.query.async} for enabling asynchronous rendering of
+	 * query results.
+	 */
+	public static final String ASYNC_PROPERTY = "rdf4j.server.query.async";
+
+	/**
+	 * Configurable system property {@code rdf4j.server.query.async.threads} for specifying the maximum number
+	 * of threads that render query results.
+	 */
+	public static final String THREADS_PROPERTY = "rdf4j.server.query.async.threads";
+
+	/**
+	 * Default maximum number of threads that render query results.
+	 */
+	public static final int DEFAULT_THREADS = 32;
+
+	/**
+	 * Maximum number of results waiting for a result thread.
+	 */
+	private static final int QUEUE_SIZE = 1024;
+
+	private final Logger logger = LoggerFactory.getLogger(AsyncQueryResultRenderer.class);
+
+	private volatile boolean enabled;
+
+	private final ThreadPoolExecutor executor;
+
+	private AsyncQueryResultRenderer() {
+		enabled = Boolean.getBoolean(ASYNC_PROPERTY);
+
+		int threads = DEFAULT_THREADS;
+		final String configuredValue = System.getProperty(THREADS_PROPERTY);
+		if (configuredValue != null) {
+			try {
+				threads = Integer.parseInt(configuredValue);
+			}
+			catch (NumberFormatException e) {
+				logger.warn("Expected integer value for property {}. Thread count will default to {}. ",
+						THREADS_PROPERTY, DEFAULT_THREADS);
+			}
+		}
+
+		executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(QUEUE_SIZE),
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("rdf4j-query-result-%d").build());
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Enables or disables asynchronous rendering of query results.
+	 *
+	 * @param enabled
+	 *        <tt>true</tt> to render query results asynchronously where possible.
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Renders a query result asynchronously, if enabled and supported for the supplied request.
+	 *
+	 * @param request
+	 *        the request for the query result.
+	 * @param response
+	 *        the response to write the query result to.
+	 * @param renderer
+	 *        renders the query result and releases the resources associated with it.
+	 * @return <tt>true</tt> if the result is (or has been) rendered as part of an asynchronous request,
+	 *         <tt>false</tt> if the caller should render the result itself.
+	 */
+	boolean render(HttpServletRequest request, HttpServletResponse response, Renderer renderer) {
+		if (!enabled || !request.isAsyncSupported()) {
+			return false;
+		}
+
+		final AsyncContext asyncContext = request.startAsync(request, response);
+		// streaming a large result may take longer than the container's default async timeout
+		asyncContext.setTimeout(0);
+		Runnable task = () -> {
+			try {
+				renderer.render((HttpServletRequest)asyncContext.getRequest(),
+						(HttpServletResponse)asyncContext.getResponse());
+			}
+			catch (IOException | RuntimeException e) {
+				logger.warn("Failed to render query result", e);
+			}
+			finally {
+				asyncContext.complete();
+			}
+		};
+
+		try {
+			executor.execute(task);
+		}
+		catch (RejectedExecutionException e) {
+			logger.debug("All query result threads are busy, rendering on request thread");
+			task.run();
+		}
+		return true;
+	}
+
+	/**
+	 * Renders a query result to a response.
+	 */
+	@FunctionalInterface
+	interface Renderer {
+
+		void render(HttpServletRequest request, HttpServletResponse response)
+			throws IOException;
+	}
+}
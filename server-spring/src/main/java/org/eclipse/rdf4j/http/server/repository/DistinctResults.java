@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.repository;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.rdf4j.query.GraphQueryResult;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.query.impl.IteratingGraphQueryResult;
+import org.eclipse.rdf4j.query.impl.IteratingTupleQueryResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Removes duplicates from query results within a bounded amount of memory. This is used for the
+ * {@code distinct} protocol parameter instead of
+ * {@link org.eclipse.rdf4j.query.QueryResults#distinctResults(TupleQueryResult)}, which keeps every result
+ * it has seen on the heap.
+ * <p>
+ * Results are streamed as long as the results seen so far fit in the configured memory budget. Once the
+ * budget is exceeded, the remaining results are spilled to hash-partitioned temporary files and duplicates
+ * are removed one partition at a time, splitting partitions that are still too large. The order of the
+ * underlying result is preserved in both cases. Streaming stops when a result spills: the remaining results
+ * are only returned once the underlying result has been consumed completely.
+ *
+ * @see SpillingDistinctIteration
+ */
+public enum DistinctResults {
+
+	INSTANCE;
+
+	/**
+	 * Configurable system property {@code rdf4j.server.distinct.memory} for specifying the amount of memory
+	 * (in bytes) that a single distinct result may use before it spills to disk.
+	 */
+	public static final String MEMORY_BUDGET_PROPERTY = "rdf4j.server.distinct.memory";
+
+	/**
+	 * Default memory budget (in bytes) of a single distinct result.
+	 */
+	public static final long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024;
+
+	/**
+	 * Number of partitions that spilled results are hashed into.
+	 */
+	static final int PARTITIONS = 32;
+
+	private final Logger logger = LoggerFactory.getLogger(DistinctResults.class);
+
+	private volatile long memoryBudget = DEFAULT_MEMORY_BUDGET;
+
+	private final AtomicLong spills = new AtomicLong();
+
+	private final AtomicLong spilledResults = new AtomicLong();
+
+	private final AtomicLong spilledBytes = new AtomicLong();
+
+	private DistinctResults() {
+		final String configuredValue = System.getProperty(MEMORY_BUDGET_PROPERTY);
+		if (configuredValue != null) {
+			try {
+				memoryBudget = Long.parseLong(configuredValue);
+			}
+			catch (NumberFormatException e) {
+				logger.warn("Expected integer value for property {}. Memory budget will default to {} bytes. ",
+						MEMORY_BUDGET_PROPERTY, DEFAULT_MEMORY_BUDGET);
+			}
+		}
+	}
+
+	/**
+	 * Wraps the supplied result so that it no longer contains duplicate binding sets.
+	 *
+	 * @param result
+	 *        the result to remove duplicates from.
+	 * @return a {@link TupleQueryResult} without duplicates.
+	 */
+	public TupleQueryResult distinct(TupleQueryResult result)
+		throws QueryEvaluationException
+	{
+		return new IteratingTupleQueryResult(result.getBindingNames(),
+				new SpillingDistinctIteration<>(result, SpillingDistinctIteration.BINDING_SETS, this));
+	}
+
+	/**
+	 * Wraps the supplied result so that it no longer contains duplicate statements.
+	 *
+	 * @param result
+	 *        the result to remove duplicates from.
+	 * @return a {@link GraphQueryResult} without duplicates.
+	 */
+	public GraphQueryResult distinct(GraphQueryResult result)
+		throws QueryEvaluationException
+	{
+		return new IteratingGraphQueryResult(result.getNamespaces(),
+				new SpillingDistinctIteration<>(result, SpillingDistinctIteration.STATEMENTS, this));
+	}
+
+	/**
+	 * Sets the amount of memory that a single distinct result may use before it spills to disk.
+	 *
+	 * @param memoryBudget
+	 *        the memory budget in bytes.
+	 */
+	public void setMemoryBudget(long memoryBudget) {
+		this.memoryBudget = memoryBudget;
+	}
+
+	/**
+	 * @return the amount of memory (in bytes) that a single distinct result may use before it spills to disk.
+	 */
+	public long getMemoryBudget() {
+		return memoryBudget;
+	}
+
+	/**
+	 * @return the number of distinct results that exceeded the memory budget and spilled to disk.
+	 */
+	public long getSpillCount() {
+		return spills.get();
+	}
+
+	/**
+	 * @return the total number of results written to disk by spilled distinct results.
+	 */
+	public long getSpilledResults() {
+		return spilledResults.get();
+	}
+
+	/**
+	 * @return the total number of bytes written to disk by spilled distinct results.
+	 */
+	public long getSpilledBytes() {
+		return spilledBytes.get();
+	}
+
+	File getTempDir() {
+		return new File(System.getProperty("java.io.tmpdir"));
+	}
+
+	void spilled(long results, long bytes) {
+		spills.incrementAndGet();
+		spilledResults.addAndGet(results);
+		spilledBytes.addAndGet(bytes);
+		logger.debug("distinct result spilled {} results ({} bytes) to disk", results, bytes);
+	}
+}
@@ -18,14 +18,18 @@ import java.util.Map;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.eclipse.rdf4j.http.server.metrics.QueryMetrics;
+import org.eclipse.rdf4j.model.Statement;
 import org.eclipse.rdf4j.query.GraphQueryResult;
 import org.eclipse.rdf4j.query.QueryEvaluationException;
 import org.eclipse.rdf4j.query.QueryInterruptedException;
 import org.eclipse.rdf4j.query.QueryResults;
 import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFHandler;
 import org.eclipse.rdf4j.rio.RDFHandlerException;
 import org.eclipse.rdf4j.rio.RDFWriter;
 import org.eclipse.rdf4j.rio.RDFWriterFactory;
+import org.eclipse.rdf4j.rio.helpers.RDFHandlerWrapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -71,7 +75,32 @@ public class GraphQueryResultView extends QueryResultView {
 			try {
 				RDFWriter rdfWriter = rdfWriterFactory.getWriter(out);
 				GraphQueryResult graphQueryResult = (GraphQueryResult)model.get(QUERY_RESULT_KEY);
-				QueryResults.report(graphQueryResult, rdfWriter);
+				RDFHandler handler = rdfWriter;
+				QueryMetrics metrics = (QueryMetrics)model.get(METRICS_KEY);
+				StreamingResponse streaming = (StreamingResponse)model.get(STREAMING_RESPONSE_KEY);
+				if (metrics != null || streaming != null) {
+					handler = new RDFHandlerWrapper(rdfWriter) {
+
+						@Override
+						public void handleStatement(Statement st)
+							throws RDFHandlerException
+						{
+							if (metrics != null) {
+								metrics.result();
+							}
+							super.handleStatement(st);
+							if (streaming != null) {
+								try {
+									streaming.resultWritten();
+								}
+								catch (IOException e) {
+									throw new RDFHandlerException(e);
+								}
+							}
+						}
+					};
+				}
+				QueryResults.report(graphQueryResult, handler);
 			}
 			catch (QueryInterruptedException e) {
 				logger.error("Query interrupted", e);
@@ -0,0 +1,277 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.repository;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.rdf4j.query.MalformedQueryException;
+import org.eclipse.rdf4j.query.Query;
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.query.UnsupportedQueryLanguageException;
+import org.eclipse.rdf4j.query.parser.ParsedBooleanQuery;
+import org.eclipse.rdf4j.query.parser.ParsedGraphQuery;
+import org.eclipse.rdf4j.query.parser.ParsedQuery;
+import org.eclipse.rdf4j.query.parser.ParsedTupleQuery;
+import org.eclipse.rdf4j.query.parser.QueryParserUtil;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryException;
+import org.eclipse.rdf4j.repository.sail.SailBooleanQuery;
+import org.eclipse.rdf4j.repository.sail.SailGraphQuery;
+import org.eclipse.rdf4j.repository.sail.SailRepositoryConnection;
+import org.eclipse.rdf4j.repository.sail.SailTupleQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Registry of per-repository caches of parsed queries, so that repeated requests for the same query text do
+ * not need to be parsed again. Entries are keyed by query language, query string and base URI. Only
+ * connections on a Sail repository can make use of a cached parse result; queries on other repository types
+ * are prepared by their connection as usual.
+ * <p>
+ * The parsed algebra of a cache entry is never handed out directly: each prepared query operates on its own
+ * copy, so that request-specific settings (dataset, bindings, timeout, inferencing) and any optimizations
+ * applied during evaluation do not leak into other requests.
+ */
+public enum ParsedQueryCache {
+
+	INSTANCE;
+
+	/**
+	 * Configurable system property {@code rdf4j.server.query.cache.size} for specifying the maximum number of
+	 * parsed queries to keep per repository. A value of 0 disables the cache.
+	 */
+	public static final String CACHE_SIZE_PROPERTY = "rdf4j.server.query.cache.size";
+
+	/**
+	 * Default maximum number of parsed queries kept per repository.
+	 */
+	public static final int DEFAULT_CACHE_SIZE = 256;
+
+	private final Logger logger = LoggerFactory.getLogger(ParsedQueryCache.class);
+
+	private final ConcurrentMap<String, RepositoryQueries> caches = new ConcurrentHashMap<>();
+
+	private int cacheSize = DEFAULT_CACHE_SIZE;
+
+	private ParsedQueryCache() {
+		final String configuredValue = System.getProperty(CACHE_SIZE_PROPERTY);
+		if (configuredValue != null) {
+			try {
+				cacheSize = Integer.parseInt(configuredValue);
+			}
+			catch (NumberFormatException e) {
+				logger.warn("Expected integer value for property {}. Cache size will default to {}. ",
+						CACHE_SIZE_PROPERTY, DEFAULT_CACHE_SIZE);
+			}
+		}
+	}
+
+	/**
+	 * Prepares a query on the supplied connection, reusing a previously parsed query for the same repository
+	 * if one is available.
+	 *
+	 * @param repositoryID
+	 *        the identifier of the repository the connection belongs to.
+	 * @param repository
+	 *        the repository the connection belongs to. Cached entries for a different {@link Repository}
+	 *        instance with the same identifier are discarded.
+	 * @param con
+	 *        the connection to prepare the query on.
+	 * @param ql
+	 *        the query language.
+	 * @param queryStr
+	 *        the query string.
+	 * @param baseURI
+	 *        the base URI to resolve relative URIs against, may be <tt>null</tt>.
+	 * @return a query prepared on the supplied connection.
+	 * @throws MalformedQueryException
+	 *         if the query string could not be parsed.
+	 * @throws UnsupportedQueryLanguageException
+	 *         if the query language is not supported.
+	 * @throws RepositoryException
+	 *         if the connection failed to prepare the query.
+	 */
+	public Query prepareQuery(String repositoryID, Repository repository, RepositoryConnection con,
+			QueryLanguage ql, String queryStr, String baseURI)
+		throws MalformedQueryException, UnsupportedQueryLanguageException, RepositoryException
+	{
+		// pooled and tracked connections are wrapped, the query is created on the Sail connection itself
+		RepositoryConnection sailCon = RepositoryConnectionPool.unwrap(con);
+		if (cacheSize <= 0 || repositoryID == null || !(sailCon instanceof SailRepositoryConnection)) {
+			return con.prepareQuery(ql, queryStr, baseURI);
+		}
+
+		RepositoryQueries queries = getQueries(repositoryID, repository);
+		QueryKey key = new QueryKey(ql, queryStr, baseURI);
+
+		ParsedQuery parsedQuery = queries.cache.getIfPresent(key);
+		if (parsedQuery == null) {
+			logger.debug("parsed query cache miss for repository {}", repositoryID);
+			parsedQuery = QueryParserUtil.parseQuery(ql, queryStr, baseURI);
+			queries.cache.put(key, parsedQuery);
+		}
+
+		return createQuery(copy(parsedQuery), (SailRepositoryConnection)sailCon);
+	}
+
+	/**
+	 * Discards all cached queries for the repository with the supplied identifier. Should be invoked whenever
+	 * the configuration of that repository changes or the repository is removed.
+	 *
+	 * @param repositoryID
+	 *        the identifier of the repository.
+	 */
+	public void invalidate(String repositoryID) {
+		if (caches.remove(repositoryID) != null) {
+			logger.debug("invalidated parsed query cache for repository {}", repositoryID);
+		}
+	}
+
+	/**
+	 * Returns the hit/miss statistics of the query cache of the repository with the supplied identifier.
+	 *
+	 * @param repositoryID
+	 *        the identifier of the repository.
+	 * @return the {@link CacheStats} of the repository's query cache, or empty statistics if no queries have
+	 *         been cached for that repository.
+	 */
+	public CacheStats getStats(String repositoryID) {
+		RepositoryQueries queries = caches.get(repositoryID);
+		if (queries == null) {
+			return new CacheStats(0, 0, 0, 0, 0, 0);
+		}
+		return queries.cache.stats();
+	}
+
+	private RepositoryQueries getQueries(String repositoryID, Repository repository) {
+		RepositoryQueries queries = caches.get(repositoryID);
+		if (queries == null || queries.repository != repository) {
+			RepositoryQueries created = new RepositoryQueries(repository, cacheSize);
+			if (queries == null) {
+				queries = caches.putIfAbsent(repositoryID, created);
+			}
+			else {
+				// the repository was re-created since its queries were cached
+				queries = caches.replace(repositoryID, queries, created) ? null : caches.get(repositoryID);
+			}
+			if (queries == null) {
+				queries = created;
+			}
+		}
+		return queries;
+	}
+
+	private static ParsedQuery copy(ParsedQuery parsedQuery) {
+		String sourceString = parsedQuery.getSourceString();
+		ParsedQuery result;
+		if (parsedQuery instanceof ParsedTupleQuery) {
+			result = new ParsedTupleQuery(sourceString, parsedQuery.getTupleExpr().clone());
+		}
+		else if (parsedQuery instanceof ParsedGraphQuery) {
+			result = new ParsedGraphQuery(sourceString, parsedQuery.getTupleExpr().clone(),
+					((ParsedGraphQuery)parsedQuery).getQueryNamespaces());
+		}
+		else if (parsedQuery instanceof ParsedBooleanQuery) {
+			result = new ParsedBooleanQuery(sourceString, parsedQuery.getTupleExpr().clone());
+		}
+		else {
+			throw new RuntimeException("Unexpected query type: " + parsedQuery.getClass());
+		}
+		result.setDataset(parsedQuery.getDataset());
+		return result;
+	}
+
+	private static Query createQuery(ParsedQuery parsedQuery, SailRepositoryConnection con) {
+		if (parsedQuery instanceof ParsedTupleQuery) {
+			return new SailTupleQuery((ParsedTupleQuery)parsedQuery, con);
+		}
+		else if (parsedQuery instanceof ParsedGraphQuery) {
+			return new CachedGraphQuery((ParsedGraphQuery)parsedQuery, con);
+		}
+		else {
+			return new CachedBooleanQuery((ParsedBooleanQuery)parsedQuery, con);
+		}
+	}
+
+	/**
+	 * A graph query evaluated from a cached parse tree. {@link SailRepositoryConnection} offers no way to
+	 * prepare a query from an already parsed one, and the constructor of {@link SailGraphQuery} is only
+	 * accessible to subclasses.
+	 */
+	private static class CachedGraphQuery extends SailGraphQuery {
+
+		CachedGraphQuery(ParsedGraphQuery parsedQuery, SailRepositoryConnection con) {
+			super(parsedQuery, con);
+		}
+	}
+
+	/**
+	 * A boolean query evaluated from a cached parse tree, see {@link CachedGraphQuery}.
+	 */
+	private static class CachedBooleanQuery extends SailBooleanQuery {
+
+		CachedBooleanQuery(ParsedBooleanQuery parsedQuery, SailRepositoryConnection con) {
+			super(parsedQuery, con);
+		}
+	}
+
+	/**
+	 * The cached queries of a single {@link Repository} instance.
+	 */
+	private static class RepositoryQueries {
+
+		private final Repository repository;
+
+		private final Cache<QueryKey, ParsedQuery> cache;
+
+		RepositoryQueries(Repository repository, int maximumSize) {
+			this.repository = repository;
+			this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+		}
+	}
+
+	private static class QueryKey {
+
+		private final QueryLanguage ql;
+
+		private final String queryStr;
+
+		private final String baseURI;
+
+		QueryKey(QueryLanguage ql, String queryStr, String baseURI) {
+			this.ql = ql;
+			this.queryStr = queryStr;
+			this.baseURI = baseURI;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof QueryKey)) {
+				return false;
+			}
+			QueryKey other = (QueryKey)o;
+			return ql.equals(other.ql) && queryStr.equals(other.queryStr)
+					&& Objects.equals(baseURI, other.baseURI);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(ql, queryStr, baseURI);
+		}
+	}
+}
@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.repository;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.eclipse.rdf4j.http.protocol.Protocol;
+import org.eclipse.rdf4j.http.server.ClientHTTPException;
+import org.eclipse.rdf4j.http.server.ProtocolUtil;
+import org.eclipse.rdf4j.query.GraphQueryResult;
+import org.eclipse.rdf4j.query.Query;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.QueryResults;
+import org.eclipse.rdf4j.query.TupleQuery;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.query.algebra.Distinct;
+import org.eclipse.rdf4j.query.algebra.Slice;
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.query.impl.AbstractParserQuery;
+import org.eclipse.rdf4j.query.parser.ParsedQuery;
+
+/**
+ * The {@code limit}, {@code offset} and {@code distinct} protocol parameters of a query request.
+ * <p>
+ * Where possible, the modifiers are pushed into the algebra of the query by {@link #pushDown(Query)}, so
+ * that the store can stop evaluating once the requested page has been produced. Modifiers that could not be
+ * pushed down are applied to the query result afterwards by {@link #apply(TupleQueryResult)} or
+ * {@link #apply(GraphQueryResult)}.
+ * <p>
+ * Pushdown is only done for tuple queries that have been parsed locally and do not have their own LIMIT or
+ * OFFSET. Graph queries drop incomplete statements after evaluation, so a pushed down slice would not
+ * count the same results. A {@code distinct} parameter without a limit or offset is not pushed down either,
+ * as the store keeps all distinct results in memory, whereas {@link DistinctResults} spills them to disk.
+ */
+public class QueryModifiers {
+
+	private final long limit;
+
+	private final long offset;
+
+	private final boolean distinct;
+
+	private boolean pushedDown;
+
+	private boolean alreadyDistinct;
+
+	public QueryModifiers(long limit, long offset, boolean distinct) {
+		this.limit = limit;
+		this.offset = offset;
+		this.distinct = distinct;
+	}
+
+	/**
+	 * Reads the query modifiers from the parameters of a request.
+	 *
+	 * @param request
+	 *        the query request.
+	 * @return the modifiers specified on the request.
+	 * @throws ClientHTTPException
+	 *         if a parameter has an invalid value.
+	 */
+	public static QueryModifiers fromRequest(HttpServletRequest request)
+		throws ClientHTTPException
+	{
+		long limit = ProtocolUtil.parseLongParam(request, Protocol.LIMIT_PARAM_NAME, 0);
+		long offset = ProtocolUtil.parseLongParam(request, Protocol.OFFSET_PARAM_NAME, 0);
+		boolean distinct = ProtocolUtil.parseBooleanParam(request, Protocol.DISTINCT_PARAM_NAME, false);
+		return new QueryModifiers(limit, offset, distinct);
+	}
+
+	/**
+	 * Rewrites the algebra of the supplied query to include these modifiers, if possible. Must be invoked
+	 * before the query is evaluated.
+	 *
+	 * @param query
+	 *        the query that the modifiers apply to.
+	 * @return <tt>true</tt> if the modifiers have been pushed down into the query.
+	 */
+	public boolean pushDown(Query query) {
+		if (!(query instanceof TupleQuery) || !(query instanceof AbstractParserQuery)) {
+			return false;
+		}
+		ParsedQuery parsedQuery = ((AbstractParserQuery)query).getParsedQuery();
+		TupleExpr root = parsedQuery.getTupleExpr();
+		if (root instanceof Slice) {
+			// the query has its own LIMIT or OFFSET, which must be applied first
+			return false;
+		}
+		alreadyDistinct = root instanceof Distinct;
+		if (limit <= 0 && offset <= 0) {
+			return false;
+		}
+
+		if (distinct && !alreadyDistinct) {
+			root = new Distinct(root);
+		}
+		parsedQuery.setTupleExpr(new Slice(root, offset, limit > 0 ? limit : -1));
+		pushedDown = true;
+		return true;
+	}
+
+	/**
+	 * Applies the modifiers that have not been pushed down into the query to its result.
+	 *
+	 * @param result
+	 *        the result of the query.
+	 * @return the modified result.
+	 */
+	public TupleQueryResult apply(TupleQueryResult result)
+		throws QueryEvaluationException
+	{
+		if (pushedDown) {
+			return result;
+		}
+		if (distinct && !alreadyDistinct) {
+			result = DistinctResults.INSTANCE.distinct(result);
+		}
+		return QueryResults.limitResults(result, limit, offset);
+	}
+
+	/**
+	 * Applies the modifiers to the result of a graph query.
+	 *
+	 * @param result
+	 *        the result of the query.
+	 * @return the modified result.
+	 */
+	public GraphQueryResult apply(GraphQueryResult result)
+		throws QueryEvaluationException
+	{
+		if (distinct) {
+			result = DistinctResults.INSTANCE.distinct(result);
+		}
+		return QueryResults.limitResults(result, limit, offset);
+	}
+}
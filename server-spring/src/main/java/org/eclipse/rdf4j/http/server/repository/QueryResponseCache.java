@@ -0,0 +1,485 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.repository;
+
+import static javax.servlet.http.HttpServletResponse.SC_NOT_MODIFIED;
+import static javax.servlet.http.HttpServletResponse.SC_OK;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.eclipse.rdf4j.http.protocol.Protocol;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.Hashing;
+
+/**
+ * Cache of serialized query responses, so that repeated identical queries on a repository that has not
+ * changed in the meantime are answered without evaluating them again. Responses are keyed by repository,
+ * request parameters (query, query language, bindings, dataset, inferencing, ...) and the requested result
+ * format, and are evicted in least-recently-used order once the cache exceeds its size in bytes.
+ * <p>
+ * Every repository has a generation that is advanced by {@link #invalidate(String)} whenever its data is
+ * modified, which drops all cached responses of that repository. Cached and freshly evaluated responses carry
+ * an <tt>ETag</tt> derived from the request and the generation, so clients that revalidate with
+ * <tt>If-None-Match</tt> receive a <tt>304 Not Modified</tt> without the query being evaluated.
+ * <p>
+ * The cache is disabled by default and is enabled by setting the system property {@value #CACHE_SIZE_PROPERTY}
+ * to the maximum number of bytes to cache.
+ */
+public enum QueryResponseCache {
+
+	INSTANCE;
+
+	/**
+	 * Configurable system property {@code rdf4j.server.query.response.cache.size} for specifying the maximum
+	 * total size in bytes of the cached query responses. A value of 0 disables the cache.
+	 */
+	public static final String CACHE_SIZE_PROPERTY = "rdf4j.server.query.response.cache.size";
+
+	/**
+	 * Default maximum total size of the cached query responses: disabled.
+	 */
+	public static final long DEFAULT_CACHE_SIZE = 0;
+
+	/**
+	 * Responses larger than this fraction of the cache size are not cached.
+	 */
+	private static final int MAX_ENTRY_FRACTION = 16;
+
+	private final Logger logger = LoggerFactory.getLogger(QueryResponseCache.class);
+
+	/**
+	 * Distinguishes the entity tags of this server instance from those of earlier ones, as generations are
+	 * not persisted.
+	 */
+	private final String instance = Long.toHexString(System.currentTimeMillis());
+
+	/**
+	 * The modification time reported for repositories that have not been modified since the server started,
+	 * as earlier modifications are not known.
+	 */
+	private final long started = truncateToSeconds(System.currentTimeMillis());
+
+	private final ConcurrentMap<String, Generation> generations = new ConcurrentHashMap<>();
+
+	private volatile long cacheSize;
+
+	private volatile Cache<CacheKey, CachedResponse> cache;
+
+	private QueryResponseCache() {
+		long size = DEFAULT_CACHE_SIZE;
+		final String configuredValue = System.getProperty(CACHE_SIZE_PROPERTY);
+		if (configuredValue != null) {
+			try {
+				size = Long.parseLong(configuredValue);
+			}
+			catch (NumberFormatException e) {
+				logger.warn("Expected long value for property {}. Cache size will default to {}. ",
+						CACHE_SIZE_PROPERTY, DEFAULT_CACHE_SIZE);
+			}
+		}
+		setCacheSize(size);
+	}
+
+	/**
+	 * Sets the maximum total size of the cached query responses, discarding all cached responses.
+	 *
+	 * @param cacheSize
+	 *        the maximum size in bytes, or 0 to disable the cache.
+	 */
+	public void setCacheSize(long cacheSize) {
+		this.cacheSize = cacheSize;
+		if (cacheSize > 0) {
+			cache = CacheBuilder.newBuilder().maximumWeight(cacheSize).weigher(
+					(CacheKey key, CachedResponse response) -> key.weight()
+							+ response.weight()).recordStats().build();
+		}
+		else {
+			cache = null;
+		}
+	}
+
+	public boolean isEnabled() {
+		return cache != null;
+	}
+
+	/**
+	 * Discards all cached responses for the repository with the supplied identifier and invalidates the entity
+	 * tags that have been handed out for it. Should be invoked whenever the data, namespaces or configuration
+	 * of that repository have been modified.
+	 *
+	 * @param repositoryID
+	 *        the identifier of the repository.
+	 */
+	public void invalidate(String repositoryID) {
+		if (repositoryID == null) {
+			return;
+		}
+		long now = truncateToSeconds(System.currentTimeMillis());
+		generations.compute(repositoryID,
+				(id, current) -> new Generation(current == null ? 1 : current.number + 1, now));
+		Cache<CacheKey, CachedResponse> responses = cache;
+		if (responses != null) {
+			responses.asMap().keySet().removeIf(key -> key.repositoryID.equals(repositoryID));
+		}
+		logger.debug("invalidated query responses for repository {}", repositoryID);
+	}
+
+	/**
+	 * @return the hit/miss statistics of the cache.
+	 */
+	public CacheStats getStats() {
+		Cache<CacheKey, CachedResponse> responses = cache;
+		if (responses == null) {
+			return new CacheStats(0, 0, 0, 0, 0, 0);
+		}
+		return responses.stats();
+	}
+
+	/**
+	 * Creates the cache key for a query request.
+	 *
+	 * @param repositoryID
+	 *        the identifier of the queried repository.
+	 * @param queryStr
+	 *        the query string.
+	 * @param request
+	 *        the query request, from which all other parameters and the <tt>Accept</tt> header are taken.
+	 * @return a key for the request, or <tt>null</tt> if the cache is disabled.
+	 */
+	public CacheKey createKey(String repositoryID, String queryStr, HttpServletRequest request) {
+		if (!isEnabled() || repositoryID == null) {
+			return null;
+		}
+		StringBuilder value = new StringBuilder(queryStr.trim());
+		Map<String, String[]> parameters = new TreeMap<>(request.getParameterMap());
+		parameters.remove(Protocol.QUERY_PARAM_NAME);
+		parameters.forEach((name, values) -> {
+			for (String v : values) {
+				value.append('\u0000').append(name).append('=').append(v);
+			}
+		});
+		value.append('\u0000').append(String.valueOf(request.getHeader("Accept")));
+		return new CacheKey(repositoryID, value.toString(), getGeneration(repositoryID));
+	}
+
+	/**
+	 * Answers a request from the cache if possible: with <tt>304 Not Modified</tt> if the client already has
+	 * the current response, or with the cached response.
+	 *
+	 * @return <tt>true</tt> if the request has been answered, <tt>false</tt> if the query must be evaluated.
+	 */
+	public boolean answer(CacheKey key, HttpServletRequest request, HttpServletResponse response)
+		throws IOException
+	{
+		Cache<CacheKey, CachedResponse> responses = cache;
+		if (key == null || responses == null) {
+			return false;
+		}
+
+		String etag = getETag(key);
+		if (matches(request.getHeader("If-None-Match"), etag)) {
+			logger.debug("query response for repository {} not modified", key.repositoryID);
+			setValidators(response, key);
+			response.setStatus(SC_NOT_MODIFIED);
+			return true;
+		}
+
+		CachedResponse cached = responses.getIfPresent(key);
+		if (cached == null || cached.generation != key.generation) {
+			return false;
+		}
+		logger.debug("serving cached query response for repository {}", key.repositoryID);
+		response.setStatus(SC_OK);
+		setValidators(response, key);
+		response.setContentType(cached.contentType);
+		if (cached.contentDisposition != null) {
+			response.setHeader("Content-Disposition", cached.contentDisposition);
+		}
+		response.setContentLength(cached.content.length);
+		try (OutputStream out = response.getOutputStream()) {
+			out.write(cached.content);
+		}
+		return true;
+	}
+
+	/**
+	 * Wraps a response so that the query result written to it is added to the cache once it is complete.
+	 * Callers must invoke {@link Recorder#store()} after the result has been written successfully.
+	 */
+	Recorder record(CacheKey key, HttpServletResponse response) {
+		return new Recorder(key, response);
+	}
+
+	private long getGeneration(String repositoryID) {
+		Generation generation = generations.get(repositoryID);
+		return generation == null ? 0 : generation.number;
+	}
+
+	private long getLastModified(String repositoryID) {
+		Generation generation = generations.get(repositoryID);
+		return generation == null ? started : generation.timestamp;
+	}
+
+	private static long truncateToSeconds(long millis) {
+		// HTTP dates have a resolution of seconds
+		return millis / 1000 * 1000;
+	}
+
+	private String getETag(CacheKey key) {
+		String hash = Hashing.murmur3_128().hashString(key.value, StandardCharsets.UTF_8).toString();
+		return "W/\"" + instance + "-" + key.generation + "-" + hash + "\"";
+	}
+
+	private void setValidators(HttpServletResponse response, CacheKey key) {
+		response.setHeader("ETag", getETag(key));
+		response.setDateHeader("Last-Modified", getLastModified(key.repositoryID));
+		// the response depends on the negotiated format, whether it is served from the cache or not
+		response.setHeader("Vary", "Accept");
+	}
+
+	private static boolean matches(String ifNoneMatch, String etag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		for (String tag : ifNoneMatch.split(",")) {
+			String candidate = tag.trim();
+			if (candidate.equals("*") || candidate.equals(etag) || ("W/" + candidate).equals(etag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Identifies a query response. The generation of the repository at the time the request was received is
+	 * recorded, but is not part of the identity.
+	 */
+	public static final class CacheKey {
+
+		private final String repositoryID;
+
+		private final String value;
+
+		private final long generation;
+
+		CacheKey(String repositoryID, String value, long generation) {
+			this.repositoryID = repositoryID;
+			this.value = value;
+			this.generation = generation;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof CacheKey)) {
+				return false;
+			}
+			CacheKey other = (CacheKey)o;
+			return repositoryID.equals(other.repositoryID) && value.equals(other.value);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * repositoryID.hashCode() + value.hashCode();
+		}
+
+		/**
+		 * @return the approximate number of bytes this key occupies, which is dominated by the query text.
+		 */
+		int weight() {
+			return 2 * (repositoryID.length() + value.length());
+		}
+	}
+
+	private static class Generation {
+
+		private final long number;
+
+		/**
+		 * Time of the modification that started this generation, truncated to seconds as in HTTP dates.
+		 */
+		private final long timestamp;
+
+		Generation(long number, long timestamp) {
+			this.number = number;
+			this.timestamp = timestamp;
+		}
+	}
+
+	private static class CachedResponse {
+
+		private final long generation;
+
+		private final String contentType;
+
+		private final String contentDisposition;
+
+		private final byte[] content;
+
+		CachedResponse(long generation, String contentType, String contentDisposition, byte[] content) {
+			this.generation = generation;
+			this.contentType = contentType;
+			this.contentDisposition = contentDisposition;
+			this.content = content;
+		}
+
+		int weight() {
+			int headers = contentType == null ? 0 : contentType.length();
+			if (contentDisposition != null) {
+				headers += contentDisposition.length();
+			}
+			return content.length + 2 * headers;
+		}
+	}
+
+	/**
+	 * Response wrapper that keeps a copy of the response body, up to the maximum size of a cache entry.
+	 */
+	class Recorder extends HttpServletResponseWrapper {
+
+		private final CacheKey key;
+
+		private final ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+		private final long maxSize;
+
+		private int status = SC_OK;
+
+		private boolean overflow;
+
+		private ServletOutputStream out;
+
+		Recorder(CacheKey key, HttpServletResponse response) {
+			super(response);
+			this.key = key;
+			// the key is stored along with the response, and long query texts can outweigh short results
+			this.maxSize = cacheSize / MAX_ENTRY_FRACTION - key.weight();
+			setValidators(response, key);
+		}
+
+		/**
+		 * Adds the recorded response to the cache, unless it was not successful, exceeded the maximum entry
+		 * size or the repository has been modified since the request was received.
+		 */
+		void store() {
+			Cache<CacheKey, CachedResponse> responses = cache;
+			if (responses == null || status != SC_OK || overflow || copy.size() > maxSize
+					|| key.generation != getGeneration(key.repositoryID))
+			{
+				return;
+			}
+			responses.put(key, new CachedResponse(key.generation, getContentType(),
+					getHeader("Content-Disposition"), copy.toByteArray()));
+		}
+
+		@Override
+		public void setStatus(int sc) {
+			status = sc;
+			super.setStatus(sc);
+		}
+
+		@Override
+		public void sendError(int sc)
+			throws IOException
+		{
+			status = sc;
+			super.sendError(sc);
+		}
+
+		@Override
+		public void sendError(int sc, String msg)
+			throws IOException
+		{
+			status = sc;
+			super.sendError(sc, msg);
+		}
+
+		@Override
+		public PrintWriter getWriter()
+			throws IOException
+		{
+			// query results are only written as bytes
+			overflow = true;
+			return super.getWriter();
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream()
+			throws IOException
+		{
+			if (out == null) {
+				final ServletOutputStream delegate = super.getOutputStream();
+				out = new ServletOutputStream() {
+
+					@Override
+					public void write(int b)
+						throws IOException
+					{
+						delegate.write(b);
+						if (record(1)) {
+							copy.write(b);
+						}
+					}
+
+					@Override
+					public void write(byte[] b, int off, int len)
+						throws IOException
+					{
+						delegate.write(b, off, len);
+						if (record(len)) {
+							copy.write(b, off, len);
+						}
+					}
+
+					@Override
+					public void flush()
+						throws IOException
+					{
+						delegate.flush();
+					}
+
+					@Override
+					public void close()
+						throws IOException
+					{
+						delegate.close();
+					}
+				};
+			}
+			return out;
+		}
+
+		private boolean record(int len) {
+			if (!overflow && (long)copy.size() + len > maxSize) {
+				overflow = true;
+				copy.reset();
+			}
+			return !overflow;
+		}
+	}
+}
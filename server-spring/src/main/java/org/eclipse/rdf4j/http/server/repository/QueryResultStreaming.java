@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.repository;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.rdf4j.common.webapp.util.HeaderElement;
+import org.eclipse.rdf4j.common.webapp.util.HttpServerUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Configures how query results are streamed to clients. Results are flushed to the client after a number of
+ * results, a number of bytes, or an amount of time, whichever comes first, so that clients of long running
+ * queries receive results as they are produced instead of when the container's buffer fills up.
+ * Optionally, results are compressed with gzip or deflate, as negotiated from the <tt>Accept-Encoding</tt>
+ * header of the request. Compression is streaming: each flush emits the results compressed so far.
+ * <p>
+ * Only the data that the result writers have passed on can be flushed; most writers buffer a few kilobytes
+ * of output internally.
+ * <p>
+ * Flushing by time is enabled by default. A flush is passed on to the filters of the web application; the
+ * <tt>CompressingFilter</tt>, which is mapped by default, decides itself when the data it compresses is
+ * written to the client. The flushes are therefore only guaranteed to stream the responses that the filter
+ * does not compress. Enable compression by the server and disable the filter to stream compressed results.
+ */
+public enum QueryResultStreaming {
+
+	INSTANCE;
+
+	/**
+	 * Configurable system property {@code rdf4j.server.query.flush.rows} for specifying the number of results
+	 * after which the response is flushed. A value of 0 or less disables flushing by results.
+	 */
+	public static final String FLUSH_ROWS_PROPERTY = "rdf4j.server.query.flush.rows";
+
+	/**
+	 * Configurable system property {@code rdf4j.server.query.flush.bytes} for specifying the number of bytes
+	 * after which the response is flushed. A value of 0 or less disables flushing by size.
+	 */
+	public static final String FLUSH_BYTES_PROPERTY = "rdf4j.server.query.flush.bytes";
+
+	/**
+	 * Configurable system property {@code rdf4j.server.query.flush.interval} for specifying the time (in
+	 * milliseconds) after which the response is flushed. A value of 0 or less disables flushing by time.
+	 */
+	public static final String FLUSH_INTERVAL_PROPERTY = "rdf4j.server.query.flush.interval";
+
+	/**
+	 * Configurable system property {@code rdf4j.server.query.compression} for enabling compression of query
+	 * results. The <tt>CompressingFilter</tt> of the web application should be disabled when this is enabled.
+	 */
+	public static final String COMPRESSION_PROPERTY = "rdf4j.server.query.compression";
+
+	public static final long DEFAULT_FLUSH_INTERVAL = 1000;
+
+	private final Logger logger = LoggerFactory.getLogger(QueryResultStreaming.class);
+
+	private volatile long flushRows;
+
+	private volatile long flushBytes;
+
+	private volatile long flushInterval;
+
+	private volatile boolean compression = Boolean.getBoolean(COMPRESSION_PROPERTY);
+
+	private QueryResultStreaming() {
+		flushRows = getLongProperty(FLUSH_ROWS_PROPERTY, 0);
+		flushBytes = getLongProperty(FLUSH_BYTES_PROPERTY, 0);
+		flushInterval = getLongProperty(FLUSH_INTERVAL_PROPERTY, DEFAULT_FLUSH_INTERVAL);
+	}
+
+	private long getLongProperty(String name, long defaultValue) {
+		final String configuredValue = System.getProperty(name);
+		if (configuredValue != null) {
+			try {
+				return Long.parseLong(configuredValue);
+			}
+			catch (NumberFormatException e) {
+				logger.warn("Expected integer value for property {}. Value will default to {}. ", name,
+						defaultValue);
+			}
+		}
+		return defaultValue;
+	}
+
+	public void setFlushRows(long flushRows) {
+		this.flushRows = flushRows;
+	}
+
+	public void setFlushBytes(long flushBytes) {
+		this.flushBytes = flushBytes;
+	}
+
+	public void setFlushInterval(long flushInterval) {
+		this.flushInterval = flushInterval;
+	}
+
+	public void setCompression(boolean compression) {
+		this.compression = compression;
+	}
+
+	/**
+	 * Wraps a response according to the configured policy.
+	 *
+	 * @param request
+	 *        the query request.
+	 * @param response
+	 *        the response to write the query result to.
+	 * @return a wrapped response, or <tt>null</tt> if neither flushing nor compression is enabled.
+	 */
+	StreamingResponse wrap(HttpServletRequest request, HttpServletResponse response) {
+		String encoding = compression ? negotiateEncoding(request) : null;
+		long rows = flushRows;
+		long bytes = flushBytes;
+		long interval = flushInterval;
+		if (encoding == null && rows <= 0 && bytes <= 0 && interval <= 0) {
+			return null;
+		}
+		if (compression) {
+			response.addHeader("Vary", "Accept-Encoding");
+		}
+		return new StreamingResponse(response, encoding, rows, bytes, interval);
+	}
+
+	/**
+	 * Selects a content coding from the <tt>Accept-Encoding</tt> header of a request, preferring gzip.
+	 *
+	 * @return <tt>gzip</tt>, <tt>deflate</tt> or <tt>null</tt> if the response should not be compressed.
+	 */
+	static String negotiateEncoding(HttpServletRequest request) {
+		Double gzip = null;
+		Double deflate = null;
+		double any = 0.0;
+		for (HeaderElement element : HttpServerUtil.getHeaderElements(request, "Accept-Encoding")) {
+			double quality = getQuality(element);
+			String coding = element.getValue().toLowerCase();
+			if ("gzip".equals(coding) || "x-gzip".equals(coding)) {
+				gzip = quality;
+			}
+			else if ("deflate".equals(coding)) {
+				deflate = quality;
+			}
+			else if ("*".equals(coding)) {
+				any = quality;
+			}
+		}
+		double gzipQuality = gzip != null ? gzip : any;
+		double deflateQuality = deflate != null ? deflate : any;
+		if (gzipQuality > 0.0 && gzipQuality >= deflateQuality) {
+			return "gzip";
+		}
+		else if (deflateQuality > 0.0) {
+			return "deflate";
+		}
+		return null;
+	}
+
+	private static double getQuality(HeaderElement element) {
+		String quality = element.getParameterValue("q");
+		if (quality == null) {
+			return 1.0;
+		}
+		try {
+			return Double.parseDouble(quality);
+		}
+		catch (NumberFormatException e) {
+			return 0.0;
+		}
+	}
+}
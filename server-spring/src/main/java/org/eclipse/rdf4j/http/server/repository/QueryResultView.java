@@ -11,12 +11,17 @@ import static org.eclipse.rdf4j.http.protocol.Protocol.QUERY_PARAM_NAME;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.util.HashMap;
 import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.eclipse.rdf4j.common.lang.FileFormat;
+import org.eclipse.rdf4j.http.server.metrics.ByteCountingResponse;
+import org.eclipse.rdf4j.http.server.metrics.QueryMetrics;
+import org.eclipse.rdf4j.http.server.queries.RunningQuery;
+import org.eclipse.rdf4j.query.QueryResult;
 import org.eclipse.rdf4j.repository.RepositoryConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -56,14 +61,85 @@ public abstract class QueryResultView implements View {
 
 	public static final String HEADERS_ONLY = "headersOnly";
 
+	/**
+	 * Key by which the {@link QueryResponseCache.CacheKey} of a cacheable query response is stored in the
+	 * model. If this is present, the rendered response is added to the {@link QueryResponseCache}.
+	 */
+	public static final String RESPONSE_CACHE_KEY = "responseCacheKey";
+
+	/**
+	 * Key by which the {@link QueryMetrics} of the query are stored in the model. If this is present, the
+	 * number of results and the time and bytes needed to render them are recorded.
+	 */
+	public static final String METRICS_KEY = "queryMetrics";
+
+	/**
+	 * Key by which the {@link RunningQuery} registration of the query is stored in the model. If this is
+	 * present, the query is removed from the registry once its result has been rendered.
+	 */
+	public static final String RUNNING_QUERY_KEY = "runningQuery";
+
+	/**
+	 * Key by which the {@link StreamingResponse} is passed to the views, which report the results they have
+	 * written to it.
+	 */
+	static final String STREAMING_RESPONSE_KEY = "streamingResponse";
+
+	/**
+	 * Renders the query result in the model. If {@link AsyncQueryResultRenderer asynchronous rendering} is
+	 * enabled, tuple and graph query results may be streamed to the client after this method has returned.
+	 */
 	@SuppressWarnings("rawtypes")
 	public final void render(Map model, HttpServletRequest request, HttpServletResponse response)
 		throws IOException
 	{
+		boolean streaming = model.get(QUERY_RESULT_KEY) instanceof QueryResult
+				&& !Boolean.TRUE.equals(model.get(HEADERS_ONLY));
+		if (streaming && AsyncQueryResultRenderer.INSTANCE.render(request, response,
+				(asyncRequest, asyncResponse) -> renderAndRelease(model, asyncRequest, asyncResponse)))
+		{
+			return;
+		}
+		renderAndRelease(model, request, response);
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private void renderAndRelease(Map model, HttpServletRequest request, HttpServletResponse response)
+		throws IOException
+	{
+		QueryMetrics metrics = (QueryMetrics)model.get(METRICS_KEY);
+		long start = System.nanoTime();
+		ByteCountingResponse counter = null;
+		if (metrics != null) {
+			response = counter = new ByteCountingResponse(response);
+		}
+		if (!Boolean.TRUE.equals(model.get(HEADERS_ONLY))) {
+			StreamingResponse streaming = QueryResultStreaming.INSTANCE.wrap(request, response);
+			if (streaming != null) {
+				response = streaming;
+				model = new HashMap(model);
+				model.put(STREAMING_RESPONSE_KEY, streaming);
+			}
+		}
 		try {
-			renderInternal(model, request, response);
+			QueryResponseCache.CacheKey cacheKey = (QueryResponseCache.CacheKey)model.get(RESPONSE_CACHE_KEY);
+			if (cacheKey != null && !Boolean.TRUE.equals(model.get(HEADERS_ONLY))) {
+				QueryResponseCache.Recorder recorder = QueryResponseCache.INSTANCE.record(cacheKey, response);
+				renderInternal(model, request, recorder);
+				recorder.store();
+			}
+			else {
+				renderInternal(model, request, response);
+			}
 		}
 		finally {
+			if (metrics != null) {
+				metrics.serialized(start, counter.getByteCount());
+			}
+			RunningQuery runningQuery = (RunningQuery)model.get(RUNNING_QUERY_KEY);
+			if (runningQuery != null) {
+				runningQuery.finish();
+			}
 			RepositoryConnection conn = (RepositoryConnection)model.get(CONNECTION_KEY);
 			if (conn != null) {
 				conn.close();
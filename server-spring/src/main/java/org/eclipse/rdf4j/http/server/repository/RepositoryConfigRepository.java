@@ -10,9 +10,16 @@ package org.eclipse.rdf4j.http.server.repository;
 import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.rdf4j.common.iteration.CloseableIteration;
 import org.eclipse.rdf4j.common.iteration.CloseableIteratorIteration;
@@ -48,6 +55,11 @@ import org.eclipse.rdf4j.rio.RDFHandlerException;
 
 /**
  * {@link Repository} implementation that saves {@link RepositoryConfig} RDF to a {@link RepositoryManager}.
+ * <p>
+ * The configuration RDF is kept in a versioned snapshot per {@link RepositoryManager}, which is shared by
+ * all connections and only exported from the manager once. Each connection reads from the snapshot that
+ * was current when it was opened (or when it last committed). A commit replaces the snapshot with a new
+ * version, in which only the configurations of the affected repositories have been exported again.
  *
  * @author James Leigh
  */
@@ -58,10 +70,30 @@ public class RepositoryConfigRepository extends AbstractRepository {
 	 */
 	public static final String ID = "SYSTEM";
 
+	/**
+	 * Current configuration snapshot of each repository manager.
+	 */
+	private static final Map<RepositoryManager, AtomicReference<ConfigSnapshot>> snapshots = Collections.synchronizedMap(
+			new WeakHashMap<>());
+
 	private final RepositoryManager manager;
 
+	private final AdmissionControl admissionControl;
+
 	public RepositoryConfigRepository(RepositoryManager manager) {
+		this(manager, null);
+	}
+
+	/**
+	 * @param manager
+	 *        the manager that holds the repository configuration.
+	 * @param admissionControl
+	 *        the {@link AdmissionControl} whose limits of a repository are removed when it is deleted, or
+	 *        <tt>null</tt>.
+	 */
+	public RepositoryConfigRepository(RepositoryManager manager, AdmissionControl admissionControl) {
 		this.manager = manager;
+		this.admissionControl = admissionControl;
 	}
 
 	@Override
@@ -98,15 +130,42 @@ public class RepositoryConfigRepository extends AbstractRepository {
 	{
 	}
 
+	/**
+	 * Updates the configuration snapshot of the supplied manager after a repository has been added, changed
+	 * or removed without going through a {@link RepositoryConfigRepository}.
+	 *
+	 * @param manager
+	 *        the manager that holds the repository configuration.
+	 * @param repositoryID
+	 *        the ID of the repository whose configuration has changed.
+	 */
+	public static void invalidate(RepositoryManager manager, String repositoryID) {
+		AtomicReference<ConfigSnapshot> snapshot = snapshots.get(manager);
+		if (snapshot != null) {
+			RepositoryConfigRepository repository = new RepositoryConfigRepository(manager);
+			repository.update(snapshot, Collections.singleton(repositoryID));
+		}
+	}
+
+	/**
+	 * @return the version of the current configuration snapshot, which changes whenever a repository
+	 *         configuration is added, changed or removed through this class.
+	 */
+	public long getVersion() {
+		return getSnapshot().get().getVersion();
+	}
+
 	@Override
 	public RepositoryConnection getConnection()
 		throws RepositoryException
 	{
+		final AtomicReference<ConfigSnapshot> snapshot = getSnapshot();
+
 		return new AbstractRepositoryConnection(this) {
 
 			private boolean active = false;
 
-			private Model committed = loadModel();
+			private ConfigSnapshot committed = snapshot.get();
 
 			private Model added = new TreeModel();
 
@@ -116,12 +175,8 @@ public class RepositoryConfigRepository extends AbstractRepository {
 			public RepositoryResult<Resource> getContextIDs()
 				throws RepositoryException
 			{
-				Set<Resource> contextIDs = new LinkedHashSet<>();
-				manager.getRepositoryIDs().forEach(id -> {
-					contextIDs.add(getContext(id));
-				});
 				CloseableIteration<Resource, RepositoryException> iter;
-				iter = new CloseableIteratorIteration<>(contextIDs.iterator());
+				iter = new CloseableIteratorIteration<>(committed.getContextIDs().iterator());
 				return new RepositoryResult<>(iter);
 			}
 
@@ -157,6 +212,9 @@ public class RepositoryConfigRepository extends AbstractRepository {
 			public long size(Resource... contexts)
 				throws RepositoryException
 			{
+				if (contexts.length == 0) {
+					return committed.getModel().size();
+				}
 				return committed.filter(null, null, null, contexts).size();
 			}
 
@@ -180,15 +238,16 @@ public class RepositoryConfigRepository extends AbstractRepository {
 				throws RepositoryException
 			{
 				Set<String> ids = new LinkedHashSet<>();
-				ids.addAll(manager.getRepositoryIDs());
+				ids.addAll(committed.getRepositoryIDs());
 				ids.addAll(RepositoryConfigUtil.getRepositoryIDs(added));
+				Set<String> changed = new LinkedHashSet<>();
 				ids.forEach(id -> {
 					Resource ctx = getContext(id);
 					Model less = removed.filter(null, null, null, ctx);
 					Model more = added.filter(null, null, null, ctx);
 					Model alt = RepositoryConfigUtil.getRepositoryConfigModel(added, id);
 					if (!less.isEmpty() || !more.isEmpty() || alt != null) {
-						Model model = new TreeModel(committed.filter(null, null, null, getContext(id)));
+						Model model = new TreeModel(committed.getConfig(ctx));
 						model.removeAll(less);
 						removed.getNamespaces().forEach(ns -> {
 							model.removeNamespace(ns.getPrefix());
@@ -201,14 +260,18 @@ public class RepositoryConfigRepository extends AbstractRepository {
 							model.addAll(alt);
 						}
 						if (model.isEmpty()) {
-							manager.removeRepository(id);
+							RepositoryInterceptor.removeRepository(manager, id, admissionControl);
 						}
 						else {
+							// idle connections are closed before the repository is shut down
+							RepositoryConnectionPool.INSTANCE.remove(id);
 							manager.addRepositoryConfig(RepositoryConfigUtil.getRepositoryConfig(model, id));
+							RepositoryInterceptor.onRepositoryReconfigured(id);
 						}
+						changed.add(id);
 					}
 				});
-				committed = loadModel();
+				committed = update(snapshot, changed);
 				rollback();
 			}
 
@@ -228,7 +291,7 @@ public class RepositoryConfigRepository extends AbstractRepository {
 				throws RepositoryException
 			{
 				CloseableIteration<Namespace, RepositoryException> iter;
-				iter = new CloseableIteratorIteration<>(committed.getNamespaces().iterator());
+				iter = new CloseableIteratorIteration<>(committed.getModel().getNamespaces().iterator());
 				return new RepositoryResult<>(iter);
 			}
 
@@ -236,7 +299,7 @@ public class RepositoryConfigRepository extends AbstractRepository {
 			public String getNamespace(String prefix)
 				throws RepositoryException
 			{
-				Optional<Namespace> ns = committed.getNamespace(prefix);
+				Optional<Namespace> ns = committed.getModel().getNamespace(prefix);
 				if (ns.isPresent()) {
 					return ns.get().getName();
 				}
@@ -258,7 +321,7 @@ public class RepositoryConfigRepository extends AbstractRepository {
 				throws RepositoryException
 			{
 				added.removeNamespace(prefix);
-				Optional<Namespace> ns = committed.getNamespace(prefix);
+				Optional<Namespace> ns = committed.getModel().getNamespace(prefix);
 				if (ns.isPresent()) {
 					removed.setNamespace(ns.get());
 				}
@@ -269,7 +332,7 @@ public class RepositoryConfigRepository extends AbstractRepository {
 				throws RepositoryException
 			{
 				added.getNamespaces().clear();
-				committed.getNamespaces().forEach(ns -> {
+				committed.getModel().getNamespaces().forEach(ns -> {
 					removed.setNamespace(ns);
 				});
 			}
@@ -329,36 +392,6 @@ public class RepositoryConfigRepository extends AbstractRepository {
 				removed.addAll(model);
 			}
 
-			private Model loadModel() {
-				Model model = new TreeModel();
-				manager.getRepositoryIDs().forEach(id -> {
-					Resource ctx = getContext(id);
-					RepositoryConfig config = manager.getRepositoryConfig(id);
-					Model cfg = new TreeModel();
-					config.export(cfg, ctx);
-					cfg.getNamespaces().forEach(ns -> {
-						model.setNamespace(ns);
-					});
-					cfg.forEach(st -> {
-						model.add(st.getSubject(), st.getPredicate(), st.getObject(), ctx);
-					});
-				});
-				return model;
-			}
-
-			private Resource getContext(String repositoryID) {
-				String location;
-				try {
-					location = manager.getLocation().toURI().toString();
-				}
-				catch (MalformedURLException | URISyntaxException e) {
-					assert false;
-					location = "urn:" + repositoryID;
-				}
-				String url = Protocol.getRepositoryLocation(location, repositoryID);
-				return getValueFactory().createIRI(url + "#" + repositoryID);
-			}
-
 			private UnsupportedOperationException unsupported() {
 				return new UnsupportedOperationException(
 						"Query operations are not supported on the SYSTEM repository");
@@ -366,4 +399,165 @@ public class RepositoryConfigRepository extends AbstractRepository {
 		};
 	}
 
+	private AtomicReference<ConfigSnapshot> getSnapshot() {
+		return snapshots.computeIfAbsent(manager, m -> {
+			Map<String, Model> configs = new LinkedHashMap<>();
+			m.getRepositoryIDs().forEach(id -> {
+				configs.put(id, exportConfig(id));
+			});
+			return new AtomicReference<>(new ConfigSnapshot(0, configs));
+		});
+	}
+
+	/**
+	 * Replaces the current snapshot with one in which the configurations of the supplied repositories have
+	 * been exported again from the manager. Concurrent updates of the same snapshot are serialized, so that
+	 * an export that was overtaken by a later change can not replace the newer configuration.
+	 *
+	 * @return the new snapshot.
+	 */
+	private ConfigSnapshot update(AtomicReference<ConfigSnapshot> snapshot, Set<String> repositoryIDs) {
+		if (repositoryIDs.isEmpty()) {
+			return snapshot.get();
+		}
+		synchronized (snapshot) {
+			Map<String, Model> changes = new HashMap<>();
+			repositoryIDs.forEach(id -> {
+				changes.put(id, manager.hasRepositoryConfig(id) ? exportConfig(id) : null);
+			});
+			ConfigSnapshot updated = snapshot.get().update(changes);
+			snapshot.set(updated);
+			return updated;
+		}
+	}
+
+	private Model exportConfig(String repositoryID) {
+		Resource ctx = getContext(repositoryID);
+		RepositoryConfig config = manager.getRepositoryConfig(repositoryID);
+		Model cfg = new TreeModel();
+		config.export(cfg, ctx);
+		Model model = new TreeModel();
+		cfg.getNamespaces().forEach(ns -> {
+			model.setNamespace(ns);
+		});
+		cfg.forEach(st -> {
+			model.add(st.getSubject(), st.getPredicate(), st.getObject(), ctx);
+		});
+		return model.unmodifiable();
+	}
+
+	private Resource getContext(String repositoryID) {
+		String location;
+		try {
+			location = manager.getLocation().toURI().toString();
+		}
+		catch (MalformedURLException | URISyntaxException e) {
+			assert false;
+			location = "urn:" + repositoryID;
+		}
+		String url = Protocol.getRepositoryLocation(location, repositoryID);
+		return getValueFactory().createIRI(url + "#" + repositoryID);
+	}
+
+	/**
+	 * Immutable view of the configuration of all repositories of a manager. The configuration of each
+	 * repository is stored in its own context.
+	 */
+	private static final class ConfigSnapshot {
+
+		private final long version;
+
+		/**
+		 * The configuration of each repository, by repository ID.
+		 */
+		private final Map<String, Model> configs;
+
+		/**
+		 * The configuration of each repository, by context.
+		 */
+		private final Map<Resource, Model> contexts = new LinkedHashMap<>();
+
+		/**
+		 * The union of all configurations, created on first use.
+		 */
+		private volatile Model model;
+
+		ConfigSnapshot(long version, Map<String, Model> configs) {
+			this.version = version;
+			this.configs = configs;
+			configs.values().forEach(config -> {
+				config.contexts().forEach(ctx -> {
+					contexts.put(ctx, config);
+				});
+			});
+		}
+
+		long getVersion() {
+			return version;
+		}
+
+		Set<String> getRepositoryIDs() {
+			return Collections.unmodifiableSet(configs.keySet());
+		}
+
+		Set<Resource> getContextIDs() {
+			return Collections.unmodifiableSet(contexts.keySet());
+		}
+
+		/**
+		 * @return the configuration stored in the supplied context.
+		 */
+		Model getConfig(Resource context) {
+			Model config = contexts.get(context);
+			return config == null ? new TreeModel() : config;
+		}
+
+		Model getModel() {
+			Model result = model;
+			if (result == null) {
+				Model union = new TreeModel();
+				configs.values().forEach(config -> {
+					config.getNamespaces().forEach(ns -> {
+						union.setNamespace(ns);
+					});
+					union.addAll(config);
+				});
+				model = result = union.unmodifiable();
+			}
+			return result;
+		}
+
+		Model filter(Resource subj, IRI pred, Value obj, Resource... contexts) {
+			if (contexts.length == 0 || Arrays.asList(contexts).contains(null)) {
+				return getModel().filter(subj, pred, obj, contexts);
+			}
+			if (contexts.length == 1) {
+				return getConfig(contexts[0]).filter(subj, pred, obj);
+			}
+			Model result = new TreeModel();
+			for (Resource ctx : contexts) {
+				result.addAll(getConfig(ctx).filter(subj, pred, obj));
+			}
+			return result;
+		}
+
+		/**
+		 * @param changes
+		 *        the new configuration of each changed repository, or <tt>null</tt> for a repository that
+		 *        has been removed.
+		 * @return a new version of this snapshot, with the supplied changes applied.
+		 */
+		ConfigSnapshot update(Map<String, Model> changes) {
+			Map<String, Model> updated = new LinkedHashMap<>(configs);
+			changes.forEach((id, config) -> {
+				if (config == null) {
+					updated.remove(id);
+				}
+				else {
+					updated.put(id, config);
+				}
+			});
+			return new ConfigSnapshot(version + 1, updated);
+		}
+	}
 }
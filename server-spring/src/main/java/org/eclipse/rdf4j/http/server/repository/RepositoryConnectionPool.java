@@ -0,0 +1,598 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.repository;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import org.eclipse.rdf4j.IsolationLevel;
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryException;
+import org.eclipse.rdf4j.repository.base.RepositoryConnectionWrapper;
+import org.eclipse.rdf4j.repository.http.HTTPRepository;
+import org.eclipse.rdf4j.repository.sparql.SPARQLRepository;
+import org.eclipse.rdf4j.rio.ParserConfig;
+import org.eclipse.rdf4j.rio.helpers.BasicParserSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Pool of configured connections to the repositories of the server, so that requests do not have to set up
+ * a new connection each time. Only connections to remote (HTTP and SPARQL) repositories are pooled, as
+ * their set up is expensive; idle connections to local stores would only delay their shut down.
+ * <p>
+ * A connection is returned to the pool when it is closed, unless it is no longer open or still has an active
+ * transaction. Its parser configuration and isolation level are reset before it is reused. Connections that
+ * have been idle longer than {@value #IDLE_TIMEOUT_PROPERTY} milliseconds are closed. A connection that has
+ * been idle longer than {@value #VALIDATION_INTERVAL_PROPERTY} milliseconds is validated by evaluating an
+ * empty <tt>ASK</tt> query before it is reused, so that connections broken on the remote side are discarded.
+ * <p>
+ * If {@value #LEAK_THRESHOLD_PROPERTY} is set, every connection handed out by
+ * {@link RepositoryInterceptor#getRepositoryConnection} is tracked, pooled or not, and a warning with the
+ * stack trace of the code that obtained it is logged for connections that have not been closed after that
+ * many milliseconds. Tracked connections are only referenced weakly, so a connection that is leaked and
+ * no longer referenced by anyone is not kept by the pool: its underlying connection is closed and it is
+ * counted as leaked.
+ * <p>
+ * Pooling is disabled by default and is enabled by setting the system property {@value #MAX_IDLE_PROPERTY} to
+ * the maximum number of idle connections per repository.
+ */
+public enum RepositoryConnectionPool {
+
+	INSTANCE;
+
+	/**
+	 * Configurable system property {@code rdf4j.server.connection.pool.size} for specifying the maximum
+	 * number of idle connections kept per repository. A value of 0 disables pooling.
+	 */
+	public static final String MAX_IDLE_PROPERTY = "rdf4j.server.connection.pool.size";
+
+	/**
+	 * Configurable system property {@code rdf4j.server.connection.pool.idle} for specifying the number of
+	 * milliseconds after which an idle connection is closed.
+	 */
+	public static final String IDLE_TIMEOUT_PROPERTY = "rdf4j.server.connection.pool.idle";
+
+	/**
+	 * Configurable system property {@code rdf4j.server.connection.pool.leak} for specifying the number of
+	 * milliseconds after which a connection that has not been closed is reported as leaked. A value of 0
+	 * disables leak detection.
+	 */
+	public static final String LEAK_THRESHOLD_PROPERTY = "rdf4j.server.connection.pool.leak";
+
+	/**
+	 * Configurable system property {@code rdf4j.server.connection.pool.validate} for specifying the number of
+	 * milliseconds a connection may be idle before it is validated on reuse. A negative value disables
+	 * validation.
+	 */
+	public static final String VALIDATION_INTERVAL_PROPERTY = "rdf4j.server.connection.pool.validate";
+
+	/**
+	 * Default maximum number of idle connections per repository: pooling disabled.
+	 */
+	public static final int DEFAULT_MAX_IDLE = 0;
+
+	/**
+	 * Default time after which an idle connection is closed: 5 minutes.
+	 */
+	public static final long DEFAULT_IDLE_TIMEOUT = 300000;
+
+	/**
+	 * Default time after which an unclosed connection is reported: leak detection disabled.
+	 */
+	public static final long DEFAULT_LEAK_THRESHOLD = 0;
+
+	/**
+	 * Default time after which an idle connection is validated on reuse: 5 seconds.
+	 */
+	public static final long DEFAULT_VALIDATION_INTERVAL = 5000;
+
+	private static final String VALIDATION_QUERY = "ASK {}";
+
+	/**
+	 * Interval at which idle connections are closed and leaked connections are reported.
+	 */
+	private static final long MAINTENANCE_INTERVAL = 5000;
+
+	private final Logger logger = LoggerFactory.getLogger(RepositoryConnectionPool.class);
+
+	private final ConcurrentMap<String, Pool> pools = new ConcurrentHashMap<>();
+
+	private final Set<Borrowed> borrowed = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Receives the tracked connections that have been garbage collected without having been closed.
+	 */
+	private final ReferenceQueue<PooledConnection> abandoned = new ReferenceQueue<>();
+
+	private final AtomicLong createdCount = new AtomicLong();
+
+	private final AtomicLong reusedCount = new AtomicLong();
+
+	private final AtomicLong leakedCount = new AtomicLong();
+
+	private volatile int maxIdle;
+
+	private volatile long idleTimeout;
+
+	private volatile long leakThreshold;
+
+	private volatile long validationInterval;
+
+	private volatile Predicate<Repository> pooled = repository -> repository instanceof HTTPRepository
+			|| repository instanceof SPARQLRepository;
+
+	private ScheduledExecutorService maintenance;
+
+	private RepositoryConnectionPool() {
+		maxIdle = (int)getConfiguredValue(MAX_IDLE_PROPERTY, DEFAULT_MAX_IDLE);
+		idleTimeout = getConfiguredValue(IDLE_TIMEOUT_PROPERTY, DEFAULT_IDLE_TIMEOUT);
+		leakThreshold = getConfiguredValue(LEAK_THRESHOLD_PROPERTY, DEFAULT_LEAK_THRESHOLD);
+		validationInterval = getConfiguredValue(VALIDATION_INTERVAL_PROPERTY, DEFAULT_VALIDATION_INTERVAL);
+	}
+
+	private long getConfiguredValue(String property, long defaultValue) {
+		final String configuredValue = System.getProperty(property);
+		if (configuredValue != null) {
+			try {
+				return Long.parseLong(configuredValue);
+			}
+			catch (NumberFormatException e) {
+				logger.warn("Expected long value for property {}. Value will default to {}. ", property,
+						defaultValue);
+			}
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * Sets the maximum number of idle connections kept per repository, 0 to disable pooling.
+	 */
+	public void setMaxIdle(int maxIdle) {
+		this.maxIdle = maxIdle;
+		if (maxIdle <= 0) {
+			for (String repositoryID : pools.keySet()) {
+				remove(repositoryID);
+			}
+		}
+	}
+
+	/**
+	 * Sets the number of milliseconds after which an idle connection is closed.
+	 */
+	public void setIdleTimeout(long idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * Sets the number of milliseconds after which an unclosed connection is reported, 0 to disable leak
+	 * detection.
+	 */
+	public void setLeakThreshold(long leakThreshold) {
+		this.leakThreshold = leakThreshold;
+	}
+
+	/**
+	 * Sets the number of milliseconds a connection may be idle before it is validated on reuse, a negative
+	 * value to disable validation.
+	 */
+	public void setValidationInterval(long validationInterval) {
+		this.validationInterval = validationInterval;
+	}
+
+	/**
+	 * Sets which repositories have their connections pooled.
+	 */
+	void setPooled(Predicate<Repository> pooled) {
+		this.pooled = pooled;
+	}
+
+	/**
+	 * Obtains a configured connection to a repository, from the pool if possible. The caller is responsible
+	 * for closing the connection, which returns it to the pool.
+	 *
+	 * @param repositoryID
+	 *        the identifier of the repository.
+	 * @param repository
+	 *        the repository.
+	 * @return an open connection.
+	 */
+	public RepositoryConnection getConnection(String repositoryID, Repository repository) {
+		Pool pool = null;
+		if (maxIdle > 0 && repositoryID != null && pooled.test(repository)) {
+			pool = pools.compute(repositoryID, (id, current) -> {
+				if (current != null && current.repository == repository) {
+					return current;
+				}
+				if (current != null) {
+					// the repository has been reconfigured
+					current.close();
+				}
+				return new Pool(repository);
+			});
+		}
+		else if (leakThreshold <= 0) {
+			createdCount.incrementAndGet();
+			return configure(repository.getConnection());
+		}
+
+		RepositoryConnection delegate = pool == null ? null : pool.poll();
+		if (delegate == null) {
+			createdCount.incrementAndGet();
+			delegate = configure(repository.getConnection());
+		}
+		else {
+			reusedCount.incrementAndGet();
+		}
+		PooledConnection connection = new PooledConnection(repositoryID, repository, delegate, pool);
+		borrowed.add(connection.borrowed);
+		startMaintenance();
+		return connection;
+	}
+
+	/**
+	 * Returns the connection that a connection obtained from {@link #getConnection} wraps, for callers that
+	 * depend on the type of the repository's connections. The returned connection must not be closed.
+	 *
+	 * @param connection
+	 *        a connection obtained from {@link #getConnection}.
+	 * @return the wrapped connection, or the supplied connection if it is not wrapped.
+	 */
+	public static RepositoryConnection unwrap(RepositoryConnection connection) {
+		if (connection instanceof PooledConnection) {
+			return ((PooledConnection)connection).getDelegate();
+		}
+		return connection;
+	}
+
+	/**
+	 * Closes all idle connections to a repository. Should be invoked before the repository is removed or
+	 * reconfigured.
+	 *
+	 * @param repositoryID
+	 *        the identifier of the repository.
+	 */
+	public void remove(String repositoryID) {
+		Pool pool = repositoryID == null ? null : pools.remove(repositoryID);
+		if (pool != null) {
+			pool.close();
+		}
+	}
+
+	/**
+	 * @return the number of idle connections in all pools.
+	 */
+	public int getIdleCount() {
+		int count = 0;
+		for (Pool pool : pools.values()) {
+			count += pool.size();
+		}
+		return count;
+	}
+
+	/**
+	 * @return the number of tracked connections that have been handed out and not been closed yet.
+	 */
+	public int getBorrowedCount() {
+		return borrowed.size();
+	}
+
+	/**
+	 * @return the number of connections that have been set up.
+	 */
+	public long getCreatedCount() {
+		return createdCount.get();
+	}
+
+	/**
+	 * @return the number of connections that have been taken from a pool instead of being set up.
+	 */
+	public long getReusedCount() {
+		return reusedCount.get();
+	}
+
+	/**
+	 * @return the number of connections that have been reported as leaked.
+	 */
+	public long getLeakedCount() {
+		return leakedCount.get();
+	}
+
+	/**
+	 * Closes connections that have been idle for too long and reports connections that have been leaked.
+	 */
+	void maintain() {
+		long now = System.currentTimeMillis();
+		for (Pool pool : pools.values()) {
+			pool.evict(now - idleTimeout);
+		}
+		long threshold = leakThreshold;
+		if (threshold > 0) {
+			for (Borrowed connection : borrowed) {
+				if (now - connection.borrowedAt > threshold
+						&& connection.reported.compareAndSet(false, true))
+				{
+					leakedCount.incrementAndGet();
+					logger.warn("Connection to repository {} has not been closed after {} ms",
+							connection.repositoryID, now - connection.borrowedAt, connection.origin);
+				}
+			}
+		}
+		Reference<? extends PooledConnection> reference;
+		while ((reference = abandoned.poll()) != null) {
+			Borrowed connection = (Borrowed)reference;
+			if (borrowed.remove(connection)) {
+				if (connection.reported.compareAndSet(false, true)) {
+					leakedCount.incrementAndGet();
+				}
+				logger.warn("Connection to repository {} has been discarded without being closed",
+						connection.repositoryID, connection.origin);
+				closeQuietly(connection.delegate);
+			}
+		}
+	}
+
+	/**
+	 * Stops closing idle connections and reporting leaked connections. Invoked when the web application is
+	 * stopped.
+	 */
+	public synchronized void shutdown() {
+		if (maintenance != null) {
+			maintenance.shutdownNow();
+			maintenance = null;
+		}
+	}
+
+	private synchronized void startMaintenance() {
+		if (maintenance == null) {
+			maintenance = Executors.newSingleThreadScheduledExecutor(
+					new ThreadFactoryBuilder().setDaemon(true).setNameFormat(
+							"rdf4j-connection-pool-%d").build());
+			maintenance.scheduleWithFixedDelay(this::maintain, MAINTENANCE_INTERVAL, MAINTENANCE_INTERVAL,
+					TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private static RepositoryConnection configure(RepositoryConnection connection) {
+		configure(connection.getParserConfig());
+		return connection;
+	}
+
+	private static ParserConfig configure(ParserConfig config) {
+		config.addNonFatalError(BasicParserSettings.VERIFY_DATATYPE_VALUES);
+		config.addNonFatalError(BasicParserSettings.VERIFY_LANGUAGE_TAGS);
+		return config;
+	}
+
+	private void closeQuietly(RepositoryConnection connection) {
+		try {
+			connection.close();
+		}
+		catch (RuntimeException e) {
+			logger.debug("Failed to close pooled connection", e);
+		}
+	}
+
+	/**
+	 * An idle connection.
+	 */
+	private static class Idle {
+
+		private final RepositoryConnection connection;
+
+		private final long since = System.currentTimeMillis();
+
+		Idle(RepositoryConnection connection) {
+			this.connection = connection;
+		}
+	}
+
+	/**
+	 * The idle connections to a single repository, most recently used first.
+	 */
+	private class Pool {
+
+		private final Repository repository;
+
+		private final Deque<Idle> idle = new ArrayDeque<>();
+
+		private boolean closed;
+
+		Pool(Repository repository) {
+			this.repository = repository;
+		}
+
+		/**
+		 * @return a healthy idle connection, or <tt>null</tt> if there is none.
+		 */
+		RepositoryConnection poll() {
+			while (true) {
+				Idle next;
+				synchronized (this) {
+					next = idle.pollFirst();
+				}
+				if (next == null) {
+					return null;
+				}
+				long idleFor = System.currentTimeMillis() - next.since;
+				long validateAfter = validationInterval;
+				if (idleFor <= idleTimeout && isHealthy(next.connection)
+						&& (validateAfter < 0 || idleFor < validateAfter || isValid(next.connection)))
+				{
+					return next.connection;
+				}
+				closeQuietly(next.connection);
+			}
+		}
+
+		void release(RepositoryConnection connection, IsolationLevel isolationLevel) {
+			boolean keep = false;
+			try {
+				if (isHealthy(connection)) {
+					connection.setParserConfig(configure(new ParserConfig()));
+					connection.setIsolationLevel(isolationLevel);
+					synchronized (this) {
+						if (!closed && idle.size() < maxIdle) {
+							idle.addFirst(new Idle(connection));
+							keep = true;
+						}
+					}
+				}
+			}
+			catch (RuntimeException e) {
+				logger.debug("Discarding pooled connection", e);
+			}
+			if (!keep) {
+				closeQuietly(connection);
+			}
+		}
+
+		void evict(long idleSince) {
+			List<Idle> evicted = new ArrayList<>();
+			synchronized (this) {
+				while (!idle.isEmpty() && idle.peekLast().since < idleSince) {
+					evicted.add(idle.pollLast());
+				}
+			}
+			for (Idle next : evicted) {
+				closeQuietly(next.connection);
+			}
+		}
+
+		void close() {
+			List<Idle> evicted;
+			synchronized (this) {
+				closed = true;
+				evicted = new ArrayList<>(idle);
+				idle.clear();
+			}
+			for (Idle next : evicted) {
+				closeQuietly(next.connection);
+			}
+		}
+
+		synchronized int size() {
+			return idle.size();
+		}
+
+		private boolean isHealthy(RepositoryConnection connection) {
+			try {
+				return connection.isOpen() && !connection.isActive();
+			}
+			catch (RepositoryException e) {
+				return false;
+			}
+		}
+
+		/**
+		 * Checks that a connection still reaches its repository, which the state of the connection itself
+		 * does not reveal for remote repositories.
+		 */
+		private boolean isValid(RepositoryConnection connection) {
+			try {
+				connection.prepareBooleanQuery(QueryLanguage.SPARQL, VALIDATION_QUERY).evaluate();
+				return true;
+			}
+			catch (RuntimeException e) {
+				logger.debug("Discarding invalid pooled connection", e);
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Tracks a connection that has been handed out, without keeping it from being garbage collected.
+	 */
+	private class Borrowed extends WeakReference<PooledConnection> {
+
+		private final String repositoryID;
+
+		private final RepositoryConnection delegate;
+
+		private final long borrowedAt = System.currentTimeMillis();
+
+		private final Throwable origin;
+
+		private final AtomicBoolean reported = new AtomicBoolean();
+
+		Borrowed(PooledConnection connection, String repositoryID, RepositoryConnection delegate) {
+			super(connection, abandoned);
+			this.repositoryID = repositoryID;
+			this.delegate = delegate;
+			this.origin = leakThreshold > 0 ? new Throwable("Connection obtained here") : null;
+		}
+	}
+
+	/**
+	 * A connection handed out by the pool, which returns its delegate to the pool when it is closed.
+	 */
+	private class PooledConnection extends RepositoryConnectionWrapper {
+
+		private final Pool pool;
+
+		private final IsolationLevel isolationLevel;
+
+		private final Borrowed borrowed;
+
+		private final AtomicBoolean closed = new AtomicBoolean();
+
+		PooledConnection(String repositoryID, Repository repository, RepositoryConnection delegate,
+				Pool pool)
+		{
+			super(repository, delegate);
+			this.pool = pool;
+			this.isolationLevel = delegate.getIsolationLevel();
+			this.borrowed = new Borrowed(this, repositoryID, delegate);
+		}
+
+		@Override
+		public ParserConfig getParserConfig() {
+			return getDelegate().getParserConfig();
+		}
+
+		@Override
+		public boolean isOpen()
+			throws RepositoryException
+		{
+			return !closed.get() && getDelegate().isOpen();
+		}
+
+		@Override
+		public void close()
+			throws RepositoryException
+		{
+			if (closed.compareAndSet(false, true)) {
+				RepositoryConnectionPool.this.borrowed.remove(borrowed);
+				if (pool != null) {
+					pool.release(getDelegate(), isolationLevel);
+				}
+				else {
+					getDelegate().close();
+				}
+			}
+		}
+	}
+}
@@ -43,6 +43,9 @@ import org.eclipse.rdf4j.http.server.ClientHTTPException;
 import org.eclipse.rdf4j.http.server.HTTPException;
 import org.eclipse.rdf4j.http.server.ProtocolUtil;
 import org.eclipse.rdf4j.http.server.ServerHTTPException;
+import org.eclipse.rdf4j.http.server.metrics.QueryMetrics;
+import org.eclipse.rdf4j.http.server.queries.RunningQueries;
+import org.eclipse.rdf4j.http.server.queries.RunningQuery;
 import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.Statement;
 import org.eclipse.rdf4j.model.Value;
@@ -56,7 +59,6 @@ import org.eclipse.rdf4j.query.QueryEvaluationException;
 import org.eclipse.rdf4j.query.QueryInterruptedException;
 import org.eclipse.rdf4j.query.QueryLanguage;
 import org.eclipse.rdf4j.query.QueryResult;
-import org.eclipse.rdf4j.query.QueryResults;
 import org.eclipse.rdf4j.query.TupleQuery;
 import org.eclipse.rdf4j.query.TupleQueryResult;
 import org.eclipse.rdf4j.query.UnsupportedQueryLanguageException;
@@ -90,6 +92,8 @@ public class RepositoryController extends AbstractController {
 
 	private RepositoryManager repositoryManager;
 
+	private AdmissionControl admissionControl;
+
 	private static final String METHOD_DELETE = "DELETE";
 
 	public RepositoryController()
@@ -102,6 +106,13 @@ public class RepositoryController extends AbstractController {
 		repositoryManager = repMan;
 	}
 
+	/**
+	 * Sets the {@link AdmissionControl} whose limits of a repository are removed when it is deleted.
+	 */
+	public void setAdmissionControl(AdmissionControl admissionControl) {
+		this.admissionControl = admissionControl;
+	}
+
 	@Override
 	protected ModelAndView handleRequestInternal(HttpServletRequest request, HttpServletResponse response)
 		throws Exception
@@ -148,7 +159,9 @@ public class RepositoryController extends AbstractController {
 			}
 
 			try {
-				boolean success = repositoryManager.removeRepository(repId);
+				boolean success = RepositoryInterceptor.removeRepository(repositoryManager, repId,
+						admissionControl);
+				RepositoryConfigRepository.invalidate(repositoryManager, repId);
 				if (success) {
 					logger.info("DELETE request successfully completed");
 					return new ModelAndView(EmptySuccessView.getInstance());
@@ -187,26 +200,37 @@ public class RepositoryController extends AbstractController {
 		logger.debug("query {} = {}", qryCode, queryStr);
 
 		if (queryStr != null) {
+			QueryResponseCache.CacheKey cacheKey = null;
+			if (METHOD_GET.equals(reqMethod)) {
+				cacheKey = QueryResponseCache.INSTANCE.createKey(RepositoryInterceptor.getRepositoryID(request),
+						queryStr, request);
+				if (QueryResponseCache.INSTANCE.answer(cacheKey, request, response)) {
+					return null;
+				}
+			}
+
 			RepositoryConnection repositoryCon = RepositoryInterceptor.getRepositoryConnection(request);
+			QueryMetrics metrics = new QueryMetrics(RepositoryInterceptor.getRepositoryID(request));
+			RunningQuery runningQuery = RunningQueries.INSTANCE.start(
+					RepositoryInterceptor.getRepositoryID(request), RunningQuery.Operation.QUERY, queryStr,
+					request, metrics);
 			try {
+				long start = System.nanoTime();
 				Query query = getQuery(repository, repositoryCon, queryStr, request, response);
+				metrics.prepared(start);
 
 				View view;
 				Object queryResult = null;
 				FileFormatServiceRegistry<? extends FileFormat, ?> registry;
 
 				try {
+					metrics.evaluating();
 					if (query instanceof TupleQuery) {
 						if (!headersOnly) {
 							TupleQuery tQuery = (TupleQuery)query;
-							long limit = ProtocolUtil.parseLongParam(request, Protocol.LIMIT_PARAM_NAME, 0);
-							long offset = ProtocolUtil.parseLongParam(request, Protocol.OFFSET_PARAM_NAME, 0);
-							boolean distinct = ProtocolUtil.parseBooleanParam(request,
-									Protocol.DISTINCT_PARAM_NAME, false);
-
-							final TupleQueryResult tqr = distinct
-									? QueryResults.distinctResults(tQuery.evaluate()) : tQuery.evaluate();
-							queryResult = QueryResults.limitResults(tqr, limit, offset);
+							QueryModifiers modifiers = QueryModifiers.fromRequest(request);
+							modifiers.pushDown(tQuery);
+							queryResult = runningQuery.track(modifiers.apply(tQuery.evaluate()));
 						}
 						registry = TupleQueryResultWriterRegistry.getInstance();
 						view = TupleQueryResultView.getInstance();
@@ -214,14 +238,8 @@ public class RepositoryController extends AbstractController {
 					else if (query instanceof GraphQuery) {
 						if (!headersOnly) {
 							GraphQuery gQuery = (GraphQuery)query;
-							long limit = ProtocolUtil.parseLongParam(request, Protocol.LIMIT_PARAM_NAME, 0);
-							long offset = ProtocolUtil.parseLongParam(request, Protocol.OFFSET_PARAM_NAME, 0);
-							boolean distinct = ProtocolUtil.parseBooleanParam(request,
-									Protocol.DISTINCT_PARAM_NAME, false);
-
-							final GraphQueryResult qqr = distinct
-									? QueryResults.distinctResults(gQuery.evaluate()) : gQuery.evaluate();
-							queryResult = QueryResults.limitResults(qqr, limit, offset);
+							QueryModifiers modifiers = QueryModifiers.fromRequest(request);
+							queryResult = runningQuery.track(modifiers.apply(gQuery.evaluate()));
 						}
 						registry = RDFWriterRegistry.getInstance();
 						view = GraphQueryResultView.getInstance();
@@ -262,12 +280,18 @@ public class RepositoryController extends AbstractController {
 				model.put(QueryResultView.FACTORY_KEY, factory);
 				model.put(QueryResultView.HEADERS_ONLY, headersOnly);
 				model.put(QueryResultView.CONNECTION_KEY, repositoryCon);
+				model.put(QueryResultView.METRICS_KEY, metrics);
+				model.put(QueryResultView.RUNNING_QUERY_KEY, runningQuery);
+				if (cacheKey != null) {
+					model.put(QueryResultView.RESPONSE_CACHE_KEY, cacheKey);
+				}
 
 				return new ModelAndView(view, model);
 			}
 			catch (Exception e) {
 				// only close the connection when an exception occurs. Otherwise, the QueryResultView will take care of closing it.
 				repositoryCon.close();
+				runningQuery.finish();
 				throw e;
 			}
 		}
@@ -339,7 +363,8 @@ public class RepositoryController extends AbstractController {
 		}
 
 		try {
-			result = repositoryCon.prepareQuery(queryLn, queryStr, baseURI);
+			result = ParsedQueryCache.INSTANCE.prepareQuery(RepositoryInterceptor.getRepositoryID(request),
+					repository, repositoryCon, queryLn, queryStr, baseURI);
 
 			result.setIncludeInferred(includeInferred);
 
@@ -393,11 +418,11 @@ public class RepositoryController extends AbstractController {
 	private static QueryResult<?> distinct(QueryResult<?> qr) {
 		if (qr instanceof TupleQueryResult) {
 			TupleQueryResult tqr = (TupleQueryResult)qr;
-			return QueryResults.distinctResults(tqr);
+			return DistinctResults.INSTANCE.distinct(tqr);
 		}
 		else if (qr instanceof GraphQueryResult) {
 			GraphQueryResult gqr = (GraphQueryResult)qr;
-			return QueryResults.distinctResults(gqr);
+			return DistinctResults.INSTANCE.distinct(gqr);
 		}
 		else {
 			return qr;
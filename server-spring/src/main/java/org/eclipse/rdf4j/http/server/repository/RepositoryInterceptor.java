@@ -10,21 +10,27 @@ package org.eclipse.rdf4j.http.server.repository;
 import static javax.servlet.http.HttpServletResponse.SC_NOT_FOUND;
 
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.eclipse.rdf4j.http.protocol.Protocol;
 import org.eclipse.rdf4j.http.server.ClientHTTPException;
+import org.eclipse.rdf4j.http.server.HTTPException;
 import org.eclipse.rdf4j.http.server.ProtocolUtil;
 import org.eclipse.rdf4j.http.server.ServerHTTPException;
 import org.eclipse.rdf4j.http.server.ServerInterceptor;
+import org.eclipse.rdf4j.http.server.metrics.ServerMetrics;
+import org.eclipse.rdf4j.model.Resource;
 import org.eclipse.rdf4j.repository.Repository;
 import org.eclipse.rdf4j.repository.RepositoryConnection;
 import org.eclipse.rdf4j.repository.RepositoryException;
 import org.eclipse.rdf4j.repository.config.RepositoryConfigException;
 import org.eclipse.rdf4j.repository.manager.RepositoryManager;
-import org.eclipse.rdf4j.rio.helpers.BasicParserSettings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -55,6 +61,12 @@ public class RepositoryInterceptor extends ServerInterceptor {
 
 	private volatile String repositoryID;
 
+	private volatile AdmissionControl admissionControl;
+
+	private volatile AdmissionControl.Permit permit;
+
+	private volatile long requestStart;
+
 	/*---------*
 	 * Methods *
 	 *---------*/
@@ -63,6 +75,14 @@ public class RepositoryInterceptor extends ServerInterceptor {
 		repositoryManager = Objects.requireNonNull(repMan, "Repository manager was null");
 	}
 
+	/**
+	 * Sets the {@link AdmissionControl} that limits the number of concurrent requests per repository. If not
+	 * set, all requests are admitted.
+	 */
+	public void setAdmissionControl(AdmissionControl admissionControl) {
+		this.admissionControl = admissionControl;
+	}
+
 	@Override
 	public boolean preHandle(HttpServletRequest request, HttpServletResponse respons, Object handler)
 		throws Exception
@@ -70,6 +90,7 @@ public class RepositoryInterceptor extends ServerInterceptor {
 		String pathInfoStr = request.getPathInfo();
 		logger.debug("path info: {}", pathInfoStr);
 
+		requestStart = System.nanoTime();
 		repositoryID = null;
 
 		if (pathInfoStr != null && !pathInfoStr.equals("/")) {
@@ -82,7 +103,70 @@ public class RepositoryInterceptor extends ServerInterceptor {
 
 		ProtocolUtil.logRequestParameters(request);
 
-		return super.preHandle(request, respons, handler);
+		boolean proceed = super.preHandle(request, respons, handler);
+		if (proceed) {
+			try {
+				admit(request, respons);
+			}
+			catch (HTTPException | RuntimeException e) {
+				// afterCompletion is not invoked for a rejected request, but the thread has been renamed
+				super.afterCompletion(request, respons, handler, e);
+				throw e;
+			}
+		}
+		return proceed;
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+			Exception exception)
+		throws Exception
+	{
+		try {
+			final AdmissionControl.Permit nextPermit = permit;
+			permit = null;
+			RequestCompletion completion = new RequestCompletion(repositoryID, getHandlerName(handler),
+					requestStart, nextPermit);
+			if (request.isAsyncStarted()) {
+				// the response is still being written by another thread
+				request.getAsyncContext().addListener(completion);
+			}
+			else {
+				completion.complete(exception != null || response.getStatus() >= 400);
+			}
+		}
+		finally {
+			super.afterCompletion(request, response, handler, exception);
+		}
+	}
+
+	/**
+	 * @return the name of the handler's class, without a <tt>Controller</tt> suffix, for use as a metric
+	 *         label.
+	 */
+	private static String getHandlerName(Object handler) {
+		String name = handler.getClass().getSimpleName();
+		if (name.endsWith("Controller") && name.length() > "Controller".length()) {
+			name = name.substring(0, name.length() - "Controller".length());
+		}
+		return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+	}
+
+	private void admit(HttpServletRequest request, HttpServletResponse response)
+		throws HTTPException
+	{
+		AdmissionControl nextAdmissionControl = admissionControl;
+		String nextRepositoryID = repositoryID;
+		if (nextAdmissionControl == null || nextRepositoryID == null) {
+			return;
+		}
+		try {
+			permit = nextAdmissionControl.acquire(nextRepositoryID, AdmissionControl.getOperation(request));
+		}
+		catch (HTTPException e) {
+			response.setHeader("Retry-After", String.valueOf(nextAdmissionControl.getRetryAfter()));
+			throw e;
+		}
 	}
 
 	@Override
@@ -104,7 +188,8 @@ public class RepositoryInterceptor extends ServerInterceptor {
 		String nextRepositoryID = repositoryID;
 		if (RepositoryConfigRepository.ID.equals(nextRepositoryID)) {
 			request.setAttribute(REPOSITORY_ID_KEY, nextRepositoryID);
-			request.setAttribute(REPOSITORY_KEY, new RepositoryConfigRepository(repositoryManager));
+			request.setAttribute(REPOSITORY_KEY,
+					new RepositoryConfigRepository(repositoryManager, admissionControl));
 		}
 		else if (nextRepositoryID != null) {
 			try {
@@ -135,18 +220,164 @@ public class RepositoryInterceptor extends ServerInterceptor {
 	}
 
 	/**
-	 * Obtain a new {@link RepositoryConnection} with suitable parser/writer configuration for handling the
-	 * incoming HTTP request. The caller of this method is responsible for closing the connection.
+	 * Obtain a {@link RepositoryConnection} with suitable parser/writer configuration for handling the
+	 * incoming HTTP request, from the {@link RepositoryConnectionPool} if possible. The caller of this method
+	 * is responsible for closing the connection.
 	 * 
 	 * @param request
 	 *        the {@link HttpServletRequest} for which a {@link RepositoryConnection} is to be returned
 	 * @return a configured {@link RepositoryConnection}
 	 */
 	public static RepositoryConnection getRepositoryConnection(HttpServletRequest request) {
-		Repository repo = getRepository(request);
-		RepositoryConnection conn = repo.getConnection();
-		conn.getParserConfig().addNonFatalError(BasicParserSettings.VERIFY_DATATYPE_VALUES);
-		conn.getParserConfig().addNonFatalError(BasicParserSettings.VERIFY_LANGUAGE_TAGS);
-		return conn;
+		return RepositoryConnectionPool.INSTANCE.getConnection(getRepositoryID(request),
+				getRepository(request));
+	}
+
+	/**
+	 * Notifies the caches of the request's repository that its content may have changed. Invoked after every
+	 * update, also when it has failed, as part of it may have been applied.
+	 * 
+	 * @param request
+	 *        the {@link HttpServletRequest} that has updated its repository
+	 */
+	public static void repositoryModified(HttpServletRequest request) {
+		String repositoryID = getRepositoryID(request);
+		QueryResponseCache.INSTANCE.invalidate(repositoryID);
+		RepositoryStatistics.INSTANCE.invalidate(repositoryID);
+	}
+
+	/**
+	 * Notifies the caches of the request's repository that contexts have been cleared successfully, which
+	 * lets the statistics of the other contexts be kept. Invoked instead of
+	 * {@link #repositoryModified(HttpServletRequest)}.
+	 * 
+	 * @param request
+	 *        the {@link HttpServletRequest} that has cleared contexts of its repository
+	 * @param contexts
+	 *        the cleared contexts, an empty array if the entire repository has been cleared
+	 */
+	public static void repositoryCleared(HttpServletRequest request, Resource... contexts) {
+		String repositoryID = getRepositoryID(request);
+		QueryResponseCache.INSTANCE.invalidate(repositoryID);
+		RepositoryStatistics.INSTANCE.cleared(repositoryID, contexts);
+	}
+
+	/**
+	 * Removes a repository and everything the server keeps for it.
+	 * 
+	 * @param manager
+	 *        the manager of the repository
+	 * @param repositoryID
+	 *        the identifier of the repository to remove
+	 * @param admissionControl
+	 *        the admission control of the server, may be null
+	 * @return <tt>true</tt> if the repository was known to the manager
+	 */
+	public static boolean removeRepository(RepositoryManager manager, String repositoryID,
+			AdmissionControl admissionControl)
+	{
+		// idle connections are closed before the repository is shut down
+		RepositoryConnectionPool.INSTANCE.remove(repositoryID);
+		try {
+			return manager.removeRepository(repositoryID);
+		}
+		finally {
+			onRepositoryRemoved(repositoryID, admissionControl);
+		}
+	}
+
+	/**
+	 * Discards everything the server keeps for a repository that has been removed.
+	 * 
+	 * @param repositoryID
+	 *        the identifier of the removed repository
+	 * @param admissionControl
+	 *        the admission control of the server, may be null
+	 */
+	public static void onRepositoryRemoved(String repositoryID, AdmissionControl admissionControl) {
+		onRepositoryReconfigured(repositoryID);
+		ServerMetrics.INSTANCE.removeRepository(repositoryID);
+		if (admissionControl != null) {
+			admissionControl.remove(repositoryID);
+		}
+	}
+
+	/**
+	 * Discards the connections and cached data of a repository that has been reconfigured, as they belong to
+	 * the previous configuration.
+	 * 
+	 * @param repositoryID
+	 *        the identifier of the reconfigured repository
+	 */
+	public static void onRepositoryReconfigured(String repositoryID) {
+		RepositoryConnectionPool.INSTANCE.remove(repositoryID);
+		ParsedQueryCache.INSTANCE.invalidate(repositoryID);
+		QueryResponseCache.INSTANCE.invalidate(repositoryID);
+		RepositoryStatistics.INSTANCE.remove(repositoryID);
+	}
+
+	/**
+	 * Records the metrics of a request and releases its admission permit once it has finished, which for an
+	 * asynchronously processed request is when the response has been written.
+	 */
+	private static class RequestCompletion implements AsyncListener {
+
+		private final String repositoryID;
+
+		private final String handlerName;
+
+		private final long start;
+
+		private final AdmissionControl.Permit permit;
+
+		private final AtomicBoolean completed = new AtomicBoolean();
+
+		RequestCompletion(String repositoryID, String handlerName, long start,
+				AdmissionControl.Permit permit)
+		{
+			this.repositoryID = repositoryID;
+			this.handlerName = handlerName;
+			this.start = start;
+			this.permit = permit;
+		}
+
+		void complete(boolean error) {
+			// a timeout or an error is followed by the completion of the request
+			if (!completed.compareAndSet(false, true)) {
+				return;
+			}
+			try {
+				if (repositoryID != null) {
+					ServerMetrics.INSTANCE.recordRequest(repositoryID, handlerName, System.nanoTime() - start,
+							error);
+				}
+			}
+			finally {
+				if (permit != null) {
+					permit.release();
+				}
+			}
+		}
+
+		@Override
+		public void onComplete(AsyncEvent event) {
+			ServletResponse response = event.getSuppliedResponse();
+			complete(response instanceof HttpServletResponse
+					&& ((HttpServletResponse)response).getStatus() >= 400);
+		}
+
+		@Override
+		public void onTimeout(AsyncEvent event) {
+			complete(true);
+		}
+
+		@Override
+		public void onError(AsyncEvent event) {
+			complete(true);
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) {
+		}
 	}
 }
@@ -0,0 +1,352 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.rdf4j.common.iteration.Iterations;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Cache of the sizes and context lists of repositories, so that clients that poll them frequently can be
+ * answered without scanning the repository every time.
+ * <p>
+ * Exact requests are always evaluated against the repository, and their results are remembered. Approximate
+ * requests are answered from the remembered results, which may be out of date, and are only evaluated if
+ * nothing has been remembered yet.
+ * <p>
+ * Every repository has a generation that is advanced by {@link #invalidate(String)} whenever its data is
+ * modified, which marks all remembered results of that repository as out of date. Operations whose effect
+ * on the statistics is known, such as clearing contexts, are reported with
+ * {@link #cleared(String, Resource...)} instead, which updates the affected results and keeps the others up
+ * to date. Out of date results are evaluated again in the background, at the interval configured with the
+ * system property {@value #REFRESH_INTERVAL_PROPERTY}.
+ */
+public enum RepositoryStatistics {
+
+	INSTANCE;
+
+	/**
+	 * Name of the boolean request parameter with which clients accept an approximate answer.
+	 */
+	public static final String APPROXIMATE_PARAM_NAME = "approximate";
+
+	/**
+	 * Configurable system property {@code rdf4j.server.statistics.refresh.interval} for specifying the
+	 * interval in milliseconds at which out of date statistics are evaluated again. A value of 0 disables the
+	 * background refresh.
+	 */
+	public static final String REFRESH_INTERVAL_PROPERTY = "rdf4j.server.statistics.refresh.interval";
+
+	/**
+	 * Default interval at which out of date statistics are evaluated again: 60 seconds.
+	 */
+	public static final long DEFAULT_REFRESH_INTERVAL = 60000;
+
+	/**
+	 * Maximum number of distinct sets of contexts whose size is remembered per repository.
+	 */
+	private static final int MAX_SIZES = 64;
+
+	private final Logger logger = LoggerFactory.getLogger(RepositoryStatistics.class);
+
+	private final ConcurrentMap<String, Statistics> statistics = new ConcurrentHashMap<>();
+
+	private final ScheduledExecutorService refresher;
+
+	private RepositoryStatistics() {
+		long interval = DEFAULT_REFRESH_INTERVAL;
+		final String configuredValue = System.getProperty(REFRESH_INTERVAL_PROPERTY);
+		if (configuredValue != null) {
+			try {
+				interval = Long.parseLong(configuredValue);
+			}
+			catch (NumberFormatException e) {
+				logger.warn("Expected long value for property {}. Refresh interval will default to {}. ",
+						REFRESH_INTERVAL_PROPERTY, DEFAULT_REFRESH_INTERVAL);
+			}
+		}
+		if (interval > 0) {
+			refresher = Executors.newSingleThreadScheduledExecutor(
+					new ThreadFactoryBuilder().setDaemon(true).setNameFormat("rdf4j-statistics-%d").build());
+			refresher.scheduleWithFixedDelay(this::refresh, interval, interval, TimeUnit.MILLISECONDS);
+		}
+		else {
+			refresher = null;
+		}
+	}
+
+	/**
+	 * Stops refreshing the statistics. Invoked when the web application is stopped.
+	 */
+	public void shutdown() {
+		if (refresher != null) {
+			refresher.shutdownNow();
+		}
+	}
+
+	/**
+	 * Determines the number of statements in (a set of contexts of) a repository.
+	 *
+	 * @param repositoryID
+	 *        the identifier of the repository.
+	 * @param repository
+	 *        the repository.
+	 * @param contexts
+	 *        the contexts, an empty array for the entire repository.
+	 * @param approximate
+	 *        whether a remembered, possibly out of date, size may be returned.
+	 * @return the number of statements.
+	 */
+	public long getSize(String repositoryID, Repository repository, Resource[] contexts,
+			boolean approximate)
+	{
+		Statistics stats = getStatistics(repositoryID, repository);
+		Set<Resource> key = new HashSet<>(Arrays.asList(contexts));
+		if (approximate) {
+			Long size = stats.getSize(key);
+			if (size != null) {
+				return size;
+			}
+		}
+		long generation = stats.getGeneration();
+		long size;
+		try (RepositoryConnection con = repository.getConnection()) {
+			size = con.size(contexts);
+		}
+		stats.putSize(key, size, generation);
+		return size;
+	}
+
+	/**
+	 * Determines the contexts of a repository.
+	 *
+	 * @param repositoryID
+	 *        the identifier of the repository.
+	 * @param repository
+	 *        the repository.
+	 * @param approximate
+	 *        whether a remembered, possibly out of date, list of contexts may be returned.
+	 * @return the identifiers of the contexts.
+	 */
+	public List<Resource> getContextIDs(String repositoryID, Repository repository, boolean approximate) {
+		Statistics stats = getStatistics(repositoryID, repository);
+		if (approximate) {
+			List<Resource> contexts = stats.getContextIDs();
+			if (contexts != null) {
+				return contexts;
+			}
+		}
+		long generation = stats.getGeneration();
+		List<Resource> contexts;
+		try (RepositoryConnection con = repository.getConnection()) {
+			contexts = Iterations.asList(con.getContextIDs());
+		}
+		stats.putContextIDs(contexts, generation);
+		return Collections.unmodifiableList(contexts);
+	}
+
+	/**
+	 * Marks all remembered statistics of a repository as out of date. Should be invoked whenever the data of
+	 * that repository has been modified.
+	 *
+	 * @param repositoryID
+	 *        the identifier of the repository.
+	 */
+	public void invalidate(String repositoryID) {
+		Statistics stats = repositoryID == null ? null : statistics.get(repositoryID);
+		if (stats != null) {
+			stats.invalidate();
+		}
+	}
+
+	/**
+	 * Updates the remembered statistics of a repository after contexts have been cleared. Should be invoked,
+	 * instead of {@link #invalidate(String)}, after a successful clear operation.
+	 *
+	 * @param repositoryID
+	 *        the identifier of the repository.
+	 * @param contexts
+	 *        the cleared contexts, an empty array if the entire repository has been cleared.
+	 */
+	public void cleared(String repositoryID, Resource... contexts) {
+		Statistics stats = repositoryID == null ? null : statistics.get(repositoryID);
+		if (stats != null) {
+			stats.cleared(new HashSet<>(Arrays.asList(contexts)));
+		}
+	}
+
+	/**
+	 * Discards all statistics of a repository. Should be invoked when the repository has been removed or
+	 * reconfigured.
+	 *
+	 * @param repositoryID
+	 *        the identifier of the repository.
+	 */
+	public void remove(String repositoryID) {
+		if (repositoryID != null) {
+			statistics.remove(repositoryID);
+		}
+	}
+
+	/**
+	 * Evaluates all out of date statistics again.
+	 */
+	void refresh() {
+		for (Map.Entry<String, Statistics> entry : statistics.entrySet()) {
+			try {
+				entry.getValue().refresh();
+			}
+			catch (RuntimeException e) {
+				logger.warn("Failed to refresh statistics of repository {}: {}", entry.getKey(),
+						e.getMessage());
+			}
+		}
+	}
+
+	private Statistics getStatistics(String repositoryID, Repository repository) {
+		// a new repository instance means that the repository has been reconfigured
+		return statistics.compute(repositoryID,
+				(id, stats) -> stats != null && stats.repository == repository ? stats
+						: new Statistics(repository));
+	}
+
+	/**
+	 * A remembered result, together with the generation of the repository it was evaluated in.
+	 */
+	private static class Stamped<T> {
+
+		private final T value;
+
+		private final long generation;
+
+		Stamped(T value, long generation) {
+			this.value = value;
+			this.generation = generation;
+		}
+	}
+
+	/**
+	 * The statistics of a single repository.
+	 */
+	private static class Statistics {
+
+		private final Repository repository;
+
+		private long generation;
+
+		private final Map<Set<Resource>, Stamped<Long>> sizes = new LinkedHashMap<>();
+
+		private Stamped<List<Resource>> contextIDs;
+
+		Statistics(Repository repository) {
+			this.repository = repository;
+		}
+
+		synchronized long getGeneration() {
+			return generation;
+		}
+
+		synchronized Long getSize(Set<Resource> contexts) {
+			Stamped<Long> size = sizes.get(contexts);
+			return size == null ? null : size.value;
+		}
+
+		synchronized void putSize(Set<Resource> contexts, long size, long generation) {
+			// results evaluated while the repository was modified are not remembered
+			if (generation == this.generation && (sizes.containsKey(contexts) || sizes.size() < MAX_SIZES)) {
+				sizes.put(contexts, new Stamped<>(size, generation));
+			}
+		}
+
+		synchronized List<Resource> getContextIDs() {
+			return contextIDs == null ? null : contextIDs.value;
+		}
+
+		synchronized void putContextIDs(List<Resource> contexts, long generation) {
+			if (generation == this.generation) {
+				contextIDs = new Stamped<>(Collections.unmodifiableList(new ArrayList<>(contexts)),
+						generation);
+			}
+		}
+
+		synchronized void invalidate() {
+			generation++;
+		}
+
+		synchronized void cleared(Set<Resource> cleared) {
+			long previous = generation++;
+			boolean all = cleared.isEmpty();
+			for (Map.Entry<Set<Resource>, Stamped<Long>> entry : sizes.entrySet()) {
+				Set<Resource> contexts = entry.getKey();
+				Stamped<Long> size = entry.getValue();
+				if (all || !contexts.isEmpty() && cleared.containsAll(contexts)) {
+					entry.setValue(new Stamped<>(0L, generation));
+				}
+				else if (size.generation == previous && !contexts.isEmpty()
+						&& Collections.disjoint(contexts, cleared))
+				{
+					entry.setValue(new Stamped<>(size.value, generation));
+				}
+			}
+			if (all) {
+				contextIDs = new Stamped<>(Collections.emptyList(), generation);
+			}
+			else if (contextIDs != null) {
+				List<Resource> remaining = new ArrayList<>(contextIDs.value);
+				remaining.removeAll(cleared);
+				contextIDs = new Stamped<>(Collections.unmodifiableList(remaining),
+						contextIDs.generation == previous ? generation : contextIDs.generation);
+			}
+		}
+
+		void refresh() {
+			List<Set<Resource>> outdated = new ArrayList<>();
+			boolean contextIDsOutdated;
+			long current;
+			synchronized (this) {
+				current = generation;
+				for (Map.Entry<Set<Resource>, Stamped<Long>> entry : sizes.entrySet()) {
+					if (entry.getValue().generation != current) {
+						outdated.add(entry.getKey());
+					}
+				}
+				contextIDsOutdated = contextIDs != null && contextIDs.generation != current;
+			}
+			if (outdated.isEmpty() && !contextIDsOutdated) {
+				return;
+			}
+			try (RepositoryConnection con = repository.getConnection()) {
+				for (Set<Resource> contexts : outdated) {
+					putSize(contexts, con.size(contexts.toArray(new Resource[contexts.size()])), current);
+				}
+				if (contextIDsOutdated) {
+					putContextIDs(Iterations.asList(con.getContextIDs()), current);
+				}
+			}
+		}
+	}
+}
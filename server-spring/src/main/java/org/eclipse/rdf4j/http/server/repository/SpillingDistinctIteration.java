@@ -0,0 +1,535 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.repository;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.rdf4j.common.io.FileUtil;
+import org.eclipse.rdf4j.common.iteration.CloseableIteration;
+import org.eclipse.rdf4j.common.iteration.LookAheadIteration;
+import org.eclipse.rdf4j.model.BNode;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.query.Binding;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.eclipse.rdf4j.query.impl.MapBindingSet;
+
+/**
+ * An iteration that removes duplicates from its source, using no more than a fixed memory budget for the
+ * results it has seen.
+ * <p>
+ * While the budget is not exceeded, each result is checked against an in-memory set and returned
+ * immediately. When the budget is exceeded, the set is written to disk, hash-partitioned into
+ * {@link DistinctResults#PARTITIONS} files, and the set is cleared. All remaining source results are then
+ * appended both to a pending file, in source order, and to their partition, tagged with their position.
+ * Once the source is exhausted, each partition is loaded separately to find the positions of duplicates,
+ * after which the pending file is replayed without them. A partition that does not fit in the budget is
+ * split again, with a different hash, into {@link DistinctResults#PARTITIONS} smaller partitions, up to
+ * {@link #MAX_DEPTH} levels deep. Memory use is thereby bounded by the budget plus one bit per spilled
+ * result, unless more than the budget's worth of distinct results share a hash code at every level.
+ * <p>
+ * Results are only streamed until the iteration spills: after that, no further result is returned until the
+ * source has been consumed completely, as any later result may still turn out to duplicate an earlier one.
+ *
+ * @param <T>
+ *        the type of the results, {@link BindingSet} or {@link Statement}.
+ */
+class SpillingDistinctIteration<T> extends LookAheadIteration<T, QueryEvaluationException> {
+
+	/**
+	 * Position of a result that had already been returned when the iteration spilled to disk.
+	 */
+	private static final long SEEN = -1;
+
+	/**
+	 * Rough estimate of the memory (in bytes) used by a result in the set of seen results, on top of the
+	 * memory used by its values.
+	 */
+	private static final int ENTRY_OVERHEAD = 96;
+
+	/**
+	 * Maximum number of times a partition is split into smaller partitions.
+	 */
+	static final int MAX_DEPTH = 4;
+
+	private final CloseableIteration<? extends T, QueryEvaluationException> source;
+
+	private final Codec<T> codec;
+
+	private final DistinctResults owner;
+
+	private final long memoryBudget;
+
+	private Set<T> seen = new HashSet<>();
+
+	private long memoryUsed;
+
+	private File spillDir;
+
+	private DataOutputStream[] partitions;
+
+	private long[] partitionSizes;
+
+	private long[] partitionMemory;
+
+	private DataOutputStream pending;
+
+	private long pendingSize;
+
+	private DataInputStream replay;
+
+	private long replayed;
+
+	private BitSet duplicates;
+
+	private long spilledResults;
+
+	private long spilledBytes;
+
+	SpillingDistinctIteration(CloseableIteration<? extends T, QueryEvaluationException> source,
+			Codec<T> codec, DistinctResults owner)
+	{
+		this.source = source;
+		this.codec = codec;
+		this.owner = owner;
+		this.memoryBudget = owner.getMemoryBudget();
+	}
+
+	@Override
+	protected T getNextElement()
+		throws QueryEvaluationException
+	{
+		try {
+			if (spillDir == null) {
+				while (source.hasNext()) {
+					T next = source.next();
+					if (seen.add(next)) {
+						memoryUsed += ENTRY_OVERHEAD + codec.estimateSize(next);
+						if (memoryUsed > memoryBudget) {
+							spill();
+						}
+						return next;
+					}
+				}
+				return null;
+			}
+			if (replay == null) {
+				while (source.hasNext()) {
+					append(source.next());
+				}
+				findDuplicates();
+			}
+			while (replayed < pendingSize) {
+				T next = codec.read(replay);
+				if (!duplicates.get((int)replayed++)) {
+					return next;
+				}
+			}
+			return null;
+		}
+		catch (IOException e) {
+			throw new QueryEvaluationException("unable to spill distinct results to disk", e);
+		}
+	}
+
+	/**
+	 * Writes the set of seen results to the partition files and releases the set.
+	 */
+	private void spill()
+		throws IOException
+	{
+		spillDir = Files.createTempDirectory(owner.getTempDir().toPath(), "rdf4j-distinct").toFile();
+		partitions = new DataOutputStream[DistinctResults.PARTITIONS];
+		partitionSizes = new long[partitions.length];
+		partitionMemory = new long[partitions.length];
+		for (int i = 0; i < partitions.length; i++) {
+			partitions[i] = open(partitionFile(i));
+		}
+		pending = open(new File(spillDir, "pending"));
+		for (T result : seen) {
+			writePartition(SEEN, result);
+		}
+		seen = null;
+	}
+
+	private void append(T result)
+		throws IOException
+	{
+		if (pendingSize == Integer.MAX_VALUE) {
+			throw new IOException("too many results to remove duplicates from");
+		}
+		codec.write(result, pending);
+		writePartition(pendingSize++, result);
+	}
+
+	private void writePartition(long position, T result)
+		throws IOException
+	{
+		int partition = partition(result, 0);
+		DataOutputStream out = partitions[partition];
+		out.writeLong(position);
+		codec.write(result, out);
+		partitionSizes[partition]++;
+		partitionMemory[partition] += ENTRY_OVERHEAD + codec.estimateSize(result);
+	}
+
+	/**
+	 * Marks the positions of all pending results that are duplicates, loading one partition at a time, and
+	 * opens the pending file for replay.
+	 */
+	private void findDuplicates()
+		throws IOException
+	{
+		pending.close();
+		for (DataOutputStream out : partitions) {
+			out.close();
+		}
+
+		duplicates = new BitSet((int)pendingSize);
+		spilledResults = pendingSize;
+		spilledBytes = new File(spillDir, "pending").length();
+		for (int i = 0; i < partitions.length; i++) {
+			findDuplicates(partitionFile(i), partitionSizes[i], partitionMemory[i], 0);
+		}
+		owner.spilled(spilledResults, spilledBytes);
+
+		replay = openInput(new File(spillDir, "pending"));
+	}
+
+	/**
+	 * Marks the positions of the duplicates in a single partition, splitting it first if it does not fit in
+	 * the memory budget.
+	 */
+	private void findDuplicates(File file, long size, long memory, int depth)
+		throws IOException
+	{
+		spilledResults += size;
+		spilledBytes += file.length();
+		if (memory > memoryBudget && depth < MAX_DEPTH) {
+			split(file, size, depth + 1);
+			return;
+		}
+		Set<T> partitionSeen = new HashSet<>();
+		try (DataInputStream in = openInput(file)) {
+			for (long j = 0; j < size; j++) {
+				long position = in.readLong();
+				T result = codec.read(in);
+				if (!partitionSeen.add(result) && position != SEEN) {
+					duplicates.set((int)position);
+				}
+			}
+		}
+		file.delete();
+	}
+
+	/**
+	 * Splits a partition into smaller ones, hashed differently at each depth, and processes each of them.
+	 */
+	private void split(File file, long size, int depth)
+		throws IOException
+	{
+		File[] files = new File[DistinctResults.PARTITIONS];
+		DataOutputStream[] outs = new DataOutputStream[files.length];
+		long[] sizes = new long[files.length];
+		long[] memory = new long[files.length];
+		try {
+			try (DataInputStream in = openInput(file)) {
+				for (long j = 0; j < size; j++) {
+					long position = in.readLong();
+					T result = codec.read(in);
+					int partition = partition(result, depth);
+					if (outs[partition] == null) {
+						files[partition] = new File(file.getPath() + "-" + partition);
+						outs[partition] = open(files[partition]);
+					}
+					outs[partition].writeLong(position);
+					codec.write(result, outs[partition]);
+					sizes[partition]++;
+					memory[partition] += ENTRY_OVERHEAD + codec.estimateSize(result);
+				}
+			}
+		}
+		finally {
+			for (DataOutputStream out : outs) {
+				if (out != null) {
+					out.close();
+				}
+			}
+		}
+		file.delete();
+		for (int i = 0; i < files.length; i++) {
+			if (files[i] != null) {
+				findDuplicates(files[i], sizes[i], memory[i], depth);
+			}
+		}
+	}
+
+	@Override
+	protected void handleClose()
+		throws QueryEvaluationException
+	{
+		try {
+			super.handleClose();
+		}
+		finally {
+			try {
+				source.close();
+			}
+			finally {
+				seen = null;
+				deleteSpillDir();
+			}
+		}
+	}
+
+	private void deleteSpillDir() {
+		if (spillDir == null) {
+			return;
+		}
+		try {
+			if (partitions != null) {
+				for (DataOutputStream out : partitions) {
+					out.close();
+				}
+			}
+			if (pending != null) {
+				pending.close();
+			}
+			if (replay != null) {
+				replay.close();
+			}
+			FileUtil.deleteDir(spillDir);
+		}
+		catch (IOException e) {
+			throw new QueryEvaluationException("unable to remove spilled distinct results", e);
+		}
+	}
+
+	private File partitionFile(int partition) {
+		return new File(spillDir, "partition-" + partition);
+	}
+
+	/**
+	 * @return the partition of the result at the given depth of splitting. Each depth mixes the hash code
+	 *         with a different seed, so that results that shared a partition are spread over new ones.
+	 */
+	static int partition(Object result, int depth) {
+		int hash = result.hashCode() ^ (depth * 0x9e3779b9);
+		hash ^= (hash >>> 16);
+		hash *= 0x85ebca6b;
+		hash ^= (hash >>> 13);
+		hash *= 0xc2b2ae35;
+		hash ^= (hash >>> 16);
+		return (hash & 0x7fffffff) % DistinctResults.PARTITIONS;
+	}
+
+	private static DataOutputStream open(File file)
+		throws IOException
+	{
+		return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 32 * 1024));
+	}
+
+	private static DataInputStream openInput(File file)
+		throws IOException
+	{
+		return new DataInputStream(new BufferedInputStream(new FileInputStream(file), 32 * 1024));
+	}
+
+	/**
+	 * Reads and writes results of a specific type in the spill files.
+	 */
+	interface Codec<T> {
+
+		void write(T result, DataOutput out)
+			throws IOException;
+
+		T read(DataInput in)
+			throws IOException;
+
+		/**
+		 * @return a rough estimate of the memory (in bytes) occupied by the values of the result.
+		 */
+		long estimateSize(T result);
+	}
+
+	static final Codec<BindingSet> BINDING_SETS = new Codec<BindingSet>() {
+
+		@Override
+		public void write(BindingSet bindings, DataOutput out)
+			throws IOException
+		{
+			out.writeInt(bindings.size());
+			for (Binding binding : bindings) {
+				writeString(binding.getName(), out);
+				writeValue(binding.getValue(), out);
+			}
+		}
+
+		@Override
+		public BindingSet read(DataInput in)
+			throws IOException
+		{
+			int size = in.readInt();
+			MapBindingSet bindings = new MapBindingSet(size);
+			for (int i = 0; i < size; i++) {
+				String name = readString(in);
+				bindings.addBinding(name, readValue(in));
+			}
+			return bindings;
+		}
+
+		@Override
+		public long estimateSize(BindingSet bindings) {
+			long size = 0;
+			for (Binding binding : bindings) {
+				size += estimateValueSize(binding.getValue());
+			}
+			return size;
+		}
+	};
+
+	static final Codec<Statement> STATEMENTS = new Codec<Statement>() {
+
+		@Override
+		public void write(Statement st, DataOutput out)
+			throws IOException
+		{
+			writeValue(st.getSubject(), out);
+			writeValue(st.getPredicate(), out);
+			writeValue(st.getObject(), out);
+			writeValue(st.getContext(), out);
+		}
+
+		@Override
+		public Statement read(DataInput in)
+			throws IOException
+		{
+			Resource subj = (Resource)readValue(in);
+			IRI pred = (IRI)readValue(in);
+			Value obj = readValue(in);
+			Resource context = (Resource)readValue(in);
+			if (context == null) {
+				return VF.createStatement(subj, pred, obj);
+			}
+			return VF.createStatement(subj, pred, obj, context);
+		}
+
+		@Override
+		public long estimateSize(Statement st) {
+			return estimateValueSize(st.getSubject()) + estimateValueSize(st.getPredicate())
+					+ estimateValueSize(st.getObject()) + estimateValueSize(st.getContext());
+		}
+	};
+
+	private static final ValueFactory VF = SimpleValueFactory.getInstance();
+
+	private static final byte NULL_VALUE = 0;
+
+	private static final byte IRI_VALUE = 1;
+
+	private static final byte BNODE_VALUE = 2;
+
+	private static final byte LITERAL_VALUE = 3;
+
+	private static final byte LANG_LITERAL_VALUE = 4;
+
+	static void writeValue(Value value, DataOutput out)
+		throws IOException
+	{
+		if (value == null) {
+			out.writeByte(NULL_VALUE);
+		}
+		else if (value instanceof IRI) {
+			out.writeByte(IRI_VALUE);
+			writeString(value.stringValue(), out);
+		}
+		else if (value instanceof BNode) {
+			out.writeByte(BNODE_VALUE);
+			writeString(((BNode)value).getID(), out);
+		}
+		else {
+			Literal literal = (Literal)value;
+			if (literal.getLanguage().isPresent()) {
+				out.writeByte(LANG_LITERAL_VALUE);
+				writeString(literal.getLabel(), out);
+				writeString(literal.getLanguage().get(), out);
+			}
+			else {
+				out.writeByte(LITERAL_VALUE);
+				writeString(literal.getLabel(), out);
+				writeString(literal.getDatatype().stringValue(), out);
+			}
+		}
+	}
+
+	static Value readValue(DataInput in)
+		throws IOException
+	{
+		byte type = in.readByte();
+		switch (type) {
+			case NULL_VALUE:
+				return null;
+			case IRI_VALUE:
+				return VF.createIRI(readString(in));
+			case BNODE_VALUE:
+				return VF.createBNode(readString(in));
+			case LANG_LITERAL_VALUE:
+				String label = readString(in);
+				return VF.createLiteral(label, readString(in));
+			case LITERAL_VALUE:
+				label = readString(in);
+				return VF.createLiteral(label, VF.createIRI(readString(in)));
+			default:
+				throw new IOException("unexpected value type in spill file: " + type);
+		}
+	}
+
+	private static long estimateValueSize(Value value) {
+		if (value == null) {
+			return 0;
+		}
+		// object header and fields plus two bytes per character
+		return 48 + 2L * value.stringValue().length();
+	}
+
+	private static void writeString(String s, DataOutput out)
+		throws IOException
+	{
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInput in)
+		throws IOException
+	{
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
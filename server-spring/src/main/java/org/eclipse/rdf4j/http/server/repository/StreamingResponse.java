@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.repository;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.eclipse.rdf4j.query.resultio.TupleQueryResultFormat;
+import org.eclipse.rdf4j.rio.RDFFormat;
+
+/**
+ * Response wrapper that flushes the query result to the client according to a {@link QueryResultStreaming}
+ * policy, optionally compressing it.
+ */
+class StreamingResponse extends HttpServletResponseWrapper {
+
+	private static final int COMPRESSION_BUFFER_SIZE = 8192;
+
+	private final String encoding;
+
+	private final long flushRows;
+
+	private final long flushBytes;
+
+	private final long flushIntervalNanos;
+
+	private StreamingOutputStream out;
+
+	private long rows;
+
+	/**
+	 * @param response
+	 *        the response to write to.
+	 * @param encoding
+	 *        the content coding to compress with, <tt>gzip</tt> or <tt>deflate</tt>, or <tt>null</tt> to not
+	 *        compress.
+	 * @param flushRows
+	 *        the number of results after which to flush, or 0 to not flush by results.
+	 * @param flushBytes
+	 *        the number of bytes after which to flush, or 0 to not flush by size.
+	 * @param flushInterval
+	 *        the number of milliseconds after which to flush, or 0 to not flush by time.
+	 */
+	StreamingResponse(HttpServletResponse response, String encoding, long flushRows, long flushBytes,
+			long flushInterval)
+	{
+		super(response);
+		this.encoding = encoding;
+		this.flushRows = flushRows;
+		this.flushBytes = flushBytes;
+		this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+	}
+
+	@Override
+	public ServletOutputStream getOutputStream()
+		throws IOException
+	{
+		if (out == null) {
+			ServletOutputStream delegate = super.getOutputStream();
+			OutputStream compressed = null;
+			Deflater deflater = null;
+			if (encoding != null && isCompressible(getContentType())) {
+				setHeader("Content-Encoding", encoding);
+				if ("gzip".equals(encoding)) {
+					compressed = new GZIPOutputStream(delegate, COMPRESSION_BUFFER_SIZE, true);
+				}
+				else {
+					deflater = new Deflater();
+					compressed = new DeflaterOutputStream(delegate, deflater, COMPRESSION_BUFFER_SIZE, true);
+				}
+			}
+			out = new StreamingOutputStream(delegate, compressed, deflater);
+		}
+		return out;
+	}
+
+	/**
+	 * Counts a result that has been passed to the result writer, flushing the response if the policy
+	 * requires so.
+	 */
+	void resultWritten()
+		throws IOException
+	{
+		rows++;
+		if (out != null) {
+			out.checkFlush();
+		}
+	}
+
+	private static boolean isCompressible(String contentType) {
+		if (contentType == null) {
+			return true;
+		}
+		// binary formats are already compact
+		return !contentType.startsWith(RDFFormat.BINARY.getDefaultMIMEType())
+				&& !contentType.startsWith(TupleQueryResultFormat.BINARY.getDefaultMIMEType());
+	}
+
+	private class StreamingOutputStream extends ServletOutputStream {
+
+		private final OutputStream target;
+
+		/**
+		 * The deflater of a <tt>deflate</tt> coded response, which is not released by its stream.
+		 */
+		private final Deflater deflater;
+
+		private long rowsAtFlush;
+
+		private long bytesAtFlush;
+
+		private long bytes;
+
+		private long lastFlush = System.nanoTime();
+
+		StreamingOutputStream(ServletOutputStream delegate, OutputStream compressed, Deflater deflater) {
+			this.target = compressed != null ? compressed : delegate;
+			this.deflater = deflater;
+		}
+
+		@Override
+		public void write(int b)
+			throws IOException
+		{
+			target.write(b);
+			bytes++;
+			checkFlush();
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len)
+			throws IOException
+		{
+			target.write(b, off, len);
+			bytes += len;
+			checkFlush();
+		}
+
+		void checkFlush()
+			throws IOException
+		{
+			if (flushRows > 0 && rows - rowsAtFlush >= flushRows
+					|| flushBytes > 0 && bytes - bytesAtFlush >= flushBytes
+					|| flushIntervalNanos > 0 && System.nanoTime() - lastFlush >= flushIntervalNanos)
+			{
+				flush();
+			}
+		}
+
+		@Override
+		public void flush()
+			throws IOException
+		{
+			// flushing a compressing stream emits the data compressed so far
+			target.flush();
+			rowsAtFlush = rows;
+			bytesAtFlush = bytes;
+			lastFlush = System.nanoTime();
+		}
+
+		@Override
+		public void close()
+			throws IOException
+		{
+			try {
+				// also finishes the compressed stream
+				target.close();
+			}
+			finally {
+				if (deflater != null) {
+					// frees the native memory of the deflater
+					deflater.end();
+				}
+			}
+		}
+	}
+}
@@ -13,16 +13,21 @@ import static javax.servlet.http.HttpServletResponse.SC_SERVICE_UNAVAILABLE;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.eclipse.rdf4j.http.server.metrics.QueryMetrics;
+import org.eclipse.rdf4j.query.BindingSet;
 import org.eclipse.rdf4j.query.QueryEvaluationException;
 import org.eclipse.rdf4j.query.QueryInterruptedException;
+import org.eclipse.rdf4j.query.QueryResultHandlerException;
 import org.eclipse.rdf4j.query.QueryResults;
 import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.query.TupleQueryResultHandler;
 import org.eclipse.rdf4j.query.TupleQueryResultHandlerException;
 import org.eclipse.rdf4j.query.resultio.BasicQueryWriterSettings;
 import org.eclipse.rdf4j.query.resultio.TupleQueryResultFormat;
@@ -97,7 +102,14 @@ public class TupleQueryResultView extends QueryResultView {
 					}
 				}
 
-				QueryResults.report(tupleQueryResult, qrWriter);
+				QueryMetrics metrics = (QueryMetrics)model.get(METRICS_KEY);
+				StreamingResponse streaming = (StreamingResponse)model.get(STREAMING_RESPONSE_KEY);
+				if (metrics != null || streaming != null) {
+					QueryResults.report(tupleQueryResult, new CountingHandler(qrWriter, metrics, streaming));
+				}
+				else {
+					QueryResults.report(tupleQueryResult, qrWriter);
+				}
 			}
 			catch (QueryInterruptedException e) {
 				logger.error("Query interrupted", e);
@@ -117,4 +129,69 @@ public class TupleQueryResultView extends QueryResultView {
 		}
 		logEndOfRequest(request);
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Passes query results on to a writer, counting them in the query's {@link QueryMetrics} and
+	 * {@link StreamingResponse}, either of which may be <tt>null</tt>.
+	 */
+	private static class CountingHandler implements TupleQueryResultHandler {
+
+		private final TupleQueryResultHandler delegate;
+
+		private final QueryMetrics metrics;
+
+		private final StreamingResponse streaming;
+
+		CountingHandler(TupleQueryResultHandler delegate, QueryMetrics metrics, StreamingResponse streaming) {
+			this.delegate = delegate;
+			this.metrics = metrics;
+			this.streaming = streaming;
+		}
+
+		@Override
+		public void handleBoolean(boolean value)
+			throws QueryResultHandlerException
+		{
+			delegate.handleBoolean(value);
+		}
+
+		@Override
+		public void handleLinks(List<String> linkUrls)
+			throws QueryResultHandlerException
+		{
+			delegate.handleLinks(linkUrls);
+		}
+
+		@Override
+		public void startQueryResult(List<String> bindingNames)
+			throws TupleQueryResultHandlerException
+		{
+			delegate.startQueryResult(bindingNames);
+		}
+
+		@Override
+		public void endQueryResult()
+			throws TupleQueryResultHandlerException
+		{
+			delegate.endQueryResult();
+		}
+
+		@Override
+		public void handleSolution(BindingSet bindingSet)
+			throws TupleQueryResultHandlerException
+		{
+			if (metrics != null) {
+				metrics.result();
+			}
+			delegate.handleSolution(bindingSet);
+			if (streaming != null) {
+				try {
+					streaming.resultWritten();
+				}
+				catch (IOException e) {
+					throw new TupleQueryResultHandlerException(e);
+				}
+			}
+		}
+	}
+}
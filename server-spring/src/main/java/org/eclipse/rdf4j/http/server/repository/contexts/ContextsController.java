@@ -16,11 +16,11 @@ import java.util.Map;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.eclipse.rdf4j.common.iteration.CloseableIteration;
 import org.eclipse.rdf4j.http.server.ProtocolUtil;
 import org.eclipse.rdf4j.http.server.ServerHTTPException;
 import org.eclipse.rdf4j.http.server.repository.QueryResultView;
 import org.eclipse.rdf4j.http.server.repository.RepositoryInterceptor;
+import org.eclipse.rdf4j.http.server.repository.RepositoryStatistics;
 import org.eclipse.rdf4j.http.server.repository.TupleQueryResultView;
 import org.eclipse.rdf4j.model.Resource;
 import org.eclipse.rdf4j.query.BindingSet;
@@ -28,14 +28,14 @@ import org.eclipse.rdf4j.query.impl.IteratingTupleQueryResult;
 import org.eclipse.rdf4j.query.impl.ListBindingSet;
 import org.eclipse.rdf4j.query.resultio.TupleQueryResultWriterFactory;
 import org.eclipse.rdf4j.query.resultio.TupleQueryResultWriterRegistry;
-import org.eclipse.rdf4j.repository.RepositoryConnection;
 import org.eclipse.rdf4j.repository.RepositoryException;
 import org.springframework.context.ApplicationContextException;
 import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.mvc.AbstractController;
 
 /**
- * Handles requests for the list of contexts in a repository.
+ * Handles requests for the list of contexts in a repository. Clients that accept an approximate list are
+ * answered from the {@link RepositoryStatistics}.
  * 
  * @author Herko ter Horst
  */
@@ -58,30 +58,22 @@ public class ContextsController extends AbstractController {
 		if (METHOD_GET.equals(request.getMethod())) {
 			List<String> columnNames = Arrays.asList("contextID");
 			List<BindingSet> contexts = new ArrayList<BindingSet>();
-			RepositoryConnection repositoryCon = RepositoryInterceptor.getRepositoryConnection(request);
+			boolean approximate = ProtocolUtil.parseBooleanParam(request,
+					RepositoryStatistics.APPROXIMATE_PARAM_NAME, false);
 			try {
-				CloseableIteration<? extends Resource, RepositoryException> contextIter = repositoryCon.getContextIDs();
-
-				try {
-					while (contextIter.hasNext()) {
-						BindingSet bindingSet = new ListBindingSet(columnNames, contextIter.next());
-						contexts.add(bindingSet);
-					}
-				}
-				finally {
-					contextIter.close();
+				for (Resource context : RepositoryStatistics.INSTANCE.getContextIDs(
+						RepositoryInterceptor.getRepositoryID(request),
+						RepositoryInterceptor.getRepository(request), approximate))
+				{
+					contexts.add(new ListBindingSet(columnNames, context));
 				}
 				model.put(QueryResultView.QUERY_RESULT_KEY,
 						new IteratingTupleQueryResult(columnNames, contexts));
 				model.put(QueryResultView.FILENAME_HINT_KEY, "contexts");
 				model.put(QueryResultView.FACTORY_KEY, factory);
 				model.put(QueryResultView.HEADERS_ONLY, METHOD_HEAD.equals(request.getMethod()));
-				model.put(QueryResultView.CONNECTION_KEY, repositoryCon);
-
 			}
 			catch (RepositoryException e) {
-				// normally the QueryResultView closes the connection, but not if an exception occurred
-				repositoryCon.close();
 				throw new ServerHTTPException("Repository error: " + e.getMessage(), e);
 			}
 		}
@@ -215,6 +215,9 @@ public class GraphController extends AbstractController {
 		catch (RepositoryException e) {
 			throw new ServerHTTPException("Repository update error: " + e.getMessage(), e);
 		}
+		finally {
+			RepositoryInterceptor.repositoryModified(request);
+		}
 	}
 
 	/**
@@ -230,13 +233,23 @@ public class GraphController extends AbstractController {
 
 		IRI graph = getGraphName(request, vf);
 
+		boolean cleared = false;
 		try (RepositoryConnection repositoryCon = RepositoryInterceptor.getRepositoryConnection(request)) {
 			repositoryCon.clear(graph);
+			cleared = true;
 
 			return new ModelAndView(EmptySuccessView.getInstance());
 		}
 		catch (RepositoryException e) {
 			throw new ServerHTTPException("Repository update error: " + e.getMessage(), e);
 		}
+		finally {
+			if (cleared) {
+				RepositoryInterceptor.repositoryCleared(request, graph);
+			}
+			else {
+				RepositoryInterceptor.repositoryModified(request);
+			}
+		}
 	}
 }
@@ -118,6 +118,9 @@ public class NamespaceController extends AbstractController {
 		catch (RepositoryException e) {
 			throw new ServerHTTPException("Repository error: " + e.getMessage(), e);
 		}
+		finally {
+			RepositoryInterceptor.repositoryModified(request);
+		}
 
 		return new ModelAndView(EmptySuccessView.getInstance());
 	}
@@ -131,6 +134,9 @@ public class NamespaceController extends AbstractController {
 		catch (RepositoryException e) {
 			throw new ServerHTTPException("Repository error: " + e.getMessage(), e);
 		}
+		finally {
+			RepositoryInterceptor.repositoryModified(request);
+		}
 
 		return new ModelAndView(EmptySuccessView.getInstance());
 	}
@@ -141,5 +141,8 @@ public class NamespacesController extends AbstractController {
 
 			return new ModelAndView(EmptySuccessView.getInstance());
 		}
+		finally {
+			RepositoryInterceptor.repositoryModified(request);
+		}
 	}
 }
@@ -18,17 +18,18 @@ import org.eclipse.rdf4j.http.protocol.Protocol;
 import org.eclipse.rdf4j.http.server.ProtocolUtil;
 import org.eclipse.rdf4j.http.server.ServerHTTPException;
 import org.eclipse.rdf4j.http.server.repository.RepositoryInterceptor;
+import org.eclipse.rdf4j.http.server.repository.RepositoryStatistics;
 import org.eclipse.rdf4j.model.Resource;
 import org.eclipse.rdf4j.model.ValueFactory;
 import org.eclipse.rdf4j.repository.Repository;
-import org.eclipse.rdf4j.repository.RepositoryConnection;
 import org.eclipse.rdf4j.repository.RepositoryException;
 import org.springframework.context.ApplicationContextException;
 import org.springframework.web.servlet.ModelAndView;
 import org.springframework.web.servlet.mvc.AbstractController;
 
 /**
- * Handles requests for the size of (set of contexts in) a repository.
+ * Handles requests for the size of (set of contexts in) a repository. Clients that accept an approximate
+ * size are answered from the {@link RepositoryStatistics}.
  * 
  * @author Herko ter Horst
  */
@@ -55,12 +56,14 @@ public class SizeController extends AbstractController {
 			ValueFactory vf = repository.getValueFactory();
 			Resource[] contexts = ProtocolUtil.parseContextParam(request, Protocol.CONTEXT_PARAM_NAME, vf);
 
+			boolean approximate = ProtocolUtil.parseBooleanParam(request,
+					RepositoryStatistics.APPROXIMATE_PARAM_NAME, false);
+
 			long size = -1;
 
-			try (RepositoryConnection repositoryCon = RepositoryInterceptor.getRepositoryConnection(
-					request))
-			{
-				size = repositoryCon.size(contexts);
+			try {
+				size = RepositoryStatistics.INSTANCE.getSize(RepositoryInterceptor.getRepositoryID(request),
+						repository, contexts, approximate);
 			}
 			catch (RepositoryException e) {
 				throw new ServerHTTPException("Repository error: " + e.getMessage(), e);
@@ -0,0 +1,314 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.repository.statements;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryException;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFHandlerException;
+import org.eclipse.rdf4j.rio.RDFParseException;
+import org.eclipse.rdf4j.rio.RDFParser;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Loads large RDF documents into a repository. The document is parsed on a separate thread, which hands
+ * statements to the loading thread in chunks through a bounded buffer, so that parsing and adding overlap.
+ * Statements are committed in batches of a fixed size rather than in a single transaction; if loading fails,
+ * the batches that were committed before the failure remain in the repository.
+ * <p>
+ * Only line-based and binary formats are supported, as these can be parsed with little per-statement
+ * overhead.
+ */
+public class BulkStatementLoader {
+
+	/**
+	 * Number of statements handed from the parser to the loader at once.
+	 */
+	private static final int CHUNK_SIZE = 1024;
+
+	/**
+	 * Number of chunks that the parser may run ahead of the loader.
+	 */
+	private static final int BUFFERED_CHUNKS = 64;
+
+	/**
+	 * Size of the buffer used for reading the request body.
+	 */
+	private static final int READ_BUFFER_SIZE = 1024 * 1024;
+
+	private static final Statement[] END_OF_DATA = new Statement[0];
+
+	/**
+	 * Configurable system property {@code rdf4j.server.bulk.parsers} for specifying the maximum number of
+	 * documents that are parsed concurrently. Further bulk loads wait for a parser thread.
+	 */
+	static final String PARSERS_PROPERTY = "rdf4j.server.bulk.parsers";
+
+	private static final int DEFAULT_PARSERS = 8;
+
+	private static final Logger logger = LoggerFactory.getLogger(BulkStatementLoader.class);
+
+	private static final ThreadPoolExecutor parsers = createParsers();
+
+	private final RepositoryConnection con;
+
+	private final int batchSize;
+
+	private final Runnable onCommit;
+
+	private final BlockingQueue<Statement[]> chunks = new ArrayBlockingQueue<>(BUFFERED_CHUNKS);
+
+	private volatile boolean cancelled;
+
+	private volatile Exception parseError;
+
+	/**
+	 * @param con
+	 *        the connection to add statements with, which must not have an active transaction.
+	 * @param batchSize
+	 *        the number of statements to add per transaction. Batches are committed at chunk boundaries, so
+	 *        a batch may slightly exceed this size.
+	 * @param onCommit
+	 *        invoked after every intermediate commit, as the committed statements are visible to other
+	 *        requests before the load is done.
+	 */
+	BulkStatementLoader(RepositoryConnection con, int batchSize, Runnable onCommit) {
+		this.con = con;
+		this.batchSize = batchSize;
+		this.onCommit = onCommit;
+	}
+
+	/**
+	 * @return <tt>true</tt> if the format can be loaded in bulk.
+	 */
+	static boolean supports(RDFFormat format) {
+		return RDFFormat.BINARY.equals(format) || RDFFormat.NTRIPLES.equals(format);
+	}
+
+	private static ThreadPoolExecutor createParsers() {
+		int threads = DEFAULT_PARSERS;
+		final String configuredValue = System.getProperty(PARSERS_PROPERTY);
+		if (configuredValue != null) {
+			try {
+				threads = Integer.parseInt(configuredValue);
+			}
+			catch (NumberFormatException e) {
+				logger.warn("Expected integer value for property {}. Parsers will default to {}. ",
+						PARSERS_PROPERTY, DEFAULT_PARSERS);
+			}
+		}
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(),
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("rdf4j-bulk-parser-%d").build());
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * Stops the parser threads. Invoked when the server is shut down.
+	 */
+	public static void shutdown() {
+		parsers.shutdownNow();
+	}
+
+	/**
+	 * Parses the supplied document and adds its statements to the repository.
+	 *
+	 * @param in
+	 *        the document to load.
+	 * @param baseURI
+	 *        the base URI of the document.
+	 * @param format
+	 *        the format of the document.
+	 * @param clearContexts
+	 *        <tt>true</tt> to remove the statements in the contexts before adding new ones, as part of the
+	 *        first batch.
+	 * @param contexts
+	 *        the contexts to add the statements to.
+	 * @return the number of statements that have been added.
+	 * @throws RDFParseException
+	 *         if the document is malformed.
+	 * @throws IOException
+	 *         if the document could not be read.
+	 * @throws RepositoryException
+	 *         if the statements could not be added.
+	 */
+	long load(InputStream in, String baseURI, RDFFormat format, boolean clearContexts, Resource... contexts)
+		throws RDFParseException, IOException, RepositoryException
+	{
+		RDFParser parser = Rio.createParser(format, con.getValueFactory());
+		parser.setParserConfig(con.getParserConfig());
+		parser.setRDFHandler(new ChunkingHandler());
+		InputStream buffered = new BufferedInputStream(in, READ_BUFFER_SIZE);
+		Future<?> parsing = parsers.submit(() -> parse(parser, buffered, baseURI));
+
+		long count = 0;
+		boolean success = false;
+		con.begin();
+		try {
+			if (clearContexts) {
+				con.clear(contexts);
+			}
+			int inBatch = 0;
+			Statement[] chunk;
+			while ((chunk = take()) != END_OF_DATA) {
+				con.add(Arrays.asList(chunk), contexts);
+				count += chunk.length;
+				inBatch += chunk.length;
+				if (inBatch >= batchSize) {
+					con.commit();
+					onCommit.run();
+					con.begin();
+					inBatch = 0;
+				}
+			}
+			if (parseError != null) {
+				throw parseError;
+			}
+			con.commit();
+			success = true;
+			return count;
+		}
+		catch (IOException | RuntimeException e) {
+			throw e;
+		}
+		catch (Exception e) {
+			throw new RepositoryException(e);
+		}
+		finally {
+			if (!success) {
+				cancelled = true;
+				chunks.clear();
+				// stop the parser from reading a request body that the container may recycle
+				try {
+					buffered.close();
+				}
+				catch (IOException e) {
+					logger.debug("failed to close request body", e);
+				}
+			}
+			try {
+				awaitParser(parsing);
+			}
+			finally {
+				if (!success && con.isActive()) {
+					con.rollback();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Waits for the parser to stop using the request body.
+	 */
+	private void awaitParser(Future<?> parsing) {
+		try {
+			parsing.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		catch (ExecutionException | CancellationException e) {
+			// parse errors are recorded by the parser, and rejection means it never ran
+		}
+	}
+
+	private void parse(RDFParser parser, InputStream in, String baseURI) {
+		if (cancelled) {
+			return;
+		}
+		try {
+			parser.parse(in, baseURI);
+		}
+		catch (Exception e) {
+			parseError = e;
+		}
+		finally {
+			try {
+				put(END_OF_DATA);
+			}
+			catch (RDFHandlerException e) {
+				// the loader has given up
+			}
+		}
+	}
+
+	private Statement[] take()
+		throws InterruptedException
+	{
+		return chunks.take();
+	}
+
+	private void put(Statement[] chunk)
+		throws RDFHandlerException
+	{
+		try {
+			while (!chunks.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+				if (cancelled) {
+					throw new RDFHandlerException("bulk load cancelled");
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RDFHandlerException(e);
+		}
+	}
+
+	/**
+	 * Collects parsed statements into chunks and hands them to the loader.
+	 */
+	private class ChunkingHandler extends AbstractRDFHandler {
+
+		private Statement[] chunk = new Statement[CHUNK_SIZE];
+
+		private int size;
+
+		@Override
+		public void handleStatement(Statement st)
+			throws RDFHandlerException
+		{
+			chunk[size++] = st;
+			if (size == CHUNK_SIZE) {
+				put(chunk);
+				chunk = new Statement[CHUNK_SIZE];
+				size = 0;
+			}
+		}
+
+		@Override
+		public void endRDF()
+			throws RDFHandlerException
+		{
+			if (size > 0) {
+				put(Arrays.copyOf(chunk, size));
+				size = 0;
+			}
+		}
+	}
+}
@@ -11,6 +11,7 @@ import static javax.servlet.http.HttpServletResponse.SC_OK;
 
 import java.io.OutputStream;
 import java.nio.charset.Charset;
+import java.util.List;
 import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
@@ -31,7 +32,8 @@ import org.springframework.web.servlet.View;
 
 /**
  * View used to export statements. Renders the statements as RDF using a serialization specified using a
- * parameter or Accept header.
+ * parameter or Accept header. Exports of several contexts in N-Triples or N-Quads may be serialized in
+ * parallel, see {@link ParallelStatementExporter}.
  * 
  * @author Herko ter Horst
  */
@@ -105,7 +107,16 @@ public class ExportStatementsView implements View {
 
 			if (!headersOnly) {
 				try (RepositoryConnection conn = RepositoryInterceptor.getRepositoryConnection(request)) {
-					conn.exportStatements(subj, pred, obj, useInferencing, rdfWriter, contexts);
+					List<Resource> parallelContexts = ParallelStatementExporter.getParallelContexts(conn,
+							rdfFormat, contexts);
+					if (parallelContexts != null) {
+						new ParallelStatementExporter(RepositoryInterceptor.getRepositoryID(request),
+								RepositoryInterceptor.getRepository(request), rdfWriterFactory, subj, pred,
+								obj, useInferencing).export(conn, parallelContexts, out);
+					}
+					else {
+						conn.exportStatements(subj, pred, obj, useInferencing, rdfWriter, contexts);
+					}
 				}
 			}
 			out.close();
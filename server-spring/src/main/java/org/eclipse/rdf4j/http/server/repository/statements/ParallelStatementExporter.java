@@ -0,0 +1,419 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.repository.statements;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.rdf4j.common.iteration.Iterations;
+import org.eclipse.rdf4j.http.server.repository.RepositoryConnectionPool;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryException;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFWriterFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Exports the statements of several contexts in parallel. Each context is serialized by a worker thread,
+ * on its own connection, into its own buffer; the buffers are written to the response in the order of the
+ * contexts. This is only done for line-based formats (N-Triples and N-Quads), whose documents can be
+ * concatenated.
+ * <p>
+ * The first context that has not been written yet is always serialized directly to the response, by the
+ * request thread if no worker has started on it, so that the export makes progress even when all workers
+ * are busy. Workers that run ahead stop when their buffer is full, until their context is written.
+ * <p>
+ * The workers are shared by all exports and their number is bounded, so that concurrent exports cannot
+ * create threads and connections without limit; contexts that no worker gets to are exported by the request
+ * thread. Workers obtain their connections from the {@link RepositoryConnectionPool}. As every worker uses
+ * its own connection, the export is not a single snapshot of the repository if it is modified concurrently.
+ */
+public class ParallelStatementExporter {
+
+	/**
+	 * Configurable system property {@code rdf4j.server.export.parallelism} for specifying the number of
+	 * contexts that are exported in parallel. A value of 1 or less, the default, disables parallel export.
+	 */
+	public static final String PARALLELISM_PROPERTY = "rdf4j.server.export.parallelism";
+
+	/**
+	 * Configurable system property {@code rdf4j.server.export.workers} for specifying the number of worker
+	 * threads shared by all exports.
+	 */
+	public static final String WORKERS_PROPERTY = "rdf4j.server.export.workers";
+
+	private static final int DEFAULT_WORKERS = 8;
+
+	/**
+	 * Size of the chunks that workers hand to the request thread.
+	 */
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	/**
+	 * Number of bytes that a worker may buffer before it waits for its context to be written.
+	 */
+	private static final int MAX_BUFFERED = 4 * 1024 * 1024;
+
+	private static final Logger logger = LoggerFactory.getLogger(ParallelStatementExporter.class);
+
+	private static final ThreadPoolExecutor exporters = createExporters();
+
+	private static volatile int parallelism = getConfiguredParallelism();
+
+	private final String repositoryID;
+
+	private final Repository repository;
+
+	private final RDFWriterFactory writerFactory;
+
+	private final Resource subj;
+
+	private final IRI pred;
+
+	private final Value obj;
+
+	private final boolean includeInferred;
+
+	ParallelStatementExporter(String repositoryID, Repository repository, RDFWriterFactory writerFactory,
+			Resource subj, IRI pred, Value obj, boolean includeInferred)
+	{
+		this.repositoryID = repositoryID;
+		this.repository = repository;
+		this.writerFactory = writerFactory;
+		this.subj = subj;
+		this.pred = pred;
+		this.obj = obj;
+		this.includeInferred = includeInferred;
+	}
+
+	private static int getConfiguredParallelism() {
+		final String configuredValue = System.getProperty(PARALLELISM_PROPERTY);
+		if (configuredValue != null) {
+			try {
+				return Integer.parseInt(configuredValue);
+			}
+			catch (NumberFormatException e) {
+				logger.warn("Expected integer value for property {}. Parallel export will be disabled. ",
+						PARALLELISM_PROPERTY);
+			}
+		}
+		return 1;
+	}
+
+	private static ThreadPoolExecutor createExporters() {
+		int threads = DEFAULT_WORKERS;
+		final String configuredValue = System.getProperty(WORKERS_PROPERTY);
+		if (configuredValue != null) {
+			try {
+				threads = Integer.parseInt(configuredValue);
+			}
+			catch (NumberFormatException e) {
+				logger.warn("Expected integer value for property {}. Workers will default to {}. ",
+						WORKERS_PROPERTY, DEFAULT_WORKERS);
+			}
+		}
+		// contexts that wait in the queue for too long are exported by the request thread instead
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(),
+				new ThreadFactoryBuilder().setDaemon(true).setNameFormat("rdf4j-export-%d").build());
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * Sets the number of contexts that a single export serializes in parallel.
+	 */
+	static void setParallelism(int parallelism) {
+		ParallelStatementExporter.parallelism = parallelism;
+	}
+
+	/**
+	 * Stops the worker threads. Invoked when the web application is stopped.
+	 */
+	public static void shutdown() {
+		exporters.shutdownNow();
+	}
+
+	/**
+	 * Determines the contexts to export in parallel.
+	 *
+	 * @param con
+	 *        a connection to the repository.
+	 * @param format
+	 *        the format of the export.
+	 * @param contexts
+	 *        the contexts requested by the client, an empty array for all contexts.
+	 * @return the contexts to export in parallel, or <tt>null</tt> if the export should not be parallelized.
+	 */
+	static List<Resource> getParallelContexts(RepositoryConnection con, RDFFormat format, Resource[] contexts) {
+		if (parallelism <= 1 || !RDFFormat.NTRIPLES.equals(format) && !RDFFormat.NQUADS.equals(format)) {
+			return null;
+		}
+		Set<Resource> parallelContexts = new LinkedHashSet<>();
+		if (contexts.length == 0) {
+			// the default graph, followed by all named graphs
+			parallelContexts.add(null);
+			Iterations.addAll(con.getContextIDs(), parallelContexts);
+		}
+		else {
+			parallelContexts.addAll(Arrays.asList(contexts));
+		}
+		return parallelContexts.size() > 1 ? new ArrayList<>(parallelContexts) : null;
+	}
+
+	/**
+	 * Exports the statements of the supplied contexts.
+	 *
+	 * @param con
+	 *        the connection of the request, used for contexts that are exported by the request thread.
+	 * @param contexts
+	 *        the contexts to export, in the order in which they are written.
+	 * @param out
+	 *        the stream to write to, which is not closed.
+	 */
+	void export(RepositoryConnection con, List<Resource> contexts, OutputStream out)
+		throws IOException
+	{
+		List<Segment> segments = new ArrayList<>(contexts.size());
+		for (Resource context : contexts) {
+			segments.add(new Segment(context));
+		}
+		int window = Math.max(parallelism, 1);
+		int submitted = 0;
+		try {
+			for (int head = 0; head < segments.size(); head++) {
+				while (submitted < segments.size() && submitted < head + window) {
+					try {
+						exporters.execute(segments.get(submitted++));
+					}
+					catch (RejectedExecutionException e) {
+						// the server is shutting down, the request thread exports the context itself
+					}
+				}
+				Segment segment = segments.get(head);
+				if (segment.claim()) {
+					export(con, segment.context, out);
+				}
+				else {
+					segment.writeTo(out);
+				}
+			}
+		}
+		finally {
+			for (Segment segment : segments) {
+				segment.cancel();
+			}
+		}
+	}
+
+	private void export(RepositoryConnection con, Resource context, OutputStream out) {
+		con.exportStatements(subj, pred, obj, includeInferred, writerFactory.getWriter(out), context);
+	}
+
+	/**
+	 * The export of a single context.
+	 */
+	private class Segment implements Runnable {
+
+		private final Resource context;
+
+		private final AtomicBoolean claimed = new AtomicBoolean();
+
+		private final Deque<byte[]> chunks = new ArrayDeque<>();
+
+		private long buffered;
+
+		private boolean done;
+
+		private boolean cancelled;
+
+		private Throwable failure;
+
+		Segment(Resource context) {
+			this.context = context;
+		}
+
+		boolean claim() {
+			return claimed.compareAndSet(false, true);
+		}
+
+		@Override
+		public void run() {
+			if (!claim()) {
+				return;
+			}
+			try (RepositoryConnection con = RepositoryConnectionPool.INSTANCE.getConnection(repositoryID,
+					repository);
+					OutputStream out = new SegmentOutputStream())
+			{
+				synchronized (this) {
+					if (cancelled) {
+						return;
+					}
+				}
+				export(con, context, out);
+			}
+			catch (Throwable e) {
+				synchronized (this) {
+					failure = e;
+				}
+			}
+			finally {
+				synchronized (this) {
+					done = true;
+					notifyAll();
+				}
+			}
+		}
+
+		/**
+		 * Writes the output of the worker to a stream as it becomes available.
+		 */
+		void writeTo(OutputStream out)
+			throws IOException
+		{
+			while (true) {
+				byte[] chunk;
+				synchronized (this) {
+					while (chunks.isEmpty() && !done) {
+						try {
+							wait();
+						}
+						catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							throw new IOException("Interrupted while waiting for export of context " + context);
+						}
+					}
+					if (chunks.isEmpty()) {
+						rethrowFailure();
+						return;
+					}
+					chunk = chunks.poll();
+					buffered -= chunk.length;
+					notifyAll();
+				}
+				out.write(chunk);
+			}
+		}
+
+		synchronized void cancel() {
+			cancelled = true;
+			chunks.clear();
+			notifyAll();
+		}
+
+		private synchronized void add(byte[] chunk)
+			throws IOException
+		{
+			while (buffered >= MAX_BUFFERED && !cancelled) {
+				try {
+					wait();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while exporting context " + context);
+				}
+			}
+			if (cancelled) {
+				throw new IOException("Export of context " + context + " cancelled");
+			}
+			chunks.add(chunk);
+			buffered += chunk.length;
+			notifyAll();
+		}
+
+		private void rethrowFailure()
+			throws IOException
+		{
+			if (failure instanceof RuntimeException) {
+				throw (RuntimeException)failure;
+			}
+			else if (failure instanceof IOException) {
+				throw (IOException)failure;
+			}
+			else if (failure instanceof Error) {
+				throw (Error)failure;
+			}
+			else if (failure != null) {
+				throw new RepositoryException(failure);
+			}
+		}
+
+		/**
+		 * Collects the output of the worker in chunks.
+		 */
+		private class SegmentOutputStream extends OutputStream {
+
+			private byte[] buffer = new byte[CHUNK_SIZE];
+
+			private int count;
+
+			@Override
+			public void write(int b)
+				throws IOException
+			{
+				if (count == buffer.length) {
+					publish();
+				}
+				buffer[count++] = (byte)b;
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len)
+				throws IOException
+			{
+				while (len > 0) {
+					if (count == buffer.length) {
+						publish();
+					}
+					int n = Math.min(len, buffer.length - count);
+					System.arraycopy(b, off, buffer, count, n);
+					count += n;
+					off += n;
+					len -= n;
+				}
+			}
+
+			@Override
+			public void close()
+				throws IOException
+			{
+				if (count > 0) {
+					publish();
+				}
+			}
+
+			private void publish()
+				throws IOException
+			{
+				add(count == buffer.length ? buffer : Arrays.copyOf(buffer, count));
+				buffer = new byte[CHUNK_SIZE];
+				count = 0;
+			}
+		}
+	}
+}
@@ -25,10 +25,12 @@ import static org.eclipse.rdf4j.http.protocol.Protocol.USING_NAMED_GRAPH_PARAM_N
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -36,15 +38,16 @@ import javax.servlet.http.HttpServletResponse;
 import org.apache.commons.io.IOUtils;
 import org.eclipse.rdf4j.common.webapp.util.HttpServerUtil;
 import org.eclipse.rdf4j.common.webapp.views.EmptySuccessView;
+import org.eclipse.rdf4j.common.webapp.views.SimpleResponseView;
 import org.eclipse.rdf4j.http.protocol.Protocol;
 import org.eclipse.rdf4j.http.protocol.error.ErrorInfo;
 import org.eclipse.rdf4j.http.protocol.error.ErrorType;
-import org.eclipse.rdf4j.http.protocol.transaction.TransactionReader;
-import org.eclipse.rdf4j.http.protocol.transaction.operations.TransactionOperation;
 import org.eclipse.rdf4j.http.server.ClientHTTPException;
 import org.eclipse.rdf4j.http.server.HTTPException;
 import org.eclipse.rdf4j.http.server.ProtocolUtil;
 import org.eclipse.rdf4j.http.server.ServerHTTPException;
+import org.eclipse.rdf4j.http.server.queries.RunningQueries;
+import org.eclipse.rdf4j.http.server.queries.RunningQuery;
 import org.eclipse.rdf4j.http.server.repository.RepositoryInterceptor;
 import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.Resource;
@@ -53,7 +56,6 @@ import org.eclipse.rdf4j.model.ValueFactory;
 import org.eclipse.rdf4j.query.MalformedQueryException;
 import org.eclipse.rdf4j.query.QueryInterruptedException;
 import org.eclipse.rdf4j.query.QueryLanguage;
-import org.eclipse.rdf4j.query.Update;
 import org.eclipse.rdf4j.query.UpdateExecutionException;
 import org.eclipse.rdf4j.query.impl.SimpleDataset;
 import org.eclipse.rdf4j.repository.Repository;
@@ -82,14 +84,66 @@ import org.xml.sax.SAXParseException;
  */
 public class StatementsController extends AbstractController {
 
+	/**
+	 * Request parameter for enabling bulk loading of N-Triples and binary RDF data.
+	 */
+	public static final String BULK_PARAM_NAME = "bulk";
+
+	/**
+	 * Request parameter for specifying the number of statements committed per transaction when loading in
+	 * bulk.
+	 */
+	public static final String BATCH_SIZE_PARAM_NAME = "batchSize";
+
+	/**
+	 * Default number of statements committed per transaction when loading in bulk.
+	 */
+	public static final int DEFAULT_BULK_BATCH_SIZE = 100000;
+
 	private Logger logger = LoggerFactory.getLogger(this.getClass());
 
+	private int bulkBatchSize = DEFAULT_BULK_BATCH_SIZE;
+
+	private int transactionBatchSize = StreamingTransactionExecutor.DEFAULT_BATCH_SIZE;
+
+	private UpdateBatcher updateBatcher;
+
 	public StatementsController()
 		throws ApplicationContextException
 	{
 		setSupportedMethods(new String[] { METHOD_GET, METHOD_POST, METHOD_HEAD, "PUT", "DELETE" });
 	}
 
+	/**
+	 * Sets the default number of statements committed per transaction when data is added with the
+	 * {@value #BULK_PARAM_NAME} parameter.
+	 *
+	 * @param bulkBatchSize
+	 *        the number of statements per transaction.
+	 */
+	public void setBulkBatchSize(int bulkBatchSize) {
+		this.bulkBatchSize = bulkBatchSize;
+	}
+
+	/**
+	 * Sets the maximum number of consecutively added or removed statements of a transaction document that are
+	 * passed to the repository in a single call. A value of 1 or less applies each operation on its own.
+	 *
+	 * @param transactionBatchSize
+	 *        the number of statements per call.
+	 */
+	public void setTransactionBatchSize(int transactionBatchSize) {
+		this.transactionBatchSize = transactionBatchSize;
+	}
+
+	/**
+	 * Sets the {@link UpdateBatcher} that commits concurrent SPARQL updates on the same repository together.
+	 * If not set, each update is committed on its own.
+	 */
+	public void setUpdateBatcher(UpdateBatcher updateBatcher) {
+		this.updateBatcher = updateBatcher;
+	}
+
 	@Override
 	protected ModelAndView handleRequestInternal(HttpServletRequest request, HttpServletResponse response)
 		throws Exception
@@ -250,35 +304,37 @@ public class StatementsController extends AbstractController {
 		}
 
 		final int maxQueryTime = ProtocolUtil.parseTimeoutParam(request);
-		try (RepositoryConnection repositoryCon = RepositoryInterceptor.getRepositoryConnection(request)) {
-			Update update = repositoryCon.prepareUpdate(queryLn, sparqlUpdateString, baseURI);
 
-			update.setIncludeInferred(includeInferred);
-			update.setMaxExecutionTime(maxQueryTime);
+		// determine if any variable bindings have been set on this
+		// update.
+		Map<String, Value> bindings = new HashMap<String, Value>();
+		@SuppressWarnings("unchecked")
+		Enumeration<String> parameterNames = request.getParameterNames();
 
-			if (dataset != null) {
-				update.setDataset(dataset);
-			}
+		while (parameterNames.hasMoreElements()) {
+			String parameterName = parameterNames.nextElement();
 
-			// determine if any variable bindings have been set on this
-			// update.
-			@SuppressWarnings("unchecked")
-			Enumeration<String> parameterNames = request.getParameterNames();
-
-			while (parameterNames.hasMoreElements()) {
-				String parameterName = parameterNames.nextElement();
-
-				if (parameterName.startsWith(BINDING_PREFIX)
-						&& parameterName.length() > BINDING_PREFIX.length())
-				{
-					String bindingName = parameterName.substring(BINDING_PREFIX.length());
-					Value bindingValue = ProtocolUtil.parseValueParam(request, parameterName,
-							repository.getValueFactory());
-					update.setBinding(bindingName, bindingValue);
-				}
+			if (parameterName.startsWith(BINDING_PREFIX) && parameterName.length() > BINDING_PREFIX.length()) {
+				String bindingName = parameterName.substring(BINDING_PREFIX.length());
+				Value bindingValue = ProtocolUtil.parseValueParam(request, parameterName,
+						repository.getValueFactory());
+				bindings.put(bindingName, bindingValue);
 			}
+		}
 
-			update.execute();
+		UpdateBatcher.PendingUpdate update = new UpdateBatcher.PendingUpdate(queryLn, sparqlUpdateString,
+				baseURI, includeInferred, maxQueryTime, dataset, bindings);
+
+		RunningQuery runningUpdate = RunningQueries.INSTANCE.start(RepositoryInterceptor.getRepositoryID(request),
+				RunningQuery.Operation.UPDATE, sparqlUpdateString, request, null);
+		try (RepositoryConnection repositoryCon = RepositoryInterceptor.getRepositoryConnection(request)) {
+			UpdateBatcher batcher = updateBatcher;
+			if (batcher != null) {
+				batcher.execute(RepositoryInterceptor.getRepositoryID(request), repositoryCon, update);
+			}
+			else {
+				update.execute(repositoryCon);
+			}
 
 			return new ModelAndView(EmptySuccessView.getInstance());
 		}
@@ -311,6 +367,10 @@ public class StatementsController extends AbstractController {
 			ErrorInfo errInfo = new ErrorInfo(ErrorType.MALFORMED_QUERY, e.getMessage());
 			throw new ClientHTTPException(SC_BAD_REQUEST, errInfo.toString());
 		}
+		finally {
+			runningUpdate.finish();
+			RepositoryInterceptor.repositoryModified(request);
+		}
 	}
 
 	private IRI createURIOrNull(Repository repository, String graphURI) {
@@ -363,17 +423,21 @@ public class StatementsController extends AbstractController {
 		try (RepositoryConnection repositoryCon = RepositoryInterceptor.getRepositoryConnection(request)) {
 			logger.debug("Processing transaction...");
 
-			TransactionReader reader = new TransactionReader();
-			Iterable<? extends TransactionOperation> txn = reader.parse(in);
+			// operations are applied while the document is parsed
+			StreamingTransactionExecutor executor = new StreamingTransactionExecutor(repositoryCon);
+			executor.setBatchSize(transactionBatchSize);
 
 			repositoryCon.begin();
-
-			for (TransactionOperation op : txn) {
-				op.execute(repositoryCon);
+			try {
+				executor.execute(in);
+				repositoryCon.commit();
 			}
-
-			repositoryCon.commit();
-			logger.debug("Transaction processed ");
+			finally {
+				if (repositoryCon.isActive()) {
+					repositoryCon.rollback();
+				}
+			}
+			logger.debug("Transaction processed: {} operations", executor.getOperationCount());
 
 			return new ModelAndView(EmptySuccessView.getInstance());
 		}
@@ -398,6 +462,9 @@ public class StatementsController extends AbstractController {
 				throw new ServerHTTPException("Repository update error: " + e.getMessage(), e);
 			}
 		}
+		finally {
+			RepositoryInterceptor.repositoryModified(request);
+		}
 	}
 
 	/**
@@ -427,14 +494,34 @@ public class StatementsController extends AbstractController {
 			logger.info("no base URI specified, using dummy '{}'", baseURI);
 		}
 
+		final boolean bulk = ProtocolUtil.parseBooleanParam(request, BULK_PARAM_NAME, false)
+				&& BulkStatementLoader.supports(rdfFormat);
+		final long batchSize = ProtocolUtil.parseLongParam(request, BATCH_SIZE_PARAM_NAME, bulkBatchSize);
+		if (batchSize <= 0 || batchSize > Integer.MAX_VALUE) {
+			throw new ClientHTTPException(SC_BAD_REQUEST, "Invalid batch size: " + batchSize);
+		}
+
 		InputStream in = request.getInputStream();
 		try (RepositoryConnection repositoryCon = RepositoryInterceptor.getRepositoryConnection(request)) {
-			repositoryCon.begin();
-
 			if (preserveNodeIds) {
 				repositoryCon.getParserConfig().set(BasicParserSettings.PRESERVE_BNODE_IDS, true);
 			}
 
+			if (bulk) {
+				long start = System.nanoTime();
+				long count = new BulkStatementLoader(repositoryCon, (int)batchSize,
+						() -> RepositoryInterceptor.repositoryModified(request)).load(in, baseURI.toString(),
+								rdfFormat, replaceCurrent, contexts);
+				long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+				String text = count + " statements added in " + millis + " ms (" + (count * 1000 / millis)
+						+ " statements per second)";
+				logger.info(text);
+				return new ModelAndView(SimpleResponseView.getInstance(),
+						Collections.singletonMap(SimpleResponseView.CONTENT_KEY, text));
+			}
+
+			repositoryCon.begin();
+
 			if (replaceCurrent) {
 				repositoryCon.clear(contexts);
 			}
@@ -466,6 +553,9 @@ public class StatementsController extends AbstractController {
 				throw new ServerHTTPException("Repository update error: " + e.getMessage(), e);
 			}
 		}
+		finally {
+			RepositoryInterceptor.repositoryModified(request);
+		}
 	}
 
 	/**
@@ -484,8 +574,10 @@ public class StatementsController extends AbstractController {
 		Value obj = ProtocolUtil.parseValueParam(request, OBJECT_PARAM_NAME, vf);
 		Resource[] contexts = ProtocolUtil.parseContextParam(request, CONTEXT_PARAM_NAME, vf);
 
+		boolean cleared = false;
 		try (RepositoryConnection repositoryCon = RepositoryInterceptor.getRepositoryConnection(request)) {
 			repositoryCon.remove(subj, pred, obj, contexts);
+			cleared = subj == null && pred == null && obj == null;
 
 			return new ModelAndView(EmptySuccessView.getInstance());
 		}
@@ -500,5 +592,13 @@ public class StatementsController extends AbstractController {
 				throw new ServerHTTPException("Repository update error: " + e.getMessage(), e);
 			}
 		}
+		finally {
+			if (cleared) {
+				RepositoryInterceptor.repositoryCleared(request, contexts);
+			}
+			else {
+				RepositoryInterceptor.repositoryModified(request);
+			}
+		}
 	}
 }
@@ -0,0 +1,498 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.repository.statements;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.rdf4j.common.xml.SimpleSAXAdapter;
+import org.eclipse.rdf4j.common.xml.SimpleSAXParser;
+import org.eclipse.rdf4j.http.protocol.transaction.operations.AddStatementOperation;
+import org.eclipse.rdf4j.http.protocol.transaction.operations.ClearNamespacesOperation;
+import org.eclipse.rdf4j.http.protocol.transaction.operations.ClearOperation;
+import org.eclipse.rdf4j.http.protocol.transaction.operations.RemoveNamespaceOperation;
+import org.eclipse.rdf4j.http.protocol.transaction.operations.RemoveStatementsOperation;
+import org.eclipse.rdf4j.http.protocol.transaction.operations.SPARQLUpdateOperation;
+import org.eclipse.rdf4j.http.protocol.transaction.operations.SetNamespaceOperation;
+import org.eclipse.rdf4j.http.protocol.transaction.operations.TransactionOperation;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.query.Binding;
+import org.eclipse.rdf4j.query.impl.SimpleBinding;
+import org.eclipse.rdf4j.query.impl.SimpleDataset;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.xml.sax.SAXException;
+
+/**
+ * Executes a transaction document, as written by the
+ * {@link org.eclipse.rdf4j.http.protocol.transaction.TransactionWriter}, while it is being parsed. Unlike the
+ * {@link org.eclipse.rdf4j.http.protocol.transaction.TransactionReader}, which returns the complete list of
+ * operations, each operation is applied to the connection as soon as it has been read, so that the memory
+ * needed does not grow with the size of the document.
+ * <p>
+ * Consecutive additions, and consecutive removals of fully specified statements, are collected and passed to
+ * the connection in batches of {@link #setBatchSize(int) batchSize} statements. A batch size of 1 or less
+ * applies each operation on its own.
+ * <p>
+ * The caller is responsible for beginning and committing (or rolling back) the transaction.
+ */
+class StreamingTransactionExecutor extends SimpleSAXAdapter {
+
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+
+	// element and attribute names of the transaction document format
+
+	private static final String ADD_STATEMENT_TAG = "add";
+
+	private static final String BASE_URI_ATT = "baseURI";
+
+	private static final String BINDINGS_TAG = "bindings";
+
+	private static final String BINDING_BNODE_TAG = "binding_bnode";
+
+	private static final String BINDING_LITERAL_TAG = "binding_literal";
+
+	private static final String BINDING_URI_TAG = "binding_uri";
+
+	private static final String BNODE_TAG = "bnode";
+
+	private static final String CLEAR_NAMESPACES_TAG = "clearNamespaces";
+
+	private static final String CLEAR_TAG = "clear";
+
+	private static final String DATASET_TAG = "dataset";
+
+	private static final String DATATYPE_ATT = "datatype";
+
+	private static final String DATA_TYPE_ATT = "dataType";
+
+	private static final String DEFAULT_GRAPHS_TAG = "defaultGraphs";
+
+	private static final String DEFAULT_INSERT_GRAPH = "defaultInsertGraph";
+
+	private static final String DEFAULT_REMOVE_GRAPHS_TAG = "defaultRemoveGraphs";
+
+	private static final String ENCODING_ATT = "encoding";
+
+	private static final String GRAPH_TAG = "graph";
+
+	private static final String INCLUDE_INFERRED_ATT = "includeInferred";
+
+	private static final String LANGUAGE_ATT = "language";
+
+	private static final String LANG_ATT = "xml:lang";
+
+	private static final String LITERAL_TAG = "literal";
+
+	private static final String NAMED_GRAPHS_TAG = "namedGraphs";
+
+	private static final String NAME_ATT = "name";
+
+	private static final String NULL_TAG = "null";
+
+	private static final String PREFIX_ATT = "prefix";
+
+	private static final String REMOVE_NAMESPACE_TAG = "removeNamespace";
+
+	private static final String REMOVE_STATEMENTS_TAG = "remove";
+
+	private static final String SET_NAMESPACE_TAG = "setNamespace";
+
+	private static final String SPARQL_UPDATE_TAG = "sparql";
+
+	private static final String UPDATE_STRING_TAG = "updateString";
+
+	private static final String URI_TAG = "uri";
+
+	private final RepositoryConnection con;
+
+	private final ValueFactory vf;
+
+	private int batchSize = DEFAULT_BATCH_SIZE;
+
+	private final List<Value> parsedValues = new ArrayList<>();
+
+	private List<Binding> bindings;
+
+	private SPARQLUpdateOperation currentSPARQLUpdate;
+
+	private SimpleDataset currentDataset;
+
+	private final List<Statement> batch = new ArrayList<>();
+
+	private boolean batchAdds;
+
+	private long operationCount;
+
+	/**
+	 * @param con
+	 *        the connection to apply the operations to, with an active transaction.
+	 */
+	StreamingTransactionExecutor(RepositoryConnection con) {
+		this.con = con;
+		this.vf = con.getValueFactory();
+	}
+
+	/**
+	 * Sets the maximum number of statements that are added or removed in a single call to the connection.
+	 */
+	void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @return the number of operations that have been executed.
+	 */
+	long getOperationCount() {
+		return operationCount;
+	}
+
+	/**
+	 * Parses a transaction document and applies its operations.
+	 */
+	void execute(InputStream in)
+		throws SAXException, IOException
+	{
+		SimpleSAXParser saxParser = new SimpleSAXParser();
+		saxParser.setPreserveWhitespace(true);
+		saxParser.setListener(this);
+		saxParser.parse(in);
+	}
+
+	@Override
+	public void startTag(String tagName, Map<String, String> atts, String text)
+		throws SAXException
+	{
+		if (URI_TAG.equals(tagName)) {
+			parsedValues.add(vf.createIRI(text));
+		}
+		else if (BNODE_TAG.equals(tagName)) {
+			parsedValues.add(vf.createBNode(text));
+		}
+		else if (LITERAL_TAG.equals(tagName)) {
+			parsedValues.add(createLiteral(atts, text));
+		}
+		else if (NULL_TAG.equals(tagName)) {
+			parsedValues.add(null);
+		}
+		else if (SET_NAMESPACE_TAG.equals(tagName)) {
+			execute(new SetNamespaceOperation(atts.get(PREFIX_ATT), atts.get(NAME_ATT)));
+		}
+		else if (REMOVE_NAMESPACE_TAG.equals(tagName)) {
+			execute(new RemoveNamespaceOperation(atts.get(PREFIX_ATT)));
+		}
+		else if (CLEAR_NAMESPACES_TAG.equals(tagName)) {
+			execute(new ClearNamespacesOperation());
+		}
+		else if (SPARQL_UPDATE_TAG.equals(tagName)) {
+			if (currentSPARQLUpdate != null) {
+				throw new SAXException("unexpected start of SPARQL Update operation");
+			}
+			currentSPARQLUpdate = new SPARQLUpdateOperation();
+			currentSPARQLUpdate.setBaseURI(atts.get(BASE_URI_ATT));
+			currentSPARQLUpdate.setIncludeInferred(Boolean.parseBoolean(atts.get(INCLUDE_INFERRED_ATT)));
+		}
+		else if (UPDATE_STRING_TAG.equals(tagName)) {
+			getCurrentSPARQLUpdate().setUpdateString(text);
+		}
+		else if (DATASET_TAG.equals(tagName)) {
+			currentDataset = new SimpleDataset();
+		}
+		else if (DEFAULT_INSERT_GRAPH.equals(tagName)) {
+			getCurrentDataset().setDefaultInsertGraph(vf.createIRI(text));
+		}
+		else if (GRAPH_TAG.equals(tagName)) {
+			parsedValues.add(vf.createIRI(text));
+		}
+		else if (BINDINGS_TAG.equals(tagName)) {
+			if (bindings != null) {
+				throw new SAXException("unexpected start of SPARQL Update operation bindings");
+			}
+			bindings = new ArrayList<>();
+		}
+		else if (BINDING_URI_TAG.equals(tagName) || BINDING_BNODE_TAG.equals(tagName)
+				|| BINDING_LITERAL_TAG.equals(tagName))
+		{
+			if (bindings == null) {
+				throw new SAXException(
+						"unexpected start of SPARQL Update operation binding (without <bindings>)");
+			}
+			String name = atts.get(NAME_ATT);
+			if (name != null && text != null) {
+				Value value;
+				if (BINDING_URI_TAG.equals(tagName)) {
+					value = vf.createIRI(text);
+				}
+				else if (BINDING_BNODE_TAG.equals(tagName)) {
+					value = vf.createBNode(text);
+				}
+				else {
+					String language = atts.get(LANGUAGE_ATT);
+					String dataType = atts.get(DATA_TYPE_ATT);
+					if (language != null) {
+						value = vf.createLiteral(text, language);
+					}
+					else if (dataType != null) {
+						value = vf.createLiteral(text, vf.createIRI(dataType));
+					}
+					else {
+						value = vf.createLiteral(text);
+					}
+				}
+				bindings.add(new SimpleBinding(name, value));
+			}
+		}
+	}
+
+	@Override
+	public void endTag(String tagName)
+		throws SAXException
+	{
+		if (ADD_STATEMENT_TAG.equals(tagName)) {
+			add();
+		}
+		else if (REMOVE_STATEMENTS_TAG.equals(tagName)) {
+			remove();
+		}
+		else if (CLEAR_TAG.equals(tagName)) {
+			Resource[] contexts = createContexts(0);
+			parsedValues.clear();
+			execute(new ClearOperation(contexts));
+		}
+		else if (SPARQL_UPDATE_TAG.equals(tagName)) {
+			execute(getCurrentSPARQLUpdate());
+			currentSPARQLUpdate = null;
+		}
+		else if (DEFAULT_GRAPHS_TAG.equals(tagName)) {
+			for (IRI graph : getGraphs("default graph")) {
+				getCurrentDataset().addDefaultGraph(graph);
+			}
+		}
+		else if (NAMED_GRAPHS_TAG.equals(tagName)) {
+			for (IRI graph : getGraphs("named graph")) {
+				getCurrentDataset().addNamedGraph(graph);
+			}
+		}
+		else if (DEFAULT_REMOVE_GRAPHS_TAG.equals(tagName)) {
+			for (IRI graph : getGraphs("default remove graph")) {
+				getCurrentDataset().addDefaultRemoveGraph(graph);
+			}
+		}
+		else if (DATASET_TAG.equals(tagName)) {
+			getCurrentSPARQLUpdate().setDataset(currentDataset);
+			currentDataset = null;
+		}
+		else if (BINDINGS_TAG.equals(tagName)) {
+			getCurrentSPARQLUpdate().setBindings(bindings.toArray(new Binding[bindings.size()]));
+			bindings = null;
+		}
+	}
+
+	@Override
+	public void endDocument()
+		throws SAXException
+	{
+		flush();
+	}
+
+	private void add()
+		throws SAXException
+	{
+		if (parsedValues.size() < 3) {
+			throw new SAXException(
+					"At least three values required for AddStatementOperation, found: " + parsedValues.size());
+		}
+		Resource subj;
+		IRI pred;
+		Value obj;
+		Resource[] contexts;
+		try {
+			subj = (Resource)parsedValues.get(0);
+			pred = (IRI)parsedValues.get(1);
+			obj = parsedValues.get(2);
+			contexts = createContexts(3);
+		}
+		catch (ClassCastException e) {
+			throw new SAXException("Invalid argument(s) for AddStatementOperation", e);
+		}
+		finally {
+			parsedValues.clear();
+		}
+		if (subj == null || pred == null || obj == null) {
+			throw new SAXException("Subject, predicate and object cannot be null for an AddStatementOperation");
+		}
+
+		if (batchSize <= 1) {
+			execute(new AddStatementOperation(subj, pred, obj, contexts));
+			return;
+		}
+		if (!batchAdds) {
+			flush();
+			batchAdds = true;
+		}
+		addToBatch(subj, pred, obj, contexts);
+		operationCount++;
+	}
+
+	private void remove()
+		throws SAXException
+	{
+		if (parsedValues.size() < 3) {
+			throw new SAXException("At least three values required for RemoveStatementsOperation, found: "
+					+ parsedValues.size());
+		}
+		Resource subj;
+		IRI pred;
+		Value obj;
+		Resource[] contexts;
+		try {
+			subj = (Resource)parsedValues.get(0);
+			pred = (IRI)parsedValues.get(1);
+			obj = parsedValues.get(2);
+			contexts = createContexts(3);
+		}
+		catch (ClassCastException e) {
+			throw new SAXException("Invalid argument(s) for RemoveStatementsOperation", e);
+		}
+		finally {
+			parsedValues.clear();
+		}
+
+		if (batchSize <= 1 || subj == null || pred == null || obj == null || containsNull(contexts)) {
+			// wildcard removals can not be expressed as statements
+			execute(new RemoveStatementsOperation(subj, pred, obj, contexts));
+			return;
+		}
+		if (batchAdds) {
+			flush();
+			batchAdds = false;
+		}
+		// a statement without context is removed from all contexts, like the operation
+		addToBatch(subj, pred, obj, contexts);
+		operationCount++;
+	}
+
+	private void addToBatch(Resource subj, IRI pred, Value obj, Resource[] contexts) {
+		if (contexts.length == 0) {
+			batch.add(vf.createStatement(subj, pred, obj));
+		}
+		else {
+			for (Resource context : contexts) {
+				batch.add(vf.createStatement(subj, pred, obj, context));
+			}
+		}
+		if (batch.size() >= batchSize) {
+			flush();
+		}
+	}
+
+	private void flush() {
+		if (batch.isEmpty()) {
+			return;
+		}
+		if (batchAdds) {
+			con.add(batch);
+		}
+		else {
+			con.remove(batch);
+		}
+		batch.clear();
+	}
+
+	private void execute(TransactionOperation op) {
+		flush();
+		op.execute(con);
+		operationCount++;
+	}
+
+	private Literal createLiteral(Map<String, String> atts, String text) {
+		String lang = atts.get(LANG_ATT);
+		String datatype = atts.get(DATATYPE_ATT);
+		String encoding = atts.get(ENCODING_ATT);
+
+		if (encoding != null && "base64".equalsIgnoreCase(encoding)) {
+			text = new String(Base64.getMimeDecoder().decode(text), StandardCharsets.UTF_8);
+		}
+
+		if (lang != null) {
+			return vf.createLiteral(text, lang);
+		}
+		else if (datatype != null) {
+			return vf.createLiteral(text, vf.createIRI(datatype));
+		}
+		else {
+			return vf.createLiteral(text);
+		}
+	}
+
+	private Resource[] createContexts(int startIdx)
+		throws SAXException
+	{
+		List<Resource> contexts = new ArrayList<>();
+		for (int i = startIdx; i < parsedValues.size(); i++) {
+			Value contextCandidate = parsedValues.get(i);
+			if (contextCandidate == null || contextCandidate instanceof Resource) {
+				contexts.add((Resource)contextCandidate);
+			}
+			else {
+				throw new SAXException("Invalid context value: " + contextCandidate.getClass());
+			}
+		}
+		return contexts.toArray(new Resource[contexts.size()]);
+	}
+
+	private List<IRI> getGraphs(String kind)
+		throws SAXException
+	{
+		List<IRI> graphs = new ArrayList<>(parsedValues.size());
+		for (Value value : parsedValues) {
+			if (!(value instanceof IRI)) {
+				throw new SAXException("unexpected value in " + kind + " list: " + value);
+			}
+			graphs.add((IRI)value);
+		}
+		parsedValues.clear();
+		return graphs;
+	}
+
+	private static boolean containsNull(Resource[] contexts) {
+		for (Resource context : contexts) {
+			if (context == null) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private SPARQLUpdateOperation getCurrentSPARQLUpdate()
+		throws SAXException
+	{
+		if (currentSPARQLUpdate == null) {
+			throw new SAXException("unexpected SPARQL Update element outside of <sparql>");
+		}
+		return currentSPARQLUpdate;
+	}
+
+	private SimpleDataset getCurrentDataset()
+		throws SAXException
+	{
+		if (currentDataset == null) {
+			throw new SAXException("unexpected dataset element outside of <dataset>");
+		}
+		return currentDataset;
+	}
+}
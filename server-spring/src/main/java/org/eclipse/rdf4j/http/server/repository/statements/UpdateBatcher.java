@@ -0,0 +1,347 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.repository.statements;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.query.Dataset;
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.query.Update;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coalesces SPARQL updates that are sent concurrently to the same repository into a single transaction
+ * (group commit), so that many small updates share the cost of a commit.
+ * <p>
+ * The first request to arrive while no batch is being collected for its repository becomes the leader: it
+ * waits up to {@link #setMaxDelay(long) maxDelay} milliseconds, or until {@link #setMaxBatchSize(int)
+ * maxBatchSize} updates have arrived, and then executes the waiting updates in one transaction on its own
+ * connection. The other requests wait for the outcome of their update. Updates that arrive while a batch is
+ * being committed form the next batch, so batches grow with the load even without a delay.
+ * <p>
+ * Each request still receives its own result: an update that can not be parsed fails on its own, and if
+ * executing or committing the batch fails, the batch is rolled back and its updates are executed again one
+ * by one, each in its own transaction. A batch is therefore atomic only as a performance measure; clients
+ * must not rely on updates of other clients being committed together with theirs.
+ * <p>
+ * A maximum batch size of 1 or less, the default, disables batching: each update is executed on its own,
+ * without waiting.
+ */
+public class UpdateBatcher {
+
+	public static final int DEFAULT_MAX_BATCH_SIZE = 1;
+
+	public static final long DEFAULT_MAX_DELAY = 10;
+
+	private final Logger logger = LoggerFactory.getLogger(UpdateBatcher.class);
+
+	private volatile int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+	private volatile long maxDelay = DEFAULT_MAX_DELAY;
+
+	private final ConcurrentMap<String, RepositoryQueue> queues = new ConcurrentHashMap<>();
+
+	private final AtomicLong batches = new AtomicLong();
+
+	private final AtomicLong batchedUpdates = new AtomicLong();
+
+	/**
+	 * Sets the maximum number of updates that are committed in a single transaction.
+	 */
+	public void setMaxBatchSize(int maxBatchSize) {
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	public int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+
+	/**
+	 * Sets the maximum time in milliseconds that the first update of a batch waits for further updates.
+	 */
+	public void setMaxDelay(long maxDelay) {
+		this.maxDelay = maxDelay;
+	}
+
+	public long getMaxDelay() {
+		return maxDelay;
+	}
+
+	/**
+	 * @return the number of batches of more than one update that have been committed.
+	 */
+	public long getBatchCount() {
+		return batches.get();
+	}
+
+	/**
+	 * @return the number of updates that have been committed as part of a batch of more than one update.
+	 */
+	public long getBatchedUpdateCount() {
+		return batchedUpdates.get();
+	}
+
+	/**
+	 * Executes an update, possibly together with concurrent updates on the same repository. This method
+	 * returns once the update has been committed, or throws the exception that executing it caused.
+	 *
+	 * @param repositoryID
+	 *        the identifier of the repository.
+	 * @param con
+	 *        a connection to the repository, without an active transaction, that is used if this request
+	 *        executes a batch.
+	 * @param update
+	 *        the update to execute.
+	 */
+	public void execute(String repositoryID, RepositoryConnection con, PendingUpdate update) {
+		int batchSize = maxBatchSize;
+		if (batchSize <= 1 || repositoryID == null) {
+			update.execute(con);
+			return;
+		}
+		RepositoryQueue queue = queues.computeIfAbsent(repositoryID, id -> new RepositoryQueue());
+		queue.submit(con, update, batchSize);
+		update.checkResult();
+	}
+
+	private void executeBatch(RepositoryConnection con, List<PendingUpdate> batch) {
+		if (batch.size() == 1) {
+			batch.get(0).executeAndRecord(con);
+			return;
+		}
+		List<Update> prepared = new ArrayList<>(batch.size());
+		List<PendingUpdate> executed = new ArrayList<>(batch.size());
+		for (PendingUpdate update : batch) {
+			try {
+				prepared.add(update.prepare(con));
+				executed.add(update);
+			}
+			catch (RuntimeException e) {
+				// preparing does not modify the repository, so the update fails on its own
+				update.completed(e);
+			}
+		}
+		if (executed.isEmpty()) {
+			return;
+		}
+
+		try {
+			con.begin();
+			for (Update update : prepared) {
+				update.execute();
+			}
+			con.commit();
+		}
+		catch (RuntimeException e) {
+			logger.debug("Batch of {} updates failed, executing them separately", executed.size(), e);
+			try {
+				if (con.isActive()) {
+					con.rollback();
+				}
+			}
+			catch (RuntimeException e1) {
+				logger.warn("Failed to roll back batch of updates", e1);
+			}
+			executeSeparately(con, executed);
+			return;
+		}
+		if (executed.size() > 1) {
+			batches.incrementAndGet();
+			batchedUpdates.addAndGet(executed.size());
+		}
+		for (PendingUpdate update : executed) {
+			update.completed(null);
+		}
+	}
+
+	private void executeSeparately(RepositoryConnection con, List<PendingUpdate> updates) {
+		for (PendingUpdate update : updates) {
+			update.executeAndRecord(con);
+		}
+	}
+
+	/**
+	 * The updates waiting to be executed on a single repository.
+	 */
+	private class RepositoryQueue {
+
+		private final Deque<PendingUpdate> pending = new ArrayDeque<>();
+
+		private boolean leaderActive;
+
+		void submit(RepositoryConnection con, PendingUpdate update, int batchSize) {
+			boolean interrupted = false;
+			try {
+				synchronized (this) {
+					pending.add(update);
+					notifyAll();
+				}
+				while (true) {
+					List<PendingUpdate> batch;
+					synchronized (this) {
+						while (!update.isDone() && leaderActive) {
+							try {
+								wait();
+							}
+							catch (InterruptedException e) {
+								// the update may already be executing, keep waiting for its outcome
+								interrupted = true;
+							}
+						}
+						if (update.isDone()) {
+							return;
+						}
+
+						// this request leads the next batch
+						leaderActive = true;
+						long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelay);
+						long remaining;
+						while (pending.size() < batchSize
+								&& (remaining = deadline - System.nanoTime()) > 0)
+						{
+							try {
+								TimeUnit.NANOSECONDS.timedWait(this, remaining);
+							}
+							catch (InterruptedException e) {
+								interrupted = true;
+								break;
+							}
+						}
+						batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+						while (batch.size() < batchSize && !pending.isEmpty()) {
+							batch.add(pending.poll());
+						}
+					}
+					try {
+						executeBatch(con, batch);
+					}
+					finally {
+						for (PendingUpdate batched : batch) {
+							if (!batched.isDone()) {
+								batched.completed(new RepositoryException("Update batch failed"));
+							}
+						}
+						synchronized (this) {
+							leaderActive = false;
+							notifyAll();
+						}
+					}
+				}
+			}
+			finally {
+				if (interrupted) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+
+	/**
+	 * A SPARQL update, with its parameters, that is waiting to be executed.
+	 */
+	static class PendingUpdate {
+
+		private final QueryLanguage queryLn;
+
+		private final String updateString;
+
+		private final String baseURI;
+
+		private final boolean includeInferred;
+
+		private final int maxExecutionTime;
+
+		private final Dataset dataset;
+
+		private final Map<String, Value> bindings;
+
+		private volatile boolean done;
+
+		private volatile RuntimeException failure;
+
+		/**
+		 * @param dataset
+		 *        the dataset of the update, or <tt>null</tt>.
+		 * @param bindings
+		 *        the values to bind variables of the update to.
+		 */
+		PendingUpdate(QueryLanguage queryLn, String updateString, String baseURI, boolean includeInferred,
+				int maxExecutionTime, Dataset dataset, Map<String, Value> bindings)
+		{
+			this.queryLn = queryLn;
+			this.updateString = updateString;
+			this.baseURI = baseURI;
+			this.includeInferred = includeInferred;
+			this.maxExecutionTime = maxExecutionTime;
+			this.dataset = dataset;
+			this.bindings = Collections.unmodifiableMap(bindings);
+		}
+
+		Update prepare(RepositoryConnection con) {
+			Update update = con.prepareUpdate(queryLn, updateString, baseURI);
+			update.setIncludeInferred(includeInferred);
+			update.setMaxExecutionTime(maxExecutionTime);
+			if (dataset != null) {
+				update.setDataset(dataset);
+			}
+			for (Map.Entry<String, Value> binding : bindings.entrySet()) {
+				update.setBinding(binding.getKey(), binding.getValue());
+			}
+			return update;
+		}
+
+		/**
+		 * Executes the update in its own transaction, throwing any exception.
+		 */
+		void execute(RepositoryConnection con) {
+			prepare(con).execute();
+		}
+
+		void executeAndRecord(RepositoryConnection con) {
+			try {
+				execute(con);
+				completed(null);
+			}
+			catch (RuntimeException e) {
+				completed(e);
+			}
+		}
+
+		void completed(RuntimeException failure) {
+			this.failure = failure;
+			this.done = true;
+		}
+
+		boolean isDone() {
+			return done;
+		}
+
+		/**
+		 * Throws the exception that executing the update caused, if any.
+		 */
+		void checkResult() {
+			RuntimeException e = failure;
+			if (e != null) {
+				throw e;
+			}
+		}
+	}
+}
@@ -7,25 +7,30 @@
  *******************************************************************************/
 package org.eclipse.rdf4j.http.server.repository.transaction;
 
+import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
-import org.eclipse.rdf4j.http.client.RDF4JProtocolSession;
 import org.eclipse.rdf4j.http.protocol.Protocol;
 import org.eclipse.rdf4j.repository.RepositoryException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.RemovalCause;
-import com.google.common.cache.RemovalListener;
-import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * Registry keeping track of active transactions identified by a {@link UUID}.
+ * <p>
+ * Lookups and registrations go through a {@link ConcurrentHashMap} and never take a registry-wide lock, so
+ * requests on different transactions do not contend with each other. Each entry records the time it was
+ * last accessed; a background sweeper periodically deregisters (and closes) transactions that have not been
+ * accessed within the configured timeout and have no operations in progress.
  * 
  * @author Jeen Broekstra
  */
@@ -53,17 +58,17 @@ public enum ActiveTransactionRegistry {
 	public final static int DEFAULT_TIMEOUT = Protocol.TIMEOUT.DEFAULT;
 
 	/**
-	 * primary cache for transactions, accessible via transaction ID. Cache entries are kept until a
-	 * transaction signals it has ended, or until the secondary cache finds an "orphaned" transaction entry.
+	 * Interval (in milliseconds) at which the registry is swept for expired transactions.
 	 */
-	private final Cache<UUID, Transaction> primaryCache;
+	private static final long SWEEP_INTERVAL = 1000;
 
 	/**
-	 * The secondary cache does automatic cleanup of its entries based on the configured timeout. If an
-	 * expired transaction is no longer active, it is considered "orphaned" and discarded from the primary
-	 * cache.
+	 * Active transactions, accessible via transaction ID. Entries are kept until a transaction signals it has
+	 * ended, or until the sweeper finds an "orphaned" transaction entry.
 	 */
-	private final Cache<UUID, Transaction> secondaryCache;
+	private final ConcurrentMap<UUID, Entry> transactions = new ConcurrentHashMap<>();
+
+	private final ScheduledExecutorService sweeper;
 
 	/**
 	 * private constructor.
@@ -80,42 +85,10 @@ public enum ActiveTransactionRegistry {
 			}
 		}
 
-		primaryCache = CacheBuilder.newBuilder().removalListener(new RemovalListener<UUID, Transaction>() {
-
-			@Override
-			public void onRemoval(RemovalNotification<UUID, Transaction> notification) {
-				Transaction entry = notification.getValue();
-				try {
-					entry.close();
-				}
-				catch (RepositoryException | InterruptedException | ExecutionException e) {
-					// fall through
-				}
-			}
-		}).build();
-
-		secondaryCache = CacheBuilder.newBuilder().removalListener(new RemovalListener<UUID, Transaction>() {
-
-			@Override
-			public void onRemoval(RemovalNotification<UUID, Transaction> notification) {
-				if (RemovalCause.EXPIRED.equals(notification.getCause())) {
-					final UUID transactionId = notification.getKey();
-					final Transaction entry = notification.getValue();
-					synchronized (primaryCache) {
-						if (!entry.hasActiveOperations()) {
-							// no operation active, we can decommission this entry
-							primaryCache.invalidate(transactionId);
-							logger.warn("deregistered expired transaction {}", transactionId);
-						}
-						else {
-							// operation still active. Reinsert in secondary cache.
-							secondaryCache.put(transactionId, entry);
-						}
-					}
-				}
-			}
-		}).expireAfterAccess(timeout, TimeUnit.SECONDS).build();
-
+		sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setDaemon(
+				true).setNameFormat("rdf4j-transaction-registry-sweeper").build());
+		sweeper.scheduleWithFixedDelay(this::expireTransactions, SWEEP_INTERVAL, SWEEP_INTERVAL,
+				TimeUnit.MILLISECONDS);
 	}
 
 	public long getTimeout(TimeUnit unit) {
@@ -123,34 +96,33 @@ public enum ActiveTransactionRegistry {
 	}
 
 	/**
-	 * @param txnId
+	 * @return the number of registered transactions.
+	 */
+	public int getActiveTransactionCount() {
+		return transactions.size();
+	}
+
+	/**
 	 * @param txn
 	 */
 	public void register(Transaction txn) {
-		synchronized (primaryCache) {
-			Transaction existingTxn = primaryCache.getIfPresent(txn.getID());
-			if (existingTxn == null) {
-				primaryCache.put(txn.getID(), txn);
-				secondaryCache.put(txn.getID(), txn);
-				logger.debug("registered transaction {} ", txn.getID());
-			}
-			else {
-				logger.error("transaction already registered: {}", txn.getID());
-				throw new RepositoryException(
-						"transaction with id " + txn.getID().toString() + " already registered.");
-			}
+		Entry existing = transactions.putIfAbsent(txn.getID(), new Entry(txn));
+		if (existing == null) {
+			logger.debug("registered transaction {} ", txn.getID());
+		}
+		else {
+			logger.error("transaction already registered: {}", txn.getID());
+			throw new RepositoryException(
+					"transaction with id " + txn.getID().toString() + " already registered.");
 		}
 	}
 
 	public Transaction getTransaction(UUID id) {
-		synchronized (primaryCache) {
-			Transaction entry = primaryCache.getIfPresent(id);
-			if (entry == null) {
-				throw new RepositoryException("transaction with id " + id.toString() + " not registered.");
-			}
-			updateSecondaryCache(entry);
-			return entry;
+		Entry entry = transactions.get(id);
+		if (entry == null || !entry.touch()) {
+			throw new RepositoryException("transaction with id " + id.toString() + " not registered.");
 		}
+		return entry.transaction;
 	}
 
 	/**
@@ -159,57 +131,120 @@ public enum ActiveTransactionRegistry {
 	 * @param txn
 	 */
 	public void active(Transaction txn) {
-		synchronized (primaryCache) {
-			updateSecondaryCache(txn);
-			Transaction existingTxn = primaryCache.getIfPresent(txn.getID());
-			if (existingTxn == null) {
-				// reinstate transaction that timed-out too soon
-				primaryCache.put(txn.getID(), txn);
-				logger.debug("reinstated transaction {} ", txn.getID());
-			}
+		Entry entry = transactions.get(txn.getID());
+		if (entry != null && entry.transaction == txn && entry.touch()) {
+			return;
 		}
+		// reinstate transaction that timed-out too soon
+		transactions.compute(txn.getID(), (id, current) -> {
+			if (current != null && current.transaction == txn && current.touch()) {
+				return current;
+			}
+			return new Entry(txn);
+		});
+		logger.debug("reinstated transaction {} ", txn.getID());
 	}
 
 	/**
 	 * @param transaction
 	 */
 	public void deregister(Transaction transaction) {
+		Entry entry = transactions.remove(transaction.getID());
+		if (entry == null) {
+			throw new RepositoryException(
+					"transaction with id " + transaction.getID().toString() + " not registered.");
+		}
+		entry.expire();
+		close(entry.transaction);
+		logger.debug("deregistered transaction {}", transaction.getID());
+	}
 
-		synchronized (primaryCache) {
-			Transaction entry = primaryCache.getIfPresent(transaction.getID());
-			if (entry == null) {
-				throw new RepositoryException(
-						"transaction with id " + transaction.getID().toString() + " not registered.");
-			}
-			else {
-				primaryCache.invalidate(transaction.getID());
-				secondaryCache.invalidate(transaction.getID());
-				logger.debug("deregistered transaction {}", transaction.getID());
+	/**
+	 * Stops sweeping for expired transactions. Invoked when the server is shut down.
+	 */
+	public void shutdown() {
+		sweeper.shutdownNow();
+	}
+
+	/**
+	 * Deregisters all transactions that have not been accessed within the timeout and no longer have any
+	 * operations in progress. Transactions that are still busy have their access time reset instead.
+	 */
+	private void expireTransactions() {
+		try {
+			long deadline = System.nanoTime() - TimeUnit.SECONDS.toNanos(timeout);
+			for (Map.Entry<UUID, Entry> e : transactions.entrySet()) {
+				Entry entry = e.getValue();
+				long lastAccess = entry.lastAccess.get();
+				if (lastAccess == Entry.EXPIRED || lastAccess - deadline > 0) {
+					continue;
+				}
+				if (entry.transaction.hasActiveOperations()) {
+					// operation still active, keep the transaction alive
+					entry.lastAccess.compareAndSet(lastAccess, System.nanoTime());
+				}
+				else if (entry.lastAccess.compareAndSet(lastAccess, Entry.EXPIRED)
+						&& transactions.remove(e.getKey(), entry))
+				{
+					// no operation active, we can decommission this entry
+					close(entry.transaction);
+					logger.warn("deregistered expired transaction {}", e.getKey());
+				}
 			}
 		}
+		catch (RuntimeException e) {
+			logger.error("failed to expire transactions", e);
+		}
+	}
+
+	private void close(Transaction transaction) {
+		try {
+			transaction.close();
+		}
+		catch (RepositoryException | InterruptedException | ExecutionException e) {
+			// fall through
+		}
 	}
 
 	/**
-	 * Checks if the given transaction entry is still in the secondary cache (resetting its last access time
-	 * in the process) and if not reinserts it.
-	 * 
-	 * @param transaction
-	 *        the transaction to check
+	 * A registered transaction together with the time (as given by {@link System#nanoTime()}) at which it was
+	 * last accessed.
 	 */
-	private void updateSecondaryCache(final Transaction transaction) {
-		try {
-			secondaryCache.get(transaction.getID(), new Callable<Transaction>() {
+	private static class Entry {
 
-				@Override
-				public Transaction call()
-					throws Exception
-				{
-					return transaction;
+		/**
+		 * Access time marking an entry that has been deregistered and must no longer be handed out.
+		 */
+		static final long EXPIRED = Long.MIN_VALUE;
+
+		final Transaction transaction;
+
+		final AtomicLong lastAccess;
+
+		Entry(Transaction transaction) {
+			this.transaction = transaction;
+			this.lastAccess = new AtomicLong(System.nanoTime());
+		}
+
+		/**
+		 * Resets the last access time of this entry.
+		 *
+		 * @return <tt>false</tt> if the entry has already expired, <tt>true</tt> otherwise.
+		 */
+		boolean touch() {
+			long current;
+			do {
+				current = lastAccess.get();
+				if (current == EXPIRED) {
+					return false;
 				}
-			});
+			}
+			while (!lastAccess.compareAndSet(current, System.nanoTime()));
+			return true;
 		}
-		catch (ExecutionException e) {
-			throw new RuntimeException(e);
+
+		void expire() {
+			lastAccess.set(EXPIRED);
 		}
 	}
 }
@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.repository.transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * {@link TransactionScheduler} that runs transactions on threads taken from a shared pool. A pooled thread is
+ * leased to a single transaction from the moment the transaction is started until it is closed, so that all
+ * operations of the transaction still execute serially on one thread. Stores may hold thread-owned locks
+ * between the operations of a transaction, which is why a thread is never shared between two open
+ * transactions. Once a transaction is closed its thread returns to the pool and is reused by later
+ * transactions; threads that stay idle for longer than the keep-alive time are discarded.
+ * <p>
+ * The total number of pooled threads is bounded by {@link #setMaxTransactions(int) the maximum number of
+ * active transactions}.
+ */
+public class SharedPoolTransactionScheduler extends TransactionScheduler {
+
+	private static final Logger logger = LoggerFactory.getLogger(SharedPoolTransactionScheduler.class);
+
+	/**
+	 * Default time (in seconds) that an idle pooled thread is kept alive.
+	 */
+	public static final int DEFAULT_KEEP_ALIVE = 60;
+
+	private final ThreadPoolExecutor pool = new ThreadPoolExecutor(0, Integer.MAX_VALUE, DEFAULT_KEEP_ALIVE,
+			TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+			new ThreadFactoryBuilder().setNameFormat("rdf4j-transaction-%d").build());
+
+	/**
+	 * Sets the time that an idle pooled thread is kept alive before it is discarded.
+	 *
+	 * @param keepAlive
+	 *        the keep-alive time in seconds.
+	 */
+	public void setKeepAlive(int keepAlive) {
+		pool.setKeepAliveTime(keepAlive, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * @return the number of threads currently in the pool, both leased and idle.
+	 */
+	public int getPoolSize() {
+		return pool.getPoolSize();
+	}
+
+	@Override
+	protected ExecutorService createExecutor(Runnable onTermination) {
+		LeasedThreadExecutor executor = new LeasedThreadExecutor(onTermination);
+		pool.execute(executor::runTasks);
+		return executor;
+	}
+
+	@Override
+	public void shutDown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Executes the tasks of a single transaction, in order, on the pooled thread that runs
+	 * {@link #runTasks()}.
+	 */
+	private static class LeasedThreadExecutor extends AbstractExecutorService {
+
+		private static final Runnable END_OF_TASKS = () -> {
+		};
+
+		private final BlockingQueue<Runnable> tasks = new LinkedBlockingQueue<>();
+
+		private final CountDownLatch terminated = new CountDownLatch(1);
+
+		private final Runnable onTermination;
+
+		private boolean shutdown = false;
+
+		private volatile Thread thread;
+
+		LeasedThreadExecutor(Runnable onTermination) {
+			this.onTermination = onTermination;
+		}
+
+		void runTasks() {
+			thread = Thread.currentThread();
+			try {
+				Runnable task;
+				while ((task = tasks.take()) != END_OF_TASKS) {
+					try {
+						task.run();
+					}
+					catch (RuntimeException e) {
+						logger.warn("transaction task failed", e);
+					}
+				}
+			}
+			catch (InterruptedException e) {
+				// shutdownNow was invoked
+			}
+			finally {
+				thread = null;
+				onTermination.run();
+				terminated.countDown();
+			}
+		}
+
+		@Override
+		public synchronized void execute(Runnable command) {
+			if (shutdown) {
+				throw new RejectedExecutionException("transaction executor has been shut down");
+			}
+			tasks.add(command);
+		}
+
+		@Override
+		public synchronized void shutdown() {
+			if (!shutdown) {
+				shutdown = true;
+				tasks.add(END_OF_TASKS);
+			}
+		}
+
+		@Override
+		public synchronized List<Runnable> shutdownNow() {
+			shutdown = true;
+			List<Runnable> pending = new ArrayList<>();
+			tasks.drainTo(pending);
+			pending.remove(END_OF_TASKS);
+			tasks.add(END_OF_TASKS);
+			Thread current = thread;
+			if (current != null) {
+				current.interrupt();
+			}
+			return pending;
+		}
+
+		@Override
+		public synchronized boolean isShutdown() {
+			return shutdown;
+		}
+
+		@Override
+		public boolean isTerminated() {
+			return terminated.getCount() == 0;
+		}
+
+		@Override
+		public boolean awaitTermination(long timeout, TimeUnit unit)
+			throws InterruptedException
+		{
+			return terminated.await(timeout, unit);
+		}
+	}
+}
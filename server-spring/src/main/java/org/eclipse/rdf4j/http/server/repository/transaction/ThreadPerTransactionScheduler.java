@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.repository.transaction;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * {@link TransactionScheduler} that gives every transaction a dedicated thread. By default these are
+ * platform threads. When {@link #setVirtualThreads(boolean) virtual threads} are enabled and the JVM
+ * supports them, each transaction runs on its own virtual thread instead, which avoids the cost of a
+ * platform thread per open transaction.
+ */
+public class ThreadPerTransactionScheduler extends TransactionScheduler {
+
+	private final Logger logger = LoggerFactory.getLogger(ThreadPerTransactionScheduler.class);
+
+	private volatile ThreadFactory threadFactory = newPlatformThreadFactory();
+
+	/**
+	 * Runs each transaction on a virtual thread rather than a platform thread. Virtual threads require a Java
+	 * 21 (or later) runtime; on older runtimes this setting is ignored with a warning.
+	 *
+	 * @param virtualThreads
+	 *        <tt>true</tt> to use virtual threads, <tt>false</tt> to use platform threads.
+	 */
+	public void setVirtualThreads(boolean virtualThreads) {
+		ThreadFactory factory = null;
+		if (virtualThreads) {
+			factory = newVirtualThreadFactory();
+			if (factory == null) {
+				logger.warn("Virtual threads are not supported by this JVM, using platform threads");
+			}
+		}
+		threadFactory = factory != null ? factory : newPlatformThreadFactory();
+	}
+
+	@Override
+	protected ExecutorService createExecutor(Runnable onTermination) {
+		return new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+				threadFactory)
+		{
+
+			@Override
+			protected void terminated() {
+				try {
+					super.terminated();
+				}
+				finally {
+					onTermination.run();
+				}
+			}
+		};
+	}
+
+	@Override
+	public void shutDown() {
+		// every executor owns its thread and is shut down by its transaction
+	}
+
+	private static ThreadFactory newPlatformThreadFactory() {
+		return new ThreadFactoryBuilder().setNameFormat("rdf4j-transaction-%d").build();
+	}
+
+	/**
+	 * Obtains a factory for virtual threads through reflection, as the Thread.ofVirtual() API is not
+	 * available on the Java version this code is compiled for.
+	 *
+	 * @return a {@link ThreadFactory} creating virtual threads, or <tt>null</tt> if the JVM does not support
+	 *         them.
+	 */
+	private static ThreadFactory newVirtualThreadFactory() {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Method name = builderClass.getMethod("name", String.class, long.class);
+			builder = name.invoke(builder, "rdf4j-transaction-", 0L);
+			return (ThreadFactory)builderClass.getMethod("factory").invoke(builder);
+		}
+		catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+}
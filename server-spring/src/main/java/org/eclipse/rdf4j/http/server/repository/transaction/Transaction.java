@@ -14,19 +14,23 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.eclipse.rdf4j.IsolationLevel;
 import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Namespace;
 import org.eclipse.rdf4j.model.Resource;
 import org.eclipse.rdf4j.model.Statement;
 import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.impl.SimpleNamespace;
 import org.eclipse.rdf4j.model.vocabulary.SESAME;
 import org.eclipse.rdf4j.query.BooleanQuery;
 import org.eclipse.rdf4j.query.Dataset;
@@ -49,16 +53,16 @@ import org.eclipse.rdf4j.rio.RDFWriter;
 import org.eclipse.rdf4j.rio.Rio;
 import org.eclipse.rdf4j.rio.helpers.AbstractRDFHandler;
 import org.eclipse.rdf4j.rio.helpers.BasicParserSettings;
+import org.eclipse.rdf4j.rio.helpers.ParseErrorLogger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
-
 /**
  * A transaction encapsulates a single {@link Thread} and a {@link RepositoryConnection}, to enable executing
  * all operations that are part of the transaction from a single, dedicated thread. This is necessary because
  * {@link RepositoryConnection} is not guaranteed thread-safe and we may run into concurrency issues if we
- * attempt to share it between the various HTTP Request worker threads.
+ * attempt to share it between the various HTTP Request worker threads. The thread is obtained from a
+ * {@link TransactionScheduler}.
  * 
  * @author Jeen Broekstra
  */
@@ -83,11 +87,15 @@ class Transaction implements AutoCloseable {
 
 	private final RepositoryConnection txnConnection;
 
+	/**
+	 * Scheduler used by transactions that are created without an explicit {@link TransactionScheduler}.
+	 */
+	private static final TransactionScheduler DEFAULT_SCHEDULER = new ThreadPerTransactionScheduler();
+
 	/**
 	 * The {@link ExecutorService} that performs all of the operations related to this Transaction.
 	 */
-	private final ExecutorService executor = Executors.newSingleThreadExecutor(
-			new ThreadFactoryBuilder().setNameFormat("rdf4j-transaction-%d").build());
+	private final ExecutorService executor;
 
 	/**
 	 * A {@link List} that tracks the state of the futures involved in this Transaction. The front of the list
@@ -107,10 +115,41 @@ class Transaction implements AutoCloseable {
 	 */
 	Transaction(Repository repository)
 		throws InterruptedException, ExecutionException
+	{
+		this(repository, DEFAULT_SCHEDULER);
+	}
+
+	/**
+	 * Create a new Transaction for the given {@link Repository}, executing its operations on a thread
+	 * provided by the given {@link TransactionScheduler}.
+	 * 
+	 * @param repository
+	 *        the {@link Repository} on which to open a transaction.
+	 * @param scheduler
+	 *        the {@link TransactionScheduler} that provides the thread for this transaction.
+	 * @throws RejectedExecutionException
+	 *         if the scheduler does not accept any more transactions.
+	 * @throws InterruptedException
+	 *         if the transaction thread is interrupted while opening a connection.
+	 * @throws ExecutionException
+	 *         if an error occurs while opening the connection.
+	 */
+	Transaction(Repository repository, TransactionScheduler scheduler)
+		throws InterruptedException, ExecutionException
 	{
 		this.id = UUID.randomUUID();
 		this.rep = repository;
-		this.txnConnection = getTransactionConnection();
+		this.executor = scheduler.createExecutor();
+		boolean connected = false;
+		try {
+			this.txnConnection = getTransactionConnection();
+			connected = true;
+		}
+		finally {
+			if (!connected) {
+				executor.shutdownNow();
+			}
+		}
 	}
 
 	/**
@@ -286,7 +325,9 @@ class Transaction implements AutoCloseable {
 	}
 
 	/**
-	 * Adds RDF data from an {@link InputStream} to the transaction.
+	 * Adds RDF data from an {@link InputStream} to the transaction. The data is parsed on the calling thread
+	 * and handed to the transaction thread in batches, so that parsing overlaps with adding the parsed
+	 * statements to the transaction. Only the transaction thread operates on the transaction connection.
 	 * 
 	 * @param inputStream
 	 * @param baseURI
@@ -299,32 +340,49 @@ class Transaction implements AutoCloseable {
 			Resource... contexts)
 		throws InterruptedException, ExecutionException
 	{
+		// the connection's value factory and parser configuration are only accessed on the transaction thread
+		final Future<RDFParser> createdParser = submit(() -> {
+			if (preserveBNodes) {
+				RDFParser parser = Rio.createParser(format);
+				parser.getParserConfig().set(BasicParserSettings.PRESERVE_BNODE_IDS, true);
+				return parser;
+			}
+			RDFParser parser = Rio.createParser(format, txnConnection.getValueFactory());
+			parser.setParserConfig(txnConnection.getParserConfig());
+			return parser;
+		});
+		final StatementPipe pipe = new StatementPipe();
 		Future<Boolean> result = submit(() -> {
 			logger.debug("executing add operation");
-			try {
-				if (preserveBNodes) {
-					// create a reconfigured parser + inserter instead of
-					// relying on standard
-					// repositoryconn add method.
-					RDFParser parser = Rio.createParser(format);
-					parser.getParserConfig().set(BasicParserSettings.PRESERVE_BNODE_IDS, true);
-					RDFInserter inserter = new RDFInserter(txnConnection);
-					inserter.setPreserveBNodeIDs(true);
-					if (contexts.length > 0) {
-						inserter.enforceContext(contexts);
-					}
-					parser.setRDFHandler(inserter);
-					parser.parse(inputStream, baseURI);
-				}
-				else {
-					txnConnection.add(inputStream, baseURI, format, contexts);
-				}
-				return true;
-			}
-			catch (IOException e) {
-				throw new RuntimeException(e);
+			RDFInserter inserter = new RDFInserter(txnConnection);
+			inserter.setPreserveBNodeIDs(preserveBNodes);
+			if (contexts.length > 0) {
+				inserter.enforceContext(contexts);
 			}
+			pipe.drainTo(inserter);
+			return true;
 		});
+
+		boolean parsed = false;
+		try {
+			RDFParser parser = createdParser.get();
+			parser.setParseErrorListener(new ParseErrorLogger());
+			parser.setRDFHandler(pipe);
+			parser.parse(inputStream, baseURI);
+			parsed = true;
+		}
+		catch (IOException | RuntimeException e) {
+			pipe.abort();
+			// report a failure of the transaction thread rather than the resulting parse abort
+			result.get();
+			throw new ExecutionException(e);
+		}
+		finally {
+			if (!parsed) {
+				// also on errors and interrupts, so that the transaction thread does not wait for more data
+				pipe.abort();
+			}
+		}
 		result.get();
 	}
 
@@ -525,6 +583,123 @@ class Transaction implements AutoCloseable {
 		}
 	}
 
+	/**
+	 * Hands parsed statements and namespaces from a parser thread to the transaction thread, in batches,
+	 * through a bounded queue.
+	 */
+	private static class StatementPipe extends AbstractRDFHandler {
+
+		private static final int BATCH_SIZE = 1024;
+
+		private static final int BUFFERED_BATCHES = 16;
+
+		private static final List<Object> END_OF_DATA = new ArrayList<>(0);
+
+		private final BlockingQueue<List<Object>> batches = new ArrayBlockingQueue<>(BUFFERED_BATCHES);
+
+		private List<Object> batch = new ArrayList<>(BATCH_SIZE);
+
+		private volatile boolean aborted;
+
+		private volatile boolean drained;
+
+		@Override
+		public void handleNamespace(String prefix, String uri)
+			throws RDFHandlerException
+		{
+			add(new SimpleNamespace(prefix, uri));
+		}
+
+		@Override
+		public void handleStatement(Statement st)
+			throws RDFHandlerException
+		{
+			add(st);
+		}
+
+		@Override
+		public void endRDF()
+			throws RDFHandlerException
+		{
+			if (!batch.isEmpty()) {
+				put(batch);
+			}
+			put(END_OF_DATA);
+		}
+
+		/**
+		 * Signals the transaction thread that parsing has failed and no more data will follow.
+		 */
+		void abort() {
+			if (aborted) {
+				return;
+			}
+			aborted = true;
+			try {
+				put(END_OF_DATA);
+			}
+			catch (RDFHandlerException e) {
+				// the transaction thread has already stopped
+			}
+		}
+
+		/**
+		 * Passes all parsed data to the supplied handler. Invoked on the transaction thread.
+		 */
+		void drainTo(RDFInserter inserter)
+			throws InterruptedException
+		{
+			try {
+				inserter.startRDF();
+				List<Object> next;
+				while ((next = batches.take()) != END_OF_DATA) {
+					for (Object value : next) {
+						if (value instanceof Statement) {
+							inserter.handleStatement((Statement)value);
+						}
+						else {
+							Namespace namespace = (Namespace)value;
+							inserter.handleNamespace(namespace.getPrefix(), namespace.getName());
+						}
+					}
+				}
+				if (!aborted) {
+					inserter.endRDF();
+				}
+			}
+			finally {
+				drained = true;
+				batches.clear();
+			}
+		}
+
+		private void add(Object value)
+			throws RDFHandlerException
+		{
+			batch.add(value);
+			if (batch.size() == BATCH_SIZE) {
+				put(batch);
+				batch = new ArrayList<>(BATCH_SIZE);
+			}
+		}
+
+		private void put(List<Object> values)
+			throws RDFHandlerException
+		{
+			try {
+				while (!batches.offer(values, 100, TimeUnit.MILLISECONDS)) {
+					if (drained) {
+						throw new RDFHandlerException("transaction operation has been aborted");
+					}
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RDFHandlerException(e);
+			}
+		}
+	}
+
 	private static class WildcardRDFRemover extends AbstractRDFHandler {
 
 		private final RepositoryConnection conn;
@@ -50,8 +50,12 @@ import org.eclipse.rdf4j.http.server.ClientHTTPException;
 import org.eclipse.rdf4j.http.server.HTTPException;
 import org.eclipse.rdf4j.http.server.ProtocolUtil;
 import org.eclipse.rdf4j.http.server.ServerHTTPException;
+import org.eclipse.rdf4j.http.server.metrics.QueryMetrics;
+import org.eclipse.rdf4j.http.server.queries.RunningQueries;
+import org.eclipse.rdf4j.http.server.queries.RunningQuery;
 import org.eclipse.rdf4j.http.server.repository.BooleanQueryResultView;
 import org.eclipse.rdf4j.http.server.repository.GraphQueryResultView;
+import org.eclipse.rdf4j.http.server.repository.QueryModifiers;
 import org.eclipse.rdf4j.http.server.repository.QueryResultView;
 import org.eclipse.rdf4j.http.server.repository.RepositoryInterceptor;
 import org.eclipse.rdf4j.http.server.repository.TupleQueryResultView;
@@ -263,7 +267,12 @@ public class TransactionController extends AbstractController {
 				case UPDATE:
 					return getSparqlUpdateResult(transaction, request, response);
 				case COMMIT:
-					transaction.commit();
+					try {
+						transaction.commit();
+					}
+					finally {
+						RepositoryInterceptor.repositoryModified(request);
+					}
 					// If commit fails with an exception, deregister should be skipped so the user
 					// has a chance to do a proper rollback. See #725.
 					ActiveTransactionRegistry.INSTANCE.deregister(transaction);
@@ -371,24 +380,44 @@ public class TransactionController extends AbstractController {
 			queryStr = request.getParameter(QUERY_PARAM_NAME);
 		}
 
+		QueryMetrics metrics = new QueryMetrics(RepositoryInterceptor.getRepositoryID(request));
+		RunningQuery runningQuery = RunningQueries.INSTANCE.start(RepositoryInterceptor.getRepositoryID(request),
+				RunningQuery.Operation.QUERY, queryStr, request, metrics);
+		try {
+			return evaluateQuery(txn, queryStr, request, response, metrics, runningQuery);
+		}
+		catch (IOException | HTTPException | RuntimeException e) {
+			runningQuery.finish();
+			throw e;
+		}
+	}
+
+	private ModelAndView evaluateQuery(Transaction txn, String queryStr, HttpServletRequest request,
+			HttpServletResponse response, QueryMetrics metrics, RunningQuery runningQuery)
+		throws IOException, HTTPException
+	{
 		View view;
 		Object queryResult;
 		FileFormatServiceRegistry<? extends FileFormat, ?> registry;
 
 		try {
+			long start = System.nanoTime();
 			Query query = getQuery(txn, queryStr, request, response);
+			metrics.prepared(start);
 
+			metrics.evaluating();
 			if (query instanceof TupleQuery) {
 				TupleQuery tQuery = (TupleQuery)query;
-
-				queryResult = txn.evaluate(tQuery);
+				QueryModifiers modifiers = QueryModifiers.fromRequest(request);
+				modifiers.pushDown(tQuery);
+				queryResult = runningQuery.track(modifiers.apply(txn.evaluate(tQuery)));
 				registry = TupleQueryResultWriterRegistry.getInstance();
 				view = TupleQueryResultView.getInstance();
 			}
 			else if (query instanceof GraphQuery) {
 				GraphQuery gQuery = (GraphQuery)query;
-
-				queryResult = txn.evaluate(gQuery);
+				QueryModifiers modifiers = QueryModifiers.fromRequest(request);
+				queryResult = runningQuery.track(modifiers.apply(txn.evaluate(gQuery)));
 				registry = RDFWriterRegistry.getInstance();
 				view = GraphQueryResultView.getInstance();
 			}
@@ -427,6 +456,8 @@ public class TransactionController extends AbstractController {
 		model.put(QueryResultView.FACTORY_KEY, factory);
 		model.put(QueryResultView.HEADERS_ONLY, false); // TODO needed for HEAD
 														// requests.
+		model.put(QueryResultView.METRICS_KEY, metrics);
+		model.put(QueryResultView.RUNNING_QUERY_KEY, runningQuery);
 		return new ModelAndView(view, model);
 	}
 
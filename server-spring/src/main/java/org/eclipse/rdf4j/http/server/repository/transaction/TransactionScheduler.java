@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.repository.transaction;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Supplies the {@link ExecutorService} on which all operations of a {@link Transaction} are executed. An
+ * executor obtained from a scheduler must execute the tasks of its transaction one at a time, in submission
+ * order, and always on the same thread. Implementations decide how these per-transaction executors are
+ * mapped onto actual threads.
+ * <p>
+ * A scheduler can limit the number of transactions that are active at the same time: once
+ * {@link #getMaxTransactions()} executors are in use, {@link #createExecutor()} rejects new transactions
+ * until an executor is shut down.
+ *
+ * @see SharedPoolTransactionScheduler
+ * @see ThreadPerTransactionScheduler
+ */
+public abstract class TransactionScheduler {
+
+	private final AtomicInteger activeTransactions = new AtomicInteger();
+
+	private volatile int maxTransactions = 0;
+
+	/**
+	 * Sets the maximum number of transactions that can be active at the same time.
+	 *
+	 * @param maxTransactions
+	 *        the maximum number of concurrently active transactions, or 0 for no limit.
+	 */
+	public void setMaxTransactions(int maxTransactions) {
+		this.maxTransactions = maxTransactions;
+	}
+
+	/**
+	 * @return the maximum number of transactions that can be active at the same time, or 0 if there is no
+	 *         limit.
+	 */
+	public int getMaxTransactions() {
+		return maxTransactions;
+	}
+
+	/**
+	 * @return the number of transactions whose executor has not yet terminated.
+	 */
+	public int getActiveTransactions() {
+		return activeTransactions.get();
+	}
+
+	/**
+	 * Creates a new executor for a single transaction. The returned executor must be shut down when the
+	 * transaction is closed, to release its slot in this scheduler.
+	 *
+	 * @return an {@link ExecutorService} that executes tasks serially on a single thread.
+	 * @throws RejectedExecutionException
+	 *         if the maximum number of active transactions has been reached, or the scheduler has been shut
+	 *         down.
+	 */
+	ExecutorService createExecutor()
+		throws RejectedExecutionException
+	{
+		int max = maxTransactions;
+		int active;
+		do {
+			active = activeTransactions.get();
+			if (max > 0 && active >= max) {
+				throw new RejectedExecutionException(
+						"maximum number of active transactions reached: " + max);
+			}
+		}
+		while (!activeTransactions.compareAndSet(active, active + 1));
+
+		boolean created = false;
+		try {
+			ExecutorService executor = createExecutor(() -> activeTransactions.decrementAndGet());
+			created = true;
+			return executor;
+		}
+		finally {
+			if (!created) {
+				activeTransactions.decrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Creates a new executor for a single transaction.
+	 *
+	 * @param onTermination
+	 *        callback that must be run exactly once, when the returned executor has terminated.
+	 * @return an {@link ExecutorService} that executes tasks serially on a single thread.
+	 * @throws RejectedExecutionException
+	 *         if the scheduler has been shut down.
+	 */
+	protected abstract ExecutorService createExecutor(Runnable onTermination)
+		throws RejectedExecutionException;
+
+	/**
+	 * Shuts down this scheduler. Executors that were handed out before are not affected, unless they share
+	 * threads owned by the scheduler.
+	 */
+	public abstract void shutDown();
+}
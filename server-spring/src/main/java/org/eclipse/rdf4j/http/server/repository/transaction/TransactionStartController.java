@@ -8,13 +8,16 @@
 package org.eclipse.rdf4j.http.server.repository.transaction;
 
 import static javax.servlet.http.HttpServletResponse.SC_CREATED;
+import static javax.servlet.http.HttpServletResponse.SC_SERVICE_UNAVAILABLE;
 
 import java.io.IOException;
 import java.lang.reflect.UndeclaredThrowableException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -49,12 +52,25 @@ public class TransactionStartController extends AbstractController {
 
 	private Logger logger = LoggerFactory.getLogger(this.getClass());
 
+	private TransactionScheduler transactionScheduler = new ThreadPerTransactionScheduler();
+
 	public TransactionStartController()
 		throws ApplicationContextException
 	{
 		setSupportedMethods(new String[] { METHOD_POST });
 	}
 
+	/**
+	 * Sets the {@link TransactionScheduler} that provides the threads on which new transactions execute.
+	 * 
+	 * @param transactionScheduler
+	 *        the scheduler for new transactions.
+	 */
+	public void setTransactionScheduler(TransactionScheduler transactionScheduler) {
+		this.transactionScheduler = Objects.requireNonNull(transactionScheduler,
+				"Transaction scheduler was null");
+	}
+
 	@Override
 	protected ModelAndView handleRequestInternal(HttpServletRequest request, HttpServletResponse response)
 		throws Exception
@@ -102,7 +118,7 @@ public class TransactionStartController extends AbstractController {
 		Transaction txn = null;
 		boolean allGood = false;
 		try {
-			txn = new Transaction(repository);
+			txn = new Transaction(repository, transactionScheduler);
 			txn.begin(isolationLevel);
 
 			UUID txnId = txn.getID();
@@ -119,11 +135,16 @@ public class TransactionStartController extends AbstractController {
 			allGood = true;
 			return result;
 		}
+		catch (RejectedExecutionException e) {
+			logger.warn("transaction start rejected: {}", e.getMessage());
+			throw new ServerHTTPException(SC_SERVICE_UNAVAILABLE,
+					"Too many active transactions, try again later");
+		}
 		catch (RepositoryException | InterruptedException | ExecutionException e) {
 			throw new ServerHTTPException("Transaction start error: " + e.getMessage(), e);
 		}
 		finally {
-			if (!allGood) {
+			if (!allGood && txn != null) {
 				try {
 					txn.close();
 				}
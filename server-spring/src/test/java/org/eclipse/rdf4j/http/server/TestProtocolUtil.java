@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.rdf4j.query.resultio.TupleQueryResultFormat;
+import org.eclipse.rdf4j.query.resultio.TupleQueryResultWriterFactory;
+import org.eclipse.rdf4j.query.resultio.TupleQueryResultWriterRegistry;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class TestProtocolUtil {
+
+	@Test
+	public void testNegotiateAcceptHeader()
+		throws Exception
+	{
+		assertEquals(TupleQueryResultFormat.JSON, negotiate("application/sparql-results+json"));
+		assertEquals(TupleQueryResultFormat.SPARQL,
+				negotiate("text/csv;q=0.5, application/sparql-results+xml"));
+		assertEquals(TupleQueryResultFormat.CSV, negotiate("text/csv, application/sparql-results+xml;q=0.5"));
+		// negotiated again from the cache
+		assertEquals(TupleQueryResultFormat.JSON, negotiate("application/sparql-results+json"));
+		assertEquals(TupleQueryResultFormat.CSV, negotiate("text/csv, application/sparql-results+xml;q=0.5"));
+	}
+
+	@Test
+	public void testNegotiateMultipleAcceptHeaders()
+		throws Exception
+	{
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addHeader("Accept", "text/csv;q=0.5");
+		request.addHeader("Accept", "text/tab-separated-values");
+		assertEquals(TupleQueryResultFormat.TSV, getFormat(request));
+	}
+
+	@Test
+	public void testNotAcceptable()
+		throws Exception
+	{
+		try {
+			negotiate("image/png");
+			fail("expected no acceptable format");
+		}
+		catch (ClientHTTPException e) {
+			assertEquals(HttpServletResponse.SC_NOT_ACCEPTABLE, e.getStatusCode());
+		}
+	}
+
+	private TupleQueryResultFormat negotiate(String accept)
+		throws Exception
+	{
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addHeader("Accept", accept);
+		return getFormat(request);
+	}
+
+	private TupleQueryResultFormat getFormat(MockHttpServletRequest request)
+		throws Exception
+	{
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		TupleQueryResultWriterFactory factory = ProtocolUtil.getAcceptableService(request, response,
+				TupleQueryResultWriterRegistry.getInstance());
+		assertEquals("Accept", response.getHeader("Vary"));
+		return factory.getTupleQueryResultFormat();
+	}
+}
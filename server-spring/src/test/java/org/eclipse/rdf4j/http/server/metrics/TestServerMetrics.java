@@ -0,0 +1,78 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.metrics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class TestServerMetrics {
+
+	@After
+	public void tearDown() {
+		ServerMetrics.INSTANCE.removeRepository("test-metrics");
+	}
+
+	@Test
+	public void testHistogram() {
+		Histogram histogram = new Histogram(new double[] { 1, 10, 100 });
+		histogram.record(0.5);
+		histogram.record(1);
+		histogram.record(50);
+		histogram.record(1000);
+
+		assertArrayEquals(new long[] { 2, 2, 3, 4 }, histogram.getCumulativeCounts());
+		assertEquals(1051.5, histogram.getSum(), 0.0);
+	}
+
+	@Test
+	public void testWritePrometheus()
+		throws Exception
+	{
+		ServerMetrics.INSTANCE.recordRequest("test-metrics", "repository", TimeUnit.MILLISECONDS.toNanos(3),
+				false);
+		ServerMetrics.INSTANCE.recordRequest("test-metrics", "repository", TimeUnit.MILLISECONDS.toNanos(3),
+				true);
+		QueryMetrics query = new QueryMetrics("test-metrics");
+		query.evaluating();
+		query.result();
+		query.result();
+		query.serialized(System.nanoTime(), 2000);
+
+		String text = write();
+		assertTrue(text.contains("# TYPE rdf4j_http_request_seconds histogram\n"));
+		assertTrue(text.contains(
+				"rdf4j_http_request_seconds_count{repository=\"test-metrics\",handler=\"repository\"} 2\n"));
+		assertTrue(text.contains(
+				"rdf4j_http_request_errors_total{repository=\"test-metrics\",handler=\"repository\"} 1\n"));
+		assertTrue(
+				text.contains("rdf4j_query_result_rows_bucket{repository=\"test-metrics\",le=\"1\"} 0\n"));
+		assertTrue(
+				text.contains("rdf4j_query_result_rows_bucket{repository=\"test-metrics\",le=\"10\"} 1\n"));
+		assertTrue(text.contains("rdf4j_query_result_bytes_sum{repository=\"test-metrics\"} 2000\n"));
+		assertTrue(text.contains("rdf4j_query_first_result_seconds_count{repository=\"test-metrics\"} 1\n"));
+
+		ServerMetrics.INSTANCE.removeRepository("test-metrics");
+		assertFalse(write().contains("test-metrics"));
+	}
+
+	private String write()
+		throws Exception
+	{
+		StringWriter out = new StringWriter();
+		ServerMetrics.INSTANCE.writePrometheus(out);
+		return out.toString();
+	}
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.queries;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.eclipse.rdf4j.http.server.metrics.QueryMetrics;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.query.QueryInterruptedException;
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+public class TestRunningQueries {
+
+	private Repository repository;
+
+	private RepositoryConnection con;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		repository = new SailRepository(new MemoryStore());
+		repository.initialize();
+		con = repository.getConnection();
+		ValueFactory vf = con.getValueFactory();
+		for (int i = 0; i < 100; i++) {
+			con.add(vf.createIRI("urn:s" + i), vf.createIRI("urn:p"), vf.createLiteral(i));
+		}
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		con.close();
+		repository.shutDown();
+	}
+
+	@Test
+	public void testRegistration() {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.setRemoteAddr("192.0.2.1");
+		RunningQuery query = RunningQueries.INSTANCE.start("test", RunningQuery.Operation.UPDATE,
+				"CLEAR ALL", request, null);
+
+		assertSame(query, RunningQueries.INSTANCE.get(query.getId()));
+		assertTrue(RunningQueries.INSTANCE.getRunningQueries().contains(query));
+		assertEquals("192.0.2.1", query.getClient());
+		assertFalse(query.isCancellable());
+		assertFalse(query.cancel());
+
+		query.finish();
+		assertNull(RunningQueries.INSTANCE.get(query.getId()));
+	}
+
+	@Test
+	public void testCancel()
+		throws Exception
+	{
+		String queryString = "SELECT * WHERE { ?s ?p ?o }";
+		QueryMetrics metrics = new QueryMetrics("test");
+		RunningQuery query = RunningQueries.INSTANCE.start("test", RunningQuery.Operation.QUERY, queryString,
+				new MockHttpServletRequest(), metrics);
+		try (TupleQueryResult result = query.track(
+				con.prepareTupleQuery(QueryLanguage.SPARQL, queryString).evaluate()))
+		{
+			assertTrue(result.hasNext());
+			result.next();
+			metrics.result();
+			assertEquals(1, query.getRows());
+
+			assertTrue(query.cancel());
+			assertTrue(query.isCancelled());
+			try {
+				result.hasNext();
+				fail("expected query to be cancelled");
+			}
+			catch (QueryInterruptedException e) {
+				// expected
+			}
+		}
+		finally {
+			query.finish();
+		}
+		assertFalse(query.cancel());
+		assertNull(RunningQueries.INSTANCE.get(query.getId()));
+	}
+}
@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.rdf4j.http.server.HTTPException;
+import org.eclipse.rdf4j.http.server.repository.AdmissionControl.Operation;
+import org.eclipse.rdf4j.http.server.repository.AdmissionControl.Permit;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+public class TestAdmissionControl {
+
+	private AdmissionControl admissionControl;
+
+	@Before
+	public void setUp() {
+		admissionControl = new AdmissionControl();
+		admissionControl.setMaxConcurrentQueries(1);
+		admissionControl.setMaxWait(50);
+	}
+
+	@Test
+	public void testQueueFull()
+		throws Exception
+	{
+		admissionControl.setMaxQueued(0);
+		Permit permit = admissionControl.acquire("test", Operation.QUERY);
+		try {
+			admissionControl.acquire("test", Operation.QUERY);
+			fail("expected rejection");
+		}
+		catch (HTTPException e) {
+			assertEquals(AdmissionControl.SC_TOO_MANY_REQUESTS, e.getStatusCode());
+		}
+
+		// other repositories and operations are not affected
+		admissionControl.acquire("other", Operation.QUERY).release();
+		admissionControl.acquire("test", Operation.UPDATE).release();
+
+		permit.release();
+		admissionControl.acquire("test", Operation.QUERY).release();
+		assertEquals(1, admissionControl.getRejectedCount());
+	}
+
+	@Test
+	public void testWaitTimeout()
+		throws Exception
+	{
+		Permit permit = admissionControl.acquire("test", Operation.QUERY);
+		try {
+			admissionControl.acquire("test", Operation.QUERY);
+			fail("expected rejection");
+		}
+		catch (HTTPException e) {
+			assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, e.getStatusCode());
+		}
+
+		// releasing twice must not admit additional requests
+		permit.release();
+		permit.release();
+		Permit next = admissionControl.acquire("test", Operation.QUERY);
+		try {
+			admissionControl.acquire("test", Operation.QUERY);
+			fail("expected rejection");
+		}
+		catch (HTTPException e) {
+			assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, e.getStatusCode());
+		}
+		next.release();
+	}
+
+	@Test
+	public void testWaitForRelease()
+		throws Exception
+	{
+		admissionControl.setMaxWait(10000);
+		Permit permit = admissionControl.acquire("test", Operation.QUERY);
+		new Thread(() -> {
+			try {
+				Thread.sleep(50);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			permit.release();
+		}).start();
+		admissionControl.acquire("test", Operation.QUERY).release();
+	}
+
+	@Test
+	public void testGlobalLimit()
+		throws Exception
+	{
+		admissionControl.setMaxConcurrentRequests(1);
+		Permit permit = admissionControl.acquire("test", Operation.UPDATE);
+		try {
+			admissionControl.acquire("other", Operation.QUERY);
+			fail("expected rejection");
+		}
+		catch (HTTPException e) {
+			assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, e.getStatusCode());
+		}
+		permit.release();
+		admissionControl.acquire("other", Operation.QUERY).release();
+	}
+
+	@Test
+	public void testMaxRequests()
+		throws Exception
+	{
+		admissionControl.setMaxRequests(2);
+		Permit first = admissionControl.acquire("test", Operation.UPDATE);
+		Permit second = admissionControl.acquire("other", Operation.QUERY);
+		try {
+			admissionControl.acquire("third", Operation.QUERY);
+			fail("expected rejection");
+		}
+		catch (HTTPException e) {
+			assertEquals(AdmissionControl.SC_TOO_MANY_REQUESTS, e.getStatusCode());
+		}
+		first.release();
+		first.release();
+		admissionControl.acquire("third", Operation.QUERY).release();
+		second.release();
+	}
+
+	@Test
+	public void testRemovedRepository()
+		throws Exception
+	{
+		Permit permit = admissionControl.acquire("test", Operation.QUERY);
+		admissionControl.remove("test");
+
+		// a repository created under the same name starts without running requests
+		admissionControl.acquire("test", Operation.QUERY).release();
+		permit.release();
+	}
+
+	@Test
+	public void testGetOperation() {
+		assertEquals(Operation.QUERY, AdmissionControl.getOperation(request("GET", "/test")));
+		assertEquals(Operation.QUERY, AdmissionControl.getOperation(request("POST", "/test")));
+		assertEquals(Operation.QUERY, AdmissionControl.getOperation(request("GET", "/test/statements")));
+		assertEquals(Operation.UPDATE, AdmissionControl.getOperation(request("POST", "/test/statements")));
+		assertEquals(Operation.UPDATE, AdmissionControl.getOperation(request("PUT", "/test/namespaces/ex")));
+		assertEquals(Operation.TRANSACTION, AdmissionControl.getOperation(request("POST", "/test/transactions")));
+		assertEquals(Operation.TRANSACTION,
+				AdmissionControl.getOperation(request("PUT", "/test/transactions/1234")));
+	}
+
+	private MockHttpServletRequest request(String method, String pathInfo) {
+		MockHttpServletRequest request = new MockHttpServletRequest(method, "/repositories" + pathInfo);
+		request.setPathInfo(pathInfo);
+		return request;
+	}
+}
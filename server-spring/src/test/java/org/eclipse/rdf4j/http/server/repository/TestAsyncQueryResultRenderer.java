@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.repository;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.impl.IteratingTupleQueryResult;
+import org.eclipse.rdf4j.query.impl.ListBindingSet;
+import org.eclipse.rdf4j.query.resultio.sparqlxml.SPARQLResultsXMLWriterFactory;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class TestAsyncQueryResultRenderer {
+
+	private final AsyncQueryResultRenderer renderer = AsyncQueryResultRenderer.INSTANCE;
+
+	private boolean enabled;
+
+	private MockHttpServletRequest request;
+
+	private MockHttpServletResponse response;
+
+	private RepositoryConnection connection;
+
+	@Before
+	public void setUp() {
+		enabled = renderer.isEnabled();
+		request = new MockHttpServletRequest("GET", "/repositories/test");
+		request.setAsyncSupported(true);
+		response = new MockHttpServletResponse();
+		connection = Mockito.mock(RepositoryConnection.class);
+	}
+
+	@After
+	public void tearDown() {
+		renderer.setEnabled(enabled);
+	}
+
+	@Test
+	public void testAsyncRendering()
+		throws Exception
+	{
+		renderer.setEnabled(true);
+
+		TupleQueryResultView.getInstance().render(createModel(), request, response);
+
+		assertNotNull(request.getAsyncContext());
+		Mockito.verify(connection, Mockito.timeout(5000)).close();
+		assertTrue(response.getContentAsString().contains("urn:result"));
+	}
+
+	@Test
+	public void testDisabled()
+		throws Exception
+	{
+		renderer.setEnabled(false);
+
+		TupleQueryResultView.getInstance().render(createModel(), request, response);
+
+		assertNull(request.getAsyncContext());
+		Mockito.verify(connection).close();
+		assertTrue(response.getContentAsString().contains("urn:result"));
+	}
+
+	private Map<String, Object> createModel() {
+		List<String> names = Arrays.asList("s");
+		BindingSet bindings = new ListBindingSet(names, SimpleValueFactory.getInstance().createIRI("urn:result"));
+
+		Map<String, Object> model = new HashMap<>();
+		model.put(QueryResultView.QUERY_RESULT_KEY, new IteratingTupleQueryResult(names, Arrays.asList(bindings)));
+		model.put(QueryResultView.FACTORY_KEY, new SPARQLResultsXMLWriterFactory());
+		model.put(QueryResultView.HEADERS_ONLY, false);
+		model.put(QueryResultView.CONNECTION_KEY, connection);
+		return model;
+	}
+}
@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.model.vocabulary.RDFS;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.GraphQueryResult;
+import org.eclipse.rdf4j.query.QueryResults;
+import org.eclipse.rdf4j.query.TupleQueryResult;
+import org.eclipse.rdf4j.query.impl.IteratingGraphQueryResult;
+import org.eclipse.rdf4j.query.impl.IteratingTupleQueryResult;
+import org.eclipse.rdf4j.query.impl.ListBindingSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestDistinctResults {
+
+	private static final ValueFactory vf = SimpleValueFactory.getInstance();
+
+	private final DistinctResults distinctResults = DistinctResults.INSTANCE;
+
+	private long memoryBudget;
+
+	@Before
+	public void setUp() {
+		memoryBudget = distinctResults.getMemoryBudget();
+	}
+
+	@After
+	public void tearDown() {
+		distinctResults.setMemoryBudget(memoryBudget);
+	}
+
+	@Test
+	public void testInMemory()
+		throws Exception
+	{
+		long spills = distinctResults.getSpillCount();
+		List<BindingSet> distinct = QueryResults.asList(distinctResults.distinct(tupleResult(200)));
+
+		assertEquals(expectedBindingSets(200), distinct);
+		assertEquals(spills, distinctResults.getSpillCount());
+	}
+
+	@Test
+	public void testSpillPreservesOrder()
+		throws Exception
+	{
+		distinctResults.setMemoryBudget(1024);
+		long spills = distinctResults.getSpillCount();
+		long spilledBytes = distinctResults.getSpilledBytes();
+
+		List<BindingSet> distinct = QueryResults.asList(distinctResults.distinct(tupleResult(200)));
+
+		assertEquals(expectedBindingSets(200), distinct);
+		assertEquals(spills + 1, distinctResults.getSpillCount());
+		assertTrue(distinctResults.getSpilledBytes() > spilledBytes);
+	}
+
+	@Test
+	public void testSpillStatements()
+		throws Exception
+	{
+		distinctResults.setMemoryBudget(0);
+		Statement st1 = vf.createStatement(vf.createIRI("urn:a"), RDF.TYPE, RDFS.CLASS);
+		Statement st2 = vf.createStatement(vf.createBNode("b"), RDFS.LABEL, vf.createLiteral("b", "en"),
+				vf.createIRI("urn:g"));
+		Statement st3 = vf.createStatement(vf.createIRI("urn:a"), RDFS.LABEL, vf.createLiteral(3));
+		GraphQueryResult result = new IteratingGraphQueryResult(Collections.<String, String> emptyMap(),
+				Arrays.asList(st1, st2, st1, st3, st2, st3));
+
+		assertEquals(Arrays.asList(st1, st2, st3), QueryResults.asList(distinctResults.distinct(result)));
+	}
+
+	@Test
+	public void testOversizedPartitionsAreSplit()
+		throws Exception
+	{
+		// each partition of 5000 results exceeds the budget, and is split again
+		distinctResults.setMemoryBudget(4096);
+		List<BindingSet> distinct = QueryResults.asList(distinctResults.distinct(tupleResult(5000)));
+
+		assertEquals(expectedBindingSets(5000), distinct);
+	}
+
+	@Test
+	public void testPartitionsAreHashedDifferentlyPerDepth() {
+		Set<Integer> subPartitions = new HashSet<>();
+		for (int i = 0; i < 5000; i++) {
+			Object result = vf.createLiteral(i);
+			if (SpillingDistinctIteration.partition(result, 0) == 0) {
+				subPartitions.add(SpillingDistinctIteration.partition(result, 1));
+			}
+		}
+		assertTrue(subPartitions.size() > DistinctResults.PARTITIONS / 2);
+	}
+
+	/**
+	 * Creates a result with values 0 to n-1, where each value is followed by a repetition of a previous one.
+	 */
+	private TupleQueryResult tupleResult(int n) {
+		List<String> names = Arrays.asList("x");
+		List<BindingSet> bindingSets = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			bindingSets.add(new ListBindingSet(names, vf.createLiteral(i)));
+			bindingSets.add(new ListBindingSet(names, vf.createLiteral(i / 2)));
+		}
+		return new IteratingTupleQueryResult(names, bindingSets);
+	}
+
+	private List<BindingSet> expectedBindingSets(int n) {
+		List<String> names = Arrays.asList("x");
+		List<BindingSet> bindingSets = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			bindingSets.add(new ListBindingSet(names, vf.createLiteral(i)));
+		}
+		return bindingSets;
+	}
+}
@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.model.vocabulary.RDFS;
+import org.eclipse.rdf4j.query.Query;
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.query.QueryResults;
+import org.eclipse.rdf4j.query.TupleQuery;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.repository.sail.SailTupleQuery;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestParsedQueryCache {
+
+	private static final String REPO_ID = "test-parsed-query-cache";
+
+	private static final String QUERY = "SELECT ?s WHERE { ?s a ?type }";
+
+	private final ParsedQueryCache cache = ParsedQueryCache.INSTANCE;
+
+	private Repository repository;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		cache.invalidate(REPO_ID);
+		repository = new SailRepository(new MemoryStore());
+		repository.initialize();
+		try (RepositoryConnection con = repository.getConnection()) {
+			ValueFactory vf = con.getValueFactory();
+			con.add(vf.createIRI("urn:a"), RDF.TYPE, RDFS.CLASS);
+			con.add(vf.createIRI("urn:b"), RDF.TYPE, RDFS.RESOURCE);
+		}
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		cache.invalidate(REPO_ID);
+		repository.shutDown();
+	}
+
+	@Test
+	public void testRepeatedQueryIsServedFromCache()
+		throws Exception
+	{
+		try (RepositoryConnection con = repository.getConnection()) {
+			Query first = cache.prepareQuery(REPO_ID, repository, con, QueryLanguage.SPARQL, QUERY, null);
+			Query second = cache.prepareQuery(REPO_ID, repository, con, QueryLanguage.SPARQL, QUERY, null);
+
+			assertTrue(second instanceof SailTupleQuery);
+			assertNotSame(((SailTupleQuery)first).getParsedQuery().getTupleExpr(),
+					((SailTupleQuery)second).getParsedQuery().getTupleExpr());
+			assertEquals(1, cache.getStats(REPO_ID).missCount());
+			assertEquals(1, cache.getStats(REPO_ID).hitCount());
+		}
+	}
+
+	@Test
+	public void testTrackedConnectionIsServedFromCache()
+		throws Exception
+	{
+		RepositoryConnectionPool.INSTANCE.setLeakThreshold(60000);
+		try (RepositoryConnection con = RepositoryConnectionPool.INSTANCE.getConnection(REPO_ID, repository)) {
+			cache.prepareQuery(REPO_ID, repository, con, QueryLanguage.SPARQL, QUERY, null);
+			Query second = cache.prepareQuery(REPO_ID, repository, con, QueryLanguage.SPARQL, QUERY, null);
+
+			assertTrue(second instanceof SailTupleQuery);
+			assertEquals(1, cache.getStats(REPO_ID).hitCount());
+		}
+		finally {
+			RepositoryConnectionPool.INSTANCE.setLeakThreshold(RepositoryConnectionPool.DEFAULT_LEAK_THRESHOLD);
+		}
+	}
+
+	@Test
+	public void testBindingsDoNotLeakBetweenRequests()
+		throws Exception
+	{
+		try (RepositoryConnection con = repository.getConnection()) {
+			TupleQuery bound = (TupleQuery)cache.prepareQuery(REPO_ID, repository, con,
+					QueryLanguage.SPARQL, QUERY, null);
+			bound.setBinding("type", RDFS.CLASS);
+			assertEquals(1, QueryResults.asList(bound.evaluate()).size());
+
+			TupleQuery unbound = (TupleQuery)cache.prepareQuery(REPO_ID, repository, con,
+					QueryLanguage.SPARQL, QUERY, null);
+			assertEquals(2, QueryResults.asList(unbound.evaluate()).size());
+		}
+	}
+
+	@Test
+	public void testInvalidate()
+		throws Exception
+	{
+		try (RepositoryConnection con = repository.getConnection()) {
+			cache.prepareQuery(REPO_ID, repository, con, QueryLanguage.SPARQL, QUERY, null);
+			cache.invalidate(REPO_ID);
+			cache.prepareQuery(REPO_ID, repository, con, QueryLanguage.SPARQL, QUERY, null);
+
+			assertEquals(1, cache.getStats(REPO_ID).missCount());
+			assertEquals(0, cache.getStats(REPO_ID).hitCount());
+		}
+	}
+}
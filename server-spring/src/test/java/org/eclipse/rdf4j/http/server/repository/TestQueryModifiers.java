@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.model.vocabulary.RDFS;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.query.QueryResults;
+import org.eclipse.rdf4j.query.TupleQuery;
+import org.eclipse.rdf4j.query.algebra.Distinct;
+import org.eclipse.rdf4j.query.algebra.Slice;
+import org.eclipse.rdf4j.query.algebra.TupleExpr;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.repository.sail.SailTupleQuery;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestQueryModifiers {
+
+	private Repository repository;
+
+	private RepositoryConnection con;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		repository = new SailRepository(new MemoryStore());
+		repository.initialize();
+		con = repository.getConnection();
+		ValueFactory vf = con.getValueFactory();
+		for (int i = 0; i < 10; i++) {
+			con.add(vf.createIRI("urn:s" + i), RDF.TYPE, RDFS.CLASS);
+			con.add(vf.createIRI("urn:s" + i), RDF.TYPE, RDFS.RESOURCE);
+		}
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		con.close();
+		repository.shutDown();
+	}
+
+	@Test
+	public void testLimitOffsetDistinctPushedDown()
+		throws Exception
+	{
+		TupleQuery query = con.prepareTupleQuery(QueryLanguage.SPARQL, "SELECT ?s WHERE { ?s a ?type }");
+		QueryModifiers modifiers = new QueryModifiers(3, 2, true);
+
+		assertTrue(modifiers.pushDown(query));
+		TupleExpr root = ((SailTupleQuery)query).getParsedQuery().getTupleExpr();
+		assertTrue(root instanceof Slice);
+		assertTrue(((Slice)root).getArg() instanceof Distinct);
+
+		List<BindingSet> result = QueryResults.asList(modifiers.apply(query.evaluate()));
+		assertEquals(3, result.size());
+		assertEquals(3, new HashSet<>(result).size());
+	}
+
+	@Test
+	public void testQueryWithLimitIsWrapped()
+		throws Exception
+	{
+		TupleQuery query = con.prepareTupleQuery(QueryLanguage.SPARQL,
+				"SELECT ?s WHERE { ?s a ?type } LIMIT 5");
+		QueryModifiers modifiers = new QueryModifiers(10, 3, false);
+
+		assertFalse(modifiers.pushDown(query));
+		assertEquals(2, QueryResults.asList(modifiers.apply(query.evaluate())).size());
+	}
+
+	@Test
+	public void testDistinctOnlyIsWrapped()
+		throws Exception
+	{
+		TupleQuery query = con.prepareTupleQuery(QueryLanguage.SPARQL, "SELECT ?s WHERE { ?s a ?type }");
+		QueryModifiers modifiers = new QueryModifiers(0, 0, true);
+
+		assertFalse(modifiers.pushDown(query));
+		assertEquals(10, QueryResults.asList(modifiers.apply(query.evaluate())).size());
+	}
+}
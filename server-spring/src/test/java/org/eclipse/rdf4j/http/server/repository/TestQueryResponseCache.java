@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.repository;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.rdf4j.http.server.repository.QueryResponseCache.CacheKey;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class TestQueryResponseCache {
+
+	private static final String QUERY = "SELECT * WHERE { ?s ?p ?o }";
+
+	private static final byte[] RESULT = "result".getBytes(StandardCharsets.UTF_8);
+
+	private final QueryResponseCache cache = QueryResponseCache.INSTANCE;
+
+	@Before
+	public void setUp() {
+		cache.setCacheSize(1024 * 1024);
+	}
+
+	@After
+	public void tearDown() {
+		cache.setCacheSize(QueryResponseCache.DEFAULT_CACHE_SIZE);
+	}
+
+	@Test
+	public void testCachedResponse()
+		throws Exception
+	{
+		MockHttpServletResponse first = new MockHttpServletResponse();
+		CacheKey key = cache.createKey("test", QUERY, createRequest());
+		assertFalse(cache.answer(key, createRequest(), first));
+		render(key, first);
+		String etag = first.getHeader("ETag");
+		assertNotNull(etag);
+
+		// equivalent request with extra whitespace around the query
+		MockHttpServletResponse second = new MockHttpServletResponse();
+		assertTrue(cache.answer(cache.createKey("test", " " + QUERY + "\n", createRequest()), createRequest(),
+				second));
+		assertArrayEquals(RESULT, second.getContentAsByteArray());
+		assertEquals("application/sparql-results+json", second.getContentType());
+		assertEquals(etag, second.getHeader("ETag"));
+
+		// different result format
+		MockHttpServletRequest xml = createRequest();
+		xml.addHeader("Accept", "application/sparql-results+xml");
+		assertFalse(cache.answer(cache.createKey("test", QUERY, xml), xml, new MockHttpServletResponse()));
+	}
+
+	@Test
+	public void testNotModified()
+		throws Exception
+	{
+		MockHttpServletResponse first = new MockHttpServletResponse();
+		CacheKey key = cache.createKey("test", QUERY, createRequest());
+		render(key, first);
+
+		MockHttpServletRequest request = createRequest();
+		request.addHeader("If-None-Match", first.getHeader("ETag"));
+		MockHttpServletResponse second = new MockHttpServletResponse();
+		assertTrue(cache.answer(cache.createKey("test", QUERY, request), request, second));
+		assertEquals(HttpServletResponse.SC_NOT_MODIFIED, second.getStatus());
+		assertEquals(0, second.getContentAsByteArray().length);
+
+		cache.invalidate("test");
+
+		MockHttpServletResponse third = new MockHttpServletResponse();
+		assertFalse(cache.answer(cache.createKey("test", QUERY, request), request, third));
+	}
+
+	@Test
+	public void testValidatorsOfRecordedResponse()
+		throws Exception
+	{
+		cache.invalidate("test");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		CacheKey key = cache.createKey("test", QUERY, createRequest());
+		assertFalse(cache.answer(key, createRequest(), response));
+		render(key, response);
+		assertEquals("Accept", response.getHeader("Vary"));
+		assertNotNull(response.getHeader("Last-Modified"));
+	}
+
+	@Test
+	public void testModifiedDuringEvaluation()
+		throws Exception
+	{
+		CacheKey key = cache.createKey("test", QUERY, createRequest());
+		cache.invalidate("test");
+		render(key, new MockHttpServletResponse());
+
+		assertFalse(cache.answer(cache.createKey("test", QUERY, createRequest()), createRequest(),
+				new MockHttpServletResponse()));
+	}
+
+	@Test
+	public void testFailedResponseNotCached()
+		throws Exception
+	{
+		CacheKey key = cache.createKey("test", QUERY, createRequest());
+		QueryResponseCache.Recorder recorder = cache.record(key, new MockHttpServletResponse());
+		recorder.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+		recorder.store();
+
+		assertFalse(cache.answer(cache.createKey("test", QUERY, createRequest()), createRequest(),
+				new MockHttpServletResponse()));
+	}
+
+	@Test
+	public void testLongQueryCountsTowardsEntrySize()
+		throws Exception
+	{
+		// the query text alone exceeds the maximum entry size of 64 KB
+		StringBuilder query = new StringBuilder(QUERY);
+		while (query.length() < 40000) {
+			query.append(" # padding");
+		}
+		MockHttpServletRequest request = createRequest();
+		request.setParameter("query", query.toString());
+		render(cache.createKey("test", query.toString(), request), new MockHttpServletResponse());
+
+		assertFalse(cache.answer(cache.createKey("test", query.toString(), request), request,
+				new MockHttpServletResponse()));
+	}
+
+	private MockHttpServletRequest createRequest() {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/repositories/test");
+		request.addParameter("query", QUERY);
+		request.addParameter("infer", "false");
+		return request;
+	}
+
+	private void render(CacheKey key, HttpServletResponse response)
+		throws Exception
+	{
+		QueryResponseCache.Recorder recorder = cache.record(key, response);
+		recorder.setContentType("application/sparql-results+json");
+		try (OutputStream out = recorder.getOutputStream()) {
+			out.write(RESULT);
+		}
+		recorder.store();
+	}
+}
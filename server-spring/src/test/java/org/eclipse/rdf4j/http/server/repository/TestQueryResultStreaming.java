@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.repository;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.rdf4j.query.resultio.TupleQueryResultFormat;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class TestQueryResultStreaming {
+
+	private static final byte[] ROW = "<result><binding name='s'/></result>\n".getBytes(StandardCharsets.UTF_8);
+
+	@Test
+	public void testNegotiateEncoding() {
+		assertNull(negotiate(null));
+		assertEquals("gzip", negotiate("gzip, deflate"));
+		assertEquals("deflate", negotiate("gzip;q=0.5, deflate"));
+		assertEquals("gzip", negotiate("*"));
+		assertEquals("deflate", negotiate("gzip;q=0, *"));
+		assertNull(negotiate("identity"));
+		assertNull(negotiate("gzip;q=0, deflate;q=0"));
+	}
+
+	@Test
+	public void testCompressedResultsAreFlushedPerRows()
+		throws Exception
+	{
+		MockHttpServletResponse target = new MockHttpServletResponse();
+		StreamingResponse response = new StreamingResponse(target, "gzip", 2, 0, 0);
+		response.setContentType(TupleQueryResultFormat.SPARQL.getDefaultMIMEType());
+		OutputStream out = response.getOutputStream();
+
+		out.write(ROW);
+		response.resultWritten();
+		assertEquals(0, decompress(target.getContentAsByteArray()).length);
+
+		out.write(ROW);
+		response.resultWritten();
+		assertEquals(2 * ROW.length, decompress(target.getContentAsByteArray()).length);
+
+		out.write(ROW);
+		out.close();
+		assertEquals("gzip", target.getHeader("Content-Encoding"));
+		assertEquals(3 * ROW.length, decompress(target.getContentAsByteArray()).length);
+	}
+
+	@Test
+	public void testDeflatedResultIsFinishedOnClose()
+		throws Exception
+	{
+		MockHttpServletResponse target = new MockHttpServletResponse();
+		StreamingResponse response = new StreamingResponse(target, "deflate", 0, 0, 0);
+		response.setContentType(TupleQueryResultFormat.SPARQL.getDefaultMIMEType());
+		OutputStream out = response.getOutputStream();
+		out.write(ROW);
+		out.close();
+		assertEquals("deflate", target.getHeader("Content-Encoding"));
+		try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(target.getContentAsByteArray()))) {
+			assertArrayEquals(ROW, IOUtils.toByteArray(in));
+		}
+	}
+
+	@Test
+	public void testBinaryResultsAreNotCompressed()
+		throws Exception
+	{
+		MockHttpServletResponse target = new MockHttpServletResponse();
+		StreamingResponse response = new StreamingResponse(target, "gzip", 0, 0, 0);
+		response.setContentType(TupleQueryResultFormat.BINARY.getDefaultMIMEType());
+		try (OutputStream out = response.getOutputStream()) {
+			out.write(ROW);
+		}
+		assertNull(target.getHeader("Content-Encoding"));
+		assertArrayEquals(ROW, target.getContentAsByteArray());
+	}
+
+	private String negotiate(String acceptEncoding) {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/repositories/test");
+		if (acceptEncoding != null) {
+			request.addHeader("Accept-Encoding", acceptEncoding);
+		}
+		return QueryResultStreaming.negotiateEncoding(request);
+	}
+
+	/**
+	 * Decompresses as much of a possibly unfinished gzip stream as is available.
+	 */
+	private byte[] decompress(byte[] compressed)
+		throws IOException
+	{
+		ByteArrayOutputStream result = new ByteArrayOutputStream();
+		if (compressed.length == 0) {
+			return result.toByteArray();
+		}
+		try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+			byte[] buffer = new byte[1024];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				result.write(buffer, 0, read);
+			}
+		}
+		catch (IOException e) {
+			// unexpected end of an unfinished stream
+		}
+		return result.toByteArray();
+	}
+}
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.eclipse.rdf4j.common.iteration.Iterations;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.impl.TreeModel;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.config.RepositoryConfig;
+import org.eclipse.rdf4j.repository.manager.LocalRepositoryManager;
+import org.eclipse.rdf4j.repository.sail.config.SailRepositoryConfig;
+import org.eclipse.rdf4j.sail.memory.config.MemoryStoreConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestRepositoryConfigRepository {
+
+	@Rule
+	public TemporaryFolder tempDir = new TemporaryFolder();
+
+	private LocalRepositoryManager manager;
+
+	private RepositoryConfigRepository repository;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		manager = new LocalRepositoryManager(tempDir.getRoot());
+		manager.initialize();
+		manager.addRepositoryConfig(createConfig("first"));
+		repository = new RepositoryConfigRepository(manager);
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		manager.shutDown();
+	}
+
+	@Test
+	public void testAddAndRemoveConfig()
+		throws Exception
+	{
+		long version = repository.getVersion();
+		Resource context;
+		try (RepositoryConnection con = repository.getConnection()) {
+			assertEquals(1, Iterations.asList(con.getContextIDs()).size());
+			assertTrue(con.size() > 0);
+
+			context = con.getValueFactory().createIRI("urn:second");
+			Model model = new TreeModel();
+			createConfig("second").export(model, context);
+			con.begin();
+			con.add(model, context);
+			con.commit();
+
+			assertTrue(manager.hasRepositoryConfig("second"));
+			assertEquals(2, Iterations.asList(con.getContextIDs()).size());
+		}
+		assertTrue(repository.getVersion() > version);
+
+		try (RepositoryConnection con = repository.getConnection()) {
+			assertEquals(2, Iterations.asList(con.getContextIDs()).size());
+			Resource stored = Iterations.asList(con.getContextIDs()).get(1);
+			con.begin();
+			con.clear(stored);
+			con.commit();
+
+			assertFalse(manager.hasRepositoryConfig("second"));
+			assertEquals(1, Iterations.asList(con.getContextIDs()).size());
+		}
+	}
+
+	@Test
+	public void testIsolation()
+		throws Exception
+	{
+		try (RepositoryConnection reader = repository.getConnection();
+				RepositoryConnection writer = repository.getConnection())
+		{
+			long size = reader.size();
+			writer.begin();
+			writer.clear();
+			writer.commit();
+
+			assertEquals(0, writer.size());
+			assertEquals(size, reader.size());
+		}
+		try (RepositoryConnection con = new RepositoryConfigRepository(manager).getConnection()) {
+			assertEquals(0, con.size());
+		}
+	}
+
+	@Test
+	public void testInvalidate()
+		throws Exception
+	{
+		try (RepositoryConnection con = repository.getConnection()) {
+			assertEquals(1, Iterations.asList(con.getContextIDs()).size());
+		}
+		manager.removeRepository("first");
+		RepositoryConfigRepository.invalidate(manager, "first");
+
+		try (RepositoryConnection con = repository.getConnection()) {
+			assertEquals(0, Iterations.asList(con.getContextIDs()).size());
+		}
+	}
+
+	private RepositoryConfig createConfig(String id) {
+		return new RepositoryConfig(id, new SailRepositoryConfig(new MemoryStoreConfig()));
+	}
+}
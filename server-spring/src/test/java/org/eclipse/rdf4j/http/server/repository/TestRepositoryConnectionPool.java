@@ -0,0 +1,232 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.model.vocabulary.RDFS;
+import org.eclipse.rdf4j.query.BooleanQuery;
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.repository.DelegatingRepositoryConnection;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryException;
+import org.eclipse.rdf4j.repository.base.RepositoryConnectionWrapper;
+import org.eclipse.rdf4j.repository.base.RepositoryWrapper;
+import org.eclipse.rdf4j.repository.http.HTTPRepository;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.rio.helpers.BasicParserSettings;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestRepositoryConnectionPool {
+
+	private static final String ID = "pooled";
+
+	private final RepositoryConnectionPool pool = RepositoryConnectionPool.INSTANCE;
+
+	private Repository repository;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		repository = new SailRepository(new MemoryStore());
+		repository.initialize();
+		pool.setPooled(r -> r == repository);
+		pool.setMaxIdle(2);
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		pool.setMaxIdle(RepositoryConnectionPool.DEFAULT_MAX_IDLE);
+		pool.setIdleTimeout(RepositoryConnectionPool.DEFAULT_IDLE_TIMEOUT);
+		pool.setLeakThreshold(RepositoryConnectionPool.DEFAULT_LEAK_THRESHOLD);
+		pool.setValidationInterval(RepositoryConnectionPool.DEFAULT_VALIDATION_INTERVAL);
+		pool.setPooled(r -> r instanceof HTTPRepository);
+		repository.shutDown();
+	}
+
+	@Test
+	public void testConnectionIsReused()
+		throws Exception
+	{
+		RepositoryConnection first = pool.getConnection(ID, repository);
+		RepositoryConnection delegate = ((DelegatingRepositoryConnection)first).getDelegate();
+		first.getParserConfig().set(BasicParserSettings.VERIFY_RELATIVE_URIS, false);
+		first.add(RDF.TYPE, RDF.TYPE, RDF.PROPERTY);
+		first.close();
+		assertFalse(first.isOpen());
+		assertTrue(delegate.isOpen());
+		assertEquals(1, pool.getIdleCount());
+
+		long reused = pool.getReusedCount();
+		try (RepositoryConnection second = pool.getConnection(ID, repository)) {
+			assertSame(delegate, ((DelegatingRepositoryConnection)second).getDelegate());
+			assertEquals(1, second.size());
+			// the parser configuration has been reset
+			assertTrue(second.getParserConfig().get(BasicParserSettings.VERIFY_RELATIVE_URIS));
+			assertTrue(second.getParserConfig().isNonFatalError(BasicParserSettings.VERIFY_LANGUAGE_TAGS));
+		}
+		assertEquals(reused + 1, pool.getReusedCount());
+	}
+
+	@Test
+	public void testActiveTransactionIsNotPooled()
+		throws Exception
+	{
+		RepositoryConnection connection = pool.getConnection(ID, repository);
+		RepositoryConnection delegate = ((DelegatingRepositoryConnection)connection).getDelegate();
+		connection.begin();
+		connection.add(RDFS.LABEL, RDF.TYPE, RDF.PROPERTY);
+		connection.close();
+
+		assertFalse(delegate.isOpen());
+		assertEquals(0, pool.getIdleCount());
+		try (RepositoryConnection other = pool.getConnection(ID, repository)) {
+			assertTrue(other.isEmpty());
+		}
+	}
+
+	@Test
+	public void testIdleConnectionsAreClosed()
+		throws Exception
+	{
+		RepositoryConnection first = pool.getConnection(ID, repository);
+		RepositoryConnection second = pool.getConnection(ID, repository);
+		RepositoryConnection third = pool.getConnection(ID, repository);
+		RepositoryConnection delegate = ((DelegatingRepositoryConnection)third).getDelegate();
+		first.close();
+		second.close();
+		third.close();
+		assertFalse("pool is full", delegate.isOpen());
+		assertEquals(2, pool.getIdleCount());
+
+		pool.setIdleTimeout(-1);
+		pool.maintain();
+		assertEquals(0, pool.getIdleCount());
+	}
+
+	@Test
+	public void testRemovedRepository()
+		throws Exception
+	{
+		RepositoryConnection connection = pool.getConnection(ID, repository);
+		connection.close();
+		assertEquals(1, pool.getIdleCount());
+
+		pool.remove(ID);
+		assertEquals(0, pool.getIdleCount());
+
+		Repository other = new SailRepository(new MemoryStore());
+		other.initialize();
+		try {
+			pool.setPooled(r -> true);
+			RepositoryConnection first = pool.getConnection(ID, repository);
+			first.close();
+			try (RepositoryConnection second = pool.getConnection(ID, other)) {
+				assertNotSame(other, ((DelegatingRepositoryConnection)first).getDelegate().getRepository());
+				assertSame(other, second.getRepository());
+				assertEquals(0, pool.getIdleCount());
+			}
+		}
+		finally {
+			other.shutDown();
+		}
+	}
+
+	@Test
+	public void testInvalidConnectionIsDiscarded()
+		throws Exception
+	{
+		AtomicBoolean broken = new AtomicBoolean();
+		Repository remote = new RepositoryWrapper(repository) {
+
+			@Override
+			public RepositoryConnection getConnection() {
+				return new RepositoryConnectionWrapper(this, super.getConnection()) {
+
+					@Override
+					public BooleanQuery prepareBooleanQuery(QueryLanguage ql, String query) {
+						if (broken.get()) {
+							throw new RepositoryException("connection reset");
+						}
+						return super.prepareBooleanQuery(ql, query);
+					}
+				};
+			}
+		};
+		pool.setPooled(r -> r == remote);
+		pool.setValidationInterval(0);
+
+		RepositoryConnection first = pool.getConnection(ID, remote);
+		RepositoryConnection delegate = ((DelegatingRepositoryConnection)first).getDelegate();
+		first.close();
+		try (RepositoryConnection second = pool.getConnection(ID, remote)) {
+			assertSame(delegate, ((DelegatingRepositoryConnection)second).getDelegate());
+		}
+
+		broken.set(true);
+		try (RepositoryConnection third = pool.getConnection(ID, remote)) {
+			assertNotSame(delegate, ((DelegatingRepositoryConnection)third).getDelegate());
+			assertFalse(delegate.isOpen());
+		}
+	}
+
+	@Test
+	public void testLeakDetection()
+		throws Exception
+	{
+		pool.setMaxIdle(0);
+		pool.setLeakThreshold(1);
+		long leaked = pool.getLeakedCount();
+		RepositoryConnection connection = pool.getConnection(ID, repository);
+		try {
+			assertTrue(connection instanceof DelegatingRepositoryConnection);
+			Thread.sleep(10);
+			pool.maintain();
+			pool.maintain();
+			assertEquals(leaked + 1, pool.getLeakedCount());
+		}
+		finally {
+			connection.close();
+		}
+		assertFalse(((DelegatingRepositoryConnection)connection).getDelegate().isOpen());
+	}
+
+	@Test
+	public void testDiscardedConnectionIsReclaimed()
+		throws Exception
+	{
+		int borrowed = pool.getBorrowedCount();
+		long leaked = pool.getLeakedCount();
+		RepositoryConnection connection = pool.getConnection(ID, repository);
+		RepositoryConnection delegate = ((DelegatingRepositoryConnection)connection).getDelegate();
+		assertEquals(borrowed + 1, pool.getBorrowedCount());
+		connection = null;
+		for (int i = 0; i < 50 && pool.getBorrowedCount() > borrowed; i++) {
+			System.gc();
+			Thread.sleep(10);
+			pool.maintain();
+		}
+		assertEquals(borrowed, pool.getBorrowedCount());
+		assertEquals(leaked + 1, pool.getLeakedCount());
+		assertFalse(delegate.isOpen());
+	}
+}
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.repository;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.model.vocabulary.RDFS;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestRepositoryStatistics {
+
+	private static final String ID = "statistics";
+
+	private static final Resource[] ALL = new Resource[0];
+
+	private final RepositoryStatistics statistics = RepositoryStatistics.INSTANCE;
+
+	private Repository repository;
+
+	private IRI graph1;
+
+	private IRI graph2;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		repository = new SailRepository(new MemoryStore());
+		repository.initialize();
+		ValueFactory vf = repository.getValueFactory();
+		graph1 = vf.createIRI("urn:graph1");
+		graph2 = vf.createIRI("urn:graph2");
+		add(vf.createIRI("urn:a"), graph1);
+		add(vf.createIRI("urn:b"), graph1);
+		add(vf.createIRI("urn:c"), graph2);
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		statistics.remove(ID);
+		repository.shutDown();
+	}
+
+	@Test
+	public void testApproximateAnswersUntilRefreshed()
+		throws Exception
+	{
+		assertEquals(3, statistics.getSize(ID, repository, ALL, true));
+		assertEquals(2, statistics.getContextIDs(ID, repository, true).size());
+
+		add(repository.getValueFactory().createIRI("urn:d"), repository.getValueFactory().createIRI("urn:g3"));
+		statistics.invalidate(ID);
+
+		assertEquals(3, statistics.getSize(ID, repository, ALL, true));
+		assertEquals(2, statistics.getContextIDs(ID, repository, true).size());
+		assertEquals(4, statistics.getSize(ID, repository, ALL, false));
+
+		statistics.refresh();
+		assertEquals(4, statistics.getSize(ID, repository, ALL, true));
+		assertEquals(3, statistics.getContextIDs(ID, repository, true).size());
+	}
+
+	@Test
+	public void testClearedContexts()
+		throws Exception
+	{
+		assertEquals(2, statistics.getSize(ID, repository, new Resource[] { graph1 }, true));
+		assertEquals(1, statistics.getSize(ID, repository, new Resource[] { graph2 }, true));
+		assertEquals(3, statistics.getSize(ID, repository, ALL, true));
+		statistics.getContextIDs(ID, repository, true);
+
+		try (RepositoryConnection con = repository.getConnection()) {
+			con.clear(graph1);
+		}
+		statistics.cleared(ID, graph1);
+
+		assertEquals(0, statistics.getSize(ID, repository, new Resource[] { graph1 }, true));
+		assertEquals(1, statistics.getSize(ID, repository, new Resource[] { graph2 }, true));
+		assertEquals(1, statistics.getContextIDs(ID, repository, true).size());
+		assertTrue(statistics.getContextIDs(ID, repository, true).contains(graph2));
+		// the total size is not known until it has been evaluated again
+		assertEquals(3, statistics.getSize(ID, repository, ALL, true));
+
+		statistics.refresh();
+		assertEquals(1, statistics.getSize(ID, repository, ALL, true));
+
+		try (RepositoryConnection con = repository.getConnection()) {
+			con.clear();
+		}
+		statistics.cleared(ID);
+
+		assertEquals(0, statistics.getSize(ID, repository, ALL, true));
+		assertEquals(0, statistics.getSize(ID, repository, new Resource[] { graph2 }, true));
+		assertTrue(statistics.getContextIDs(ID, repository, true).isEmpty());
+	}
+
+	@Test
+	public void testReplacedRepository()
+		throws Exception
+	{
+		assertEquals(3, statistics.getSize(ID, repository, ALL, true));
+
+		Repository replacement = new SailRepository(new MemoryStore());
+		replacement.initialize();
+		try {
+			assertEquals(0, statistics.getSize(ID, replacement, ALL, true));
+		}
+		finally {
+			replacement.shutDown();
+		}
+	}
+
+	private void add(IRI subj, IRI context) {
+		try (RepositoryConnection con = repository.getConnection()) {
+			con.add(subj, RDF.TYPE, RDFS.RESOURCE, context);
+		}
+	}
+}
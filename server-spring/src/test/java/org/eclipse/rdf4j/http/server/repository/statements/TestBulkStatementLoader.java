@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.repository.statements;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryException;
+import org.eclipse.rdf4j.repository.base.RepositoryConnectionWrapper;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFParseException;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestBulkStatementLoader {
+
+	private Repository repository;
+
+	private RepositoryConnection con;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		repository = new SailRepository(new MemoryStore());
+		repository.initialize();
+		con = repository.getConnection();
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		con.close();
+		repository.shutDown();
+	}
+
+	@Test
+	public void testLoadInBatches()
+		throws Exception
+	{
+		IRI context = con.getValueFactory().createIRI("urn:context");
+		AtomicInteger commits = new AtomicInteger();
+		long count = new BulkStatementLoader(con, 1000, commits::incrementAndGet).load(
+				nTriples(5000, false), "urn:base", RDFFormat.NTRIPLES, false, context);
+
+		assertEquals(5000, count);
+		// one per full chunk of 1024 statements, the final commit is left to the caller to report
+		assertEquals(4, commits.get());
+		assertEquals(5000, con.size(context));
+		assertFalse(con.isActive());
+	}
+
+	@Test
+	public void testMalformedData()
+		throws Exception
+	{
+		try {
+			new BulkStatementLoader(con, 1000, () -> {}).load(nTriples(5000, true), "urn:base",
+					RDFFormat.NTRIPLES, false);
+			fail("expected parse error");
+		}
+		catch (RDFParseException e) {
+			// expected
+		}
+		assertFalse(con.isActive());
+		// batches committed before the error remain, the last one is rolled back
+		assertTrue(con.size() > 0);
+		assertTrue(con.size() < 5000);
+	}
+
+	@Test
+	public void testParserStopsWhenLoadingFails()
+		throws Exception
+	{
+		RepositoryConnection failing = new RepositoryConnectionWrapper(repository, con) {
+
+			@Override
+			public void add(Iterable<? extends Statement> statements, Resource... contexts) {
+				throw new RepositoryException("add failed");
+			}
+		};
+		EndlessInput in = new EndlessInput();
+		try {
+			new BulkStatementLoader(failing, 1000, () -> {}).load(in, "urn:base", RDFFormat.NTRIPLES, false);
+			fail("expected repository error");
+		}
+		catch (RepositoryException e) {
+			// expected
+		}
+		assertTrue(in.closed);
+		long reads = in.reads.get();
+		Thread.sleep(50);
+		assertEquals("request body read after load returned", reads, in.reads.get());
+	}
+
+	/**
+	 * An unterminated N-Triples document, which can no longer be read once closed.
+	 */
+	private static class EndlessInput extends InputStream {
+
+		private final byte[] line = "<urn:s> <urn:p> <urn:o> .\n".getBytes(StandardCharsets.UTF_8);
+
+		private final AtomicLong reads = new AtomicLong();
+
+		private volatile boolean closed;
+
+		private int pos;
+
+		@Override
+		public int read()
+			throws IOException
+		{
+			if (closed) {
+				throw new IOException("closed");
+			}
+			reads.incrementAndGet();
+			int b = line[pos];
+			pos = (pos + 1) % line.length;
+			return b;
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+	}
+
+	private ByteArrayInputStream nTriples(int count, boolean malformed) {
+		StringBuilder data = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			data.append("<urn:s").append(i).append("> <urn:p> \"").append(i).append("\" .\n");
+		}
+		if (malformed) {
+			data.append("<urn:s> <urn:p> .\n");
+		}
+		return new ByteArrayInputStream(data.toString().getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.repository.statements;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.util.Models;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.model.vocabulary.RDFS;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.nquads.NQuadsWriterFactory;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestParallelStatementExporter {
+
+	private static final int GRAPHS = 10;
+
+	private Repository repository;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		ParallelStatementExporter.setParallelism(3);
+		repository = new SailRepository(new MemoryStore());
+		repository.initialize();
+		try (RepositoryConnection con = repository.getConnection()) {
+			ValueFactory vf = con.getValueFactory();
+			con.begin();
+			for (int i = 0; i < 2000; i++) {
+				IRI subj = vf.createIRI("urn:s" + i);
+				con.add(subj, RDF.TYPE, RDFS.RESOURCE);
+				con.add(subj, RDFS.LABEL, vf.createLiteral("subject " + i), vf.createIRI("urn:g" + i % GRAPHS));
+				con.add(vf.createBNode("b" + i), RDFS.SEEALSO, subj, vf.createIRI("urn:g" + i % GRAPHS));
+			}
+			con.commit();
+		}
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		ParallelStatementExporter.setParallelism(1);
+		repository.shutDown();
+	}
+
+	@Test
+	public void testParallelExportMatchesSequentialExport()
+		throws Exception
+	{
+		try (RepositoryConnection con = repository.getConnection()) {
+			List<Resource> contexts = ParallelStatementExporter.getParallelContexts(con, RDFFormat.NQUADS,
+					new Resource[0]);
+			assertEquals(GRAPHS + 1, contexts.size());
+			assertNull(contexts.get(0));
+
+			ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+			new ParallelStatementExporter("test", repository, new NQuadsWriterFactory(), null, null, null,
+					true).export(con, contexts, parallel);
+
+			ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+			con.exportStatements(null, null, null, true, Rio.createWriter(RDFFormat.NQUADS, sequential));
+
+			Model expected = Rio.parse(new ByteArrayInputStream(sequential.toByteArray()), "",
+					RDFFormat.NQUADS);
+			Model actual = Rio.parse(new ByteArrayInputStream(parallel.toByteArray()), "", RDFFormat.NQUADS);
+			assertEquals(6000, actual.size());
+			assertTrue(Models.isomorphic(expected, actual));
+		}
+	}
+
+	@Test
+	public void testNotParallelized()
+		throws Exception
+	{
+		try (RepositoryConnection con = repository.getConnection()) {
+			assertNull(ParallelStatementExporter.getParallelContexts(con, RDFFormat.TURTLE, new Resource[0]));
+			assertNull(ParallelStatementExporter.getParallelContexts(con, RDFFormat.NQUADS,
+					new Resource[] { con.getValueFactory().createIRI("urn:g1") }));
+
+			ParallelStatementExporter.setParallelism(1);
+			assertNull(ParallelStatementExporter.getParallelContexts(con, RDFFormat.NQUADS, new Resource[0]));
+		}
+	}
+}
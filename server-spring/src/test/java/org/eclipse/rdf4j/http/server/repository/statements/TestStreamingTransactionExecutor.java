@@ -0,0 +1,190 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.repository.statements;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.rdf4j.http.protocol.transaction.TransactionReader;
+import org.eclipse.rdf4j.http.protocol.transaction.TransactionWriter;
+import org.eclipse.rdf4j.http.protocol.transaction.operations.AddStatementOperation;
+import org.eclipse.rdf4j.http.protocol.transaction.operations.ClearOperation;
+import org.eclipse.rdf4j.http.protocol.transaction.operations.RemoveStatementsOperation;
+import org.eclipse.rdf4j.http.protocol.transaction.operations.SPARQLUpdateOperation;
+import org.eclipse.rdf4j.http.protocol.transaction.operations.SetNamespaceOperation;
+import org.eclipse.rdf4j.http.protocol.transaction.operations.TransactionOperation;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.util.Models;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.model.vocabulary.RDFS;
+import org.eclipse.rdf4j.query.QueryResults;
+import org.eclipse.rdf4j.query.impl.SimpleBinding;
+import org.eclipse.rdf4j.query.impl.SimpleDataset;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryException;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.junit.Test;
+
+public class TestStreamingTransactionExecutor {
+
+	private final ValueFactory vf = SimpleValueFactory.getInstance();
+
+	private final IRI graph1 = vf.createIRI("urn:graph1");
+
+	private final IRI graph2 = vf.createIRI("urn:graph2");
+
+	@Test
+	public void testSameResultAsTransactionReader()
+		throws Exception
+	{
+		List<TransactionOperation> operations = new ArrayList<>();
+		operations.add(new SetNamespaceOperation("ex", "urn:ex:"));
+		for (int i = 0; i < 25; i++) {
+			IRI subj = vf.createIRI("urn:s" + i);
+			operations.add(new AddStatementOperation(subj, RDF.TYPE, RDFS.RESOURCE));
+			operations.add(new AddStatementOperation(subj, RDFS.LABEL, vf.createLiteral("s" + i, "en"), graph1,
+					graph2));
+		}
+		// fully specified removals are batched, wildcard removals are not
+		operations.add(new RemoveStatementsOperation(vf.createIRI("urn:s0"), RDF.TYPE, RDFS.RESOURCE));
+		operations.add(new RemoveStatementsOperation(vf.createIRI("urn:s1"), RDFS.LABEL,
+				vf.createLiteral("s1", "en"), graph1));
+		operations.add(new RemoveStatementsOperation(vf.createIRI("urn:s2"), null, null));
+		operations.add(
+				new AddStatementOperation(vf.createIRI("urn:s0"), RDFS.COMMENT, vf.createLiteral("again")));
+		operations.add(new ClearOperation(graph2));
+
+		SimpleDataset dataset = new SimpleDataset();
+		dataset.setDefaultInsertGraph(graph1);
+		operations.add(new SPARQLUpdateOperation("INSERT { ?s <urn:p> \"inserted\" } WHERE { }", null, true,
+				dataset, new SimpleBinding("s", vf.createIRI("urn:s3"))));
+		operations.add(new SPARQLUpdateOperation("INSERT { ?s <urn:p> \"bound\" } WHERE { }", null, true, null,
+				new SimpleBinding("s", vf.createIRI("urn:s4"))));
+
+		byte[] document = serialize(operations);
+
+		for (int batchSize : new int[] { 1, 7, StreamingTransactionExecutor.DEFAULT_BATCH_SIZE }) {
+			Model expected = executeWithReader(document);
+			Model actual = executeStreaming(document, batchSize);
+			assertTrue("batch size " + batchSize, Models.isomorphic(expected, actual));
+		}
+	}
+
+	@Test
+	public void testOperationCount()
+		throws Exception
+	{
+		List<TransactionOperation> operations = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			operations.add(new AddStatementOperation(vf.createIRI("urn:s" + i), RDF.TYPE, RDFS.RESOURCE));
+		}
+		operations.add(new ClearOperation(graph1));
+
+		Repository repository = new SailRepository(new MemoryStore());
+		repository.initialize();
+		try (RepositoryConnection con = repository.getConnection()) {
+			StreamingTransactionExecutor executor = new StreamingTransactionExecutor(con);
+			executor.setBatchSize(3);
+			con.begin();
+			executor.execute(new ByteArrayInputStream(serialize(operations)));
+			con.commit();
+			assertEquals(11, executor.getOperationCount());
+			assertEquals(10, con.size());
+		}
+		finally {
+			repository.shutDown();
+		}
+	}
+
+	@Test(expected = RepositoryException.class)
+	public void testFailingOperation()
+		throws Exception
+	{
+		List<TransactionOperation> operations = new ArrayList<>();
+		operations.add(new AddStatementOperation(vf.createIRI("urn:s"), RDF.TYPE, RDFS.RESOURCE));
+		operations.add(new SPARQLUpdateOperation("INSERT DATA { ?s ?p ?o }", null, true, null));
+
+		Repository repository = new SailRepository(new MemoryStore());
+		repository.initialize();
+		try (RepositoryConnection con = repository.getConnection()) {
+			con.begin();
+			new StreamingTransactionExecutor(con).execute(new ByteArrayInputStream(serialize(operations)));
+		}
+		finally {
+			repository.shutDown();
+		}
+	}
+
+	private byte[] serialize(List<TransactionOperation> operations)
+		throws Exception
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new TransactionWriter().serialize(operations, out);
+		return out.toByteArray();
+	}
+
+	private Model executeWithReader(byte[] document)
+		throws Exception
+	{
+		Repository repository = new SailRepository(new MemoryStore());
+		repository.initialize();
+		try {
+			Iterable<TransactionOperation> txn = new TransactionReader().parse(
+					new ByteArrayInputStream(document));
+			try (RepositoryConnection con = repository.getConnection()) {
+				con.begin();
+				for (TransactionOperation op : txn) {
+					op.execute(con);
+				}
+				con.commit();
+			}
+			return contents(repository);
+		}
+		finally {
+			repository.shutDown();
+		}
+	}
+
+	private Model executeStreaming(byte[] document, int batchSize)
+		throws Exception
+	{
+		Repository repository = new SailRepository(new MemoryStore());
+		repository.initialize();
+		try {
+			try (RepositoryConnection con = repository.getConnection()) {
+				StreamingTransactionExecutor executor = new StreamingTransactionExecutor(con);
+				executor.setBatchSize(batchSize);
+				con.begin();
+				executor.execute(new ByteArrayInputStream(document));
+				con.commit();
+			}
+			return contents(repository);
+		}
+		finally {
+			repository.shutDown();
+		}
+	}
+
+	private Model contents(Repository repository) {
+		try (RepositoryConnection con = repository.getConnection()) {
+			Model model = QueryResults.asModel(con.getStatements(null, null, null, false));
+			assertEquals("urn:ex:", con.getNamespace("ex"));
+			return model;
+		}
+	}
+}
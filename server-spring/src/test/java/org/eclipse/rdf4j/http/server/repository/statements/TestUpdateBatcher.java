@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.repository.statements;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eclipse.rdf4j.query.MalformedQueryException;
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.query.UpdateExecutionException;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestUpdateBatcher {
+
+	private static final int CLIENTS = 8;
+
+	private final UpdateBatcher batcher = new UpdateBatcher();
+
+	private Repository repository;
+
+	private ExecutorService executor;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		repository = new SailRepository(new MemoryStore());
+		repository.initialize();
+		executor = Executors.newFixedThreadPool(CLIENTS);
+		batcher.setMaxBatchSize(CLIENTS);
+		batcher.setMaxDelay(500);
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		executor.shutdownNow();
+		repository.shutDown();
+	}
+
+	@Test
+	public void testConcurrentUpdatesAreCommittedTogether()
+		throws Exception
+	{
+		List<String> updates = new ArrayList<>();
+		for (int i = 0; i < CLIENTS; i++) {
+			updates.add("INSERT DATA { <urn:s" + i + "> <urn:p> " + i + " }");
+		}
+		List<Exception> results = executeConcurrently(updates);
+
+		for (Exception result : results) {
+			assertNull(result);
+		}
+		assertEquals(CLIENTS, size());
+		assertTrue(batcher.getBatchCount() >= 1);
+	}
+
+	@Test
+	public void testFailuresAreReportedPerUpdate()
+		throws Exception
+	{
+		try (RepositoryConnection con = repository.getConnection()) {
+			con.prepareUpdate(QueryLanguage.SPARQL,
+					"INSERT DATA { GRAPH <urn:g> { <urn:a> <urn:p> <urn:b> } }").execute();
+		}
+		List<String> updates = new ArrayList<>();
+		updates.add("INSERT DATA { <urn:s1> <urn:p> 1 }");
+		updates.add("INSERT DATA { <urn:s2> <urn:p> ");
+		updates.add("CREATE GRAPH <urn:g>");
+		updates.add("INSERT DATA { <urn:s3> <urn:p> 3 }");
+		List<Exception> results = executeConcurrently(updates);
+
+		assertNull(results.get(0));
+		assertTrue(results.get(1) instanceof MalformedQueryException);
+		assertTrue(results.get(2) instanceof UpdateExecutionException);
+		assertNull(results.get(3));
+		assertEquals(3, size());
+	}
+
+	@Test
+	public void testDisabled()
+		throws Exception
+	{
+		batcher.setMaxBatchSize(1);
+		List<Exception> results = executeConcurrently(
+				Collections.singletonList("INSERT DATA { <urn:s1> <urn:p> 1 }"));
+
+		assertNull(results.get(0));
+		assertEquals(1, size());
+		assertEquals(0, batcher.getBatchCount());
+	}
+
+	private List<Exception> executeConcurrently(List<String> updates)
+		throws Exception
+	{
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<Exception>> futures = new ArrayList<>();
+		for (String update : updates) {
+			futures.add(executor.submit(() -> {
+				start.await();
+				try (RepositoryConnection con = repository.getConnection()) {
+					batcher.execute("test", con, new UpdateBatcher.PendingUpdate(QueryLanguage.SPARQL, update,
+							null, true, 0, null, Collections.emptyMap()));
+					return null;
+				}
+				catch (RuntimeException e) {
+					return e;
+				}
+			}));
+		}
+		start.countDown();
+		List<Exception> results = new ArrayList<>();
+		for (Future<Exception> future : futures) {
+			results.add(future.get());
+		}
+		return results;
+	}
+
+	private long size() {
+		try (RepositoryConnection con = repository.getConnection()) {
+			return con.size();
+		}
+	}
+}
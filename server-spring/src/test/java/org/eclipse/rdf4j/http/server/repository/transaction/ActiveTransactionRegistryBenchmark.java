@@ -0,0 +1,114 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.repository.transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the throughput of the lock-free {@link ActiveTransactionRegistry} against the previous
+ * {@link SynchronizedTransactionRegistry} for the lookup and keep-alive calls made on every transaction
+ * request. Run {@link #main(String[])} to measure both at 1 to 64 threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ActiveTransactionRegistryBenchmark {
+
+	private static final int[] THREADS = { 1, 2, 4, 8, 16, 32, 64 };
+
+	@Param({ "64" })
+	public int transactionCount;
+
+	private Repository repository;
+
+	private final List<Transaction> transactions = new ArrayList<>();
+
+	private SynchronizedTransactionRegistry synchronizedRegistry;
+
+	@Setup(Level.Trial)
+	public void setUp()
+		throws Exception
+	{
+		repository = new SailRepository(new MemoryStore());
+		repository.initialize();
+		synchronizedRegistry = new SynchronizedTransactionRegistry();
+		for (int i = 0; i < transactionCount; i++) {
+			Transaction txn = new Transaction(repository);
+			transactions.add(txn);
+			ActiveTransactionRegistry.INSTANCE.register(txn);
+			synchronizedRegistry.register(txn);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+		throws Exception
+	{
+		for (Transaction txn : transactions) {
+			ActiveTransactionRegistry.INSTANCE.deregister(txn);
+			synchronizedRegistry.deregister(txn);
+		}
+		transactions.clear();
+		repository.shutDown();
+	}
+
+	@Benchmark
+	public Transaction lockFree() {
+		Transaction txn = ActiveTransactionRegistry.INSTANCE.getTransaction(randomTransaction().getID());
+		ActiveTransactionRegistry.INSTANCE.active(txn);
+		return txn;
+	}
+
+	@Benchmark
+	public Transaction synchronizedCaches() {
+		Transaction txn = synchronizedRegistry.getTransaction(randomTransaction().getID());
+		synchronizedRegistry.active(txn);
+		return txn;
+	}
+
+	private Transaction randomTransaction() {
+		return transactions.get(ThreadLocalRandom.current().nextInt(transactions.size()));
+	}
+
+	public static void main(String[] args)
+		throws RunnerException
+	{
+		for (int threads : THREADS) {
+			Options opt = new OptionsBuilder().include(
+					ActiveTransactionRegistryBenchmark.class.getSimpleName()).threads(threads).build();
+			new Runner(opt).run();
+		}
+	}
+}
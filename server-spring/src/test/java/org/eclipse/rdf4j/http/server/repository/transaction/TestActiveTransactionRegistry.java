@@ -7,31 +7,27 @@
  */
 package org.eclipse.rdf4j.http.server.repository.transaction;
 
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import org.eclipse.rdf4j.repository.Repository;
-import org.eclipse.rdf4j.repository.RepositoryConnection;
 import org.eclipse.rdf4j.repository.RepositoryException;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 public class TestActiveTransactionRegistry {
 
-	private static final Logger logger = LoggerFactory.getLogger(TestActiveTransactionRegistry.class);
-
 	private ActiveTransactionRegistry registry;
 
-	private Repository repository;
-
-	private UUID txnId1;
+	private Transaction txn1;
 
-	private UUID txnId2;
+	private Transaction txn2;
 
 	/**
 	 * @throws java.lang.Exception
@@ -40,10 +36,96 @@ public class TestActiveTransactionRegistry {
 	public void setUp()
 		throws Exception
 	{
-		System.setProperty(ActiveTransactionRegistry.CACHE_TIMEOUT_PROPERTY, "1");
 		registry = ActiveTransactionRegistry.INSTANCE;
-		repository = Mockito.mock(Repository.class);
+		txn1 = mockTransaction();
+		txn2 = mockTransaction();
 	}
 
+	@Test
+	public void testRegisterAndDeregister()
+		throws Exception
+	{
+		registry.register(txn1);
+		registry.register(txn2);
+
+		assertSame(txn1, registry.getTransaction(txn1.getID()));
+		assertSame(txn2, registry.getTransaction(txn2.getID()));
+
+		registry.deregister(txn1);
+		Mockito.verify(txn1).close();
+		try {
+			registry.getTransaction(txn1.getID());
+			fail("expected deregistered transaction to be unknown");
+		}
+		catch (RepositoryException e) {
+			// expected
+		}
+		registry.deregister(txn2);
+	}
+
+	@Test(expected = RepositoryException.class)
+	public void testRegisterTwice() {
+		registry.register(txn1);
+		try {
+			registry.register(txn1);
+		}
+		finally {
+			registry.deregister(txn1);
+		}
+	}
+
+	@Test(expected = RepositoryException.class)
+	public void testDeregisterUnknown() {
+		registry.deregister(txn1);
+	}
 
+	@Test
+	public void testActiveReinstatesTransaction()
+		throws Exception
+	{
+		registry.register(txn1);
+		registry.deregister(txn1);
+
+		registry.active(txn1);
+		assertSame(txn1, registry.getTransaction(txn1.getID()));
+		registry.deregister(txn1);
+	}
+
+	@Test
+	public void testConcurrentAccess()
+		throws Exception
+	{
+		registry.register(txn1);
+		int threads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			CountDownLatch start = new CountDownLatch(1);
+			Future<?>[] results = new Future<?>[threads];
+			for (int i = 0; i < threads; i++) {
+				results[i] = executor.submit(() -> {
+					start.await();
+					for (int j = 0; j < 1000; j++) {
+						Transaction txn = registry.getTransaction(txn1.getID());
+						registry.active(txn);
+					}
+					return null;
+				});
+			}
+			start.countDown();
+			for (Future<?> result : results) {
+				result.get();
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		assertSame(txn1, registry.getTransaction(txn1.getID()));
+		registry.deregister(txn1);
+	}
+
+	private Transaction mockTransaction() {
+		Transaction txn = Mockito.mock(Transaction.class);
+		Mockito.when(txn.getID()).thenReturn(UUID.randomUUID());
+		return txn;
+	}
 }
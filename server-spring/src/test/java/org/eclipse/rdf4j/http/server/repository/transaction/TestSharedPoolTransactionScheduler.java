@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.repository.transaction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestSharedPoolTransactionScheduler {
+
+	private SharedPoolTransactionScheduler scheduler;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		scheduler = new SharedPoolTransactionScheduler();
+		scheduler.setMaxTransactions(2);
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		scheduler.shutDown();
+	}
+
+	@Test
+	public void testTasksOfOneTransactionRunOnOneThread()
+		throws Exception
+	{
+		ExecutorService txn1 = scheduler.createExecutor();
+		ExecutorService txn2 = scheduler.createExecutor();
+
+		Thread first = txn1.submit(() -> Thread.currentThread()).get();
+		Thread other = txn2.submit(() -> Thread.currentThread()).get();
+		Thread second = txn1.submit(() -> Thread.currentThread()).get();
+
+		assertSame(first, second);
+		assertNotSame(first, other);
+
+		txn1.shutdown();
+		txn2.shutdown();
+		assertTrue(txn1.awaitTermination(1, TimeUnit.SECONDS));
+		assertTrue(txn2.awaitTermination(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testMaxTransactions()
+		throws Exception
+	{
+		ExecutorService txn1 = scheduler.createExecutor();
+		ExecutorService txn2 = scheduler.createExecutor();
+		try {
+			scheduler.createExecutor();
+			fail("expected transaction to be rejected");
+		}
+		catch (RejectedExecutionException e) {
+			// expected
+		}
+		assertEquals(2, scheduler.getActiveTransactions());
+
+		txn1.shutdown();
+		assertTrue(txn1.awaitTermination(1, TimeUnit.SECONDS));
+
+		assertEquals(1, scheduler.getActiveTransactions());
+
+		ExecutorService txn3 = scheduler.createExecutor();
+		assertEquals(Boolean.TRUE, txn3.submit(() -> true).get());
+
+		txn2.shutdownNow();
+		txn3.shutdownNow();
+	}
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.http.server.repository.transaction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutionException;
+
+import org.eclipse.rdf4j.IsolationLevels;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.rio.RDFFormat;
+import org.eclipse.rdf4j.rio.RDFParseException;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestTransaction {
+
+	private Repository repository;
+
+	private Transaction txn;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		repository = new SailRepository(new MemoryStore());
+		repository.initialize();
+		txn = new Transaction(repository);
+		txn.begin(IsolationLevels.SNAPSHOT_READ);
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		txn.close();
+		repository.shutDown();
+	}
+
+	@Test
+	public void testAdd()
+		throws Exception
+	{
+		IRI context = repository.getValueFactory().createIRI("urn:context");
+		txn.add(nTriples(10000, false), "urn:base", RDFFormat.NTRIPLES, false, context);
+		txn.commit();
+
+		try (RepositoryConnection con = repository.getConnection()) {
+			assertEquals(10000, con.size(context));
+		}
+	}
+
+	@Test
+	public void testAddMalformedData()
+		throws Exception
+	{
+		try {
+			txn.add(nTriples(10000, true), "urn:base", RDFFormat.NTRIPLES, false);
+			fail("expected parse error");
+		}
+		catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof RDFParseException);
+		}
+		// the transaction thread is still available
+		txn.rollback();
+
+		try (RepositoryConnection con = repository.getConnection()) {
+			assertEquals(0, con.size());
+		}
+	}
+
+	private ByteArrayInputStream nTriples(int count, boolean malformed) {
+		StringBuilder data = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			data.append("<urn:s").append(i).append("> <urn:p> _:b").append(i).append(" .\n");
+		}
+		if (malformed) {
+			data.append("<urn:s> <urn:p> .\n");
+		}
+		return new ByteArrayInputStream(data.toString().getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,53 @@
+<%@ include file="/WEB-INF/includes/components/page.html.jspf" %>
+<%@ include file="/WEB-INF/includes/components/htmlStart.html.jspf" %>
+<%@ include file="/WEB-INF/includes/components/head.html.jspf" %>
+<%@ include file="/WEB-INF/includes/components/bodyStart.html.jspf" %>
+
+<%@ include file="/WEB-INF/includes/components/Header.html.jspf" %>
+
+<%@ include file="/WEB-INF/includes/components/Navigation.html.jspf" %>
+
+<%@ include file="/WEB-INF/includes/components/ContentHeader.html.jspf" %>
+
+<div id="content">
+	<h1><fmt:message key="${view.i18n}" /></h1>
+
+<%@ include file="/WEB-INF/includes/components/Message.html.jspf" %>
+
+	<p><fmt:message key="system.queries.overview.slowthreshold"><fmt:param value="${slowQueryThreshold}"/></fmt:message></p>
+
+	<table class="data">
+		<thead>
+			<tr><th><fmt:message key="system.queries.overview.id" /></th><th><fmt:message key="system.queries.overview.repository" /></th><th><fmt:message key="system.queries.overview.operation" /></th><th><fmt:message key="system.queries.overview.client" /></th><th><fmt:message key="system.queries.overview.elapsed" /></th><th><fmt:message key="system.queries.overview.results" /></th><th><fmt:message key="system.queries.overview.query" /></th><th></th></tr>
+		</thead>
+		<tbody>
+			<c:forEach var="query" items="${queries}">
+				<tr>
+					<td>${query.id}</td>
+					<td><c:out value="${query.repositoryID}" /></td>
+					<td>${query.operation}</td>
+					<td><c:out value="${query.client}" /></td>
+					<td><fmt:message key="system.queries.overview.elapsed.value"><fmt:param value="${query.elapsedMillis}"/></fmt:message></td>
+					<td>${query.rows}</td>
+					<td><pre><c:out value="${query.queryString}" /></pre></td>
+					<td>
+						<c:choose>
+							<c:when test="${query.cancelled}"><fmt:message key="system.queries.overview.cancelled" /></c:when>
+							<c:when test="${query.cancellable}">
+								<form method="post">
+									<input type="hidden" name="cancel" value="${query.id}" />
+									<input type="submit" value="<fmt:message key="system.queries.overview.cancel" />" />
+								</form>
+							</c:when>
+						</c:choose>
+					</td>
+				</tr>
+			</c:forEach>
+		</tbody>
+	</table>
+</div>
+
+<%@ include file="/WEB-INF/includes/components/Footer.html.jspf" %>
+
+<%@ include file="/WEB-INF/includes/components/bodyStop.html.jspf" %>
+<%@ include file="/WEB-INF/includes/components/htmlStop.html.jspf" %>
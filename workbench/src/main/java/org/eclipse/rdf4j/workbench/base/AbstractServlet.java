@@ -44,7 +44,7 @@ public abstract class AbstractServlet implements Servlet {
 	@Deprecated
 	protected static final String SERVER_PASSWORD = "server-password";
 
-	protected static final String SERVER_USER_PASSWORD = "server-user-password";
+	public static final String SERVER_USER_PASSWORD = "server-user-password";
 
 	protected static final String ACCEPT = "Accept";
 
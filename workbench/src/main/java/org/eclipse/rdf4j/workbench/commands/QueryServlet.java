@@ -12,10 +12,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Map;
 import java.util.Optional;
-import java.util.WeakHashMap;
 
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
@@ -45,6 +42,7 @@ import org.eclipse.rdf4j.workbench.base.TransformationServlet;
 import org.eclipse.rdf4j.workbench.exceptions.BadRequestException;
 import org.eclipse.rdf4j.workbench.util.QueryEvaluator;
 import org.eclipse.rdf4j.workbench.util.QueryStorage;
+import org.eclipse.rdf4j.workbench.util.QueryTextCache;
 import org.eclipse.rdf4j.workbench.util.TupleResultBuilder;
 import org.eclipse.rdf4j.workbench.util.WorkbenchRequest;
 import org.json.JSONException;
@@ -76,10 +74,7 @@ public class QueryServlet extends TransformationServlet {
 
 	protected boolean writeQueryCookie;
 
-	// Poor Man's Cache: At the very least, garbage collection can clean up keys
-	// followed by values whenever the JVM faces memory pressure.
-	private static Map<String, String> queryCache = Collections.synchronizedMap(
-			new WeakHashMap<String, String>());
+	private static QueryTextCache queryCache = new QueryTextCache();
 
 	/**
 	 * For testing purposes only.
@@ -87,7 +82,7 @@ public class QueryServlet extends TransformationServlet {
 	 * @param testQueryCache
 	 *        cache to use instead of the production cache instance
 	 */
-	protected static void substituteQueryCache(Map<String, String> testQueryCache) {
+	protected static void substituteQueryCache(QueryTextCache testQueryCache) {
 		queryCache = testQueryCache;
 	}
 
@@ -130,6 +125,9 @@ public class QueryServlet extends TransformationServlet {
 		super.init(config);
 		try {
 			this.storage = QueryStorage.getSingletonInstance(this.appConfig);
+			if (QueryTextCache.isPersistenceConfigured()) {
+				queryCache.setStore(this.storage);
+			}
 		}
 		catch (RepositoryException e) {
 			throw new ServletException(e);
@@ -141,6 +139,7 @@ public class QueryServlet extends TransformationServlet {
 
 	@Override
 	public void destroy() {
+		queryCache.setStore(null);
 		this.storage.shutdown();
 		super.destroy();
 	}
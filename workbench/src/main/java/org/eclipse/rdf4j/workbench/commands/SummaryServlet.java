@@ -8,109 +8,75 @@
 package org.eclipse.rdf4j.workbench.commands;
 
 import java.util.Arrays;
-import java.util.List;
-import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.servlet.http.HttpServletResponse;
 
-import org.eclipse.rdf4j.common.iteration.Iterations;
 import org.eclipse.rdf4j.query.MalformedQueryException;
 import org.eclipse.rdf4j.query.QueryEvaluationException;
 import org.eclipse.rdf4j.query.QueryResultHandlerException;
-import org.eclipse.rdf4j.repository.RepositoryConnection;
 import org.eclipse.rdf4j.repository.RepositoryException;
 import org.eclipse.rdf4j.repository.manager.LocalRepositoryManager;
 import org.eclipse.rdf4j.repository.manager.RemoteRepositoryManager;
 import org.eclipse.rdf4j.workbench.base.TransformationServlet;
+import org.eclipse.rdf4j.workbench.util.RepositoryStatistics;
 import org.eclipse.rdf4j.workbench.util.TupleResultBuilder;
+import org.eclipse.rdf4j.workbench.util.WorkbenchRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class SummaryServlet extends TransformationServlet {
 
-	private final ExecutorService executorService = Executors.newCachedThreadPool();
+	private static final long TIMEOUT = 2000;
+
+	private static final RepositoryStatistics STATISTICS = RepositoryStatistics.INSTANCE;
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(SummaryServlet.class);
 
 	@Override
-	public void service(TupleResultBuilder builder, String xslPath)
+	protected void service(WorkbenchRequest req, HttpServletResponse resp, String xslPath)
+		throws Exception
+	{
+		// the statistics of a remote repository depend on the credentials it is accessed with
+		service(getTupleResultBuilder(req, resp, resp.getOutputStream()), xslPath,
+				req.getCookie(SERVER_USER_PASSWORD));
+	}
+
+	private void service(TupleResultBuilder builder, String xslPath, final String credentials)
 		throws RepositoryException, QueryEvaluationException, MalformedQueryException,
 		QueryResultHandlerException
 	{
 		builder.transform(xslPath, "summary.xsl");
 		builder.start("id", "description", "location", "server", "size", "contexts");
 		builder.link(Arrays.asList(INFO));
-		final RepositoryConnection con = repository.getConnection();
-		try {
-			String size = null;
-			String numContexts = null;
-			try {
-				List<Future<String>> futures = getRepositoryStatistics(con);
-				size = getResult("repository size.", futures.get(0));
-				numContexts = getResult("labeled contexts.", futures.get(1));
-			}
-			catch (InterruptedException e) {
-				LOGGER.warn("Interrupted while requesting repository statistics.", e);
-			}
-			builder.result(info.getId(), info.getDescription(), info.getLocation(), getServer(), size,
-					numContexts);
-			builder.end();
-		}
-		finally {
-			con.close();
-		}
+		// both statistics are computed in parallel, so they share the time allowed
+		final long deadline = System.currentTimeMillis() + TIMEOUT;
+		String size = getResult("repository size.",
+				timeout -> STATISTICS.getSize(repository, credentials, timeout), deadline);
+		String numContexts = getResult("labeled contexts.",
+				timeout -> STATISTICS.getContextCount(repository, credentials, timeout), deadline);
+		builder.result(info.getId(), info.getDescription(), info.getLocation(), getServer(), size,
+				numContexts);
+		builder.end();
 	}
 
-	private String getResult(String itemRequested, Future<String> future) {
-		String result = "Unexpected interruption while requesting " + itemRequested;
+	private String getResult(String itemRequested, Statistic statistic, long deadline) {
 		try {
-			if (future.isCancelled()) {
-				result = "Timed out while requesting " + itemRequested;
-			}
-			else {
-				try {
-					result = future.get();
-				}
-				catch (ExecutionException e) {
-					LOGGER.warn("Exception occured during async request.", e);
-					result = "Exception occured while requesting " + itemRequested;
-				}
-			}
+			return Long.toString(statistic.get(Math.max(0, deadline - System.currentTimeMillis())));
+		}
+		catch (TimeoutException e) {
+			return "Timed out while requesting " + itemRequested;
+		}
+		catch (ExecutionException e) {
+			LOGGER.warn("Exception occured during async request.", e);
+			return "Exception occured while requesting " + itemRequested;
 		}
 		catch (InterruptedException e) {
-			LOGGER.error("Unexpected exception", e);
+			LOGGER.warn("Interrupted while requesting repository statistics.", e);
+			Thread.currentThread().interrupt();
+			return "Unexpected interruption while requesting " + itemRequested;
 		}
-		return result;
-	}
-
-	@SuppressWarnings("unchecked")
-	private List<Future<String>> getRepositoryStatistics(final RepositoryConnection con)
-		throws InterruptedException
-	{
-		List<Future<String>> futures;
-		futures = executorService.invokeAll(Arrays.asList(new Callable<String>() {
-
-			@Override
-			public String call()
-				throws RepositoryException
-			{
-				return Long.toString(con.size());
-			}
-
-		}, new Callable<String>() {
-
-			@Override
-			public String call()
-				throws RepositoryException
-			{
-				return Integer.toString(Iterations.asList(con.getContextIDs()).size());
-			}
-
-		}), 2000, TimeUnit.MILLISECONDS);
-		return futures;
 	}
 
 	private String getServer() {
@@ -123,4 +89,10 @@ public class SummaryServlet extends TransformationServlet {
 		}
 		return result;
 	}
+
+	private interface Statistic {
+
+		long get(long timeout)
+			throws InterruptedException, ExecutionException, TimeoutException;
+	}
 }
@@ -7,19 +7,26 @@
  *******************************************************************************/
 package org.eclipse.rdf4j.workbench.util;
 
+import java.io.IOException;
 import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
 
 import org.eclipse.rdf4j.RDF4JException;
-import org.eclipse.rdf4j.common.iteration.Iterations;
+import org.eclipse.rdf4j.common.iteration.Iteration;
 import org.eclipse.rdf4j.model.Statement;
 import org.eclipse.rdf4j.query.BindingSet;
 import org.eclipse.rdf4j.query.BooleanQuery;
 import org.eclipse.rdf4j.query.GraphQuery;
+import org.eclipse.rdf4j.query.GraphQueryResult;
 import org.eclipse.rdf4j.query.Query;
 import org.eclipse.rdf4j.query.QueryEvaluationException;
 import org.eclipse.rdf4j.query.QueryLanguage;
@@ -31,19 +38,28 @@ import org.eclipse.rdf4j.rio.RDFFormat;
 import org.eclipse.rdf4j.rio.RDFHandlerException;
 import org.eclipse.rdf4j.rio.RDFWriter;
 import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.workbench.base.AbstractServlet;
 import org.eclipse.rdf4j.workbench.exceptions.BadRequestException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Evaluates queries for QueryServlet.
  */
 public final class QueryEvaluator {
 
-	private static final String INFO = "info";
+	static final String INFO = "info";
 
 	public static final QueryEvaluator INSTANCE = new QueryEvaluator();
 
 	private static final String ACCEPT = "Accept";
 
+	private static final List<String> GRAPH_VARIABLES = Arrays.asList("subject", "predicate", "object");
+
+	private static final ResultCursorCache CURSORS = ResultCursorCache.INSTANCE;
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(QueryEvaluator.class);
+
 	private QueryEvaluator() {
 		// do nothing
 	}
@@ -85,6 +101,7 @@ public final class QueryEvaluator {
 		int offset = req.getInt("offset");
 		int limit = req.getInt("limit_query");
 		boolean paged = limit > 0;
+		ResultCursorCache.Key cursorKey = null;
 		if (query instanceof GraphQuery || query instanceof TupleQuery) {
 			final int know_total = req.getInt("know_total");
 			evaluateCookie = know_total <= 0;
@@ -96,8 +113,20 @@ public final class QueryEvaluator {
 				if (pagedQuery.isPaged()) {
 					offset = pagedQuery.getOffset();
 					limit = pagedQuery.getLimit();
+					// results written in an RDF format are never paged
+					if (CURSORS.isEnabled()
+							&& (query instanceof TupleQuery || !req.isParameterPresent(ACCEPT)))
+					{
+						cursorKey = new ResultCursorCache.Key(getClientID(req), con.getRepository(), queryLn,
+								queryText, req.getParameter("infer"));
+					}
 				}
 				if (!evaluateCookie) {
+					if (cursorKey != null
+							&& this.evaluateCachedPage(builder, xslPath, query, cursorKey, offset, limit))
+					{
+						return;
+					}
 					query = QueryFactory.prepareQuery(con, queryLn, pagedQuery.toString());
 				}
 			}
@@ -106,7 +135,59 @@ public final class QueryEvaluator {
 			final boolean infer = Boolean.parseBoolean(req.getParameter("infer"));
 			query.setIncludeInferred(infer);
 		}
-		this.evaluate(builder, out, xslPath, req, resp, cookies, query, evaluateCookie, paged, offset, limit);
+		this.evaluate(builder, out, xslPath, req, resp, cookies, query, evaluateCookie, paged, offset, limit,
+				cursorKey);
+	}
+
+	/**
+	 * Shows a page of a result that has been kept by the {@link ResultCursorCache}, instead of evaluating the
+	 * query again.
+	 * 
+	 * @return false if the result is not available
+	 */
+	private boolean evaluateCachedPage(final TupleResultBuilder builder, final String xslPath,
+			final Query query, final ResultCursorCache.Key cursorKey, int offset, int limit)
+		throws QueryResultHandlerException
+	{
+		if (query instanceof TupleQuery) {
+			final ResultCursorCache.Cursor<BindingSet> cursor = CURSORS.get(cursorKey);
+			final List<BindingSet> bindings = getPage(cursor, offset, limit);
+			if (bindings == null) {
+				return false;
+			}
+			final String[] names = cursor.getBindingNames().toArray(new String[0]);
+			startTupleResult(builder, xslPath, names);
+			final List<Object> values = new ArrayList<Object>(names.length);
+			for (BindingSet set : bindings) {
+				addResult(builder, names, values, set);
+			}
+		}
+		else {
+			final ResultCursorCache.Cursor<Statement> cursor = CURSORS.get(cursorKey);
+			final List<Statement> statements = getPage(cursor, offset, limit);
+			if (statements == null) {
+				return false;
+			}
+			startGraphResult(builder, xslPath);
+			for (Statement statement : statements) {
+				addResult(builder, statement);
+			}
+		}
+		builder.end();
+		return true;
+	}
+
+	private static <T> List<T> getPage(final ResultCursorCache.Cursor<T> cursor, int offset, int limit) {
+		if (cursor == null) {
+			return null;
+		}
+		try {
+			return cursor.getPage(offset, limit);
+		}
+		catch (IOException e) {
+			LOGGER.warn("Failed to read cached query result, evaluating query again", e);
+			return null;
+		}
 	}
 
 	/***
@@ -136,30 +217,130 @@ public final class QueryEvaluator {
 			HttpServletResponse resp, CookieHandler cookies, final TupleQuery query, boolean writeCookie,
 			boolean paged, int offset, int limit)
 		throws QueryEvaluationException, QueryResultHandlerException
+	{
+		evaluateTupleQuery(builder, xslPath, req, resp, cookies, query, writeCookie, paged, offset, limit,
+				null);
+	}
+
+	private void evaluateTupleQuery(final TupleResultBuilder builder, String xslPath, WorkbenchRequest req,
+			HttpServletResponse resp, CookieHandler cookies, final TupleQuery query, boolean writeCookie,
+			boolean paged, int offset, int limit, ResultCursorCache.Key cursorKey)
+		throws QueryEvaluationException, QueryResultHandlerException
 	{
 		final TupleQueryResult result = query.evaluate();
-		final String[] names = result.getBindingNames().toArray(new String[0]);
-		List<BindingSet> bindings = Iterations.asList(result);
-		if (writeCookie) {
-			cookies.addTotalResultCountCookie(req, resp, bindings.size());
+		ResultCursorCache.Recorder<BindingSet> recorder = null;
+		try {
+			final String[] names = result.getBindingNames().toArray(new String[0]);
+			List<BindingSet> bindings = null;
+			if (writeCookie) {
+				// The cookie has to precede the response body, so the results are
+				// counted first, retaining only those on the requested page.
+				bindings = new ArrayList<BindingSet>();
+				if (cursorKey != null) {
+					recorder = CURSORS.record(cursorKey, result.getBindingNames());
+				}
+				cookies.addTotalResultCountCookie(req, resp,
+						collectPage(result, paged, offset, limit, bindings, recorder));
+			}
+			startTupleResult(builder, xslPath, names);
+			final List<Object> values = new ArrayList<Object>(names.length);
+			if (bindings != null) {
+				for (BindingSet set : bindings) {
+					addResult(builder, names, values, set);
+				}
+			}
+			else {
+				while (result.hasNext()) {
+					addResult(builder, names, values, result.next());
+				}
+			}
+			builder.end();
 		}
+		finally {
+			if (recorder != null) {
+				recorder.abort();
+			}
+			result.close();
+		}
+	}
+
+	private void startTupleResult(final TupleResultBuilder builder, String xslPath, final String[] names)
+		throws QueryResultHandlerException
+	{
 		builder.transform(xslPath, "tuple.xsl");
 		builder.start();
 		builder.variables(names);
 		builder.link(Arrays.asList(INFO));
-		final List<Object> values = new ArrayList<Object>(names.length);
-		if (paged && writeCookie) {
-			// Only in this case do we have paged results, but were given the full
-			// query. Just-in-case parameter massaging below to avoid array index
-			// issues.
-			int fromIndex = Math.min(0, offset);
-			bindings = bindings.subList(fromIndex,
-					Math.max(fromIndex, Math.min(offset + limit, bindings.size())));
+	}
+
+	/**
+	 * Identifies the client for the {@link ResultCursorCache} without creating a session: the existing
+	 * session if there is one, otherwise the server credentials, so that results obtained with different
+	 * credentials are kept apart.
+	 */
+	private static String getClientID(WorkbenchRequest req) {
+		final HttpSession session = req.getSession(false);
+		if (session != null) {
+			return "session:" + session.getId();
 		}
-		for (BindingSet set : bindings) {
-			addResult(builder, names, values, set);
+		final String credentials = req.getCookie(AbstractServlet.SERVER_USER_PASSWORD);
+		if (credentials != null) {
+			// the key is kept in memory for a while, so it must not reveal the password
+			return "credentials:" + hash(credentials);
 		}
-		builder.end();
+		return "anonymous";
+	}
+
+	private static String hash(String value) {
+		try {
+			final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			return new BigInteger(1, digest.digest(value.getBytes(StandardCharsets.UTF_8))).toString(16);
+		}
+		catch (NoSuchAlgorithmException e) {
+			// every Java platform supports SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Counts all results, collecting only those within the requested page.
+	 * 
+	 * @param results
+	 *        the query results, which are consumed
+	 * @param paged
+	 *        whether to collect a limited subset
+	 * @param offset
+	 *        the index of the first result to collect
+	 * @param limit
+	 *        the maximum number of results to collect
+	 * @param page
+	 *        the list to add the collected results to
+	 * @param recorder
+	 *        records all results for the {@link ResultCursorCache}, may be null
+	 * @return the total number of results
+	 */
+	static <T> int collectPage(final Iteration<? extends T, QueryEvaluationException> results,
+			boolean paged, int offset, int limit, final List<T> page, ResultCursorCache.Recorder<T> recorder)
+		throws QueryEvaluationException
+	{
+		// Just-in-case parameter massaging to avoid index issues.
+		final int fromIndex = paged ? Math.max(0, offset) : 0;
+		final int toIndex = paged ? Math.max(fromIndex, offset + limit) : Integer.MAX_VALUE;
+		int count = 0;
+		while (results.hasNext()) {
+			final T next = results.next();
+			if (count >= fromIndex && count < toIndex) {
+				page.add(next);
+			}
+			if (recorder != null && recorder.isRecording()) {
+				recorder.add(next);
+			}
+			count++;
+		}
+		if (recorder != null) {
+			recorder.complete();
+		}
+		return count;
 	}
 
 	private void addResult(final TupleResultBuilder builder, final String[] names, final List<Object> values,
@@ -225,30 +406,58 @@ public final class QueryEvaluator {
 	 */
 	private void evaluateGraphQuery(final TupleResultBuilder builder, String xslPath, WorkbenchRequest req,
 			HttpServletResponse resp, CookieHandler cookies, final GraphQuery query, boolean writeCookie,
-			boolean paged, int offset, int limit)
+			boolean paged, int offset, int limit, ResultCursorCache.Key cursorKey)
 		throws QueryEvaluationException, QueryResultHandlerException
 	{
-		List<Statement> statements = Iterations.asList(query.evaluate());
-		if (writeCookie) {
-			cookies.addTotalResultCountCookie(req, resp, statements.size());
+		final GraphQueryResult result = query.evaluate();
+		ResultCursorCache.Recorder<Statement> recorder = null;
+		try {
+			List<Statement> statements = null;
+			if (writeCookie) {
+				// The cookie has to precede the response body, so the results are
+				// counted first, retaining only those on the requested page.
+				statements = new ArrayList<Statement>();
+				if (cursorKey != null) {
+					recorder = CURSORS.record(cursorKey, GRAPH_VARIABLES);
+				}
+				cookies.addTotalResultCountCookie(req, resp,
+						collectPage(result, paged, offset, limit, statements, recorder));
+			}
+			startGraphResult(builder, xslPath);
+			if (statements != null) {
+				for (Statement statement : statements) {
+					addResult(builder, statement);
+				}
+			}
+			else {
+				while (result.hasNext()) {
+					addResult(builder, result.next());
+				}
+			}
+			builder.end();
+		}
+		finally {
+			if (recorder != null) {
+				recorder.abort();
+			}
+			result.close();
 		}
+	}
+
+	private void startGraphResult(final TupleResultBuilder builder, String xslPath)
+		throws QueryResultHandlerException
+	{
 		builder.transform(xslPath, "graph.xsl");
 		builder.start();
-		builder.variables("subject", "predicate", "object");
+		builder.variables(GRAPH_VARIABLES.toArray(new String[0]));
 		builder.link(Arrays.asList(INFO));
-		if (paged && writeCookie) {
-			// Only in this case do we have paged results, but were given the full
-			// query. Just-in-case parameter massaging below to avoid array index
-			// issues.
-			int fromIndex = Math.min(0, offset);
-			statements = statements.subList(fromIndex,
-					Math.max(fromIndex, Math.min(offset + limit, statements.size())));
-		}
-		for (Statement statement : statements) {
-			builder.result(statement.getSubject(), statement.getPredicate(), statement.getObject(),
-					statement.getContext());
-		}
-		builder.end();
+	}
+
+	private void addResult(final TupleResultBuilder builder, Statement statement)
+		throws QueryResultHandlerException
+	{
+		builder.result(statement.getSubject(), statement.getPredicate(), statement.getObject(),
+				statement.getContext());
 	}
 
 	private void evaluateGraphQuery(final RDFWriter writer, final GraphQuery query)
@@ -267,12 +476,12 @@ public final class QueryEvaluator {
 
 	private void evaluate(final TupleResultBuilder builder, final OutputStream out, final String xslPath,
 			final WorkbenchRequest req, HttpServletResponse resp, CookieHandler cookies, final Query query,
-			boolean writeCookie, boolean paged, int offset, int limit)
+			boolean writeCookie, boolean paged, int offset, int limit, ResultCursorCache.Key cursorKey)
 		throws RDF4JException, BadRequestException
 	{
 		if (query instanceof TupleQuery) {
 			this.evaluateTupleQuery(builder, xslPath, req, resp, cookies, (TupleQuery)query, writeCookie,
-					paged, offset, limit);
+					paged, offset, limit, cursorKey);
 		}
 		else {
 			final RDFFormat format = req.isParameterPresent(ACCEPT)
@@ -281,7 +490,7 @@ public final class QueryEvaluator {
 				GraphQuery graphQuery = (GraphQuery)query;
 				if (null == format) {
 					this.evaluateGraphQuery(builder, xslPath, req, resp, cookies, graphQuery, writeCookie,
-							paged, offset, limit);
+							paged, offset, limit, cursorKey);
 				}
 				else {
 					this.evaluateGraphQuery(Rio.createWriter(format, out), graphQuery);
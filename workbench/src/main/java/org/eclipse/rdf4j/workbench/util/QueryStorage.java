@@ -9,11 +9,25 @@ package org.eclipse.rdf4j.workbench.util;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.rdf4j.RDF4JException;
 import org.eclipse.rdf4j.common.app.AppConfiguration;
 import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Literal;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.query.BindingSet;
 import org.eclipse.rdf4j.query.MalformedQueryException;
 import org.eclipse.rdf4j.query.QueryEvaluationException;
 import org.eclipse.rdf4j.query.QueryLanguage;
@@ -24,6 +38,7 @@ import org.eclipse.rdf4j.query.UpdateExecutionException;
 import org.eclipse.rdf4j.repository.Repository;
 import org.eclipse.rdf4j.repository.RepositoryConnection;
 import org.eclipse.rdf4j.repository.RepositoryException;
+import org.eclipse.rdf4j.repository.RepositoryResult;
 import org.eclipse.rdf4j.repository.http.HTTPRepository;
 import org.eclipse.rdf4j.repository.sail.SailRepository;
 import org.eclipse.rdf4j.sail.nativerdf.NativeStore;
@@ -40,8 +55,6 @@ public class QueryStorage {
 
 	private static final Object LOCK = new Object();
 
-	private static final QueryEvaluator EVAL = QueryEvaluator.INSTANCE;
-
 	private static QueryStorage instance;
 
 	public static QueryStorage getSingletonInstance(final AppConfiguration config)
@@ -61,7 +74,17 @@ public class QueryStorage {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(QueryStorage.class);
 
-	private static final String PRE = "PREFIX : <https://openrdf.org/workbench/>\n";
+	private static final String NAMESPACE = "https://openrdf.org/workbench/";
+
+	private static final String PRE = "PREFIX : <" + NAMESPACE + ">\n";
+
+	private static final IRI QUERY_CACHE = SimpleValueFactory.getInstance().createIRI(NAMESPACE,
+			"queryCache");
+
+	private static final IRI CACHED_QUERY = SimpleValueFactory.getInstance().createIRI(NAMESPACE,
+			"cachedQuery");
+
+	private static final IRI CACHED_AT = SimpleValueFactory.getInstance().createIRI(NAMESPACE, "cachedAt");
 
 	// SAVE needs xsd: prefix since explicit XSD data types will be substituted.
 	private static final String SAVE = "PREFIX xsd:<http://www.w3.org/2001/XMLSchema#>\n" + PRE
@@ -69,18 +92,8 @@ public class QueryStorage {
 			+ ":repository $<repository> ; :shared $<shared> ; :queryLanguage $<queryLanguage> ; :query $<queryText> ; "
 			+ ":infer $<infer> ; :rowsPerPage $<rowsPerPage> . }";
 
-	private static final String ASK_EXISTS = PRE
-			+ "ASK { [] :userName $<userName> ; :queryName $<queryName> ; :repository $<repository> . }";
-
 	private static final String UPDATE_FILTER = "FILTER (?user = $<userName> || ?user = \"\" ) } ";
 
-	private static final String READ_FILTER = "FILTER (?user = $<userName> || ?user = \"\" || ?shared) } ";
-
-	private static final String ASK_UPDATABLE = PRE + "ASK { $<query> :userName ?user . " + UPDATE_FILTER;
-
-	private static final String ASK_READABLE = PRE + "ASK { $<query> :userName ?user  ; :shared ?shared . "
-			+ READ_FILTER;
-
 	private static final String DELETE = PRE + "DELETE WHERE { $<query> :userName ?user ; ?p ?o . }";
 
 	private static final String MATCH = ":shared ?s ; :queryLanguage ?ql ; :query ?q ; :rowsPerPage ?rpp .\n";
@@ -90,20 +103,54 @@ public class QueryStorage {
 			+ ":infer $<infer> ; :rowsPerPage $<rowsPerPage> . } WHERE { $<query> :userName ?user ; " + MATCH
 			+ UPDATE_FILTER;
 
-	private static final String SELECT_URI = PRE
-			+ "SELECT ?query { ?query :repository $<repository> ; :userName $<userName> ; :queryName $<queryName> . } ";
-
-	private static final String SELECT_TEXT = PRE
-			+ "SELECT ?queryText { [] :repository $<repository> ; :userName $<userName> ; :queryName $<queryName> ; :query ?queryText . } ";
-
+	/**
+	 * Selects the metadata of the saved queries, or of one saved query if ?query is bound.
+	 */
 	private static final String SELECT = PRE
-			+ "SELECT ?query ?user ?queryName ?shared ?queryLn ?queryText ?infer ?rowsPerPage "
-			+ "{ ?query :repository $<repository> ; :userName ?user ; :queryName ?queryName ; :shared ?shared ; "
-			+ ":queryLanguage ?queryLn ; :query ?queryText ; :infer ?infer ; :rowsPerPage ?rowsPerPage .\n"
-			+ READ_FILTER + "ORDER BY ?user ?queryName";
+			+ "SELECT ?query ?repository ?user ?queryName ?shared ?queryLn ?queryText ?infer ?rowsPerPage "
+			+ "{ ?query :userName ?user . OPTIONAL { ?query :repository ?repository } "
+			+ "OPTIONAL { ?query :queryName ?queryName } OPTIONAL { ?query :shared ?shared } "
+			+ "OPTIONAL { ?query :queryLanguage ?queryLn } OPTIONAL { ?query :query ?queryText } "
+			+ "OPTIONAL { ?query :infer ?infer } OPTIONAL { ?query :rowsPerPage ?rowsPerPage } }";
+
+	/**
+	 * The binding names of the saved query listing.
+	 */
+	private static final String[] SAVED_QUERY_NAMES = new String[] {
+			"query",
+			"user",
+			"queryName",
+			"shared",
+			"queryLn",
+			"queryText",
+			"infer",
+			"rowsPerPage" };
+
+	private static final Comparator<SavedQuery> SAVED_QUERY_ORDER = new Comparator<SavedQuery>() {
+
+		@Override
+		public int compare(SavedQuery q1, SavedQuery q2) {
+			int result = q1.getUserName().compareTo(q2.getUserName());
+			return result == 0 ? q1.getQueryName().compareTo(q2.getQueryName()) : result;
+		}
+	};
 
 	private final Repository queries;
 
+	/**
+	 * Index of the saved query metadata, by query node. The index is loaded on first use, and kept coherent
+	 * by reloading the entries of the queries that are written.
+	 */
+	private final Map<Resource, SavedQuery> savedQueries = new ConcurrentHashMap<Resource, SavedQuery>();
+
+	/**
+	 * The same index, by repository URL, user name and query name.
+	 */
+	private final Map<List<String>, SavedQuery> savedQueriesByName =
+			new ConcurrentHashMap<List<String>, SavedQuery>();
+
+	private volatile boolean indexed;
+
 	private static final String USER_NAME = "$<userName>";
 
 	private static final String REPOSITORY = "$<repository>";
@@ -205,11 +252,12 @@ public class QueryStorage {
 		}
 		this.checkQueryText(queryText);
 		final QueryStringBuilder save = new QueryStringBuilder(SAVE);
+		final IRI query = queries.getValueFactory().createIRI("urn:uuid:" + UUID.randomUUID());
 		save.replaceURI(REPOSITORY, repository.getRepositoryURL());
-		save.replaceURI(QUERY, "urn:uuid:" + UUID.randomUUID());
+		save.replaceURI(QUERY, query.toString());
 		save.replaceQuote(QUERY_NAME, queryName);
 		this.replaceUpdateFields(save, userName, shared, queryLanguage, queryText, infer, rowsPerPage);
-		updateQueryRepository(save.toString());
+		updateQueryRepository(save.toString(), query);
 	}
 
 	/**
@@ -224,7 +272,8 @@ public class QueryStorage {
 	public boolean canChange(final IRI query, final String currentUser)
 		throws RepositoryException, QueryEvaluationException, MalformedQueryException
 	{
-		return performAccessQuery(ASK_UPDATABLE, query, currentUser);
+		final SavedQuery savedQuery = getSavedQueries().get(query);
+		return savedQuery != null && savedQuery.isOwnedBy(currentUser);
 	}
 
 	/**
@@ -240,40 +289,15 @@ public class QueryStorage {
 	public boolean canRead(IRI query, String currentUser)
 		throws RepositoryException, QueryEvaluationException, MalformedQueryException
 	{
-		return performAccessQuery(ASK_READABLE, query, currentUser);
-	}
-
-	private boolean performAccessQuery(String accessSPARQL, IRI query, String currentUser)
-		throws RepositoryException, QueryEvaluationException, MalformedQueryException
-	{
-		final QueryStringBuilder canDelete = new QueryStringBuilder(accessSPARQL);
-		canDelete.replaceURI(QUERY, query.toString());
-		canDelete.replaceQuote(USER_NAME, currentUser);
-		LOGGER.info("{}", canDelete);
-		final RepositoryConnection connection = this.queries.getConnection();
-		try {
-			return connection.prepareBooleanQuery(QueryLanguage.SPARQL, canDelete.toString()).evaluate();
-		}
-		finally {
-			connection.close();
-		}
+		final SavedQuery savedQuery = getSavedQueries().get(query);
+		return savedQuery != null && savedQuery.isReadableBy(currentUser);
 	}
 
 	public boolean askExists(final HTTPRepository repository, final String queryName, final String userName)
 		throws QueryEvaluationException, RepositoryException, MalformedQueryException
 	{
-		final QueryStringBuilder ask = new QueryStringBuilder(ASK_EXISTS);
-		ask.replaceURI(REPOSITORY, repository.getRepositoryURL());
-		ask.replaceQuote(QUERY_NAME, queryName);
-		ask.replaceQuote(USER_NAME, userName);
-		LOGGER.info("{}", ask);
-		final RepositoryConnection connection = this.queries.getConnection();
-		try {
-			return connection.prepareBooleanQuery(QueryLanguage.SPARQL, ask.toString()).evaluate();
-		}
-		finally {
-			connection.close();
-		}
+		getSavedQueries();
+		return savedQueriesByName.containsKey(getNameKey(repository.getRepositoryURL(), userName, queryName));
 	}
 
 	/**
@@ -292,7 +316,7 @@ public class QueryStorage {
 		final QueryStringBuilder delete = new QueryStringBuilder(DELETE);
 		delete.replaceQuote(QueryStorage.USER_NAME, userName);
 		delete.replaceURI(QUERY, query.toString());
-		updateQueryRepository(delete.toString());
+		updateQueryRepository(delete.toString(), query);
 	}
 
 	/**
@@ -327,7 +351,7 @@ public class QueryStorage {
 		final QueryStringBuilder update = new QueryStringBuilder(UPDATE);
 		update.replaceURI(QUERY, query);
 		this.replaceUpdateFields(update, userName, shared, queryLanguage, queryText, infer, rowsPerPage);
-		this.updateQueryRepository(update.toString());
+		this.updateQueryRepository(update.toString(), query);
 	}
 
 	/**
@@ -356,16 +380,24 @@ public class QueryStorage {
 		throws RepositoryException, MalformedQueryException, QueryEvaluationException,
 		QueryResultHandlerException
 	{
-		final QueryStringBuilder select = new QueryStringBuilder(SELECT);
-		select.replaceQuote(USER_NAME, userName);
-		select.replaceURI(REPOSITORY, repository.getRepositoryURL());
-		final RepositoryConnection connection = this.queries.getConnection();
-		try {
-			EVAL.evaluateTupleQuery(builder,
-					connection.prepareTupleQuery(QueryLanguage.SPARQL, select.toString()));
+		final String repositoryURL = repository.getRepositoryURL();
+		final List<SavedQuery> selected = new ArrayList<SavedQuery>();
+		for (SavedQuery savedQuery : getSavedQueries().values()) {
+			if (repositoryURL.equals(savedQuery.getRepositoryURL()) && savedQuery.isComplete()
+					&& savedQuery.isReadableBy(userName))
+			{
+				selected.add(savedQuery);
+			}
 		}
-		finally {
-			connection.close();
+		Collections.sort(selected, SAVED_QUERY_ORDER);
+		builder.variables(SAVED_QUERY_NAMES);
+		builder.link(Arrays.asList(QueryEvaluator.INFO));
+		final Object[] values = new Object[SAVED_QUERY_NAMES.length];
+		for (SavedQuery savedQuery : selected) {
+			for (int i = 0; i < values.length; i++) {
+				values[i] = savedQuery.bindings.getValue(SAVED_QUERY_NAMES[i]);
+			}
+			builder.result(values);
 		}
 	}
 
@@ -388,24 +420,7 @@ public class QueryStorage {
 	public IRI selectSavedQuery(final HTTPRepository repository, final String owner, final String queryName)
 		throws RDF4JException, BadRequestException
 	{
-		final QueryStringBuilder select = new QueryStringBuilder(SELECT_URI);
-		select.replaceQuote(QueryStorage.USER_NAME, owner);
-		select.replaceURI(REPOSITORY, repository.getRepositoryURL());
-		select.replaceQuote(QUERY_NAME, queryName);
-		final RepositoryConnection connection = this.queries.getConnection();
-		final TupleQuery query = connection.prepareTupleQuery(QueryLanguage.SPARQL, select.toString());
-		try {
-			final TupleQueryResult result = query.evaluate();
-			if (result.hasNext()) {
-				return (IRI)(result.next().getValue("query"));
-			}
-			else {
-				throw new BadRequestException("Could not find query entry in storage.");
-			}
-		}
-		finally {
-			connection.close();
-		}
+		return getSavedQuery(repository, owner, queryName).query;
 	}
 
 	/**
@@ -427,19 +442,77 @@ public class QueryStorage {
 	public String getQueryText(final HTTPRepository repository, final String owner, final String queryName)
 		throws RDF4JException, BadRequestException
 	{
-		final QueryStringBuilder select = new QueryStringBuilder(SELECT_TEXT);
-		select.replaceQuote(QueryStorage.USER_NAME, owner);
-		select.replaceURI(REPOSITORY, repository.getRepositoryURL());
-		select.replaceQuote(QUERY_NAME, queryName);
+		final Value queryText = getSavedQuery(repository, owner, queryName).bindings.getValue("queryText");
+		if (queryText == null) {
+			throw new BadRequestException("Could not find query entry in storage.");
+		}
+		return queryText.stringValue();
+	}
+
+	private SavedQuery getSavedQuery(final HTTPRepository repository, final String owner,
+			final String queryName)
+		throws RDF4JException, BadRequestException
+	{
+		getSavedQueries();
+		final SavedQuery savedQuery = savedQueriesByName.get(
+				getNameKey(repository.getRepositoryURL(), owner, queryName));
+		if (savedQuery == null) {
+			throw new BadRequestException("Could not find query entry in storage.");
+		}
+		return savedQuery;
+	}
+
+	private static List<String> getNameKey(final String repositoryURL, final String userName,
+			final String queryName)
+	{
+		return Arrays.asList(repositoryURL, userName, queryName);
+	}
+
+	private Map<Resource, SavedQuery> getSavedQueries()
+		throws RepositoryException, QueryEvaluationException, MalformedQueryException
+	{
+		if (!indexed) {
+			synchronized (savedQueries) {
+				if (!indexed) {
+					loadSavedQueries(null);
+					indexed = true;
+				}
+			}
+		}
+		return savedQueries;
+	}
+
+	/**
+	 * Loads the metadata of the given saved query, or of all saved queries, into the index.
+	 * 
+	 * @param query
+	 *        the saved query to load, or null to load all
+	 */
+	private void loadSavedQueries(final IRI query)
+		throws RepositoryException, QueryEvaluationException, MalformedQueryException
+	{
 		final RepositoryConnection connection = this.queries.getConnection();
-		final TupleQuery query = connection.prepareTupleQuery(QueryLanguage.SPARQL, select.toString());
 		try {
-			final TupleQueryResult result = query.evaluate();
-			if (result.hasNext()) {
-				return result.next().getValue("queryText").stringValue();
+			final TupleQuery select = connection.prepareTupleQuery(QueryLanguage.SPARQL, SELECT);
+			if (query != null) {
+				select.setBinding("query", query);
+			}
+			final List<SavedQuery> loaded = new ArrayList<SavedQuery>();
+			try (TupleQueryResult result = select.evaluate()) {
+				while (result.hasNext()) {
+					loaded.add(new SavedQuery(result.next()));
+				}
+			}
+			if (query == null) {
+				// queries deleted or renamed since the index was last loaded must not linger
+				savedQueries.clear();
+				savedQueriesByName.clear();
+			}
+			else if (loaded.isEmpty()) {
+				removeSavedQuery(query);
 			}
-			else {
-				throw new BadRequestException("Could not find query entry in storage.");
+			for (SavedQuery savedQuery : loaded) {
+				putSavedQuery(savedQuery);
 			}
 		}
 		finally {
@@ -447,19 +520,178 @@ public class QueryStorage {
 		}
 	}
 
-	private void updateQueryRepository(final String update)
-		throws RepositoryException, UpdateExecutionException, MalformedQueryException
+	/**
+	 * Puts the given saved query into the index, replacing its previous entry without ever leaving it out.
+	 */
+	private void putSavedQuery(final SavedQuery savedQuery) {
+		final List<String> nameKey = getNameKey(savedQuery.getRepositoryURL(), savedQuery.getUserName(),
+				savedQuery.getQueryName());
+		savedQueriesByName.put(nameKey, savedQuery);
+		final SavedQuery previous = savedQueries.put(savedQuery.query, savedQuery);
+		if (previous != null) {
+			final List<String> previousKey = getNameKey(previous.getRepositoryURL(), previous.getUserName(),
+					previous.getQueryName());
+			if (!previousKey.equals(nameKey)) {
+				savedQueriesByName.remove(previousKey, previous);
+			}
+		}
+	}
+
+	private void removeSavedQuery(final Resource query) {
+		final SavedQuery previous = savedQueries.remove(query);
+		if (previous != null) {
+			savedQueriesByName.remove(getNameKey(previous.getRepositoryURL(), previous.getUserName(),
+					previous.getQueryName()), previous);
+		}
+	}
+
+	/**
+	 * Stores the text of a query under the given hash, replacing any text previously stored under it. The
+	 * texts are kept apart from the saved queries, in a context of their own.
+	 * 
+	 * @param hash
+	 *        the hash that refers to the query text
+	 * @param queryText
+	 *        the text of the query
+	 * @throws RepositoryException
+	 *         if a problem occurs accessing storage
+	 */
+	public void putCachedQueryText(final String hash, final String queryText)
+		throws RepositoryException
 	{
-		LOGGER.info("SPARQL/Update of Query Storage:\n--\n{}\n--", update);
+		final ValueFactory vf = queries.getValueFactory();
+		final IRI subject = getCachedQueryIRI(hash);
+		final RepositoryConnection connection = this.queries.getConnection();
+		try {
+			connection.begin();
+			connection.remove(subject, null, null, QUERY_CACHE);
+			connection.add(subject, CACHED_QUERY, vf.createLiteral(queryText), QUERY_CACHE);
+			connection.add(subject, CACHED_AT, vf.createLiteral(System.currentTimeMillis()), QUERY_CACHE);
+			connection.commit();
+		}
+		finally {
+			connection.close();
+		}
+	}
+
+	/**
+	 * Sets the time of a query text stored with {@link #putCachedQueryText(String, String)} to the current
+	 * time, so that it is not removed by {@link #removeCachedQueryTexts(long)}.
+	 * 
+	 * @param hash
+	 *        the hash that refers to the query text
+	 * @throws RepositoryException
+	 *         if a problem occurs accessing storage
+	 */
+	public void touchCachedQueryText(final String hash)
+		throws RepositoryException
+	{
+		final ValueFactory vf = queries.getValueFactory();
+		final IRI subject = getCachedQueryIRI(hash);
 		final RepositoryConnection connection = this.queries.getConnection();
 		try {
-			connection.prepareUpdate(QueryLanguage.SPARQL, update).execute();
+			connection.begin();
+			if (connection.hasStatement(subject, CACHED_QUERY, null, false, QUERY_CACHE)) {
+				connection.remove(subject, CACHED_AT, null, QUERY_CACHE);
+				connection.add(subject, CACHED_AT, vf.createLiteral(System.currentTimeMillis()), QUERY_CACHE);
+			}
+			connection.commit();
 		}
 		finally {
 			connection.close();
 		}
 	}
 
+	/**
+	 * Retrieves a query text stored with {@link #putCachedQueryText(String, String)}.
+	 * 
+	 * @param hash
+	 *        the hash that refers to the query text
+	 * @return the query text, or null if none is stored under the hash
+	 * @throws RepositoryException
+	 *         if a problem occurs accessing storage
+	 */
+	public String getCachedQueryText(final String hash)
+		throws RepositoryException
+	{
+		final RepositoryConnection connection = this.queries.getConnection();
+		try {
+			try (RepositoryResult<Statement> text = connection.getStatements(getCachedQueryIRI(hash),
+					CACHED_QUERY, null, false, QUERY_CACHE))
+			{
+				return text.hasNext() ? text.next().getObject().stringValue() : null;
+			}
+		}
+		finally {
+			connection.close();
+		}
+	}
+
+	/**
+	 * Removes the query texts that were stored before the given time.
+	 * 
+	 * @param time
+	 *        time in milliseconds since the epoch
+	 * @throws RepositoryException
+	 *         if a problem occurs accessing storage
+	 */
+	public void removeCachedQueryTexts(final long time)
+		throws RepositoryException
+	{
+		final RepositoryConnection connection = this.queries.getConnection();
+		try {
+			connection.begin();
+			final List<Resource> expired = new ArrayList<Resource>();
+			try (RepositoryResult<Statement> cached = connection.getStatements(null, CACHED_AT, null, false,
+					QUERY_CACHE))
+			{
+				while (cached.hasNext()) {
+					final Statement st = cached.next();
+					if (((Literal)st.getObject()).longValue() < time) {
+						expired.add(st.getSubject());
+					}
+				}
+			}
+			for (Resource subject : expired) {
+				connection.remove(subject, null, null, QUERY_CACHE);
+			}
+			connection.commit();
+		}
+		finally {
+			connection.close();
+		}
+	}
+
+	private IRI getCachedQueryIRI(final String hash) {
+		return queries.getValueFactory().createIRI(NAMESPACE, "queryHash/" + hash);
+	}
+
+	private void updateQueryRepository(final String update, final IRI query)
+		throws RepositoryException, UpdateExecutionException, MalformedQueryException
+	{
+		LOGGER.info("SPARQL/Update of Query Storage:\n--\n{}\n--", update);
+		// writes are serialized with the loading of the index, so that it reflects the latest write
+		synchronized (savedQueries) {
+			final RepositoryConnection connection = this.queries.getConnection();
+			try {
+				connection.prepareUpdate(QueryLanguage.SPARQL, update).execute();
+			}
+			finally {
+				connection.close();
+			}
+			if (indexed) {
+				try {
+					loadSavedQueries(query);
+				}
+				catch (RDF4JException e) {
+					// rebuild the index on next use
+					indexed = false;
+					LOGGER.warn("Failed to reload saved query " + query, e);
+				}
+			}
+		}
+	}
+
 	/**
 	 * Perform replacement on several common fields for update operations.
 	 * 
@@ -502,4 +734,58 @@ public class QueryStorage {
 			throw new IllegalArgumentException("queryText may not contain '''-quoted strings.");
 		}
 	}
+
+	/**
+	 * The metadata of a saved query.
+	 */
+	private static final class SavedQuery {
+
+		private final IRI query;
+
+		private final BindingSet bindings;
+
+		private SavedQuery(BindingSet bindings) {
+			this.query = (IRI)bindings.getValue("query");
+			this.bindings = bindings;
+		}
+
+		private String getRepositoryURL() {
+			return getString("repository");
+		}
+
+		private String getUserName() {
+			return getString("user");
+		}
+
+		private String getQueryName() {
+			return getString("queryName");
+		}
+
+		private String getString(String name) {
+			final Value value = bindings.getValue(name);
+			return value == null ? "" : value.stringValue();
+		}
+
+		/**
+		 * @return whether all the metadata shown in the saved query listing are present
+		 */
+		private boolean isComplete() {
+			for (String name : SAVED_QUERY_NAMES) {
+				if (!bindings.hasBinding(name)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private boolean isOwnedBy(String userName) {
+			final String owner = getUserName();
+			return owner.equals(userName) || owner.isEmpty();
+		}
+
+		private boolean isReadableBy(String userName) {
+			final Value shared = bindings.getValue("shared");
+			return isOwnedBy(userName) || shared instanceof Literal && ((Literal)shared).booleanValue();
+		}
+	}
 }
\ No newline at end of file
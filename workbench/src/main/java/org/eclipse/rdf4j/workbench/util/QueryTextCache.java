@@ -0,0 +1,318 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.workbench.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.rdf4j.repository.RepositoryException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Maps query hashes to the texts of queries that are too long to be kept in a cookie. The number of texts
+ * and the time they are kept are bounded. Optionally, the texts are also written to the {@link QueryStorage},
+ * so that they can still be found after they have been evicted, or after a restart. Texts that are still in
+ * use have their time in the store refreshed, so that only unused ones expire there.
+ */
+public final class QueryTextCache {
+
+	/**
+	 * System property for the maximum number of query texts kept in memory.
+	 */
+	public static final String MAX_SIZE_PROPERTY = "rdf4j.workbench.query.cache.size";
+
+	/**
+	 * System property for the time in milliseconds after which a query text that has not been used is
+	 * evicted.
+	 */
+	public static final String EXPIRY_PROPERTY = "rdf4j.workbench.query.cache.expiry";
+
+	/**
+	 * System property that enables writing the query texts to the {@link QueryStorage}.
+	 */
+	public static final String PERSISTENT_PROPERTY = "rdf4j.workbench.query.cache.persistent";
+
+	private static final int DEFAULT_MAX_SIZE = 1000;
+
+	private static final long DEFAULT_EXPIRY = 24 * 60 * 60 * 1000;
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(QueryTextCache.class);
+
+	private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+	private final int maxSize;
+
+	private final long expiry;
+
+	private final AtomicBoolean evicting = new AtomicBoolean();
+
+	private final AtomicLong hitCount = new AtomicLong();
+
+	private final AtomicLong missCount = new AtomicLong();
+
+	private final AtomicLong storeHitCount = new AtomicLong();
+
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	private volatile QueryStorage store;
+
+	/**
+	 * Creates a cache configured by the system properties.
+	 */
+	public QueryTextCache() {
+		this((int)getConfiguredValue(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE),
+				getConfiguredValue(EXPIRY_PROPERTY, DEFAULT_EXPIRY));
+	}
+
+	/**
+	 * @param maxSize
+	 *        the maximum number of query texts kept in memory
+	 * @param expiry
+	 *        the time in milliseconds after which a query text that has not been used is evicted
+	 */
+	public QueryTextCache(int maxSize, long expiry) {
+		this.maxSize = maxSize;
+		this.expiry = expiry;
+	}
+
+	private static long getConfiguredValue(String property, long defaultValue) {
+		final String value = System.getProperty(property);
+		if (value != null) {
+			try {
+				return Long.parseLong(value);
+			}
+			catch (NumberFormatException e) {
+				LOGGER.warn("Expected long value for property {}, using {}", property, defaultValue);
+			}
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * @return whether the query texts should be written to the {@link QueryStorage}, according to the system
+	 *         properties
+	 */
+	public static boolean isPersistenceConfigured() {
+		return Boolean.getBoolean(PERSISTENT_PROPERTY);
+	}
+
+	/**
+	 * Sets the storage the query texts are written to.
+	 *
+	 * @param store
+	 *        the query storage, or null to keep the query texts in memory only
+	 */
+	public void setStore(QueryStorage store) {
+		this.store = store;
+	}
+
+	/**
+	 * Keeps the given query text under the given hash.
+	 *
+	 * @param hash
+	 *        the hash that refers to the query text
+	 * @param queryText
+	 *        the text of the query
+	 */
+	public void put(String hash, String queryText) {
+		final Entry previous = entries.get(hash);
+		if (previous != null && previous.queryText.equals(queryText)) {
+			previous.lastAccess = System.currentTimeMillis();
+			touch(hash, previous);
+			return;
+		}
+		final Entry entry = new Entry(queryText);
+		entries.put(hash, entry);
+		final QueryStorage store = this.store;
+		if (store != null) {
+			try {
+				store.putCachedQueryText(hash, queryText);
+				entry.stored = entry.lastAccess;
+			}
+			catch (RepositoryException e) {
+				LOGGER.warn("Failed to store query text", e);
+			}
+		}
+		if (entries.size() > maxSize) {
+			evict();
+		}
+	}
+
+	/**
+	 * Gets the query text kept under the given hash.
+	 *
+	 * @param hash
+	 *        the hash that refers to the query text
+	 * @return the query text, or null if it is not known
+	 */
+	public String get(String hash) {
+		final Entry entry = entries.get(hash);
+		final long now = System.currentTimeMillis();
+		if (entry != null) {
+			if (now - entry.lastAccess <= expiry) {
+				entry.lastAccess = now;
+				hitCount.incrementAndGet();
+				touch(hash, entry);
+				return entry.queryText;
+			}
+			if (entries.remove(hash, entry)) {
+				evictionCount.incrementAndGet();
+			}
+		}
+		missCount.incrementAndGet();
+		final QueryStorage store = this.store;
+		if (store != null) {
+			try {
+				final String queryText = store.getCachedQueryText(hash);
+				if (queryText != null) {
+					storeHitCount.incrementAndGet();
+					final Entry loaded = new Entry(queryText);
+					entries.put(hash, loaded);
+					touch(hash, loaded);
+					return queryText;
+				}
+			}
+			catch (RepositoryException e) {
+				LOGGER.warn("Failed to read query text", e);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Refreshes the time of a query text in the store, so that it is not removed while it is in use. To keep
+	 * the number of writes low, this is done at most once per tenth of the expiry time.
+	 */
+	private void touch(String hash, Entry entry) {
+		final QueryStorage store = this.store;
+		final long now = System.currentTimeMillis();
+		if (store != null && now - entry.stored > expiry / 10) {
+			entry.stored = now;
+			try {
+				store.touchCachedQueryText(hash);
+			}
+			catch (RepositoryException e) {
+				LOGGER.warn("Failed to refresh query text", e);
+			}
+		}
+	}
+
+	/**
+	 * @return the number of query texts kept in memory
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return the number of lookups answered from memory
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * @return the number of lookups not answered from memory, including those answered by the store
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * @return the number of lookups answered by the store
+	 */
+	public long getStoreHitCount() {
+		return storeHitCount.get();
+	}
+
+	/**
+	 * @return the number of query texts evicted from memory
+	 */
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	/**
+	 * Evicts the expired query texts and, if there are still too many, the least recently used ones. Only one
+	 * thread evicts at a time; the others carry on, as the bound may be exceeded briefly.
+	 */
+	private void evict() {
+		if (!evicting.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			final long now = System.currentTimeMillis();
+			final List<Map.Entry<String, Entry>> candidates = new ArrayList<Map.Entry<String, Entry>>();
+			for (Map.Entry<String, Entry> candidate : entries.entrySet()) {
+				if (now - candidate.getValue().lastAccess > expiry) {
+					remove(candidate);
+				}
+				else {
+					candidates.add(candidate);
+				}
+			}
+			// evict down to 90% of the maximum, so that not every put has to evict
+			final int excess = candidates.size() - maxSize * 9 / 10;
+			if (excess > 0) {
+				// access times keep changing, so the oldest ones are determined on a snapshot
+				final long[] accessTimes = new long[candidates.size()];
+				for (int i = 0; i < accessTimes.length; i++) {
+					accessTimes[i] = candidates.get(i).getValue().lastAccess;
+				}
+				Arrays.sort(accessTimes);
+				final long cutoff = accessTimes[excess - 1];
+				int evicted = 0;
+				for (Map.Entry<String, Entry> candidate : candidates) {
+					if (evicted < excess && candidate.getValue().lastAccess <= cutoff) {
+						remove(candidate);
+						evicted++;
+					}
+				}
+			}
+			final QueryStorage store = this.store;
+			if (store != null) {
+				store.removeCachedQueryTexts(now - expiry);
+			}
+		}
+		catch (RepositoryException e) {
+			LOGGER.warn("Failed to remove expired query texts", e);
+		}
+		finally {
+			evicting.set(false);
+		}
+	}
+
+	private void remove(Map.Entry<String, Entry> candidate) {
+		if (entries.remove(candidate.getKey(), candidate.getValue())) {
+			evictionCount.incrementAndGet();
+		}
+	}
+
+	private static final class Entry {
+
+		private final String queryText;
+
+		private volatile long lastAccess = System.currentTimeMillis();
+
+		/**
+		 * Time the query text was last written to the store, 0 if unknown.
+		 */
+		private volatile long stored;
+
+		private Entry(String queryText) {
+			this.queryText = queryText;
+		}
+	}
+}
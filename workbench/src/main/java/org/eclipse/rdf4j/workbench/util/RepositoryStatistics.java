@@ -0,0 +1,341 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.workbench.util;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryException;
+import org.eclipse.rdf4j.repository.RepositoryResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Provides the size and the number of contexts of repositories for the workbench summary. The statistics are
+ * computed on a small shared thread pool and cached. A cached value is returned immediately, even when it is
+ * older than the maximum age; it is then refreshed in the background.
+ * <p>
+ * A repository of a remote server is shared by all workbench users, but is accessed with the credentials of
+ * the current request. Statistics are therefore cached per repository and credentials, and they are computed
+ * on a connection obtained with the credentials of the request that started the computation.
+ */
+public final class RepositoryStatistics {
+
+	/**
+	 * System property for the number of threads that compute statistics.
+	 */
+	public static final String THREADS_PROPERTY = "rdf4j.workbench.statistics.threads";
+
+	/**
+	 * System property for the age in milliseconds after which a statistic is refreshed.
+	 */
+	public static final String MAX_AGE_PROPERTY = "rdf4j.workbench.statistics.max.age";
+
+	private static final int DEFAULT_THREADS = 2;
+
+	private static final long DEFAULT_MAX_AGE = 30 * 1000;
+
+	/**
+	 * Statistics of repositories that have not been viewed for this long are dropped.
+	 */
+	private static final long IDLE_TIMEOUT = 60 * 60 * 1000;
+
+	private static final int MAX_QUEUED = 100;
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(RepositoryStatistics.class);
+
+	public static final RepositoryStatistics INSTANCE = new RepositoryStatistics(
+			(int)getConfiguredValue(THREADS_PROPERTY, DEFAULT_THREADS),
+			getConfiguredValue(MAX_AGE_PROPERTY, DEFAULT_MAX_AGE));
+
+	private final ThreadPoolExecutor executor;
+
+	private final long maxAge;
+
+	private final Map<Key, Statistics> statistics = new ConcurrentHashMap<Key, Statistics>();
+
+	RepositoryStatistics(int threads, long maxAge) {
+		this.maxAge = maxAge;
+		final AtomicInteger threadCount = new AtomicInteger();
+		executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(MAX_QUEUED), new ThreadFactory() {
+
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable,
+								"rdf4j-workbench-statistics-" + threadCount.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		// idle threads go away, so that nothing lingers after the workbench is undeployed
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	private static long getConfiguredValue(String property, long defaultValue) {
+		final String value = System.getProperty(property);
+		if (value != null) {
+			try {
+				return Long.parseLong(value);
+			}
+			catch (NumberFormatException e) {
+				LOGGER.warn("Expected long value for property {}, using {}", property, defaultValue);
+			}
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * Gets the number of statements in the given repository.
+	 *
+	 * @param repository
+	 *        the repository
+	 * @param credentials
+	 *        the credentials the repository is accessed with, may be null
+	 * @param timeout
+	 *        the time in milliseconds to wait if no value is cached yet
+	 * @return the number of statements
+	 * @throws ExecutionException
+	 *         if the size could not be determined and no value is cached
+	 * @throws TimeoutException
+	 *         if the size has not been determined in time
+	 */
+	public long getSize(Repository repository, String credentials, long timeout)
+		throws InterruptedException, ExecutionException, TimeoutException
+	{
+		return getStatistics(repository, credentials).size.get(timeout);
+	}
+
+	/**
+	 * Gets the number of contexts in the given repository.
+	 *
+	 * @param repository
+	 *        the repository
+	 * @param credentials
+	 *        the credentials the repository is accessed with, may be null
+	 * @param timeout
+	 *        the time in milliseconds to wait if no value is cached yet
+	 * @return the number of contexts
+	 * @throws ExecutionException
+	 *         if the number could not be determined and no value is cached
+	 * @throws TimeoutException
+	 *         if the number has not been determined in time
+	 */
+	public long getContextCount(Repository repository, String credentials, long timeout)
+		throws InterruptedException, ExecutionException, TimeoutException
+	{
+		return getStatistics(repository, credentials).contextCount.get(timeout);
+	}
+
+	/**
+	 * Gets the statistics of the given repository, starting the computation of those that are missing or
+	 * outdated, so that they run in parallel.
+	 */
+	private Statistics getStatistics(final Repository repository, String credentials) {
+		final long now = System.currentTimeMillis();
+		for (Iterator<Statistics> iter = statistics.values().iterator(); iter.hasNext();) {
+			if (now - iter.next().lastRequested > IDLE_TIMEOUT) {
+				iter.remove();
+			}
+		}
+		final Key key = new Key(repository, credentials);
+		Statistics result = statistics.get(key);
+		if (result == null) {
+			final Statistics created = new Statistics(repository);
+			result = statistics.putIfAbsent(key, created);
+			if (result == null) {
+				result = created;
+			}
+		}
+		result.lastRequested = now;
+		result.size.refreshIfOutdated(now);
+		result.contextCount.refreshIfOutdated(now);
+		return result;
+	}
+
+	private static long countContexts(RepositoryConnection con)
+		throws RepositoryException
+	{
+		long count = 0;
+		try (RepositoryResult<Resource> contextIDs = con.getContextIDs()) {
+			while (contextIDs.hasNext()) {
+				contextIDs.next();
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Identifies the statistics of a repository accessed with the given credentials.
+	 */
+	private static final class Key {
+
+		private final Repository repository;
+
+		private final String credentials;
+
+		private Key(Repository repository, String credentials) {
+			this.repository = repository;
+			this.credentials = credentials;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			final Key key = (Key)other;
+			return repository.equals(key.repository) && Objects.equals(credentials, key.credentials);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(repository, credentials);
+		}
+	}
+
+	private final class Statistics {
+
+		private final Statistic size;
+
+		private final Statistic contextCount;
+
+		private volatile long lastRequested;
+
+		private Statistics(final Repository repository) {
+			size = new Statistic(repository, "size") {
+
+				@Override
+				long compute(RepositoryConnection con) {
+					return con.size();
+				}
+			};
+			contextCount = new Statistic(repository, "context count") {
+
+				@Override
+				long compute(RepositoryConnection con) {
+					return countContexts(con);
+				}
+			};
+		}
+	}
+
+	/**
+	 * A single statistic of a repository, computed on a connection of its own.
+	 */
+	private abstract class Statistic {
+
+		private final Repository repository;
+
+		private final String name;
+
+		private volatile Long value;
+
+		private volatile long updated;
+
+		private Future<Long> pending;
+
+		Statistic(Repository repository, String name) {
+			this.repository = repository;
+			this.name = name;
+		}
+
+		abstract long compute(RepositoryConnection con);
+
+		private Long refresh(RepositoryConnection con) {
+			try {
+				final long result = compute(con);
+				updated = System.currentTimeMillis();
+				value = result;
+				return result;
+			}
+			catch (RuntimeException e) {
+				LOGGER.warn("Failed to determine repository " + name, e);
+				throw e;
+			}
+			finally {
+				con.close();
+			}
+		}
+
+		synchronized void refreshIfOutdated(long now) {
+			if ((value == null || now - updated > maxAge) && (pending == null || pending.isDone())) {
+				// the connection is obtained here, as the shared repository may be given the credentials of
+				// another request before the refresh runs
+				final RepositoryConnection con;
+				try {
+					con = repository.getConnection();
+				}
+				catch (final RepositoryException e) {
+					LOGGER.warn("Failed to determine repository " + name, e);
+					final FutureTask<Long> failed = new FutureTask<Long>(new Callable<Long>() {
+
+						@Override
+						public Long call() {
+							throw e;
+						}
+					});
+					failed.run();
+					pending = failed;
+					return;
+				}
+				try {
+					pending = executor.submit(new Callable<Long>() {
+
+						@Override
+						public Long call() {
+							return refresh(con);
+						}
+					});
+				}
+				catch (RejectedExecutionException e) {
+					con.close();
+					// too many refreshes queued, the next request tries again
+					LOGGER.debug("Repository statistics refresh rejected", e);
+				}
+			}
+		}
+
+		long get(long timeout)
+			throws InterruptedException, ExecutionException, TimeoutException
+		{
+			final Long cached = value;
+			if (cached != null) {
+				return cached;
+			}
+			final Future<Long> future;
+			synchronized (this) {
+				future = pending;
+			}
+			if (future == null) {
+				throw new TimeoutException("Repository " + name + " has not been requested");
+			}
+			return future.get(timeout, TimeUnit.MILLISECONDS);
+		}
+	}
+}
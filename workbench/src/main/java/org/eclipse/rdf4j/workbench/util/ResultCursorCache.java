@@ -0,0 +1,567 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.workbench.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.query.Binding;
+import org.eclipse.rdf4j.query.BindingSet;
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.repository.Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the complete results of recently evaluated queries, so that the workbench can show further pages
+ * of a result without evaluating the query again. Results are kept per client, repository and query.
+ * <p>
+ * Results are stored in chunks. Chunks are kept in memory as long as all cached results and all results that
+ * are being recorded together stay within the memory budget; least recently used results are evicted to make
+ * room, and chunks that do not fit are spilled to a temporary file. Results that have not been accessed for a
+ * while are evicted. A result stops being recorded as soon as it exceeds the maximum spill size of a single
+ * result, or all results together exceed the total spill size.
+ * <p>
+ * The budgets can be configured with the system properties {@value #MEMORY_PROPERTY},
+ * {@value #SPILL_PROPERTY}, {@value #TOTAL_SPILL_PROPERTY} and {@value #IDLE_TIMEOUT_PROPERTY}. A memory
+ * budget of 0 disables the cache.
+ */
+public final class ResultCursorCache {
+
+	/**
+	 * System property for the number of bytes that cached results may occupy in memory.
+	 */
+	public static final String MEMORY_PROPERTY = "rdf4j.workbench.cursor.cache.memory";
+
+	/**
+	 * System property for the number of bytes that a single cached result may spill to disk.
+	 */
+	public static final String SPILL_PROPERTY = "rdf4j.workbench.cursor.cache.spill";
+
+	/**
+	 * System property for the number of bytes that all cached results together may spill to disk.
+	 */
+	public static final String TOTAL_SPILL_PROPERTY = "rdf4j.workbench.cursor.cache.spill.total";
+
+	/**
+	 * System property for the number of milliseconds after which an unused result is evicted.
+	 */
+	public static final String IDLE_TIMEOUT_PROPERTY = "rdf4j.workbench.cursor.cache.idle";
+
+	private static final long DEFAULT_MEMORY = 64L * 1024 * 1024;
+
+	private static final long DEFAULT_SPILL = 256L * 1024 * 1024;
+
+	private static final long DEFAULT_TOTAL_SPILL = 1024L * 1024 * 1024;
+
+	private static final long DEFAULT_IDLE_TIMEOUT = 10 * 60 * 1000;
+
+	private static final int CHUNK_SIZE = 1000;
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ResultCursorCache.class);
+
+	public static final ResultCursorCache INSTANCE = new ResultCursorCache(
+			getConfiguredValue(MEMORY_PROPERTY, DEFAULT_MEMORY),
+			getConfiguredValue(SPILL_PROPERTY, DEFAULT_SPILL),
+			getConfiguredValue(TOTAL_SPILL_PROPERTY, DEFAULT_TOTAL_SPILL),
+			getConfiguredValue(IDLE_TIMEOUT_PROPERTY, DEFAULT_IDLE_TIMEOUT));
+
+	private final long maxMemory;
+
+	private final long maxSpill;
+
+	private final long maxTotalSpill;
+
+	private final long idleTimeout;
+
+	/**
+	 * The cached results, least recently used first.
+	 */
+	private final Map<Key, Cursor<?>> cursors = new LinkedHashMap<Key, Cursor<?>>(16, 0.75f, true);
+
+	/**
+	 * Memory occupied by the cached results.
+	 */
+	private long memory;
+
+	/**
+	 * Memory occupied by the results that are being recorded.
+	 */
+	private long recordingMemory;
+
+	/**
+	 * Bytes spilled by the cached results and the results that are being recorded.
+	 */
+	private long spilled;
+
+	ResultCursorCache(long maxMemory, long maxSpill, long maxTotalSpill, long idleTimeout) {
+		this.maxMemory = maxMemory;
+		this.maxSpill = maxSpill;
+		this.maxTotalSpill = maxTotalSpill;
+		this.idleTimeout = idleTimeout;
+	}
+
+	private static long getConfiguredValue(String property, long defaultValue) {
+		final String value = System.getProperty(property);
+		if (value != null) {
+			try {
+				return Long.parseLong(value);
+			}
+			catch (NumberFormatException e) {
+				LOGGER.warn("Expected long value for property {}, using {}", property, defaultValue);
+			}
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * @return whether results are cached at all
+	 */
+	public boolean isEnabled() {
+		return maxMemory > 0;
+	}
+
+	/**
+	 * Starts recording the results of a query. The results are only cached once they are complete.
+	 *
+	 * @param key
+	 *        identifies the session, repository and query
+	 * @param bindingNames
+	 *        the binding names of a tuple query result, or the names of the statement columns
+	 * @return the recorder, or null if the cache is disabled
+	 */
+	public <T> Recorder<T> record(Key key, List<String> bindingNames) {
+		return isEnabled() ? new Recorder<T>(key, bindingNames) : null;
+	}
+
+	/**
+	 * Gets the cached results of a query.
+	 *
+	 * @param key
+	 *        identifies the session, repository and query
+	 * @return the cached results, or null if there are none
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized <T> Cursor<T> get(Key key) {
+		evictIdle();
+		Cursor<T> cursor = (Cursor<T>)cursors.get(key);
+		if (cursor != null) {
+			cursor.lastAccess = System.currentTimeMillis();
+		}
+		return cursor;
+	}
+
+	/**
+	 * @return the number of cached results
+	 */
+	public synchronized int size() {
+		return cursors.size();
+	}
+
+	/**
+	 * @return the number of bytes spilled to disk by all results
+	 */
+	public synchronized long getSpilled() {
+		return spilled;
+	}
+
+	/**
+	 * Reserves memory for a chunk of a result that is being recorded, evicting the least recently used
+	 * results to make room.
+	 *
+	 * @return false if the chunk does not fit in the memory budget
+	 */
+	private synchronized boolean reserveMemory(long chunkMemory) {
+		evictIdle();
+		Iterator<Cursor<?>> lru = cursors.values().iterator();
+		while (memory + recordingMemory + chunkMemory > maxMemory && lru.hasNext()) {
+			Cursor<?> evicted = lru.next();
+			lru.remove();
+			discard(evicted);
+		}
+		if (memory + recordingMemory + chunkMemory > maxMemory) {
+			return false;
+		}
+		recordingMemory += chunkMemory;
+		return true;
+	}
+
+	/**
+	 * Accounts for a chunk that a result that is being recorded has spilled to disk.
+	 *
+	 * @return false if all results together exceed the total spill size
+	 */
+	private synchronized boolean addSpilled(long bytes) {
+		spilled += bytes;
+		return spilled <= maxTotalSpill;
+	}
+
+	private synchronized void put(Cursor<?> cursor) {
+		recordingMemory -= cursor.memory;
+		Cursor<?> previous = cursors.remove(cursor.key);
+		if (previous != null) {
+			discard(previous);
+		}
+		memory += cursor.memory;
+		cursors.put(cursor.key, cursor);
+	}
+
+	/**
+	 * Releases the resources of a result whose recording has been aborted.
+	 */
+	private synchronized void release(Cursor<?> cursor) {
+		recordingMemory -= cursor.memory;
+		spilled -= cursor.spilled;
+		cursor.close();
+	}
+
+	private void evictIdle() {
+		long idleSince = System.currentTimeMillis() - idleTimeout;
+		Iterator<Cursor<?>> lru = cursors.values().iterator();
+		while (lru.hasNext()) {
+			Cursor<?> cursor = lru.next();
+			if (cursor.lastAccess >= idleSince) {
+				break;
+			}
+			lru.remove();
+			discard(cursor);
+		}
+	}
+
+	private void discard(Cursor<?> cursor) {
+		memory -= cursor.memory;
+		spilled -= cursor.spilled;
+		cursor.close();
+	}
+
+	private static long estimateSize(Object result) {
+		long size = 64;
+		if (result instanceof BindingSet) {
+			for (Binding binding : (BindingSet)result) {
+				size += estimateSize(binding.getValue());
+			}
+		}
+		else if (result instanceof Statement) {
+			Statement st = (Statement)result;
+			size += estimateSize(st.getSubject()) + estimateSize(st.getPredicate())
+					+ estimateSize(st.getObject()) + estimateSize(st.getContext());
+		}
+		return size;
+	}
+
+	private static long estimateSize(Value value) {
+		return value == null ? 0 : 48 + 2 * value.stringValue().length();
+	}
+
+	/**
+	 * Identifies a cached result by the client, the repository and the query that produced it.
+	 */
+	public static final class Key {
+
+		private final String clientID;
+
+		private final Repository repository;
+
+		private final QueryLanguage queryLn;
+
+		private final String queryText;
+
+		private final String infer;
+
+		/**
+		 * @param clientID
+		 *        identifies the client, so that results are only shown to the client that evaluated the
+		 *        query
+		 */
+		public Key(String clientID, Repository repository, QueryLanguage queryLn, String queryText,
+				String infer)
+		{
+			this.clientID = clientID;
+			this.repository = repository;
+			this.queryLn = queryLn;
+			this.queryText = queryText;
+			this.infer = infer;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other) {
+				return true;
+			}
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			Key key = (Key)other;
+			return clientID.equals(key.clientID) && repository == key.repository
+					&& queryLn.equals(key.queryLn) && queryText.equals(key.queryText)
+					&& Objects.equals(infer, key.infer);
+		}
+
+		@Override
+		public int hashCode() {
+			// the query hash is the one QueryServlet uses to refer to long queries
+			return Objects.hash(clientID, System.identityHashCode(repository), queryLn, queryText.hashCode(),
+					infer);
+		}
+	}
+
+	/**
+	 * Records the results of a query while they are rendered.
+	 */
+	public final class Recorder<T> {
+
+		private final Cursor<T> cursor;
+
+		private List<T> chunk = new ArrayList<T>(CHUNK_SIZE);
+
+		private long chunkSize;
+
+		private boolean done;
+
+		Recorder(Key key, List<String> bindingNames) {
+			cursor = new Cursor<T>(key, bindingNames);
+		}
+
+		/**
+		 * @return whether the results are still being recorded, which is no longer the case once it is clear
+		 *         that they will not be cached
+		 */
+		public boolean isRecording() {
+			return !done;
+		}
+
+		/**
+		 * Records the next result.
+		 */
+		public void add(T result) {
+			if (done) {
+				return;
+			}
+			chunk.add(result);
+			chunkSize += estimateSize(result);
+			if (chunk.size() == CHUNK_SIZE) {
+				flush();
+			}
+		}
+
+		/**
+		 * Caches the recorded results, which must be complete.
+		 */
+		public void complete() {
+			if (!done && !chunk.isEmpty()) {
+				flush();
+			}
+			if (!done) {
+				done = true;
+				put(cursor);
+			}
+		}
+
+		/**
+		 * Discards the recorded results, unless they have been cached already.
+		 */
+		public void abort() {
+			if (!done) {
+				done = true;
+				release(cursor);
+			}
+		}
+
+		private void flush() {
+			try {
+				// a result may use the entire memory budget, as other results are evicted to make room
+				if (reserveMemory(chunkSize)) {
+					cursor.addChunk(chunk, chunkSize);
+				}
+				else {
+					final long bytes = cursor.spillChunk(chunk);
+					if (!addSpilled(bytes)) {
+						throw new IOException("Cached results exceed " + maxTotalSpill + " bytes on disk");
+					}
+					if (cursor.spilled > maxSpill) {
+						throw new IOException("Result exceeds " + maxSpill + " bytes");
+					}
+				}
+			}
+			catch (IOException e) {
+				LOGGER.info("Not caching query result: {}", e.getMessage());
+				abort();
+			}
+			chunk = new ArrayList<T>(CHUNK_SIZE);
+			chunkSize = 0;
+		}
+	}
+
+	/**
+	 * A cached query result.
+	 */
+	public final class Cursor<T> {
+
+		private final Key key;
+
+		private final List<String> bindingNames;
+
+		private final List<List<T>> chunks = new ArrayList<List<T>>();
+
+		/**
+		 * Position and length in the spill file of the chunks that are not kept in memory.
+		 */
+		private final List<long[]> spilledChunks = new ArrayList<long[]>();
+
+		private RandomAccessFile spillFile;
+
+		private File file;
+
+		private int size;
+
+		private long memory;
+
+		private long spilled;
+
+		private volatile long lastAccess = System.currentTimeMillis();
+
+		Cursor(Key key, List<String> bindingNames) {
+			this.key = key;
+			this.bindingNames = Collections.unmodifiableList(new ArrayList<String>(bindingNames));
+		}
+
+		/**
+		 * @return the binding names of the result
+		 */
+		public List<String> getBindingNames() {
+			return bindingNames;
+		}
+
+		/**
+		 * @return the total number of results
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * Gets a page of the result.
+		 *
+		 * @param offset
+		 *        the index of the first result
+		 * @param limit
+		 *        the maximum number of results
+		 * @return the results on the page
+		 * @throws IOException
+		 *         if spilled results can not be read back
+		 */
+		public synchronized List<T> getPage(int offset, int limit)
+			throws IOException
+		{
+			final int fromIndex = Math.max(0, offset);
+			final int toIndex = Math.min(size, Math.max(fromIndex, offset + limit));
+			final List<T> page = new ArrayList<T>(Math.max(0, toIndex - fromIndex));
+			for (int index = fromIndex; index < toIndex;) {
+				final List<T> chunk = getChunk(index / CHUNK_SIZE);
+				final int chunkStart = index - index % CHUNK_SIZE;
+				final int end = Math.min(toIndex, chunkStart + chunk.size());
+				page.addAll(chunk.subList(index - chunkStart, end - chunkStart));
+				index = end;
+			}
+			return page;
+		}
+
+		synchronized void addChunk(List<T> chunk, long chunkMemory) {
+			chunks.add(chunk);
+			size += chunk.size();
+			memory += chunkMemory;
+		}
+
+		/**
+		 * @return the number of bytes written to disk
+		 */
+		synchronized long spillChunk(List<T> chunk)
+			throws IOException
+		{
+			if (spillFile == null) {
+				file = File.createTempFile("rdf4j-workbench-cursor", ".tmp");
+				spillFile = new RandomAccessFile(file, "rw");
+			}
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			final ObjectOutputStream out = new ObjectOutputStream(bytes);
+			out.writeObject(new ArrayList<T>(chunk));
+			out.close();
+			final long position = spillFile.length();
+			spillFile.seek(position);
+			spillFile.write(bytes.toByteArray());
+			spilledChunks.add(new long[] { chunks.size(), position, bytes.size() });
+			// a placeholder keeps the chunk indexes aligned
+			chunks.add(null);
+			size += chunk.size();
+			spilled += bytes.size();
+			return bytes.size();
+		}
+
+		@SuppressWarnings("unchecked")
+		private List<T> getChunk(int index)
+			throws IOException
+		{
+			if (index >= chunks.size()) {
+				throw new IOException("Result has been discarded");
+			}
+			final List<T> chunk = chunks.get(index);
+			if (chunk != null) {
+				return chunk;
+			}
+			for (long[] spilledChunk : spilledChunks) {
+				if (spilledChunk[0] == index) {
+					final byte[] bytes = new byte[(int)spilledChunk[2]];
+					spillFile.seek(spilledChunk[1]);
+					spillFile.readFully(bytes);
+					final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+					try {
+						return (List<T>)in.readObject();
+					}
+					catch (ClassNotFoundException e) {
+						throw new IOException(e);
+					}
+					finally {
+						in.close();
+					}
+				}
+			}
+			throw new IOException("Missing chunk " + index);
+		}
+
+		synchronized void close() {
+			chunks.clear();
+			spilledChunks.clear();
+			if (spillFile != null) {
+				try {
+					spillFile.close();
+				}
+				catch (IOException e) {
+					LOGGER.warn("Failed to close spill file", e);
+				}
+				if (!file.delete()) {
+					file.deleteOnExit();
+				}
+				spillFile = null;
+			}
+		}
+	}
+}
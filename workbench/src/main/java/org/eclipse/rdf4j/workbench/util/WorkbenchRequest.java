@@ -149,7 +149,14 @@ public class WorkbenchRequest extends HttpServletRequestWrapper {
 		return result;
 	}
 
-	private String getCookie(String name) {
+	/**
+	 * Gets the value of the cookie with the given name.
+	 * 
+	 * @param name
+	 *        the name of the cookie
+	 * @return the value of the cookie, or null if the request has no such cookie
+	 */
+	public String getCookie(String name) {
 		String result = null;
 		Cookie[] cookies = getCookies();
 		if (cookies != null) {
@@ -17,7 +17,6 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
-import java.util.Collections;
 
 import javax.servlet.ServletException;
 
@@ -26,6 +25,7 @@ import org.eclipse.rdf4j.common.io.ResourceUtil;
 import org.eclipse.rdf4j.repository.http.HTTPRepository;
 import org.eclipse.rdf4j.workbench.exceptions.BadRequestException;
 import org.eclipse.rdf4j.workbench.util.QueryStorage;
+import org.eclipse.rdf4j.workbench.util.QueryTextCache;
 import org.eclipse.rdf4j.workbench.util.WorkbenchRequest;
 import org.junit.Before;
 import org.junit.Test;
@@ -123,7 +123,9 @@ public class TestQueryServlet {
 		when(request.getParameter(QueryServlet.QUERY)).thenReturn(hash);
 		when(request.isParameterPresent(QueryServlet.REF)).thenReturn(true);
 		when(request.getParameter(QueryServlet.REF)).thenReturn("hash");
-		QueryServlet.substituteQueryCache(Collections.singletonMap(hash, longQuery));
+		QueryTextCache cache = new QueryTextCache(10, Long.MAX_VALUE);
+		cache.put(hash, longQuery);
+		QueryServlet.substituteQueryCache(cache);
 		assertThat(servlet.getQueryText(request), is(equalTo(longQuery)));
 	}
 
@@ -137,7 +139,7 @@ public class TestQueryServlet {
 		when(request.getParameter(QueryServlet.QUERY)).thenReturn(hash);
 		when(request.isParameterPresent(QueryServlet.REF)).thenReturn(true);
 		when(request.getParameter(QueryServlet.REF)).thenReturn("hash");
-		QueryServlet.substituteQueryCache(Collections.<String, String> emptyMap());
+		QueryServlet.substituteQueryCache(new QueryTextCache(10, Long.MAX_VALUE));
 		assertThat(servlet.getQueryText(request), is(equalTo("")));
 	}
 
@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.workbench.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.rdf4j.common.iteration.CloseableIteratorIteration;
+import org.eclipse.rdf4j.query.QueryEvaluationException;
+import org.junit.Test;
+
+public class TestQueryEvaluator {
+
+	private static final List<Integer> RESULTS = Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+
+	@Test
+	public void testPageIsCollectedAndAllResultsCounted() {
+		List<Integer> page = new ArrayList<Integer>();
+		assertEquals(10, collectPage(true, 3, 4, page));
+		assertEquals(Arrays.asList(3, 4, 5, 6), page);
+	}
+
+	@Test
+	public void testLastPageIsTruncated() {
+		List<Integer> page = new ArrayList<Integer>();
+		assertEquals(10, collectPage(true, 8, 4, page));
+		assertEquals(Arrays.asList(8, 9), page);
+	}
+
+	@Test
+	public void testOffsetPastTheEnd() {
+		List<Integer> page = new ArrayList<Integer>();
+		assertEquals(10, collectPage(true, 20, 4, page));
+		assertTrue(page.isEmpty());
+	}
+
+	@Test
+	public void testUnpagedCollectsAll() {
+		List<Integer> page = new ArrayList<Integer>();
+		assertEquals(10, collectPage(false, 3, 4, page));
+		assertEquals(RESULTS, page);
+	}
+
+	private int collectPage(boolean paged, int offset, int limit, List<Integer> page) {
+		return QueryEvaluator.collectPage(
+				new CloseableIteratorIteration<Integer, QueryEvaluationException>(RESULTS.iterator()), paged,
+				offset, limit, page, null);
+	}
+}
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.workbench.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.eclipse.rdf4j.common.app.AppConfiguration;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.repository.http.HTTPRepository;
+import org.eclipse.rdf4j.workbench.exceptions.BadRequestException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestQueryStorage {
+
+	private static final String QUERY = "select * {?s ?p ?o}";
+
+	@Rule
+	public final TemporaryFolder dataDir = new TemporaryFolder();
+
+	private final HTTPRepository repository = mock(HTTPRepository.class);
+
+	private final AppConfiguration config = mock(AppConfiguration.class);
+
+	private QueryStorage storage;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		when(repository.getRepositoryURL()).thenReturn("http://example.org/repositories/test");
+		when(config.getDataDir()).thenReturn(dataDir.getRoot());
+		storage = new QueryStorage(config);
+	}
+
+	@After
+	public void tearDown() {
+		storage.shutdown();
+	}
+
+	@Test
+	public void testIndexFollowsWrites()
+		throws Exception
+	{
+		assertFalse(storage.askExists(repository, "all", "alice"));
+		storage.saveQuery(repository, "all", "alice", false, QueryLanguage.SPARQL, QUERY, true, 10);
+		assertTrue(storage.askExists(repository, "all", "alice"));
+		assertFalse(storage.askExists(repository, "all", "bob"));
+
+		IRI query = storage.selectSavedQuery(repository, "alice", "all");
+		assertEquals(QUERY, storage.getQueryText(repository, "alice", "all"));
+		assertTrue(storage.canRead(query, "alice"));
+		assertTrue(storage.canChange(query, "alice"));
+		assertFalse(storage.canRead(query, "bob"));
+		assertFalse(storage.canChange(query, "bob"));
+
+		storage.updateQuery(query, "alice", true, QueryLanguage.SPARQL, "ask {}", true, 10);
+		assertTrue(storage.canRead(query, "bob"));
+		assertFalse(storage.canChange(query, "bob"));
+		assertEquals("ask {}", storage.getQueryText(repository, "alice", "all"));
+
+		storage.deleteQuery(query, "alice");
+		assertFalse(storage.askExists(repository, "all", "alice"));
+		assertFalse(storage.canRead(query, "alice"));
+	}
+
+	@Test
+	public void testIndexIsLoadedFromStore()
+		throws Exception
+	{
+		storage.saveQuery(repository, "all", "", false, QueryLanguage.SPARQL, QUERY, false, 0);
+		storage.shutdown();
+
+		storage = new QueryStorage(config);
+		IRI query = storage.selectSavedQuery(repository, "", "all");
+		// queries saved by the anonymous user can be changed by anyone
+		assertTrue(storage.canChange(query, "bob"));
+		assertEquals(QUERY, storage.getQueryText(repository, "", "all"));
+	}
+
+	@Test(expected = BadRequestException.class)
+	public void testUnknownQuery()
+		throws Exception
+	{
+		storage.getQueryText(repository, "alice", "unknown");
+	}
+}
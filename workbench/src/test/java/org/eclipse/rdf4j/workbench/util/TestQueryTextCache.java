@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.workbench.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+
+public class TestQueryTextCache {
+
+	@Test
+	public void testLeastRecentlyUsedTextsAreEvicted()
+		throws Exception
+	{
+		QueryTextCache cache = new QueryTextCache(10, Long.MAX_VALUE);
+		for (int i = 0; i < 10; i++) {
+			cache.put(String.valueOf(i), "query " + i);
+		}
+		Thread.sleep(5);
+		assertEquals("query 0", cache.get("0"));
+		cache.put("10", "query 10");
+
+		assertEquals(9, cache.size());
+		assertEquals(2, cache.getEvictionCount());
+		assertEquals("query 0", cache.get("0"));
+		assertEquals("query 10", cache.get("10"));
+		assertEquals(3, cache.getHitCount());
+	}
+
+	@Test
+	public void testExpiredTextIsNotReturned() {
+		QueryTextCache cache = new QueryTextCache(10, -1);
+		cache.put("hash", "query");
+		assertNull(cache.get("hash"));
+		assertEquals(1, cache.getMissCount());
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testStoreIsConsulted()
+		throws Exception
+	{
+		QueryStorage store = mock(QueryStorage.class);
+		when(store.getCachedQueryText("stored")).thenReturn("stored query");
+		QueryTextCache cache = new QueryTextCache(10, Long.MAX_VALUE);
+		cache.setStore(store);
+
+		cache.put("hash", "query");
+		verify(store).putCachedQueryText("hash", "query");
+		assertEquals("stored query", cache.get("stored"));
+		assertEquals(1, cache.getStoreHitCount());
+		assertNull(cache.get("unknown"));
+		assertEquals(2, cache.getMissCount());
+	}
+
+	@Test
+	public void testUsedTextIsRefreshedInStore()
+		throws Exception
+	{
+		QueryStorage store = mock(QueryStorage.class);
+		QueryTextCache cache = new QueryTextCache(10, 1000);
+		cache.setStore(store);
+
+		cache.put("hash", "query");
+		cache.put("hash", "query");
+		verify(store).putCachedQueryText("hash", "query");
+		verify(store, never()).touchCachedQueryText("hash");
+
+		// a tenth of the expiry time later
+		Thread.sleep(110);
+		assertEquals("query", cache.get("hash"));
+		verify(store).touchCachedQueryText("hash");
+	}
+}
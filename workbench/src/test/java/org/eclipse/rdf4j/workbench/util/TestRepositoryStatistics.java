@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.workbench.util;
+
+import static org.junit.Assert.assertEquals;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.model.vocabulary.RDFS;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestRepositoryStatistics {
+
+	private static final long TIMEOUT = 10000;
+
+	private Repository repository;
+
+	@Before
+	public void setUp()
+		throws Exception
+	{
+		repository = new SailRepository(new MemoryStore());
+		repository.initialize();
+		add("urn:g1");
+		add("urn:g2");
+	}
+
+	@After
+	public void tearDown()
+		throws Exception
+	{
+		repository.shutDown();
+	}
+
+	@Test
+	public void testCachedValuesAreReturned()
+		throws Exception
+	{
+		RepositoryStatistics statistics = new RepositoryStatistics(1, Long.MAX_VALUE);
+		assertEquals(2, statistics.getSize(repository, null, TIMEOUT));
+		assertEquals(2, statistics.getContextCount(repository, null, TIMEOUT));
+
+		add("urn:g3");
+		assertEquals(2, statistics.getSize(repository, null, TIMEOUT));
+		assertEquals(2, statistics.getContextCount(repository, null, TIMEOUT));
+	}
+
+	@Test
+	public void testValuesAreCachedPerCredentials()
+		throws Exception
+	{
+		RepositoryStatistics statistics = new RepositoryStatistics(1, Long.MAX_VALUE);
+		assertEquals(2, statistics.getSize(repository, "alice", TIMEOUT));
+
+		add("urn:g3");
+		assertEquals(2, statistics.getSize(repository, "alice", TIMEOUT));
+		assertEquals(3, statistics.getSize(repository, "bob", TIMEOUT));
+		assertEquals(3, statistics.getSize(repository, null, TIMEOUT));
+	}
+
+	@Test
+	public void testOutdatedValuesAreRefreshed()
+		throws Exception
+	{
+		RepositoryStatistics statistics = new RepositoryStatistics(1, 0);
+		assertEquals(2, statistics.getSize(repository, null, TIMEOUT));
+
+		add("urn:g3");
+		Thread.sleep(5);
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		while (statistics.getContextCount(repository, null, TIMEOUT) != 3) {
+			if (System.currentTimeMillis() > deadline) {
+				throw new AssertionError("statistics have not been refreshed");
+			}
+			Thread.sleep(10);
+		}
+		assertEquals(3, statistics.getContextCount(repository, null, TIMEOUT));
+	}
+
+	private void add(String context) {
+		try (RepositoryConnection con = repository.getConnection()) {
+			ValueFactory vf = con.getValueFactory();
+			IRI graph = vf.createIRI(context);
+			con.add(graph, RDF.TYPE, RDFS.RESOURCE, graph);
+		}
+	}
+}
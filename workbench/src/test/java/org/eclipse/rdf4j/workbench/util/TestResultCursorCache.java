@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2017 Eclipse RDF4J contributors.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Distribution License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/org/documents/edl-v10.php.
+ *******************************************************************************/
+package org.eclipse.rdf4j.workbench.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.repository.Repository;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class TestResultCursorCache {
+
+	private static final String QUERY = "select * {?s ?p ?o}";
+
+	private static final List<String> NAMES = Arrays.asList("subject", "predicate", "object");
+
+	private final ValueFactory vf = SimpleValueFactory.getInstance();
+
+	private final Repository repository = Mockito.mock(Repository.class);
+
+	@Test
+	public void testPagesOfSpilledResult()
+		throws Exception
+	{
+		// room for a single chunk, the remaining chunks are written to disk
+		ResultCursorCache cache = new ResultCursorCache(200000, Long.MAX_VALUE, Long.MAX_VALUE,
+				Long.MAX_VALUE);
+		ResultCursorCache.Key key = key("session", "select * {?s ?p ?o}");
+		record(cache, key, 2500);
+
+		ResultCursorCache.Cursor<Statement> cursor = cache.get(key);
+		assertNotNull(cursor);
+		assertEquals(2500, cursor.size());
+		List<Statement> page = cursor.getPage(990, 20);
+		assertEquals(20, page.size());
+		assertEquals(statement(990), page.get(0));
+		assertEquals(statement(1009), page.get(19));
+		assertEquals(statement(2499), cursor.getPage(2400, 200).get(99));
+		assertEquals(0, cursor.getPage(3000, 10).size());
+		assertNull(cache.get(key("other", "select * {?s ?p ?o}")));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedResultIsEvicted()
+		throws Exception
+	{
+		ResultCursorCache cache = new ResultCursorCache(500000, Long.MAX_VALUE, Long.MAX_VALUE,
+				Long.MAX_VALUE);
+		ResultCursorCache.Key first = key("session", "select ?s {?s ?p ?o}");
+		ResultCursorCache.Key second = key("session", "select ?o {?s ?p ?o}");
+		record(cache, first, 1000);
+		record(cache, second, 1000);
+
+		assertNull(cache.get(first));
+		assertNotNull(cache.get(second));
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testOversizedResultIsNotCached()
+		throws Exception
+	{
+		ResultCursorCache cache = new ResultCursorCache(1000, 1000, Long.MAX_VALUE, Long.MAX_VALUE);
+		ResultCursorCache.Key key = key("session", "select * {?s ?p ?o}");
+		record(cache, key, 2000);
+		assertNull(cache.get(key));
+	}
+
+	@Test
+	public void testRecordingsShareMemoryBudget()
+		throws Exception
+	{
+		// room for a single chunk, which the first recording takes
+		ResultCursorCache cache = new ResultCursorCache(500000, Long.MAX_VALUE, Long.MAX_VALUE,
+				Long.MAX_VALUE);
+		ResultCursorCache.Recorder<Statement> first = cache.record(key("first", QUERY), NAMES);
+		ResultCursorCache.Recorder<Statement> second = cache.record(key("second", QUERY), NAMES);
+		try {
+			add(first, 1000);
+			assertEquals(0, cache.getSpilled());
+			add(second, 1000);
+			assertTrue(cache.getSpilled() > 0);
+		}
+		finally {
+			first.abort();
+			second.abort();
+		}
+		assertEquals(0, cache.getSpilled());
+	}
+
+	@Test
+	public void testResultExceedingTotalSpillIsNotCached()
+		throws Exception
+	{
+		ResultCursorCache cache = new ResultCursorCache(200000, Long.MAX_VALUE, 1, Long.MAX_VALUE);
+		ResultCursorCache.Key key = key("session", "select * {?s ?p ?o}");
+		ResultCursorCache.Recorder<Statement> recorder = cache.record(key, NAMES);
+		try {
+			add(recorder, 2500);
+			assertFalse(recorder.isRecording());
+			recorder.complete();
+		}
+		finally {
+			recorder.abort();
+		}
+		assertNull(cache.get(key));
+		assertEquals(0, cache.getSpilled());
+	}
+
+	@Test
+	public void testIdleResultIsEvicted()
+		throws Exception
+	{
+		ResultCursorCache cache = new ResultCursorCache(Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE,
+				-1);
+		ResultCursorCache.Key key = key("session", "select * {?s ?p ?o}");
+		record(cache, key, 10);
+		assertNull(cache.get(key));
+	}
+
+	private void record(ResultCursorCache cache, ResultCursorCache.Key key, int count) {
+		ResultCursorCache.Recorder<Statement> recorder = cache.record(key, NAMES);
+		try {
+			add(recorder, count);
+			recorder.complete();
+		}
+		finally {
+			recorder.abort();
+		}
+	}
+
+	private void add(ResultCursorCache.Recorder<Statement> recorder, int count) {
+		for (int i = 0; i < count; i++) {
+			recorder.add(statement(i));
+		}
+	}
+
+	private ResultCursorCache.Key key(String session, String query) {
+		return new ResultCursorCache.Key(session, repository, QueryLanguage.SPARQL, query, null);
+	}
+
+	private Statement statement(int i) {
+		return vf.createStatement(vf.createIRI("urn:s" + i), RDF.TYPE, vf.createLiteral(i));
+	}
+}